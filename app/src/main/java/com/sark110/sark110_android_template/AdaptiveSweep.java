@@ -0,0 +1,246 @@
+package com.sark110.sark110_android_template;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+class AdaptiveSweep {
+    static final int DEF_COARSE_POINTS = 64;
+    static final int DEF_MAX_POINTS = 512;
+    static final double DEF_TOLERANCE = 0.02;      /* |rho| change between neighbours */
+    static final int DEF_RESOLUTION = 4096;         /* Finest step as a fraction of the span */
+
+    private final DeviceIntf mDevIntf;
+    private final SweepEngine mEngine;
+    private volatile boolean mCancelled;
+    private int mCoarsePoints = DEF_COARSE_POINTS;
+    private int mMaxPoints = DEF_MAX_POINTS;
+    private double mTolerance = DEF_TOLERANCE;
+    private int mMinStep;
+    private float mRefImp = 50.0f;
+    private int mCommands;
+
+    /* Points in measurement order; intervals refer to them by index */
+    private int[] mFreq;
+    private float[] mRs;
+    private float[] mXs;
+    private int mCount;
+
+    /* Span between two measured points, ordered by how much the impedance changes across it */
+    private static class Interval {
+        final int mLeft;
+        final int mRight;
+        final double mScore;
+
+        Interval(int left, int right, double score) {
+            mLeft = left;
+            mRight = right;
+            mScore = score;
+        }
+    }
+
+    AdaptiveSweep(DeviceIntf devIntf) {
+        this.mDevIntf = devIntf;
+        this.mEngine = new SweepEngine(devIntf);
+    }
+
+    /**
+     * Sets the number of points of the first, uniform pass
+     *
+     * @param points number of points; at least 2
+     */
+    public void setCoarsePoints(int points) {
+        mCoarsePoints = Math.max(2, points);
+    }
+
+    /**
+     * Sets the point budget, coarse pass included
+     *
+     * @param points maximum number of points
+     */
+    public void setMaxPoints(int points) {
+        mMaxPoints = points;
+    }
+
+    /**
+     * Sets when an interval is fine enough: |rho| changes less than this between its ends
+     *
+     * @param tolerance change of the reflection coefficient magnitude; 0..1
+     */
+    public void setTolerance(double tolerance) {
+        mTolerance = tolerance;
+    }
+
+    /**
+     * Sets the finest frequency step; 0 for span / DEF_RESOLUTION
+     *
+     * @param step step in Hz
+     */
+    public void setMinStep(int step) {
+        mMinStep = step;
+    }
+
+    public void set_RefImp(float r0) {
+        mRefImp = r0;
+    }
+
+    /**
+     * Aborts the running sweep, or the next one if none is running; Sweep() returns null
+     * after the command in progress.
+     */
+    public void cancel() {
+        mCancelled = true;
+        mEngine.cancel();
+    }
+
+    /**
+     * Gets the number of device commands used by the last sweep
+     *
+     * @return number of commands
+     */
+    public int getCommandCount() {
+        return mCommands;
+    }
+
+    /**
+     * Sweeps the start..stop range with a uniform coarse pass, then bisects the intervals
+     * where |rho| (and so VSWR) changes fastest, the reactance changes sign or |rho| has a
+     * minimum, until
+     * every interval is within tolerance, the finest step is reached or the budget is spent.
+     *
+     * @param start     start frequency in Hz
+     * @param stop      stop frequency in Hz
+     * @param samples   number of samples for averaging
+     * @return points sorted by frequency; or null if error or cancelled
+     */
+    public SweepResult Sweep(int start, int stop, byte samples) {
+        try {
+            return sweep(start, stop, samples);
+        } finally {
+            mCancelled = false;
+            mEngine.clearCancel();      // A cancel() after the coarse pass is not left for the next one
+        }
+    }
+
+    private SweepResult sweep(int start, int stop, byte samples) {
+        mCommands = 0;
+        int coarse = Math.min(mCoarsePoints, mMaxPoints);
+        if (coarse < 2 || stop - start < coarse - 1)
+            return null;
+
+        SweepResult first = mEngine.Sweep(start, stop, coarse, samples, null);
+        mCommands = mEngine.getCommandCount();
+        if (first == null)
+            return null;
+
+        mFreq = new int[mMaxPoints];
+        mRs = new float[mMaxPoints];
+        mXs = new float[mMaxPoints];
+        mCount = 0;
+        for (int i = 0; i < first.size(); i++)
+            add(first.getFreq(i), first.getRs(i), first.getXs(i));
+
+        int minStep = (mMinStep > 0) ? mMinStep : Math.max(1, (stop - start) / DEF_RESOLUTION);
+        PriorityQueue<Interval> queue = new PriorityQueue<>(2 * mMaxPoints, new Comparator<Interval>() {
+            @Override
+            public int compare(Interval a, Interval b) {
+                return Double.compare(b.mScore, a.mScore);
+            }
+        });
+        for (int i = 1; i < mCount; i++)
+            offer(queue, i - 1, i, minStep, isMinimum(i - 1, i - 2, i) || isMinimum(i, i - 1, i + 1));
+
+        float[] out = new float[2];
+        while (mCount < mMaxPoints && !queue.isEmpty()) {
+            if (mCancelled)
+                return null;
+            Interval iv = queue.poll();
+            int mid = (int) (((long) mFreq[iv.mLeft] + mFreq[iv.mRight]) / 2);
+            mCommands++;
+            if (mDevIntf.MeasureCmd(mid, samples, out, 0) < 0)
+                return null;
+            int index = add(mid, out[0], out[1]);
+            boolean atMin = isMinimum(index, iv.mLeft, iv.mRight);
+            offer(queue, iv.mLeft, index, minStep, atMin);
+            offer(queue, index, iv.mRight, minStep, atMin);
+        }
+        return sorted();
+    }
+
+    private int add(int freq, float rs, float xs) {
+        mFreq[mCount] = freq;
+        mRs[mCount] = rs;
+        mXs[mCount] = xs;
+        return mCount++;
+    }
+
+    private double rhoMag(int index) {
+        return MeasureMath.mod(MeasureMath.rhoRe(mRs[index], mXs[index], mRefImp),
+                MeasureMath.rhoIm(mRs[index], mXs[index], mRefImp));
+    }
+
+    /* True if the point has a lower |rho| than both neighbours */
+    private boolean isMinimum(int index, int left, int right) {
+        if (left < 0 || right >= mCount)
+            return false;
+        double rho = rhoMag(index);
+        return rho < rhoMag(left) && rho < rhoMag(right);
+    }
+
+    /*
+     * Queues the interval if it still needs refining. Its score is how much |rho| changes across
+     * it; reactance zero crossings and the sides of a |rho| minimum are refined first and down
+     * to the finest step, so that resonances and VSWR minima are located as by a dense sweep.
+     */
+    private void offer(PriorityQueue<Interval> queue, int left, int right, int minStep, boolean atMin) {
+        if (mFreq[right] - mFreq[left] < 2 * minStep)
+            return;
+        double score = Math.abs(rhoMag(right) - rhoMag(left));
+        if ((mXs[left] < 0) != (mXs[right] < 0) || atMin)
+            score += 1.0;
+        if (score >= mTolerance)
+            queue.add(new Interval(left, right, score));
+    }
+
+    private SweepResult sorted() {
+        /* Insertion sort: the coarse points are in order and the rest are few */
+        int[] order = new int[mCount];
+        for (int i = 0; i < mCount; i++) {
+            int j = i;
+            while (j > 0 && mFreq[order[j - 1]] > mFreq[i]) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+        SweepResult result = new SweepResult(mCount);
+        result.set_RefImp(mRefImp);
+        for (int i = 0; i < mCount; i++)
+            result.set(i, mFreq[order[i]], mRs[order[i]], mXs[order[i]]);
+        return result;
+    }
+}
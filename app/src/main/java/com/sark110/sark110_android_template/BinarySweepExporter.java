@@ -0,0 +1,137 @@
+package com.sark110.sark110_android_template;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static com.sark110.sark110_android_template.ProtocolCodec.getFloat;
+import static com.sark110.sark110_android_template.ProtocolCodec.getInt;
+import static com.sark110.sark110_android_template.ProtocolCodec.putInt;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+class BinarySweepExporter extends SweepExporter {
+    /*
+     * File layout, little-endian:
+     *  header  long magic, int version, float reference impedance
+     *  points  int freq, float Rs, float Xs
+     * The number of points follows from the file size, so the sweep can be streamed.
+     */
+    static final long MAGIC = 0x3150575330313153L;     /* "S110SWP1" */
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int POINT_SIZE = 12;
+    static final int BUFFER_SIZE = 8196;                /* A multiple of POINT_SIZE */
+
+    private final OutputStream mOut;
+    private final byte mBuf[] = new byte[BUFFER_SIZE];
+    private int mPos;
+
+    /**
+     * @param out destination; bytes are buffered here, so it need not be buffered
+     */
+    BinarySweepExporter(OutputStream out) {
+        mOut = out;
+    }
+
+    void begin(float z0) throws IOException {
+        putInt(mBuf, mPos, (int) MAGIC);
+        putInt(mBuf, mPos + 4, (int) (MAGIC >>> 32));
+        putInt(mBuf, mPos + 8, VERSION);
+        putInt(mBuf, mPos + 12, Float.floatToRawIntBits(z0));
+        mPos += HEADER_SIZE;
+    }
+
+    void point(int freq, float Rs, float Xs) throws IOException {
+        if (mPos + POINT_SIZE > BUFFER_SIZE)
+            flushBuffer();
+        putInt(mBuf, mPos, freq);
+        putInt(mBuf, mPos + 4, Float.floatToRawIntBits(Rs));
+        putInt(mBuf, mPos + 8, Float.floatToRawIntBits(Xs));
+        mPos += POINT_SIZE;
+    }
+
+    void end() throws IOException {
+        flushBuffer();
+        mOut.flush();
+    }
+
+    public void close() throws IOException {
+        flushBuffer();
+        mOut.close();
+    }
+
+    private void flushBuffer() throws IOException {
+        if (mPos > 0) {
+            mOut.write(mBuf, 0, mPos);
+            mPos = 0;
+        }
+    }
+
+    /**
+     * Reads a sweep written by this exporter
+     *
+     * @param file exported file
+     * @return sweep data with its reference impedance
+     */
+    static SweepResult read(File file) throws IOException {
+        long len = file.length();
+        if (len < HEADER_SIZE || (len - HEADER_SIZE) % POINT_SIZE != 0)
+            throw new IOException("Not a sweep file: " + file);
+        int points = (int) ((len - HEADER_SIZE) / POINT_SIZE);
+        InputStream in = new FileInputStream(file);
+        try {
+            DataInputStream data = new DataInputStream(in);
+            byte buf[] = new byte[BUFFER_SIZE];
+            data.readFully(buf, 0, HEADER_SIZE);
+            long magic = (getInt(buf, 0) & 0xffffffffL) | ((long) getInt(buf, 4) << 32);
+            if (magic != MAGIC || getInt(buf, 8) != VERSION)
+                throw new IOException("Not a sweep file: " + file);
+
+            SweepResult result = new SweepResult(points);
+            result.set_RefImp(getFloat(buf, 12));
+            int freq[] = result.freqArray();
+            float rs[] = result.rsArray();
+            float xs[] = result.xsArray();
+            for (int i = 0; i < points; ) {
+                int n = Math.min(points - i, BUFFER_SIZE / POINT_SIZE);
+                data.readFully(buf, 0, n * POINT_SIZE);
+                for (int k = 0; k < n; k++, i++) {
+                    freq[i] = getInt(buf, k * POINT_SIZE);
+                    rs[i] = getFloat(buf, k * POINT_SIZE + 4);
+                    xs[i] = getFloat(buf, k * POINT_SIZE + 8);
+                }
+            }
+            result.setSize(points);
+            return result;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -5,6 +5,7 @@ import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.os.ParcelUuid;
 
@@ -21,11 +22,12 @@ import android.bluetooth.le.ScanResult;
 import android.bluetooth.le.ScanSettings;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import android.os.Handler;
@@ -69,23 +71,81 @@ class BluetoothLEIntf extends DeviceIntf {
     private static final UUID DESCRIPTOR_UUID = UUID.fromString(DESCRIPTOR_STRING);
 
     private static final long SCAN_TIMEOUT = 10000;      /* ms */
+    private static final long FILTERED_SCAN_TIMEOUT = 4000;  /* ms; then the unfiltered scan takes over */
+    private static final long DIRECT_TIMEOUT = 3000;     /* ms to connect to the last device before scanning */
+    private static final int MICROCHIP_COMPANY_ID = 0x00cd;  /* Manufacturer of the BLE module */
+    private static final String PREF_ADDRESS = "pref_ble_address";
+    private static final String NAME_PATTERN = "SARK110.[0-9a-fA-F]{4}";
     private static final long RCV_TIMEOUT = 500;         /* ms */
-
+    private static final long WRITE_TIMEOUT = 100;       /* ms */
+    /*
+     * Commands in flight. The write and the notify characteristic are the same object, so a
+     * queued write could overwrite a reply in onCharacteristicChanged() before it is copied;
+     * stop-and-wait until the callbacks pass the value (API 33).
+     */
+    private static final int MAX_PIPELINE_DEPTH = 1;
+    private static final int DEF_MTU = 23;               /* ATT default: 20 byte payloads */
+    private static final int REQ_MTU = 247;              /* Fits a full LE data length packet */
+
+    private final String mAddress;          /* Given device; null: last device or scan */
     private boolean mScanning = false;
+    private boolean mConnecting = false;    /* Connecting directly to the last device */
+    private boolean mDirectFailed = false;  /* Last device not reachable; scan on the next attempt */
     private Handler mScanHandler;
+    private volatile Handler mConnectHandler;
     private Map<String, BluetoothDevice> mScanResults;
 
     private BluetoothAdapter mBluetoothAdapter;
     private BluetoothLeScanner mBluetoothLeScanner;
     private ScanCallback mScanCallback;
-    private BluetoothGatt mGatt;
+    private volatile BluetoothGatt mGatt;     /* Current client; callbacks of others are ignored */
+
+    /* Looked up once per connection in onServicesDiscovered() */
+    private volatile BluetoothGattCharacteristic mWriteCharacteristic;
+    private volatile BluetoothGattCharacteristic mReadCharacteristic;
+    private volatile int mMtu = DEF_MTU;
 
-    private byte[] mDataRcv;
-    private CountDownLatch mSyncRcv;
+    /* Replies in arrival order; room for stray notifications */
+    private final ReplyRing mRcvRing = new ReplyRing(COMMAND_LEN, 4);
+    /* Only one GATT write may be outstanding */
+    private final Semaphore mSyncWrite = new Semaphore(1);
 
     public BluetoothLEIntf(Context context)
+    {
+        this(context, null);
+    }
+
+    /**
+     * Creates the interface of one given analyzer, for using several at once. It connects
+     * directly to that address, never scans, and does not replace the last device saved.
+     *
+     * @param context   context
+     * @param address   device address; null for the last device connected or the first found
+     */
+    public BluetoothLEIntf(Context context, String address)
     {
         super(context);
+        mAddress = address;
+    }
+
+    /**
+     * Lists the analyzers bonded from the Bluetooth settings
+     *
+     * @return device addresses; empty if none or Bluetooth is off
+     */
+    static List<String> bondedAddresses() {
+        List<String> addresses = new ArrayList<>();
+        BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+        if (adapter == null || !adapter.isEnabled())
+            return addresses;
+        for (BluetoothDevice device : adapter.getBondedDevices()) {
+            String deviceName = device.getName();
+            if (device.getType() == BluetoothDevice.DEVICE_TYPE_LE && deviceName != null
+                    && deviceName.matches(NAME_PATTERN))
+                addresses.add(device.getAddress());
+        }
+        Collections.sort(addresses);
+        return addresses;
     }
 
     /* Listener handling */
@@ -119,6 +179,11 @@ class BluetoothLEIntf extends DeviceIntf {
     /* functions */
     public void close()
     {
+        if (mConnectHandler != null) {
+            mConnectHandler.removeCallbacksAndMessages(null);
+            mConnectHandler = null;
+        }
+        mConnecting = false;
         stopScan();
         disconnectGattServer();
     }
@@ -130,10 +195,62 @@ class BluetoothLEIntf extends DeviceIntf {
          */
         //connectBond();
 
+        if (!IsAvailable() || mScanning || mConnecting)
+            return;
+        connectStarted();
+
         /*
-         * Implements the scan method.
+         * Reconnects to the last device without scanning; scans if unknown or not reachable.
          */
-        startScan();
+        if (mAddress != null) {
+            connectDirect(mAddress);
+            return;
+        }
+        String address = getLastAddress();
+        if (address != null && !mDirectFailed)
+            connectDirect(address);
+        else
+            startScan(true);
+    }
+
+    /* Last connected device, persisted across runs */
+    private String getLastAddress() {
+        String address = mContext.getSharedPreferences(MainActivity.PREFS_NAME, Context.MODE_PRIVATE)
+                .getString(PREF_ADDRESS, null);
+        return (address != null && BluetoothAdapter.checkBluetoothAddress(address)) ? address : null;
+    }
+
+    private void saveLastAddress(String address) {
+        SharedPreferences prefs = mContext.getSharedPreferences(MainActivity.PREFS_NAME, Context.MODE_PRIVATE);
+        if (!address.equals(prefs.getString(PREF_ADDRESS, null)))
+            prefs.edit().putString(PREF_ADDRESS, address).apply();
+    }
+
+    /*
+     * autoConnect lets the controller connect as soon as the device advertises, without
+     * an app-level scan; if that has not happened within DIRECT_TIMEOUT the device may
+     * have changed, so fall back to scanning.
+     */
+    private void connectDirect(String address) {
+        disconnectGattServer();
+        mConnecting = true;
+        BluetoothDevice device = mBluetoothAdapter.getRemoteDevice(address);
+        mGatt = device.connectGatt(mContext, true, new BluetoothLEIntf.GattClientCallback(),
+                BluetoothDevice.TRANSPORT_LE);
+        if (mAddress != null)
+            return;         // Given device: autoConnect keeps trying, no fallback scan
+        mConnectHandler = new Handler();
+        mConnectHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (mConnecting && !mConnected) {
+                    mConnecting = false;
+                    mDirectFailed = true;
+                    disconnectGattServer();     // Cancels the pending autoConnect
+                    startScan(true);
+                }
+            }
+        }, DIRECT_TIMEOUT);
     }
 
     private void connectBond()
@@ -146,7 +263,7 @@ class BluetoothLEIntf extends DeviceIntf {
             if (type == BluetoothDevice.DEVICE_TYPE_LE) {
                 final String deviceName = device.getName();
                 if (deviceName != null) {
-                    if (deviceName.matches("SARK110.[0-9a-fA-F]{4}")) {
+                    if (deviceName.matches(NAME_PATTERN)) {
                         BluetoothLEIntf.GattClientCallback gattClientCallback = new BluetoothLEIntf.GattClientCallback();
                         mGatt = device.connectGatt(mContext, true, gattClientCallback);
                         break;
@@ -166,47 +283,60 @@ class BluetoothLEIntf extends DeviceIntf {
     }
 
     /* scanning */
-    private void startScan() {
+    private void startScan(boolean filtered) {
         if (!IsAvailable()) {
             return;
         }
         if (mScanning)      // Scanning already in progress
             return;
         disconnectGattServer();
+        /* First match callbacks need the filters offloaded to the controller */
+        if (filtered && !mBluetoothAdapter.isOffloadedFilteringSupported())
+            filtered = false;
         mScanResults = new HashMap<>();
-        mScanCallback = new BluetoothLEIntf.BtleScanCallback(mScanResults);
+        mScanCallback = new BluetoothLEIntf.BtleScanCallback(mScanResults, filtered);
 
         mBluetoothLeScanner = mBluetoothAdapter.getBluetoothLeScanner();
         if (mBluetoothLeScanner == null)
             return;
 
-        // Note: Filtering does not work the same (or at all) on most devices. It also is unable to
-        // search for a mask or anything less than a full UUID.
-        // Unless the full UUID of the server is known, manual filtering may be necessary.
-        // For example, when looking for a brand of device that contains a char sequence in the UUID
-        ScanFilter scanFilter = new ScanFilter.Builder()
-                .setServiceUuid(new ParcelUuid(SERVICE_UUID))
-                .build();
-
-        ScanSettings settings = new ScanSettings.Builder()
-//                .setScanMode(ScanSettings.SCAN_MODE_LOW_POWER)
-                .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)    // Faster
-                .build();
-
+        /*
+         * The filtered scan runs in the controller, which wakes the app up on a match only;
+         * names cannot be matched by prefix, so the filters are the last device address, the
+         * module manufacturer and the service. Controllers that ignore the filters find
+         * nothing, so the unfiltered scan follows it; at once if the filtered scan fails.
+         */
         List<ScanFilter> filters = new ArrayList<>();
-        // Commented as it does not work
-        //filters.add(scanFilter);
+        ScanSettings.Builder settings = new ScanSettings.Builder()
+                .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY);   // Faster
+        if (filtered) {
+            String address = getLastAddress();
+            if (address != null)
+                filters.add(new ScanFilter.Builder().setDeviceAddress(address).build());
+            filters.add(new ScanFilter.Builder()
+                    .setManufacturerData(MICROCHIP_COMPANY_ID, new byte[0])
+                    .build());
+            filters.add(new ScanFilter.Builder()
+                    .setServiceUuid(new ParcelUuid(SERVICE_UUID))
+                    .build());
+            settings.setCallbackType(ScanSettings.CALLBACK_TYPE_FIRST_MATCH)
+                    .setMatchMode(ScanSettings.MATCH_MODE_AGGRESSIVE)
+                    .setNumOfMatches(ScanSettings.MATCH_NUM_ONE_ADVERTISEMENT);
+        }
 
         mScanning = true;
-        mBluetoothLeScanner.startScan(filters, settings, mScanCallback);
+        mBluetoothLeScanner.startScan(filters, settings.build(), mScanCallback);
 
+        final boolean wasFiltered = filtered;
         mScanHandler = new Handler();
         mScanHandler.postDelayed(new Runnable() {
             @Override
             public void run() {
                 stopScan();
+                if (wasFiltered && !mConnected && mScanResults.isEmpty())
+                    startScan(false);
             }
-        }, SCAN_TIMEOUT);
+        }, filtered ? FILTERED_SCAN_TIMEOUT : SCAN_TIMEOUT);
 
     }
 
@@ -216,8 +346,12 @@ class BluetoothLEIntf extends DeviceIntf {
                 mBluetoothLeScanner.stopScan(mScanCallback);
             mBluetoothLeScanner = null;
         }
+        if (mScanHandler != null)
+            mScanHandler.removeCallbacksAndMessages(null);
         mScanCallback = null;
         mScanHandler = null;
+        if (mScanResults == null)
+            return;
         if (mScanResults.isEmpty()) {
             mScanning = false;
             setConnected(false);
@@ -227,16 +361,32 @@ class BluetoothLEIntf extends DeviceIntf {
     /* Gatt connection */
     private void connectDevice(BluetoothDevice device) {
         //log("Connecting to " + device.getAddress());
+        disconnectGattServer();
         BluetoothLEIntf.GattClientCallback gattClientCallback = new BluetoothLEIntf.GattClientCallback();
-        mGatt = device.connectGatt(mContext, false, gattClientCallback);
+        mGatt = device.connectGatt(mContext, false, gattClientCallback, BluetoothDevice.TRANSPORT_LE);
+    }
+
+    /**
+     * Gets the ATT MTU negotiated with the device
+     *
+     * @return MTU in bytes; payloads are 3 bytes less
+     */
+    int getMtu() {
+        return mMtu;
     }
 
     /* support functions */
     private void disconnectGattServer() {
         mConnected = false;
-        if (mGatt != null) {
-            mGatt.disconnect();
-            mGatt.close();
+        mWriteCharacteristic = null;
+        mReadCharacteristic = null;
+        mMtu = DEF_MTU;
+        releaseWrite();         // A write pending on the old link never completes
+        BluetoothGatt gatt = mGatt;
+        mGatt = null;
+        if (gatt != null) {
+            gatt.disconnect();
+            gatt.close();
         }
     }
 
@@ -244,9 +394,11 @@ class BluetoothLEIntf extends DeviceIntf {
     private class BtleScanCallback extends ScanCallback {
 
         private final Map<String, BluetoothDevice> mScanResults;
+        private final boolean mFiltered;
 
-        BtleScanCallback(Map<String, BluetoothDevice> scanResults) {
+        BtleScanCallback(Map<String, BluetoothDevice> scanResults, boolean filtered) {
             mScanResults = scanResults;
+            mFiltered = filtered;
         }
 
         @Override
@@ -263,6 +415,12 @@ class BluetoothLEIntf extends DeviceIntf {
 
         @Override
         public void onScanFailed(int errorCode) {
+            if (this != mScanCallback)      /* An earlier scan */
+                return;
+            /* Settings the controller rejects are reported here, not by startScan() */
+            stopScan();
+            if (mFiltered && !mConnected)
+                startScan(false);
         }
 
         private void addScanResult(ScanResult result) {
@@ -273,7 +431,7 @@ class BluetoothLEIntf extends DeviceIntf {
             final String deviceName = device.getName();
             if (deviceName != null)
             {
-                if (deviceName.matches("SARK110.[0-9a-fA-F]{4}")) {
+                if (deviceName.matches(NAME_PATTERN)) {
                     mScanResults.put(deviceAddress, device);
                     BluetoothDevice sarkDevice = mScanResults.get(deviceAddress);
                     connectDevice(sarkDevice);
@@ -284,9 +442,25 @@ class BluetoothLEIntf extends DeviceIntf {
     }
 
     private class GattClientCallback extends BluetoothGattCallback {
+        /*
+         * Every client is closed before it is replaced, but callbacks already queued may still
+         * arrive; they must not touch the state of the current client.
+         */
+        private boolean isStale(BluetoothGatt gatt) {
+            return gatt != mGatt;
+        }
+
+        /* Connected but not usable: close it so that connect() can try again */
+        private void setupFailed() {
+            disconnectGattServer();
+            setConnected(false);
+        }
+
         @Override
         public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
             super.onConnectionStateChange(gatt, status, newState);
+            if (isStale(gatt))
+                return;
             if (status == BluetoothGatt.GATT_FAILURE) {
                 disconnectGattServer();
                 setConnected(false);
@@ -298,6 +472,9 @@ class BluetoothLEIntf extends DeviceIntf {
             }
 
             if (newState == BluetoothProfile.STATE_CONNECTED) {
+                Handler connectHandler = mConnectHandler;
+                if (connectHandler != null)     // Link up: no fallback scan while setting up
+                    connectHandler.removeCallbacksAndMessages(null);
                 gatt.discoverServices();
             } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
                 disconnectGattServer();
@@ -306,78 +483,156 @@ class BluetoothLEIntf extends DeviceIntf {
         }
         @Override
         public void onServicesDiscovered(BluetoothGatt gatt, int status) {
-            if (status == BluetoothGatt.GATT_SUCCESS) {
-                enableReceiveNotifications();
-                setConnected(true);
+            if (isStale(gatt))
+                return;
+            BluetoothGattService service = status == BluetoothGatt.GATT_SUCCESS
+                    ? gatt.getService(SERVICE_UUID) : null;
+            if (service == null) {
+                setupFailed();
+                return;
             }
+            mWriteCharacteristic = service.getCharacteristic(WRITE_UUID);
+            mReadCharacteristic = service.getCharacteristic(READ_UUID);
+            if (mWriteCharacteristic == null || mReadCharacteristic == null) {
+                setupFailed();
+                return;
+            }
+            mWriteCharacteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+
+            /* Shortest connection interval; the default balanced one adds tens of ms per command */
+            gatt.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH);
+            /* GATT requests are serialized: MTU first, then the notifications are enabled */
+            if (!gatt.requestMtu(REQ_MTU))
+                enableReceiveNotifications(gatt);
+        }
+        @Override
+        public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+            if (isStale(gatt))
+                return;
+            if (status == BluetoothGatt.GATT_SUCCESS)
+                mMtu = mtu;
+            enableReceiveNotifications(gatt);
+        }
+        @Override
+        public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+            if (isStale(gatt) || !DESCRIPTOR_UUID.equals(descriptor.getUuid()))
+                return;
+            if (status == BluetoothGatt.GATT_SUCCESS)
+                setConnected(true);
+            else
+                setupFailed();              // No notifications: no replies
+        }
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt gatt,
+                                          BluetoothGattCharacteristic characteristic, int status) {
+            if (!isStale(gatt))
+                releaseWrite();
         }
         @Override
         public void onCharacteristicChanged(BluetoothGatt gatt,
                                             BluetoothGattCharacteristic characteristic) {
-            mDataRcv = characteristic.getValue();
-            mSyncRcv.countDown();
+            if (isStale(gatt))
+                return;
+            /* One reply per notification; copied into the ring under its lock */
+            byte[] value = characteristic.getValue();
+            if (value != null)
+                mRcvRing.writeMessage(value, 0, value.length);
         }
     }
     private void setConnected(boolean connected) {
         if (connected == false)
             mScanning = false;  // A new scan could be started
+        else if (mGatt != null && mAddress == null) {
+            saveLastAddress(mGatt.getDevice().getAddress());
+            mDirectFailed = false;
+        }
+        if (mConnectHandler != null) {
+            mConnectHandler.removeCallbacksAndMessages(null);
+            mConnectHandler = null;
+        }
+        if (!connected && mConnecting)
+            mDirectFailed = true;   // Direct connection refused; scan next time
+        mConnecting = false;
         mConnected = connected;
         InCaseFireConnectionStateChanged();
     }
 
-    private void sendData(byte[] data) {
-        if (mBluetoothAdapter == null || mGatt == null) {
-            return;
-        }
-        /*check if the service is available on the device*/
-        BluetoothGattService mCustomService = mGatt.getService(SERVICE_UUID);
-        if(mCustomService == null){
-            return;
+    private boolean sendData(byte[] data) {
+        BluetoothGatt gatt = mGatt;
+        BluetoothGattCharacteristic characteristic = mWriteCharacteristic;
+        if (gatt == null || characteristic == null) {
+            return false;
         }
-        /*get the write characteristic from the service*/
-        BluetoothGattCharacteristic mWriteCharacteristic = mCustomService.getCharacteristic(WRITE_UUID);
-
-        mWriteCharacteristic.setValue(data);
-        mWriteCharacteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
-        mGatt.writeCharacteristic(mWriteCharacteristic);
+        characteristic.setValue(data);
+        return gatt.writeCharacteristic(characteristic);
     }
 
-    private void enableReceiveNotifications() {
-        if (mBluetoothAdapter == null || mGatt == null) {
+    private void enableReceiveNotifications(BluetoothGatt gatt) {
+        BluetoothGattCharacteristic characteristic = mReadCharacteristic;
+        if (characteristic == null)
             return;
-        }
-        /*check if the service is available on the device*/
-        BluetoothGattService mCustomService = mGatt.getService(SERVICE_UUID);
-        if(mCustomService == null){
+        gatt.setCharacteristicNotification(characteristic, true);
+        BluetoothGattDescriptor descriptor = characteristic.getDescriptor(DESCRIPTOR_UUID);
+        if (descriptor == null) {
+            setConnected(true);
             return;
         }
-
-        /*get the read characteristic from the service*/
-        BluetoothGattCharacteristic mReadCharacteristic = mCustomService.getCharacteristic(READ_UUID);
-        BluetoothGattDescriptor descriptor = mReadCharacteristic.getDescriptor(DESCRIPTOR_UUID);
         descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-        mGatt.writeDescriptor(descriptor);
-        mGatt.setCharacteristicNotification(mReadCharacteristic, true);
-        mGatt.readCharacteristic(mReadCharacteristic);
+        /* Connected once the write completes, in onDescriptorWrite() */
+        if (!gatt.writeDescriptor(descriptor))
+            setConnected(true);
     }
 
     protected int SendRcv(byte snd[], byte rcv[])
     {
-        if (!mConnected)
+        Purge();
+        if (Send(snd) < 0)
             return -1;
+        markSent();
+        return Rcv(rcv);
+    }
 
-        mSyncRcv = new CountDownLatch(1);
-        mDataRcv = new byte[COMMAND_LEN];
-
-        sendData(snd);
-
+    int Send(byte snd[])
+    {
+        if (!mConnected)
+            return -1;
         try {
-            boolean result = mSyncRcv.await(RCV_TIMEOUT, TimeUnit.MILLISECONDS);
+            /* Wait for the previous write to complete; a write that never completes must not block forever */
+            if (!mSyncWrite.tryAcquire(WRITE_TIMEOUT, TimeUnit.MILLISECONDS))
+                return -1;
         } catch (InterruptedException e) {
             return -1;
         }
+        if (!sendData(snd)) {
+            releaseWrite();
+            return -1;
+        }
+        return COMMAND_LEN;
+    }
+
+    /* Frees the write slot; a late completion after a timeout must not add a second permit */
+    private synchronized void releaseWrite()
+    {
+        if (mSyncWrite.availablePermits() == 0)
+            mSyncWrite.release();
+    }
 
-        System.arraycopy(mDataRcv, 0, rcv, 0, COMMAND_LEN);
+    int Rcv(byte rcv[])
+    {
+        if (!mConnected)
+            return -1;
+        if (mRcvRing.read(rcv, RCV_TIMEOUT) < 0)
+            return -1;
         return 1;
     }
+
+    void Purge()
+    {
+        mRcvRing.clear();
+    }
+
+    int getMaxPipelineDepth()
+    {
+        return MAX_PIPELINE_DEPTH;
+    }
 }
@@ -0,0 +1,362 @@
+package com.sark110.sark110_android_template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.sark110.sark110_android_template.ProtocolCodec.*;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+public class CommandMetrics {
+    /* Command phases */
+    public static final int PHASE_SEND = 0;         /* Handing the command to the transport */
+    public static final int PHASE_WAIT = 1;         /* Waiting for the reply */
+    public static final int PHASE_DECODE = 2;       /* Decoding the reply */
+    public static final int PHASE_TOTAL = 3;        /* Send to reply, retries included; not for pipelined commands */
+    static final int PHASES = 4;
+    private static final String PHASE_NAMES[] = {"send", "wait", "decode", "total"};
+
+    /* Event counters */
+    public static final int COUNT_COMMANDS = 0;
+    public static final int COUNT_TIMEOUTS = 1;     /* Transport failures: no reply in time */
+    public static final int COUNT_ERRORS = 2;       /* ANS_SARK_ERR replies */
+    public static final int COUNT_RETRIES = 3;
+    static final int COUNTERS = 4;
+
+    static final int OPCODES = 64;                  /* Command codes are below 64 */
+    static final int BUCKETS = 32;                  /* Bucket b holds times in [2^b, 2^(b+1)) ns; the last one up */
+    static final long RATE_WINDOW = 1000000000L;    /* ns over which the command rate is averaged */
+
+    /*
+     * Single writer: the DeviceIntf command methods are synchronized, so updates never race
+     * and are plain ordered stores rather than atomic read-modify-writes. snapshot() reads
+     * without locking from any thread; one taken during a command may be off by it.
+     */
+    private final AtomicLongArray mHist = new AtomicLongArray(OPCODES * PHASES * BUCKETS);
+    private final AtomicLongArray mSum = new AtomicLongArray(OPCODES * PHASES);
+    private final AtomicLongArray mMax = new AtomicLongArray(OPCODES * PHASES);
+    private final AtomicLongArray mCounters = new AtomicLongArray(OPCODES * COUNTERS);
+
+    /* Command rate; the window fields belong to the writer */
+    private long mRateStart;
+    private int mRateCount;
+    private volatile float mRate;
+    private volatile long mRateTime;
+
+    /* Connection start to the first measurement reply */
+    private volatile long mFirstMeasurement = -1;
+
+    /**
+     * Adds one time to a phase histogram; callers are serialized
+     *
+     * @param cmd   command code
+     * @param phase PHASE_ value
+     * @param ns    time in ns
+     */
+    void record(int cmd, int phase, long ns) {
+        if (ns < 0)
+            ns = 0;
+        int slot = (cmd & (OPCODES - 1)) * PHASES + phase;
+        int bucket = slot * BUCKETS + Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(ns | 1));
+        mHist.lazySet(bucket, mHist.get(bucket) + 1);
+        mSum.lazySet(slot, mSum.get(slot) + ns);
+        if (ns > mMax.get(slot))
+            mMax.lazySet(slot, ns);
+    }
+
+    /**
+     * Counts one event; callers are serialized
+     *
+     * @param cmd       command code
+     * @param counter   COUNT_ value
+     */
+    void count(int cmd, int counter) {
+        int i = (cmd & (OPCODES - 1)) * COUNTERS + counter;
+        mCounters.lazySet(i, mCounters.get(i) + 1);
+    }
+
+    /**
+     * Counts one completed command towards the command rate; callers are serialized
+     *
+     * @param now System.nanoTime() at completion
+     */
+    void completed(long now) {
+        if (mRateCount == 0)
+            mRateStart = now;
+        mRateCount++;
+        long elapsed = now - mRateStart;
+        if (elapsed >= RATE_WINDOW) {
+            mRate = (mRateCount - 1) * 1e9f / elapsed;
+            mRateTime = now;
+            mRateStart = now;
+            mRateCount = 1;
+        }
+    }
+
+    /**
+     * Records the time from the start of a connection attempt to the first measurement
+     *
+     * @param ns time in ns
+     */
+    void firstMeasurement(long ns) {
+        mFirstMeasurement = ns;
+    }
+
+    /**
+     * Gets the time to first measurement of the last connection: from the connection attempt
+     * (scan or reconnect) to the first measurement reply
+     *
+     * @return time in ns; -1 if there was no measurement since the last connection attempt
+     */
+    public long getTimeToFirstMeasurement() {
+        return mFirstMeasurement;
+    }
+
+    /**
+     * Gets the rate of completed commands over the last full window of about a second
+     *
+     * @return commands per second; 0 if idle for more than two windows
+     */
+    public float getCommandRate() {
+        if (System.nanoTime() - mRateTime > 2 * RATE_WINDOW)
+            return 0;
+        return mRate;
+    }
+
+    /**
+     * Clears all the metrics, the time to first measurement and the rate window included.
+     * Not atomic with the updates: call it on the thread running the commands, e.g. through
+     * DeviceExecutor.submit(); from another thread, an update in progress may write back a
+     * count from before the reset.
+     */
+    public void reset() {
+        for (int i = 0; i < mHist.length(); i++)
+            mHist.set(i, 0);
+        for (int i = 0; i < mSum.length(); i++) {
+            mSum.set(i, 0);
+            mMax.set(i, 0);
+        }
+        for (int i = 0; i < mCounters.length(); i++)
+            mCounters.set(i, 0);
+        mRate = 0;
+        mRateCount = 0;         // The next window starts after the reset
+        mRateStart = 0;
+        mRateTime = 0;
+        mFirstMeasurement = -1;
+    }
+
+    /**
+     * Copies the metrics of one command
+     *
+     * @param cmd command code
+     * @return metrics at the time of the call
+     */
+    public Snapshot snapshot(int cmd) {
+        cmd &= OPCODES - 1;
+        Snapshot s = new Snapshot(cmd);
+        for (int c = 0; c < COUNTERS; c++)
+            s.mCounters[c] = mCounters.get(cmd * COUNTERS + c);
+        for (int p = 0; p < PHASES; p++) {
+            int slot = cmd * PHASES + p;
+            s.mSum[p] = mSum.get(slot);
+            s.mMax[p] = mMax.get(slot);
+            for (int b = 0; b < BUCKETS; b++)
+                s.mHist[p][b] = mHist.get(slot * BUCKETS + b);
+        }
+        return s;
+    }
+
+    /**
+     * Copies the metrics of all the commands sent so far
+     *
+     * @return one snapshot per command code, in code order
+     */
+    public List<Snapshot> snapshot() {
+        List<Snapshot> list = new ArrayList<>();
+        for (int cmd = 0; cmd < OPCODES; cmd++)
+            if (mCounters.get(cmd * COUNTERS + COUNT_COMMANDS) > 0)
+                list.add(snapshot(cmd));
+        return list;
+    }
+
+    /**
+     * Gets a readable name of a command code
+     *
+     * @param cmd command code
+     * @return name
+     */
+    public static String name(int cmd) {
+        switch (cmd) {
+            case CMD_SARK_VERSION:
+                return "VERSION";
+            case CMD_SARK_MEAS_RX:
+                return "MEAS_RX";
+            case CMD_SARK_MEAS_VECTOR:
+                return "MEAS_VECTOR";
+            case CMD_SARK_SIGNAL_GEN:
+                return "SIGNAL_GEN";
+            case CMD_SARK_MEAS_RF:
+                return "MEAS_RF";
+            case CMD_SARK_MEAS_VEC_THRU:
+                return "MEAS_VEC_THRU";
+            case CMD_BATT_STAT:
+                return "BATT_STAT";
+            case CMD_DISK_INFO:
+                return "DISK_INFO";
+            case CMD_DISK_VOLUME:
+                return "DISK_VOLUME";
+            case CMD_SARK_MEAS_RX_EXT:
+                return "MEAS_RX_EXT";
+            case CMD_BUZZER:
+                return "BUZZER";
+            case CMD_GET_KEY:
+                return "GET_KEY";
+            case CMD_DEV_RST:
+                return "DEV_RST";
+            default:
+                return "CMD_" + cmd;
+        }
+    }
+
+    /**
+     * Metrics of one command at one point in time
+     */
+    public static class Snapshot {
+        private final int mCmd;
+        private final long mCounters[] = new long[COUNTERS];
+        private final long mSum[] = new long[PHASES];
+        private final long mMax[] = new long[PHASES];
+        private final long mHist[][] = new long[PHASES][BUCKETS];
+
+        Snapshot(int cmd) {
+            mCmd = cmd;
+        }
+
+        public int getCmd() {
+            return mCmd;
+        }
+        public String getName() {
+            return name(mCmd);
+        }
+        public long getCommands() {
+            return mCounters[COUNT_COMMANDS];
+        }
+        public long getTimeouts() {
+            return mCounters[COUNT_TIMEOUTS];
+        }
+        public long getErrors() {
+            return mCounters[COUNT_ERRORS];
+        }
+        public long getRetries() {
+            return mCounters[COUNT_RETRIES];
+        }
+
+        /**
+         * Gets the number of times recorded for a phase
+         *
+         * @param phase PHASE_ value
+         * @return number of times
+         */
+        public long getCount(int phase) {
+            long n = 0;
+            for (long v : mHist[phase])
+                n += v;
+            return n;
+        }
+
+        /**
+         * Gets the mean time of a phase
+         *
+         * @param phase PHASE_ value
+         * @return time in ns; 0 if none recorded
+         */
+        public long getMean(int phase) {
+            long n = getCount(phase);
+            return n == 0 ? 0 : mSum[phase] / n;
+        }
+
+        /**
+         * Gets the longest time of a phase
+         *
+         * @param phase PHASE_ value
+         * @return time in ns
+         */
+        public long getMax(int phase) {
+            return mMax[phase];
+        }
+
+        /**
+         * Estimates a percentile of a phase from the histogram; within a factor of 2
+         *
+         * @param phase     PHASE_ value
+         * @param percent   0..100
+         * @return upper bound of the bucket holding the percentile in ns, capped to the maximum
+         */
+        public long getPercentile(int phase, double percent) {
+            long n = getCount(phase);
+            if (n == 0)
+                return 0;
+            long rank = (long) Math.ceil(n * percent / 100.0);
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += mHist[phase][b];
+                if (seen >= Math.max(1, rank))
+                    return Math.min(mMax[phase], (2L << b) - 1);
+            }
+            return mMax[phase];
+        }
+
+        /**
+         * Gets the histogram of a phase
+         *
+         * @param phase PHASE_ value
+         * @return counts; bucket b holds times in [2^b, 2^(b+1)) ns
+         */
+        public long[] getHistogram(int phase) {
+            return mHist[phase].clone();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(getName()).append(": ").append(getCommands()).append(" cmds, ")
+                    .append(getTimeouts()).append(" timeouts, ")
+                    .append(getErrors()).append(" errors, ")
+                    .append(getRetries()).append(" retries");
+            for (int p = 0; p < PHASES; p++) {
+                if (getCount(p) == 0)
+                    continue;
+                sb.append("\n  ").append(PHASE_NAMES[p])
+                        .append(": mean ").append(getMean(p) / 1000)
+                        .append(" us, p50 ").append(getPercentile(p, 50) / 1000)
+                        .append(" us, p99 ").append(getPercentile(p, 99) / 1000)
+                        .append(" us, max ").append(getMax(p) / 1000).append(" us");
+            }
+            return sb.toString();
+        }
+    }
+}
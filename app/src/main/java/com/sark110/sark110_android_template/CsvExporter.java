@@ -0,0 +1,131 @@
+package com.sark110.sark110_android_template;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+class CsvExporter extends TextSweepExporter {
+    /* Columns; the frequency in Hz is always the first one */
+    static final int COL_RS = 0;
+    static final int COL_XS = 1;
+    static final int COL_ZS_MAG = 2;
+    static final int COL_ZS_ANGLE = 3;
+    static final int COL_VSWR = 4;
+    static final int COL_RL = 5;
+    static final int COL_CL = 6;
+    static final int COL_RH_MAG = 7;
+    static final int COL_RH_ANGLE = 8;
+    static final int COL_REF_PWR = 9;
+    static final int COL_Q = 10;
+    static final int COL_CS = 11;
+    static final int COL_LS = 12;
+    private static final String COL_NAMES[] = {
+            "Rs", "Xs", "|Z|", "Z angle", "VSWR", "RL", "CL", "|rho|", "rho angle", "RefPwr", "Q", "Cs", "Ls"
+    };
+
+    static final int DEF_DIGITS = 7;            /* Significant digits; what a float holds */
+
+    private final int mColumns[];
+    private int mDigits = DEF_DIGITS;
+    private char mSeparator = ',';
+    private double mZ0;
+
+    /**
+     * Writes one row per point with the selected metrics, same definitions as in MeasureDataBin
+     *
+     * @param out       destination
+     * @param columns   COL_ values in the order wanted; Rs and Xs if none
+     */
+    CsvExporter(Writer out, int... columns) {
+        super(out);
+        if (columns.length == 0)
+            columns = new int[] {COL_RS, COL_XS};
+        for (int col : columns)
+            if (col < 0 || col >= COL_NAMES.length)
+                throw new IllegalArgumentException("column " + col);
+        mColumns = columns.clone();
+    }
+
+    void setDigits(int digits) {
+        mDigits = Math.max(1, Math.min(NumberChars.MAX_DIGITS, digits));
+    }
+
+    void setSeparator(char separator) {
+        mSeparator = separator;
+    }
+
+    void begin(float z0) throws IOException {
+        mZ0 = z0;
+        put("Freq");
+        for (int col : mColumns) {
+            put(mSeparator);
+            put(COL_NAMES[col]);
+        }
+        put('\n');
+    }
+
+    void point(int freq, float Rs, float Xs) throws IOException {
+        double rhoMag = MeasureMath.mod(MeasureMath.rhoRe(Rs, Xs, mZ0), MeasureMath.rhoIm(Rs, Xs, mZ0));
+        putLong(freq);
+        for (int col : mColumns) {
+            put(mSeparator);
+            putGeneral(value(col, freq, Rs, Xs, rhoMag), mDigits);
+        }
+        put('\n');
+    }
+
+    private double value(int col, int freq, float Rs, float Xs, double rhoMag) {
+        switch (col) {
+            case COL_RS:
+                return Rs;
+            case COL_XS:
+                return Xs;
+            case COL_ZS_MAG:
+                return (float) MeasureMath.mod(Rs, Xs);
+            case COL_ZS_ANGLE:
+                return MeasureMath.angle(Rs, Xs);
+            case COL_VSWR:
+                return MeasureMath.vswr(rhoMag);
+            case COL_RL:
+                return MeasureMath.returnLoss(rhoMag);
+            case COL_CL:
+                return MeasureMath.cableLoss(rhoMag);
+            case COL_RH_MAG:
+                return (float) rhoMag;
+            case COL_RH_ANGLE:
+                return MeasureMath.angle(MeasureMath.rhoRe(Rs, Xs, mZ0), MeasureMath.rhoIm(Rs, Xs, mZ0));
+            case COL_REF_PWR:
+                return MeasureMath.refPwr(rhoMag);
+            case COL_Q:
+                return MeasureMath.q(Rs, Xs);
+            case COL_CS:
+                return (float) MeasureMath.capacitance(Xs, freq);
+            default:
+                return (float) MeasureMath.inductance(Xs, freq);
+        }
+    }
+}
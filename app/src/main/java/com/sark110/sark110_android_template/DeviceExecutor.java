@@ -0,0 +1,260 @@
+package com.sark110.sark110_android_template;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+public class DeviceExecutor {
+    static final String THREAD_NAME = "sark110-io";
+
+    private final DeviceIntf mDevIntf;
+    private final ExecutorService mExecutor;
+    private final Executor mCallbackExecutor;
+
+    /**
+     * Receives the result of a command on the callback thread
+     */
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    /**
+     * Creates the device I/O thread; callbacks are posted to the main thread.
+     * Commands run there so that transport timeouts never block the UI;
+     * connect() must still be called from the main thread.
+     *
+     * @param devIntf device interface; all its commands should go through this executor
+     */
+    public DeviceExecutor(DeviceIntf devIntf) {
+        this(devIntf, mainThreadExecutor());
+    }
+
+    /**
+     * Creates the device I/O thread
+     *
+     * @param devIntf           device interface
+     * @param callbackExecutor  runs the callbacks
+     */
+    DeviceExecutor(DeviceIntf devIntf, Executor callbackExecutor) {
+        this.mDevIntf = devIntf;
+        this.mCallbackExecutor = callbackExecutor;
+        this.mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static Executor mainThreadExecutor() {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                handler.post(command);
+            }
+        };
+    }
+
+    public DeviceIntf getDeviceIntf() {
+        return mDevIntf;
+    }
+
+    /**
+     * Receives the exception of a failed task on the callback thread
+     */
+    public interface ErrorCallback {
+        void onError(Exception e);
+    }
+
+    /**
+     * Runs a task on the device I/O thread. Tasks run one at a time in submission order.
+     *
+     * @param task      task; may call any DeviceIntf command
+     * @param callback  receives the task result; may be null. Not called if the task throws.
+     * @return pending result
+     */
+    public <T> Future<T> submit(Callable<T> task, Callback<T> callback) {
+        return submit(task, callback, null);
+    }
+
+    /**
+     * Runs a task on the device I/O thread, reporting the outcome either way. Exactly one of
+     * the callbacks is called, so a caller waiting for the task is never left waiting.
+     *
+     * @param task          task; may call any DeviceIntf command
+     * @param callback      receives the task result; may be null
+     * @param errorCallback receives the exception if the task throws; may be null
+     * @return pending result
+     */
+    public <T> Future<T> submit(final Callable<T> task, final Callback<T> callback,
+                                final ErrorCallback errorCallback) {
+        return mExecutor.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                final T result;
+                try {
+                    result = task.call();
+                } catch (final Exception e) {
+                    if (errorCallback != null) {
+                        mCallbackExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                errorCallback.onError(e);
+                            }
+                        });
+                    }
+                    throw e;
+                }
+                if (callback != null) {
+                    mCallbackExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onResult(result);
+                        }
+                    });
+                }
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Stops the I/O thread after the pending commands
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Waits for the pending commands after shutdown()
+     *
+     * @param timeout time in ms
+     * @return true if the I/O thread ended
+     */
+    public boolean awaitTermination(long timeout) throws InterruptedException {
+        return mExecutor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * DeviceIntf commands; see DeviceIntf for the parameters
+     */
+    public Future<Integer> VersionCmd(Callback<Integer> callback) {
+        return submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return mDevIntf.VersionCmd();
+            }
+        }, callback);
+    }
+
+    public Future<Integer> BeepCmd(final int freq, final int duration, Callback<Integer> callback) {
+        return submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return mDevIntf.BeepCmd(freq, duration);
+            }
+        }, callback);
+    }
+
+    public Future<Integer> BeepCmd(Callback<Integer> callback) {
+        return BeepCmd(0, 0, callback);
+    }
+
+    public Future<MeasureDataBin> MeasureCmd(final int freq, final byte samples, Callback<MeasureDataBin> callback) {
+        return submit(new Callable<MeasureDataBin>() {
+            @Override
+            public MeasureDataBin call() {
+                return mDevIntf.MeasureCmd(freq, samples);
+            }
+        }, callback);
+    }
+
+    public Future<MeasureDataBin> MeasureCmd(int freq, Callback<MeasureDataBin> callback) {
+        return MeasureCmd(freq, (byte) 0, callback);
+    }
+
+    public Future<MeasureDataBin[]> MeasureCmdExt(final int freq, final int step, final byte samples,
+                                                  Callback<MeasureDataBin[]> callback) {
+        return submit(new Callable<MeasureDataBin[]>() {
+            @Override
+            public MeasureDataBin[] call() {
+                return mDevIntf.MeasureCmdExt(freq, step, samples);
+            }
+        }, callback);
+    }
+
+    public Future<MeasureDataBin[]> MeasureCmdExt(int freq, int step, Callback<MeasureDataBin[]> callback) {
+        return MeasureCmdExt(freq, step, (byte) 0, callback);
+    }
+
+    public Future<Integer> SignalGenCmd(final int freq, final int level, final byte gain, Callback<Integer> callback) {
+        return submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return mDevIntf.SignalGenCmd(freq, level, gain);
+            }
+        }, callback);
+    }
+
+    public Future<Integer> ResetCmd(Callback<Integer> callback) {
+        return submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return mDevIntf.ResetCmd();
+            }
+        }, callback);
+    }
+
+    public Future<DeviceIntf.MeasureDetector> MeasDetectorCmd(final int freq, Callback<DeviceIntf.MeasureDetector> callback) {
+        return submit(new Callable<DeviceIntf.MeasureDetector>() {
+            @Override
+            public DeviceIntf.MeasureDetector call() {
+                return mDevIntf.MeasDetectorCmd(freq);
+            }
+        }, callback);
+    }
+
+    public Future<DeviceIntf.MeasureDetector> MeasRfCmd(final int freq, Callback<DeviceIntf.MeasureDetector> callback) {
+        return submit(new Callable<DeviceIntf.MeasureDetector>() {
+            @Override
+            public DeviceIntf.MeasureDetector call() {
+                return mDevIntf.MeasRfCmd(freq);
+            }
+        }, callback);
+    }
+}
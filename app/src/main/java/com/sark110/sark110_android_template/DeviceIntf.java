@@ -1,8 +1,9 @@
 package com.sark110.sark110_android_template;
 
 import android.content.Context;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+
+import static com.sark110.sark110_android_template.CommandMetrics.*;
+import static com.sark110.sark110_android_template.ProtocolCodec.*;
 
 /**
  * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
@@ -32,28 +33,6 @@ import java.nio.ByteOrder;
 public abstract class DeviceIntf {
     static final int COMMAND_LEN = 18;
 
-    private static final int CMD_SARK_VERSION =		1;	/* Returns version of the protocol */
-    private static final int CMD_SARK_MEAS_RX =		2;	/* Measures R and X */
-    private static final int CMD_SARK_MEAS_VECTOR =	3;	/* Measures raw vector data */
-    private static final int CMD_SARK_SIGNAL_GEN =	4;	/* Signal generator */
-    private static final int CMD_SARK_MEAS_RF =		5;	/* Measures RF */
-    private static final int CMD_SARK_MEAS_VEC_THRU =	6;	/* Measures raw vector thru data */
-    private static final int CMD_BATT_STAT =		7;	/* Battery charger status */
-    private static final int CMD_DISK_INFO =		8;	/* Get disk information */
-    private static final int CMD_DISK_VOLUME =		9;	/* Get disk volume name */
-    private static final int CMD_SARK_MEAS_RX_EXT =	12;	/* Measures R and X; efficient (x4 samples) */
-    private static final int CMD_BUZZER	=			20;	/* Sounds buzzer */
-    private static final int CMD_GET_KEY =			21;	/* Get key */
-    private static final int CMD_DEV_RST =			50;	/* Reset */
-
-    /* Position 0 in responses */
-    private static final int ANS_SARK_OK =			'O';
-    private static final int ANS_SARK_ERR =			'E';
-
-    /* Position 5 in CMD_SARK_MEAS_RX */
-    private static final int PAR_SARK_CAL =			1;	/* OSL calibrated val */
-    private static final int PAR_SARK_UNCAL =		2;	/* Raw val */
-
     /**
      * Raw detectors measurement output
      */
@@ -92,6 +71,17 @@ public abstract class DeviceIntf {
     boolean mConnected;
     private int mProtocolVer = 0;
     private byte[] mSarkVer = {' '};
+    private int mPipelineDepth = 1;
+    private volatile boolean mHalfTable;
+    private final ProtocolCodec mCodec = new ProtocolCodec();
+    private final float[] mDecoded = new float[4 * EXT_POINTS];
+
+    /* Command metrics; mSentAt is set by the transport through markSent() */
+    private final CommandMetrics mMetrics = new CommandMetrics();
+    private volatile boolean mMetricsEnabled = true;
+    private long mSentAt;
+    private int mRetries = 0;
+    private volatile long mConnectStart;    /* Pending time to first measurement; 0 if none */
 
     /**
      * Constructors
@@ -117,6 +107,290 @@ public abstract class DeviceIntf {
     abstract void close();
     abstract boolean IsAvailable();
 
+    /*
+     * Split transport used by the pipelined mode. Transports supporting several commands
+     * in flight override these together with getMaxPipelineDepth().
+     */
+    int Send(byte snd[]) {
+        return -1;
+    }
+    int Rcv(byte rcv[]) {
+        return -1;
+    }
+    void Purge() {
+    }
+    int getMaxPipelineDepth() {
+        return 1;
+    }
+
+    /**
+     * Sets the number of commands kept in flight by SendRcvPipelined().
+     * The default 1 is stop-and-wait; values above 1 require firmware support for queued
+     * commands, so callers opt in only for a firmware known to handle them.
+     *
+     * @param depth number of outstanding commands; limited to the transport maximum
+     */
+    public void setPipelineDepth(int depth) {
+        mPipelineDepth = Math.max(1, Math.min(depth, getMaxPipelineDepth()));
+    }
+    public int getPipelineDepth() {
+        return mPipelineDepth;
+    }
+
+    /**
+     * Selects the half-float decoder used by MeasureCmdExt() and toFloat(). The lookup table
+     * (256 KB, built on first use) avoids the per-value branches; the values are identical.
+     *
+     * @param enable true to use the lookup table
+     */
+    public void setHalfFloatTable(boolean enable) {
+        mHalfTable = enable;
+    }
+    public boolean isHalfFloatTable() {
+        return mHalfTable;
+    }
+
+    /**
+     * Gets the per-command latency histograms and counters
+     *
+     * @return metrics; updated while commands run
+     */
+    public CommandMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Enables recording of the command metrics; enabled by default
+     *
+     * @param enable false to skip the time stamps
+     */
+    public void setMetricsEnabled(boolean enable) {
+        mMetricsEnabled = enable;
+    }
+    public boolean isMetricsEnabled() {
+        return mMetricsEnabled;
+    }
+
+    /**
+     * Sets how many times a command is sent again after a transport failure (no reply in time).
+     * Error replies are not retried.
+     *
+     * @param retries number of retries; 0 to fail on the first timeout
+     */
+    public void setRetries(int retries) {
+        mRetries = Math.max(0, retries);
+    }
+    public int getRetries() {
+        return mRetries;
+    }
+
+    /**
+     * Called by transports once the command is sent and before waiting for the reply, so the
+     * metrics can tell send from wait time. Transports not calling it report all as wait time.
+     */
+    void markSent() {
+        if (mMetricsEnabled)
+            mSentAt = System.nanoTime();
+    }
+
+    /**
+     * Called by transports when a connection attempt starts; the time to the first measurement
+     * reply is recorded in the metrics. Repeated calls before that measurement are ignored.
+     */
+    void connectStarted() {
+        if (mConnectStart == 0) {
+            mConnectStart = System.nanoTime();
+            mMetrics.firstMeasurement(-1);
+        }
+    }
+
+    /* Records the time to first measurement if one is pending */
+    private void measured(int cmd, long now) {
+        long start = mConnectStart;
+        if (start != 0 && (cmd == CMD_SARK_MEAS_RX || cmd == CMD_SARK_MEAS_RX_EXT)) {
+            mConnectStart = 0;
+            mMetrics.firstMeasurement(now - start);
+        }
+    }
+
+    /* Pipelined commands handling */
+    interface PipelineClient {
+        /**
+         * Builds the command to be sent.
+         *
+         * @param index command index
+         * @param snd   zeroed command buffer
+         */
+        void onSend(int index, byte snd[]);
+
+        /**
+         * Processes one reply; replies arrive in the same order as the commands were sent.
+         *
+         * @param index command index
+         * @param rcv   reply buffer
+         * @param status transport status
+         * @return true to continue; false to stop
+         */
+        boolean onReceive(int index, byte rcv[], int status);
+    }
+
+    /**
+     * Sends count commands keeping up to getPipelineDepth() of them in flight.
+     * Falls back to stop-and-wait SendRcv() if the depth is 1.
+     *
+     * @param count     number of commands
+     * @param client    builds the commands and processes the replies
+     * @return number of replies processed; <0 transport error
+     */
+    synchronized int SendRcvPipelined(int count, PipelineClient client) {
+        byte snd[] = mCodec.mSnd;
+        byte rcv[] = mCodec.mRcv;
+        int depth = mPipelineDepth;
+        int sent = 0;
+        int received = 0;
+
+        if (depth <= 1) {
+            for (; received < count; received++) {
+                mCodec.begin(0);
+                client.onSend(received, snd);
+                int cmd = snd[0];
+                int status = Transact(snd, rcv);
+                if (status < 0)
+                    return -1;
+                countError(cmd, rcv);
+                long t = now();
+                boolean more = client.onReceive(received, rcv, status);
+                recordSince(cmd, PHASE_DECODE, t);
+                if (!more)
+                    return received + 1;
+            }
+            return received;
+        }
+
+        /* Replies carry no command code; they are accounted to the last command sent */
+        int cmd = 0;
+        while (received < count) {
+            while (sent < count && sent - received < depth) {
+                mCodec.begin(0);
+                client.onSend(sent, snd);
+                cmd = snd[0];
+                long t = now();
+                int status = Send(snd);
+                if (mMetricsEnabled) {
+                    mMetrics.count(cmd, COUNT_COMMANDS);
+                    recordSince(cmd, PHASE_SEND, t);
+                }
+                if (status < 0) {
+                    drainPipeline(rcv, sent - received);
+                    return -1;
+                }
+                sent++;
+            }
+            long t = now();
+            int status = Rcv(rcv);
+            if (t != 0) {
+                long end = System.nanoTime();
+                mMetrics.record(cmd, PHASE_WAIT, end - t);
+                if (status >= 0) {
+                    mMetrics.completed(end);
+                    measured(cmd, end);
+                }
+            }
+            if (status < 0) {
+                if (mMetricsEnabled)
+                    mMetrics.count(cmd, COUNT_TIMEOUTS);
+                Purge();
+                return -1;
+            }
+            received++;
+            countError(cmd, rcv);
+            t = now();
+            boolean more = client.onReceive(received - 1, rcv, status);
+            recordSince(cmd, PHASE_DECODE, t);
+            if (!more) {
+                drainPipeline(rcv, sent - received);
+                break;
+            }
+        }
+        return received;
+    }
+
+    /* Discards the replies of the commands still in flight */
+    private void drainPipeline(byte rcv[], int pending) {
+        for (int i = 0; i < pending; i++) {
+            if (Rcv(rcv) < 0) {
+                Purge();
+                return;
+            }
+        }
+    }
+
+    /*
+     * Sends one command through SendRcv(), retrying transport failures, and records its
+     * send, wait and total times. Does not look at the reply.
+     */
+    private int Transact(byte snd[], byte rcv[]) {
+        int cmd = snd[0];
+        boolean metrics = mMetricsEnabled;
+        long t0 = metrics ? System.nanoTime() : 0;
+        long start = t0;
+        int status;
+        if (metrics)
+            mMetrics.count(cmd, COUNT_COMMANDS);
+        for (int attempt = 0; ; attempt++) {
+            mSentAt = 0;
+            status = SendRcv(snd, rcv);
+            if (metrics) {
+                long end = System.nanoTime();
+                long sentAt = mSentAt != 0 ? mSentAt : start;
+                mMetrics.record(cmd, PHASE_SEND, sentAt - start);
+                mMetrics.record(cmd, PHASE_WAIT, end - sentAt);
+                start = end;
+                if (status < 0)
+                    mMetrics.count(cmd, COUNT_TIMEOUTS);
+            }
+            if (status >= 0 || attempt >= mRetries || !mConnected)
+                break;
+            Purge();
+            if (metrics)
+                mMetrics.count(cmd, COUNT_RETRIES);
+        }
+        if (metrics) {
+            mMetrics.record(cmd, PHASE_TOTAL, start - t0);
+            if (status >= 0) {
+                mMetrics.completed(start);
+                measured(cmd, start);
+            }
+        }
+        return status;
+    }
+
+    /* Transact() and the reply check shared by the command methods */
+    private int Command(byte snd[], byte rcv[]) {
+        int cmd = snd[0];
+        int status = Transact(snd, rcv);
+        if (status >= 0)
+            countError(cmd, rcv);
+        if (!isOk(rcv))
+            status = -1;
+        return status;
+    }
+
+    private void countError(int cmd, byte rcv[]) {
+        if (rcv[0] == ANS_SARK_ERR && mMetricsEnabled)
+            mMetrics.count(cmd, COUNT_ERRORS);
+    }
+
+    /* Time stamp for recordSince(); 0 if the metrics are disabled */
+    private long now() {
+        return mMetricsEnabled ? System.nanoTime() : 0;
+    }
+
+    private void recordSince(int cmd, int phase, long t) {
+        if (t != 0)
+            mMetrics.record(cmd, phase, System.nanoTime() - t);
+    }
+
     /* Listener handling */
     DeviceIntfListener mListener;
 
@@ -138,17 +412,13 @@ public abstract class DeviceIntf {
      *
      * @return <0 error; otherwise ok
      */
-    public int VersionCmd () {
+    public synchronized int VersionCmd () {
         int status;
 
-        byte snd[] = new byte[COMMAND_LEN];
-        byte rcv[] = new byte[COMMAND_LEN];
-        snd[0] = CMD_SARK_VERSION;
-        status = SendRcv(snd, rcv);
-        if (rcv[0] != ANS_SARK_OK)
-            status = -1;
+        byte rcv[] = mCodec.mRcv;
+        status = Command(mCodec.begin(CMD_SARK_VERSION), rcv);
         if (status > 0) {
-            mProtocolVer = Buf2Short(rcv, 1);
+            mProtocolVer = getShort(rcv, 1);
             mSarkVer = new byte[COMMAND_LEN];
             System.arraycopy(rcv, 3, mSarkVer, 0, COMMAND_LEN - 3);
         }
@@ -179,17 +449,12 @@ public abstract class DeviceIntf {
      * @param duration  duration in ms
      * @return <0 error; otherwise ok
      */
-    public int BeepCmd(int freq, int duration) {
+    public synchronized int BeepCmd(int freq, int duration) {
         int status;
 
-        byte snd[] = new byte[COMMAND_LEN];
-        byte rcv[] = new byte[COMMAND_LEN];
-        snd[0] = CMD_BUZZER;
-        System.arraycopy(Short2Buf(freq), 0, snd,1, 2);
-        System.arraycopy(Short2Buf(duration), 0, snd,3, 2);
-        status = SendRcv(snd, rcv);
-        if (rcv[0] != ANS_SARK_OK)
-            status = -1;
+        byte snd[] = mCodec.begin(CMD_BUZZER);
+        encodeBeep(snd, freq, duration);
+        status = Command(snd, mCodec.mRcv);
         return status;
     }
 
@@ -203,34 +468,41 @@ public abstract class DeviceIntf {
     }
 
     /**
-     * Takes one measurement sample at the specified frequency
+     * Takes one measurement sample at the specified frequency without allocating.
      *
      * @param freq      frequency in Hz; use 0 to turn-off the generator
      * @param samples   number of samples for averaging
-     * @return  data; or null if error
+     * @param out       receives Rs, Xs
+     * @param offset    position in out
+     * @return <0 error; otherwise ok
      */
-    public MeasureDataBin MeasureCmd(int freq, byte samples) {
+    public synchronized int MeasureCmd(int freq, byte samples, float out[], int offset) {
         int status;
 
-        byte snd[] = new byte[COMMAND_LEN];
-        byte rcv[] = new byte[COMMAND_LEN];
-
-        snd[0] = CMD_SARK_MEAS_RX;
-        System.arraycopy( Int2Buf (freq), 0, snd, 1, 4 );
-        snd[5] = PAR_SARK_CAL;
-        snd[6] = samples;
-        status = SendRcv(snd, rcv);
-        if (rcv[0] != ANS_SARK_OK)
-            status = -1;
+        byte snd[] = mCodec.begin(CMD_SARK_MEAS_RX);
+        encodeMeasure(snd, freq, samples);
+        status = Command(snd, mCodec.mRcv);
         if (status >= 0) {
-            float Rs = Buf2Float(rcv, 1);
-            float Xs = Buf2Float(rcv, 5);
+            long t = now();
+            decodeMeasure(mCodec.mRcv, out, offset);
+            recordSince(CMD_SARK_MEAS_RX, PHASE_DECODE, t);
             // Future 2-port model:
-            // float S21R = Buf2Float(rcv, 9);
-            // float S21X = Buf2Float(rcv, 13);
-
-            return new MeasureDataBin(0, freq, Rs, Xs);
+            // float S21R = getFloat(rcv, 9);
+            // float S21X = getFloat(rcv, 13);
         }
+        return status;
+    }
+
+    /**
+     * Takes one measurement sample at the specified frequency
+     *
+     * @param freq      frequency in Hz; use 0 to turn-off the generator
+     * @param samples   number of samples for averaging
+     * @return  data; or null if error
+     */
+    public synchronized MeasureDataBin MeasureCmd(int freq, byte samples) {
+        if (MeasureCmd(freq, samples, mDecoded, 0) >= 0)
+            return new MeasureDataBin(0, freq, mDecoded[0], mDecoded[1]);
         else
             return null;
     }
@@ -245,64 +517,46 @@ public abstract class DeviceIntf {
     }
 
     /**
-     * Takes measurement samples at four frequencies for fastest sweep speed.
+     * Takes measurement samples at four frequencies without allocating.
      * Precision is a bit compromised because the use of half-float
      *
      * @param freq      initial frequency in Hz; use 0 to turn-off the generator
      * @param step      step frequency in Hz
      * @param samples   number of samples for averaging
-     * @return data (four); or null if error
+     * @param out       receives four Rs, Xs pairs
+     * @param offset    position in out
+     * @return <0 error; otherwise ok
      */
-    public MeasureDataBin[] MeasureCmdExt(int freq, int step, byte samples) {
+    public synchronized int MeasureCmdExt(int freq, int step, byte samples, float out[], int offset) {
         int status;
-        byte snd[] = new byte[COMMAND_LEN];
-        byte rcv[] = new byte[COMMAND_LEN];
-
-        snd[0] = CMD_SARK_MEAS_RX_EXT;
-        System.arraycopy( Int2Buf (freq), 0, snd, 1, 4 );
-        snd[5] = PAR_SARK_CAL;
-        snd[6] = samples;
-        System.arraycopy( Int2Buf (step), 0, snd, 7, 4 );
-        status = SendRcv(snd, rcv);
-        if (rcv[0] != ANS_SARK_OK)
-            status = -1;
+
+        byte snd[] = mCodec.begin(CMD_SARK_MEAS_RX_EXT);
+        encodeMeasureExt(snd, freq, step, samples);
+        status = Command(snd, mCodec.mRcv);
         if (status >= 0) {
-            int offset = 1;
-            int iRs, iXs;
-            float fRs, fXs;
-            MeasureDataBin[] data = new MeasureDataBin[4];
-
-            iRs = Buf2Short(rcv, offset);
-            fRs = toFloat(iRs);
-            iXs = Buf2Short(rcv, offset+2);
-            fXs = toFloat(iXs);
-            data[0] = new MeasureDataBin(0, freq, fRs, fXs);
-            offset += 4;
-
-            iRs = Buf2Short(rcv, offset);
-            fRs = toFloat(iRs);
-            iXs = Buf2Short(rcv, offset+2);
-            fXs = toFloat(iXs);
-            data[1] = new MeasureDataBin(0, freq+(1*step), fRs, fXs);
-            offset += 4;
-
-            iRs = Buf2Short(rcv, offset);
-            fRs = toFloat(iRs);
-            iXs = Buf2Short(rcv, offset+2);
-            fXs = toFloat(iXs);
-            data[2] = new MeasureDataBin(0, freq+(2*step), fRs, fXs);
-            offset += 4;
-
-            iRs = Buf2Short(rcv, offset);
-            fRs = toFloat(iRs);
-            iXs = Buf2Short(rcv, offset+2);
-            fXs = toFloat(iXs);
-            data[3] = new MeasureDataBin(0, freq+(3*step), fRs, fXs);
-
-            return data;
+            long t = now();
+            decodeMeasureExt(mCodec.mRcv, out, offset, mHalfTable);
+            recordSince(CMD_SARK_MEAS_RX_EXT, PHASE_DECODE, t);
         }
-        else
+        return status;
+    }
+
+    /**
+     * Takes measurement samples at four frequencies for fastest sweep speed.
+     * Precision is a bit compromised because the use of half-float
+     *
+     * @param freq      initial frequency in Hz; use 0 to turn-off the generator
+     * @param step      step frequency in Hz
+     * @param samples   number of samples for averaging
+     * @return data (four); or null if error
+     */
+    public synchronized MeasureDataBin[] MeasureCmdExt(int freq, int step, byte samples) {
+        if (MeasureCmdExt(freq, step, samples, mDecoded, 0) < 0)
             return null;
+        MeasureDataBin[] data = new MeasureDataBin[EXT_POINTS];
+        for (int i = 0; i < EXT_POINTS; i++)
+            data[i] = new MeasureDataBin(0, freq+(i*step), mDecoded[2*i], mDecoded[2*i+1]);
+        return data;
     }
     /**
      * Takes measurement samples at four frequencies for fastest sweep speed.
@@ -324,19 +578,12 @@ public abstract class DeviceIntf {
      * @param gain  gain multiplier
      * @return <0 error; otherwise ok
      */
-    public int SignalGenCmd(int freq, int level, byte gain) {
+    public synchronized int SignalGenCmd(int freq, int level, byte gain) {
         int status;
 
-        byte snd[] = new byte[COMMAND_LEN];
-        byte rcv[] = new byte[COMMAND_LEN];
-
-        snd[0] = CMD_SARK_SIGNAL_GEN;
-        System.arraycopy( Int2Buf (freq), 0, snd, 1, 4 );
-        System.arraycopy(Short2Buf(level), 0, snd,5, 2);
-        snd[7] = gain;
-        status = SendRcv(snd, rcv);
-        if (rcv[0] != ANS_SARK_OK)
-            status = -1;
+        byte snd[] = mCodec.begin(CMD_SARK_SIGNAL_GEN);
+        encodeSignalGen(snd, freq, level, gain);
+        status = Command(snd, mCodec.mRcv);
         return status;
     }
 
@@ -345,15 +592,10 @@ public abstract class DeviceIntf {
      *
      * @return <0 error; otherwise ok
      */
-    public int ResetCmd() {
+    public synchronized int ResetCmd() {
         int status;
 
-        byte snd[] = new byte[COMMAND_LEN];
-        byte rcv[] = new byte[COMMAND_LEN];
-        snd[0] = CMD_DEV_RST;
-        status = SendRcv(snd, rcv);
-        if (rcv[0] != ANS_SARK_OK)
-            status = -1;
+        status = Command(mCodec.begin(CMD_DEV_RST), mCodec.mRcv);
         return status;
     }
 
@@ -364,25 +606,7 @@ public abstract class DeviceIntf {
      * @return detectors data; or null if error
      */
     public MeasureDetector MeasDetectorCmd(int freq) {
-        int status;
-
-        byte snd[] = new byte[COMMAND_LEN];
-        byte rcv[] = new byte[COMMAND_LEN];
-
-        snd[0] = CMD_SARK_MEAS_VECTOR;
-        System.arraycopy( Int2Buf (freq), 0, snd, 1, 4 );
-        status = SendRcv(snd, rcv);
-        if (rcv[0] != ANS_SARK_OK)
-            status = -1;
-        if (status >= 0) {
-            float magV = Buf2Float(rcv, 1);
-            float phV = Buf2Float(rcv, 5);
-            float magI = Buf2Float(rcv, 9);
-            float phI = Buf2Float(rcv, 13);
-            return new MeasureDetector(freq, magV, phV, magI, phI);
-        }
-        else
-            return null;
+        return DetectorCmd(CMD_SARK_MEAS_VECTOR, freq);
     }
 
     /**
@@ -392,103 +616,60 @@ public abstract class DeviceIntf {
      * @return detectors data; or null if error
      */
     public MeasureDetector MeasRfCmd (int freq) {
-        int status;
-
-        byte snd[] = new byte[COMMAND_LEN];
-        byte rcv[] = new byte[COMMAND_LEN];
+        return DetectorCmd(CMD_SARK_MEAS_RF, freq);
+    }
 
-        snd[0] = CMD_SARK_MEAS_RF;
-        System.arraycopy( Int2Buf (freq), 0, snd, 1, 4 );
-        status = SendRcv(snd, rcv);
-        if (rcv[0] != ANS_SARK_OK)
-            status = -1;
-        if (status >= 0) {
-            float magV = Buf2Float(rcv, 1);
-            float phV = Buf2Float(rcv, 5);
-            float magI = Buf2Float(rcv, 9);
-            float phI = Buf2Float(rcv, 13);
-            return new MeasureDetector(freq, magV, phV, magI, phI);
-        }
-        else
-            return null;
+    /**
+     * Gets the codec owning this device frame buffers
+     *
+     * @return codec
+     */
+    ProtocolCodec getCodec() {
+        return mCodec;
     }
 
     /*
      * private methods
      */
-    private byte[] Int2Buf(int val) {
-        byte[] buf = new byte[4];
-
-        buf[3] = (byte)((val&0xff000000)>>24);
-        buf[2] = (byte)((val&0x00ff0000)>>16);
-        buf[1] = (byte)((val&0x0000ff00)>>8);
-        buf[0] = (byte)((val&0x000000ff)>>0);
-
-        return buf;
-    }
-
-    private byte[] Short2Buf(int val) {
-        byte[] buf = new byte[2];
-
-        buf[1] = (byte)((val&0x0000ff00)>>8);
-        buf[0] = (byte)((val&0x000000ff)>>0);
-
-        return buf;
-    }
-
-    private int Buf2Short (byte buf[], int n) {
-        long val;
-        byte[] bufShort = new byte[2];
-
-        System.arraycopy(buf, n, bufShort, 0, 2);
-        val = (bufShort[1] << 8) & 0xff00L;
-        val += ((bufShort[0] << 0) & 0xffL);
-
-        return (int)val;
-    }
+    private synchronized MeasureDetector DetectorCmd(int cmd, int freq) {
+        int status;
 
-    private float Buf2Float (byte buf[], int n) {
-        byte[] bufFloat = new byte[4];
-        System.arraycopy(buf, n, bufFloat, 0, 4);
-        return ByteBuffer.wrap(bufFloat).order(ByteOrder.LITTLE_ENDIAN).getFloat();
+        byte snd[] = mCodec.begin(cmd);
+        encodeFreq(snd, cmd, freq);
+        status = Command(snd, mCodec.mRcv);
+        if (status >= 0) {
+            long t = now();
+            decodeDetector(mCodec.mRcv, mDecoded);
+            recordSince(cmd, PHASE_DECODE, t);
+            return new MeasureDetector(freq, mDecoded[0], mDecoded[1], mDecoded[2], mDecoded[3]);
+        }
+        else
+            return null;
     }
 
     /*
      * "Half-float" conversion function
      */
-    private static final int FP16_SIGN_MASK         = 0x8000;
-    private static final int FP16_EXPONENT_MASK     = 0x1f;
-    private static final int FP16_EXPONENT_SHIFT    = 10;
-    private static final int FP16_SIGNIFICAND_MASK  = 0x3ff;
-    private static final int FP32_DENORMAL_MAGIC = 126 << 23;
-    private static final float FP32_DENORMAL_FLOAT = Float.intBitsToFloat(FP32_DENORMAL_MAGIC);
-    private static final int FP16_EXPONENT_BIAS     = 15;
-    private static final int FP32_EXPONENT_BIAS     = 127;
-    private static final int FP32_EXPONENT_SHIFT    = 23;
-
     public  float toFloat(int h) {
-        int bits = h & 0xffff;
-        int s = bits & FP16_SIGN_MASK;
-        int e = (bits >>> FP16_EXPONENT_SHIFT) & FP16_EXPONENT_MASK;
-        int m = (bits) & FP16_SIGNIFICAND_MASK;
-        int outE = 0;
-        int outM = 0;
-        if (e == 0) { // Denormal or 0
-            if (m != 0) {
-                // Convert denorm fp16 into normalized fp32
-                float o = Float.intBitsToFloat(FP32_DENORMAL_MAGIC + m);
-                o -= FP32_DENORMAL_FLOAT;
-                return s == 0 ? o : -o;
-            }
-        } else {
-            outM = m << 13;
-            if (e == 0x1f) { // Infinite or NaN
-                outE = 0xff;
-            } else {
-                outE = e - FP16_EXPONENT_BIAS + FP32_EXPONENT_BIAS;
-            }
+        return mHalfTable ? halfToFloatTable(h) : halfToFloat(h);
+    }
+
+    /**
+     * Decodes consecutive little-endian half-floats, e.g. all the Rs, Xs pairs of a
+     * CMD_SARK_MEAS_RX_EXT response (count 8 from position 1)
+     *
+     * @param buf       source buffer
+     * @param n         position in buf
+     * @param out       receives the floats
+     * @param offset    position in out
+     * @param count     number of half-floats
+     */
+    public void toFloat(byte buf[], int n, float out[], int offset, int count) {
+        if (mHalfTable) {
+            decodeHalves(buf, n, out, offset, count);
+            return;
         }
-        int out = (s << 16) | (outE << FP32_EXPONENT_SHIFT) | outM;
-        return Float.intBitsToFloat(out);
+        for (int i = 0; i < count; i++)
+            out[offset + i] = halfToFloat(getShort(buf, n + 2 * i));
     }
 }
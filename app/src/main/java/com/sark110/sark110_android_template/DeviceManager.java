@@ -0,0 +1,364 @@
+package com.sark110.sark110_android_template;
+
+import android.content.Context;
+import android.hardware.usb.UsbDevice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+public class DeviceManager {
+    static final int MAX_BLOCK_POINTS = 64;    /* Largest share of a split sweep taken at once */
+    static final int BLOCKS_PER_DEVICE = 4;    /* Shares per device, so faster devices take more */
+
+    private final List<DeviceExecutor> mExecutors = new CopyOnWriteArrayList<>();
+    private final Executor mCallbackExecutor;   /* null: main thread */
+    private volatile SplitSweep mSweep;
+
+    /**
+     * Receives a split sweep as it is merged: in frequency order, each point once.
+     * Called on the device I/O threads, one call at a time.
+     */
+    public interface SweepListener {
+        /**
+         * @param result    merged sweep being filled
+         * @param index     index of the first new point
+         * @param count     number of new points
+         */
+        void onSweepChunk(SweepResult result, int index, int count);
+    }
+
+    /**
+     * Creates an empty manager; callbacks are posted to the main thread
+     */
+    public DeviceManager() {
+        this(null);
+    }
+
+    /**
+     * Creates an empty manager
+     *
+     * @param callbackExecutor runs the callbacks of the device executors
+     */
+    DeviceManager(Executor callbackExecutor) {
+        mCallbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Opens every analyzer: each one attached by USB and each SARK110 bonded by Bluetooth LE.
+     * The preferred kind comes first, so device 0 is one of them. If none of that kind is
+     * found, device 0 is an interface of that kind that connects to the first analyzer to
+     * appear, as a single DeviceIntf does. Must be called from the main thread.
+     *
+     * @param context           activity
+     * @param preferBluetooth   true for Bluetooth LE first, false for USB first
+     * @return number of devices opened
+     */
+    public int openAll(Context context, boolean preferBluetooth) {
+        List<DeviceIntf> usb = new ArrayList<>();
+        for (UsbDevice device : USBIntf.findDevices(context))
+            usb.add(new USBIntf(context, device));
+        List<DeviceIntf> ble = new ArrayList<>();
+        for (String address : BluetoothLEIntf.bondedAddresses())
+            ble.add(new BluetoothLEIntf(context, address));
+
+        List<DeviceIntf> devices = new ArrayList<>();
+        if (preferBluetooth) {
+            if (ble.isEmpty())
+                devices.add(new BluetoothLEIntf(context));
+            devices.addAll(ble);
+            devices.addAll(usb);
+        } else {
+            if (usb.isEmpty())
+                devices.add(new USBIntf(context));
+            devices.addAll(usb);
+            devices.addAll(ble);
+        }
+        for (DeviceIntf devIntf : devices) {
+            devIntf.onCreate();
+            add(devIntf);
+        }
+        return devices.size();
+    }
+
+    /**
+     * Adds an open device with its own I/O thread
+     *
+     * @param devIntf device interface; its commands should then go through the executor
+     * @return device executor
+     */
+    public DeviceExecutor add(DeviceIntf devIntf) {
+        DeviceExecutor executor = mCallbackExecutor == null
+                ? new DeviceExecutor(devIntf) : new DeviceExecutor(devIntf, mCallbackExecutor);
+        mExecutors.add(executor);
+        return executor;
+    }
+
+    public int size() {
+        return mExecutors.size();
+    }
+
+    public DeviceIntf getDevice(int index) {
+        return mExecutors.get(index).getDeviceIntf();
+    }
+
+    public DeviceExecutor getExecutor(int index) {
+        return mExecutors.get(index);
+    }
+
+    /**
+     * Gets the devices connected now
+     *
+     * @return executors of the connected devices, in the order added
+     */
+    public List<DeviceExecutor> getConnected() {
+        List<DeviceExecutor> connected = new ArrayList<>();
+        for (DeviceExecutor executor : mExecutors)
+            if (executor.getDeviceIntf().isConnected())
+                connected.add(executor);
+        return connected;
+    }
+
+    /**
+     * Stops the I/O threads after their pending commands and closes the devices
+     */
+    public void closeAll() {
+        cancel();
+        for (DeviceExecutor executor : mExecutors) {
+            executor.shutdown();
+            executor.getDeviceIntf().close();
+        }
+        mExecutors.clear();
+    }
+
+    /**
+     * Runs an independent sweep on one device; sweeps on different devices run concurrently
+     *
+     * @param index     device index
+     * @param start     start frequency in Hz
+     * @param stop      stop frequency in Hz
+     * @param points    number of points
+     * @param samples   number of samples for averaging
+     * @param callback  receives the sweep, or null if it failed; may be null
+     * @return pending sweep
+     */
+    public Future<SweepResult> Sweep(int index, final int start, final int stop, final int points,
+                                     final byte samples, DeviceExecutor.Callback<SweepResult> callback) {
+        final DeviceExecutor executor = mExecutors.get(index);
+        return executor.submit(new Callable<SweepResult>() {
+            @Override
+            public SweepResult call() {
+                return new SweepEngine(executor.getDeviceIntf()).Sweep(start, stop, points, samples, null);
+            }
+        }, callback);
+    }
+
+    /**
+     * Sweeps the start..stop range split across all the connected devices, on their I/O threads.
+     * Each device takes blocks of points as it finishes the previous one, so the devices stay
+     * busy whatever their speed, and blocks a device fails are measured by the others. The
+     * points are those of a single device sweep: same step, same frequencies.
+     * Blocks the caller until the sweep ends; not for the main thread.
+     *
+     * @param start     start frequency in Hz
+     * @param stop      stop frequency in Hz
+     * @param points    number of points
+     * @param samples   number of samples for averaging
+     * @param listener  receives the merged points in order; may be null
+     * @return sweep data; or null if no device is connected, all failed or cancelled
+     */
+    public SweepResult Sweep(int start, int stop, int points, byte samples, SweepListener listener) {
+        List<DeviceExecutor> devices = getConnected();
+        if (points < 1 || devices.isEmpty() || start < GblDefs.MIN_FREQ || stop > GblDefs.MAX_FREQ
+                || stop < start || stop - start < points - 1)
+            return null;
+        int step = (points > 1) ? (stop - start) / (points - 1) : 0;
+        int block = (points + devices.size() * BLOCKS_PER_DEVICE - 1) / (devices.size() * BLOCKS_PER_DEVICE);
+        block = Math.max(ProtocolCodec.EXT_POINTS, Math.min(MAX_BLOCK_POINTS,
+                (block + ProtocolCodec.EXT_POINTS - 1) / ProtocolCodec.EXT_POINTS * ProtocolCodec.EXT_POINTS));
+        SplitSweep sweep = new SplitSweep(start, step, points, block, samples, listener);
+        mSweep = sweep;
+
+        try {
+            /* Rounds until all the blocks are measured; a round drops the devices that failed */
+            while (!devices.isEmpty()) {
+                List<Future<Integer>> futures = new ArrayList<>();
+                for (DeviceExecutor executor : devices)
+                    futures.add(executor.submit(sweep.worker(executor.getDeviceIntf()), null));
+                List<DeviceExecutor> working = new ArrayList<>();
+                for (int i = 0; i < futures.size(); i++) {
+                    try {
+                        if (futures.get(i).get() >= 0)
+                            working.add(devices.get(i));
+                    } catch (ExecutionException e) {
+                        // Device dropped; its block was requeued
+                    }
+                }
+                if (sweep.mCancelled)
+                    return null;
+                if (sweep.isComplete())
+                    return sweep.mResult;
+                devices = working;
+            }
+            return null;
+        } catch (InterruptedException e) {
+            sweep.cancel();
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            mSweep = null;
+        }
+    }
+
+    /**
+     * Aborts a running split sweep; Sweep() returns after the commands in progress.
+     */
+    public void cancel() {
+        SplitSweep sweep = mSweep;
+        if (sweep != null)
+            sweep.cancel();
+    }
+
+    /*
+     * One split sweep: blocks of points handed out to the device threads and merged in place
+     */
+    private static class SplitSweep {
+        final int mStart;
+        final int mStep;
+        final int mPoints;
+        final int mBlock;
+        final int mBlocks;
+        final byte mSamples;
+        final SweepListener mListener;
+        final SweepResult mResult;
+
+        final AtomicInteger mNext = new AtomicInteger();
+        final ConcurrentLinkedQueue<Integer> mRetry = new ConcurrentLinkedQueue<>();
+        final List<SweepEngine> mEngines = new CopyOnWriteArrayList<>();
+        volatile boolean mCancelled;
+
+        /* Merge state; guarded by mResult */
+        final boolean mMerged[];
+        int mFrontier;              /* Blocks delivered to the listener */
+
+        SplitSweep(int start, int step, int points, int block, byte samples, SweepListener listener) {
+            mStart = start;
+            mStep = step;
+            mPoints = points;
+            mBlock = block;
+            mBlocks = Math.max(1, points / block);     /* The last one takes the remainder */
+            mSamples = samples;
+            mListener = listener;
+            mResult = new SweepResult(points);
+            mMerged = new boolean[mBlocks];
+        }
+
+        void cancel() {
+            mCancelled = true;
+            for (SweepEngine engine : mEngines)
+                engine.cancel();
+        }
+
+        boolean isComplete() {
+            synchronized (mResult) {
+                return mFrontier == mBlocks;
+            }
+        }
+
+        /* Next block to measure; failed ones first. -1 if none left */
+        int takeBlock() {
+            Integer retry = mRetry.poll();
+            if (retry != null)
+                return retry;
+            int block = mNext.getAndIncrement();
+            return block < mBlocks ? block : -1;
+        }
+
+        /* Measures blocks on one device until none is left; <0 if the device failed */
+        Callable<Integer> worker(final DeviceIntf devIntf) {
+            return new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    SweepEngine engine = new SweepEngine(devIntf);
+                    mEngines.add(engine);
+                    if (mCancelled)
+                        engine.cancel();
+                    SweepResult part = new SweepResult(mBlock);
+                    int measured = 0;
+                    int block = -1;
+                    try {
+                        while (!mCancelled && (block = takeBlock()) >= 0) {
+                            int first = block * mBlock;
+                            int count = (block == mBlocks - 1) ? mPoints - first : mBlock;
+                            if (count != part.capacity())
+                                part = new SweepResult(count);
+                            int freq = mStart + first * mStep;
+                            if (engine.Sweep(freq, freq + (count - 1) * mStep, mSamples, part, null) < 0) {
+                                mRetry.add(block);      // Left to the other devices
+                                return -1;
+                            }
+                            merge(block, part);
+                            measured++;
+                        }
+                    } catch (RuntimeException e) {
+                        if (block >= 0)
+                            mRetry.add(block);
+                        throw e;
+                    } finally {
+                        mEngines.remove(engine);
+                    }
+                    return measured;
+                }
+            };
+        }
+
+        /* Copies a block into the result and passes on the points now contiguous from the start */
+        void merge(int block, SweepResult part) {
+            synchronized (mResult) {
+                int first = block * mBlock;
+                for (int i = 0; i < part.size(); i++)
+                    mResult.set(first + i, part.getFreq(i), part.getRs(i), part.getXs(i));
+                mMerged[block] = true;
+                int from = mFrontier;
+                while (mFrontier < mBlocks && mMerged[mFrontier])
+                    mFrontier++;
+                if (mListener != null && mFrontier > from) {
+                    int index = from * mBlock;
+                    int end = (mFrontier == mBlocks) ? mPoints : mFrontier * mBlock;
+                    mListener.onSweepChunk(mResult, index, end - index);
+                }
+            }
+        }
+    }
+}
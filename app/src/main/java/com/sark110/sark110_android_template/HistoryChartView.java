@@ -0,0 +1,177 @@
+package com.sark110.sark110_android_template;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+public class HistoryChartView extends View {
+    /* Traces: R and X */
+    private static final int TRACES = 2;
+    private static final int TRACE_SERIES[] = {TimeSeriesStore.SERIES_RS, TimeSeriesStore.SERIES_XS};
+
+    private static final int TRACE_COLORS[] = {0xFF2E7D32, 0xFFC62828};   /* As SweepChartView */
+    private static final int GRID_COLOR = 0xFFD0D0D0;
+    private static final int GRID_X = 12;           /* Divisions */
+    private static final int GRID_Y = 8;
+    private static final float PADDING = 8;         /* dp */
+    private static final float LINE_WIDTH = 1.5f;   /* dp */
+    private static final long MAX_SPAN = 24 * 3600000L;   /* ms shown at most */
+
+    /* Main thread only */
+    private TimeSeriesStore mStore;
+    private float mLo = -250;
+    private float mHi = 250;
+    private float mLeft, mTop, mRight, mBottom;
+    private int mColumns;
+    private long mTime[] = new long[0];             /* Downsampled points; one per pixel column at most */
+    private float mValue[] = new float[0];
+    private float mLines[] = new float[0];
+    private final Paint mTracePaint[] = new Paint[TRACES];
+    private final Paint mGridPaint = new Paint();
+    private final float mGrid[] = new float[(GRID_X + 1 + GRID_Y + 1) * 4];
+
+    public HistoryChartView(Context context) {
+        super(context);
+        init();
+    }
+
+    public HistoryChartView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public HistoryChartView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    private void init() {
+        float density = getResources().getDisplayMetrics().density;
+        for (int i = 0; i < TRACES; i++) {
+            mTracePaint[i] = new Paint(Paint.ANTI_ALIAS_FLAG);
+            mTracePaint[i].setColor(TRACE_COLORS[i]);
+            mTracePaint[i].setStyle(Paint.Style.STROKE);
+            mTracePaint[i].setStrokeWidth(LINE_WIDTH * density);
+        }
+        mGridPaint.setColor(GRID_COLOR);
+        mGridPaint.setStyle(Paint.Style.STROKE);
+    }
+
+    /**
+     * Sets the store plotted; call invalidate() to show what it recorded since
+     *
+     * @param store measurements over time; may be null
+     */
+    public void setStore(TimeSeriesStore store) {
+        mStore = store;
+        invalidate();
+    }
+
+    /**
+     * Sets the values shown at the bottom and top of the chart, in ohms
+     *
+     * @param lo    value at the bottom
+     * @param hi    value at the top; greater than lo
+     */
+    public void setRange(float lo, float hi) {
+        mLo = lo;
+        mHi = hi;
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        float pad = PADDING * getResources().getDisplayMetrics().density;
+        mLeft = getPaddingLeft() + pad;
+        mTop = getPaddingTop() + pad;
+        mRight = w - getPaddingRight() - pad;
+        mBottom = h - getPaddingBottom() - pad;
+        /* One point per pixel column: the cost of a frame does not depend on the time shown */
+        mColumns = Math.max(0, (int) (mRight - mLeft) + 1);
+        mTime = new long[mColumns];
+        mValue = new float[mColumns];
+        mLines = new float[Math.max(0, mColumns - 1) * 4];
+        int p = 0;
+        for (int i = 0; i <= GRID_X; i++) {
+            float x = mLeft + (mRight - mLeft) * i / GRID_X;
+            mGrid[p++] = x;
+            mGrid[p++] = mTop;
+            mGrid[p++] = x;
+            mGrid[p++] = mBottom;
+        }
+        for (int i = 0; i <= GRID_Y; i++) {
+            float y = mTop + (mBottom - mTop) * i / GRID_Y;
+            mGrid[p++] = mLeft;
+            mGrid[p++] = y;
+            mGrid[p++] = mRight;
+            mGrid[p++] = y;
+        }
+    }
+
+    /*
+     * The time axis runs from the oldest data held, at most MAX_SPAN ago, to now. Each trace
+     * is downsampled by the store to the pixel columns and drawn with one drawLines() call.
+     */
+    @Override
+    protected void onDraw(Canvas canvas) {
+        canvas.drawLines(mGrid, mGridPaint);
+        TimeSeriesStore store = mStore;
+        if (store == null || mColumns < 2)
+            return;
+        long to = System.currentTimeMillis();
+        long first = store.getFirstTime();
+        if (first < 0 || first >= to)
+            return;
+        long from = Math.max(first, to - MAX_SPAN);
+        float xScale = (mRight - mLeft) / (to - from);
+        float yScale = (mBottom - mTop) / (mHi - mLo);
+        for (int i = 0; i < TRACES; i++) {
+            int n = store.downsample(TRACE_SERIES[i], from, to, mColumns, mTime, mValue);
+            int p = 0;
+            float x0 = 0, y0 = 0;
+            for (int j = 0; j < n; j++) {
+                float x = mLeft + Math.max(0, mTime[j] - from) * xScale;
+                float v = Math.max(mLo, Math.min(mHi, mValue[j]));
+                float y = mBottom - (v - mLo) * yScale;
+                if (j > 0) {
+                    mLines[p++] = x0;
+                    mLines[p++] = y0;
+                    mLines[p++] = x;
+                    mLines[p++] = y;
+                }
+                x0 = x;
+                y0 = y;
+            }
+            if (p > 0)
+                canvas.drawLines(mLines, 0, p, mTracePaint[i]);
+        }
+    }
+}
@@ -6,6 +6,7 @@ import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
 import android.widget.TextView;
 import android.content.Intent;
 import android.content.SharedPreferences;
@@ -16,6 +17,11 @@ import android.content.pm.PackageManager;
 
 import com.alexzaitsev.meternumberpicker.MeterView;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
 /**
  * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
  *
@@ -49,6 +55,71 @@ public class MainActivity extends AppCompatActivity {
     private int mLastFreq;
     private boolean mFirstTimeConnect = false;
     private boolean mBlePermission = false;
+    private DeviceExecutor mDevExecutor;
+    private DeviceManager mDevManager;  // All the analyzers; the readout shows the first one
+    private Handler mHandler;
+    private Runnable mPoll;             // Posted while the activity is in the foreground
+    private MeasurementStream mStream;  // Continuous measurement at the picker frequency
+    private SessionLog mSessionLog;     // Null if disabled in the settings or not opened
+    private TimeSeriesStore mHistory;   // Picker frequency over time for mHistoryChart; fixed memory
+    private int mHistoryFreq;           // I/O thread only
+    private SweepChartView mChart;
+    private SmithChartView mSmith;      // Shown instead of mChart from the menu
+    private HistoryChartView mHistoryChart; // Shown instead of both from the menu
+    private boolean mShowSmith;
+    private boolean mShowHistory;
+    private SweepEngine mSweepEngine;
+    private SweepResult mSweepResult;   // Reused by every chart sweep
+    private boolean mSweepPending;
+    // Readout; each TextView keeps a reference to its formatter's chars, so one formatter each
+    private TextView mTextSwr;
+    private TextView mTextZ;
+    private TextView mTextSeries;
+    private final ReadoutFormatter mSwrChars = new ReadoutFormatter(32);
+    private final ReadoutFormatter mZChars = new ReadoutFormatter(32);
+    private final ReadoutFormatter mSeriesChars = new ReadoutFormatter(32);
+
+    private static final int POLL_INTERVAL = 200;   // ms
+    private static final float DISPLAY_RATE = 5;    // Readout updates per second
+    private static final float LOG_RATE = 10;       // Session log records per second
+    private static final int SWEEP_SPAN = 2000000;  // Chart span around the picker frequency, Hz
+    private static final int SWEEP_POINTS = 401;
+    private static final int HISTORY_RAW = 65536;   // Newest frames at full rate
+    private static final int HISTORY_SECONDS = 3600;
+    private static final int HISTORY_MINUTES = 1500; // 24 h and a partial minute
+    private static final int HISTORY_HOURS = 720;
+    private static final long RECONNECT_MIN = 1000;   // ms before retrying a secondary device
+    private static final long RECONNECT_MAX = 60000;  // ms; the delay doubles up to this
+
+    /*
+     * Reconnects a secondary device after it disconnects, with a growing delay; a USB device
+     * also reconnects by itself when attached again
+     */
+    private class Reconnector implements DeviceIntf.DeviceIntfListener, Runnable {
+        private final DeviceIntf mDevice;
+        private volatile long mDelay = RECONNECT_MIN;
+
+        Reconnector(DeviceIntf device) {
+            mDevice = device;
+        }
+
+        @Override
+        public void onConnectionStateChanged(DeviceIntf deviceIntf, boolean isConnected) {
+            mHandler.removeCallbacks(this);
+            if (isConnected) {
+                mDelay = RECONNECT_MIN;
+            } else {
+                mHandler.postDelayed(this, mDelay);
+                mDelay = Math.min(2 * mDelay, RECONNECT_MAX);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (!isDestroyed() && !mDevice.isConnected())   // closeAll() may still fire events
+                mDevice.connect();
+        }
+    }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -77,16 +148,28 @@ public class MainActivity extends AppCompatActivity {
         /* Get stored preferences */
         prefs = PreferenceManager.getDefaultSharedPreferences(getBaseContext());
         mIsBluetooth = prefs.getBoolean("pref_Bluetooth", false);
-        mDevIntf = new BluetoothLEIntf(this);     // Create instance: Bluetooth option (future device with LE support)
-        if (mIsBluetooth)
-            mDevIntf = new BluetoothLEIntf(this);
-        else
-            mDevIntf = new USBIntf(this);
+        boolean logSession = prefs.getBoolean("pref_SessionLog", false);
+        // Opens every analyzer attached (USB) and bonded (Bluetooth), each with its own I/O thread;
+        // device 0, shown in the readout, is of the kind chosen in the settings
+        mDevManager = new DeviceManager();
+        mDevManager.openAll(this, mIsBluetooth);
+        mDevIntf = mDevManager.getDevice(0);
+        mDevExecutor = mDevManager.getExecutor(0);
+        mTextSwr = findViewById(R.id.swr_val);
+        mTextZ = findViewById(R.id.impedance_val);
+        mTextSeries = findViewById(R.id.series_val);
         TextView textConn = findViewById(R.id.connect_stat);
         if (!mDevIntf.IsAvailable())
             textConn.setText("Not Available");
 
-        mDevIntf.onCreate();
+        // Opt-in: the log grows with every launch while enabled
+        if (logSession) {
+            try {
+                mSessionLog = new SessionLog(new File(getFilesDir(), "session.log"));
+            } catch (IOException e) {
+                mSessionLog = null;
+            }
+        }
 		// Setup listener for connection events from the device
         mDevIntf.setDeviceIntfListener(new DeviceIntf.DeviceIntfListener() {
             @Override
@@ -106,9 +189,67 @@ public class MainActivity extends AppCompatActivity {
         });
 
         // Create the Handler object (on the main thread by default)
-        final Handler handler = new Handler();
-        // Define the code block to be executed
-        Runnable runnableCode = new Runnable() {
+        mHandler = new Handler();
+        for (int i = 1; i < mDevManager.size(); i++)
+            mDevManager.getDevice(i).setDeviceIntfListener(new Reconnector(mDevManager.getDevice(i)));
+
+        // Measurements stream from the I/O thread as fast as the device answers. The readout
+        // and the log take the latest at their own rate; the log on the I/O thread since
+        // append() never blocks.
+        mStream = new MeasurementStream(mDevExecutor);
+        mStream.setFrequency(mLastFreq);
+        mStream.subscribe(new MeasurementStream.FrameListener() {
+            @Override
+            public void onFrame(MeasurementStream.Frame frame) {
+                showMeasurement(frame.getFreq(), frame.getRs(), frame.getXs());
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mHandler.post(command);
+            }
+        }, DISPLAY_RATE, MeasurementStream.LATEST_ONLY, 1);
+        if (mSessionLog != null) {
+            mStream.subscribe(new MeasurementStream.FrameListener() {
+                @Override
+                public void onFrame(MeasurementStream.Frame frame) {
+                    mSessionLog.append(frame.getFreq(), frame.getRs(), frame.getXs(), frame.getSamples(),
+                            (int) (frame.getRtt() / 1000));
+                }
+            }, null, LOG_RATE, MeasurementStream.LATEST_ONLY, 1);
+        }
+        // Every frame goes into the history rollups; a new frequency starts a new history
+        mHistory = new TimeSeriesStore(HISTORY_RAW, HISTORY_SECONDS, HISTORY_MINUTES, HISTORY_HOURS);
+        mStream.subscribe(new MeasurementStream.FrameListener() {
+            @Override
+            public void onFrame(MeasurementStream.Frame frame) {
+                if (frame.getFreq() != mHistoryFreq) {
+                    mHistoryFreq = frame.getFreq();
+                    mHistory.clear();
+                }
+                mHistory.record(System.currentTimeMillis(), frame.getRs(), frame.getXs());
+            }
+        }, null, 0, MeasurementStream.LATEST_ONLY, 1);
+        // The charts plot each sweep chunk as the I/O thread receives it
+        mChart = findViewById(R.id.sweep_chart);
+        mSmith = findViewById(R.id.smith_chart);
+        mHistoryChart = findViewById(R.id.history_chart);
+        mHistoryChart.setStore(mHistory);
+        mSweepEngine = new SweepEngine(mDevIntf);
+        mSweepResult = new SweepResult(SWEEP_POINTS);
+        final SweepEngine.SweepListener chartListener = new SweepEngine.SweepListener() {
+            @Override
+            public void onSweepChunk(SweepEngine engine, SweepResult result, int index, int count) {
+                mChart.addPoints(result, index, count);
+                mSmith.addPoints(result, index, count);
+            }
+
+            @Override
+            public void onSweepDone(SweepEngine engine, int points) {
+            }
+        };
+        // Define the code block to be executed; started in onResume()
+        mPoll = new Runnable() {
             @Override
             public void run() {
                 int freq = mFreqPicker.getValue();
@@ -126,40 +267,63 @@ public class MainActivity extends AppCompatActivity {
                     }
                     mLastFreq = freq;
                 }
-                if (!mDevIntf.isConnected())
+                mStream.setFrequency(mLastFreq);
+                if (!mDevIntf.isConnected()) {
                     mDevIntf.connect();
-                else {
+                } else {
+                    // Device commands run on the I/O thread; results come back on this thread
                     if (mFirstTimeConnect)
                     {
-                        TextView textVer = findViewById(R.id.status);
-                        mDevIntf.VersionCmd();  // Dummy command (sometimes the first fails)
-                        mDevIntf.BeepCmd();     // Beeps the SARK-110 buzzer
-                        mDevIntf.VersionCmd();  // Gets the SARK-110 version: use getSarkVer() and getProtocolVer()
-                        textVer.setText("Version: " + new String(mDevIntf.getSarkVer()) + " Protocol: " + String.valueOf(mDevIntf.getProtocolVer()));
                         mFirstTimeConnect = false;
+                        mDevExecutor.submit(new Callable<Integer>() {
+                            @Override
+                            public Integer call() {
+                                mDevIntf.VersionCmd();  // Dummy command (sometimes the first fails)
+                                mDevIntf.BeepCmd();     // Beeps the SARK-110 buzzer
+                                return mDevIntf.VersionCmd();  // Gets the SARK-110 version: use getSarkVer() and getProtocolVer()
+                            }
+                        }, new DeviceExecutor.Callback<Integer>() {
+                            @Override
+                            public void onResult(Integer status) {
+                                TextView textVer = findViewById(R.id.status);
+                                textVer.setText("Version: " + new String(mDevIntf.getSarkVer()) + " Protocol: " + String.valueOf(mDevIntf.getProtocolVer()));
+                            }
+                        });
                     }
-                    MeasureDataBin bin = mDevIntf.MeasureCmd(freq);
-                    TextView textSWR = findViewById(R.id.swr_val);
-                    TextView textZ = findViewById(R.id.impedance_val);
-                    if (bin != null) {
-                        textSWR.setText("VSWR: " + String.format("%.2f", bin.getVswr()));
-                        float xs = bin.getXs();
-                        if (xs < 0)
-                            textZ.setText("Z: " + String.format("%.2f", bin.getRs()) + " -j" + String.format("%.2f", Math.abs(xs)));
-                        else
-                            textZ.setText("Z: " + String.format("%.2f", bin.getRs()) + " +j" + String.format("%.2f", Math.abs(xs)));
-                    } else {
-                        textSWR.setText("VSWR: ");
-                        textZ.setText("Z: ");
+                    // Runs between the stream batches; stops by itself on disconnection
+                    if (!mStream.isRunning())
+                        mStream.start();
+                    // Sweeps around the picker frequency for the chart, one after another
+                    if (!mSweepPending) {
+                        mSweepPending = true;
+                        final int start = Math.max(GblDefs.MIN_FREQ, mLastFreq - SWEEP_SPAN / 2);
+                        final int stop = Math.min(GblDefs.MAX_FREQ, start + SWEEP_SPAN);
+                        mDevExecutor.submit(new Callable<Integer>() {
+                            @Override
+                            public Integer call() {
+                                return mSweepEngine.Sweep(start, stop, (byte) 0, mSweepResult, chartListener);
+                            }
+                        }, new DeviceExecutor.Callback<Integer>() {
+                            @Override
+                            public void onResult(Integer status) {
+                                mSweepPending = false;
+                            }
+                        }, new DeviceExecutor.ErrorCallback() {
+                            @Override
+                            public void onError(Exception e) {
+                                mSweepPending = false;  // Next sweep on the next poll
+                            }
+                        });
                     }
                 }
-                // Repeat this the same runnable code block again another 1 second
+                // The history chart is downsampled from the store on each redraw
+                if (mShowHistory)
+                    mHistoryChart.invalidate();
+                // Repeat this the same runnable code block again after POLL_INTERVAL
                 // 'this' is referencing the Runnable object
-                handler.postDelayed(this, 1000);
+                mHandler.postDelayed(this, POLL_INTERVAL);
             }
         };
-        // Start the initial runnable task by posting through the handler
-        handler.post(runnableCode);
     }
 
     @Override
@@ -167,7 +331,24 @@ public class MainActivity extends AppCompatActivity {
         super.onResume();
 
         /* SARK110 */
-        mDevIntf.onResume();
+        for (int i = 0; i < mDevManager.size(); i++)
+            mDevManager.getDevice(i).onResume();
+        // The poll restarts the stream and the chart sweeps
+        mHandler.removeCallbacks(mPoll);
+        mHandler.post(mPoll);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+
+        /* SARK110 */
+        // Nothing measures in the background. Only the poll is removed: the stream consumers
+        // post their own drains to mHandler and expect them to run.
+        mHandler.removeCallbacks(mPoll);
+        mStream.stop();
+        if (mSweepPending)
+            mSweepEngine.cancel();
     }
 
     @Override
@@ -175,7 +356,35 @@ public class MainActivity extends AppCompatActivity {
         super.onDestroy();
 
         /* SARK110 */
-        mDevIntf.close();
+        mHandler.removeCallbacksAndMessages(null);
+        mStream.stop();
+        mSweepEngine.cancel();
+        mDevManager.closeAll();
+        if (mSessionLog != null) {
+            try {
+                mSessionLog.close();
+            } catch (IOException e) {
+                // Records already flushed are kept
+            }
+        }
+    }
+
+    // Formats straight into char arrays: no Formatter, String or MeasureDataBin per update
+    private void showMeasurement(int freq, float rs, float xs) {
+        float vswr = MeasureMath.vswr(MeasureMath.mod(MeasureMath.rhoRe(rs, xs, 50.0),
+                MeasureMath.rhoIm(rs, xs, 50.0)));
+        mSwrChars.clear().append("VSWR: ").appendFixed(vswr, 2);
+        mTextSwr.setText(mSwrChars.getChars(), 0, mSwrChars.length());
+        mZChars.clear().append("Z: ").appendImpedance(rs, xs, 2);
+        mTextZ.setText(mZChars.getChars(), 0, mZChars.length());
+        // Series equivalent: MeasureMath gives uH and pF
+        mSeriesChars.clear();
+        if (xs < 0)
+            mSeriesChars.append("Cs: ").appendEng(MeasureMath.capacitance(xs, freq) * 1e-12, 4, "F");
+        else
+            mSeriesChars.append("Ls: ").appendEng(MeasureMath.inductance(xs, freq) * 1e-6, 4, "H");
+        mSeriesChars.append(" @ ").appendEng(freq, 6, "Hz");
+        mTextSeries.setText(mSeriesChars.getChars(), 0, mSeriesChars.length());
     }
 
     @Override
@@ -198,10 +407,33 @@ public class MainActivity extends AppCompatActivity {
             startActivity(settingIntent);
             return true;
         }
+        if (id == R.id.action_metrics) {
+            MetricsActivity.show(this, mDevExecutor);
+            return true;
+        }
+        if (id == R.id.action_smith) {
+            mShowSmith = !item.isChecked();
+            item.setChecked(mShowSmith);
+            showCharts();
+            return true;
+        }
+        if (id == R.id.action_history) {
+            mShowHistory = !item.isChecked();
+            item.setChecked(mShowHistory);
+            showCharts();
+            return true;
+        }
 
         return super.onOptionsItemSelected(item);
     }
 
+    // One chart at a time: the history, else the Smith chart, else the sweep chart
+    private void showCharts() {
+        mHistoryChart.setVisibility(mShowHistory ? View.VISIBLE : View.GONE);
+        mSmith.setVisibility(!mShowHistory && mShowSmith ? View.VISIBLE : View.GONE);
+        mChart.setVisibility(!mShowHistory && !mShowSmith ? View.VISIBLE : View.GONE);
+    }
+
     @Override
     public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
         switch (requestCode) {
@@ -30,12 +30,22 @@ public class MeasureDataBin {
 	private long mId;
 	private int mFreq;
 	private ComplexNumber mZs;
+	private double mZ0 = 50.0;
+
+	/* Reflection coefficient; computed on first use and invalidated by setZs() and set_RefImp() */
+	private boolean mRhoValid;
+	private double mRhoRe;
+	private double mRhoIm;
+	private double mRhoMag;
 
 	public void set_RefImp(float r0) {
-		this.m_z0 = new ComplexNumber(r0, 0);
+		this.mZ0 = r0;
+		mRhoValid = false;
 	}
 
-	private ComplexNumber m_z0 = new ComplexNumber(50.0, 0);
+	public float get_RefImp() {
+		return (float) mZ0;
+	}
 
 	public MeasureDataBin(){}
 
@@ -62,6 +72,7 @@ public class MeasureDataBin {
 
 	public void setZs(float Rs, float Xs) {
 		mZs = new ComplexNumber(Rs, Xs);
+		mRhoValid = false;
 	}
 
 	public ComplexNumber getZs() {
@@ -74,69 +85,50 @@ public class MeasureDataBin {
 		return (float) mZs.getIm();
 	}
 	public float getZsMag() {
-		return (float) mZs.mod();
+		return (float) MeasureMath.mod(mZs.getRe(), mZs.getIm());
 	}
-	public float getZsAngle() { return (float)((mZs.getArg()/Math.PI) * 180.0);}
+	public float getZsAngle() { return MeasureMath.angle(mZs.getRe(), mZs.getIm());}
 	public float getVswr(){
-		return Z2Vswr (mZs, m_z0);
+		return MeasureMath.vswr(rhoMag());
 	}
 	public float getRL() {
-		ComplexNumber cxRho = Z2Rho(mZs, m_z0);
-		if (cxRho.mod() == 0)
-			return -99.999f;
-		else
-			return (float)(20f * Math.log10(cxRho.mod()));
+		return MeasureMath.returnLoss(rhoMag());
 	}
 	public float getCL() {
-		ComplexNumber cxRho = Z2Rho(mZs, m_z0);
-		if (cxRho.mod() == 0)
-			return 99.999f;
-		else
-			return (float)(Math.abs(20f / (2f * Math.log10(cxRho.mod()))));
+		return MeasureMath.cableLoss(rhoMag());
 	}
 	public float getRhMag() {
-		ComplexNumber cxRho = Z2Rho(mZs, m_z0);
-		return (float)cxRho.mod();
+		return (float)rhoMag();
 	}
 	public float getRhAngle() {
-		ComplexNumber cxRho = Z2Rho(mZs, m_z0);
-		return (float)((cxRho.getArg()/Math.PI) * 180.0);
+		updateRho();
+		return MeasureMath.angle(mRhoRe, mRhoIm);
 	}
 	public float getRefPwr() {
-		ComplexNumber cxRho = Z2Rho(mZs, m_z0);
-		return (float)(cxRho.mod() * cxRho.mod() * 100.0);
+		return MeasureMath.refPwr(rhoMag());
 	}
 	public float getQ() {
-		if (mZs.getRe() == 0)
-			return 999.99f;
-		return (float)(Math.abs(mZs.getIm()/ mZs.getRe()));
-	}
-	public float getCs() { return (float) calcC(mZs, mFreq); }
-	public float getLs() { return (float) calcL(mZs, mFreq); }
-
-	/* Conversion functions */
-	private ComplexNumber Z2Rho(ComplexNumber cxZ, ComplexNumber cxZ0)
-	{
-		return ComplexNumber.divide(ComplexNumber.subtract(cxZ, cxZ0), ComplexNumber.add(cxZ, cxZ0));
-	}
-
-	private float Z2Vswr (ComplexNumber cxZ, ComplexNumber cxZ0)
-	{
-		ComplexNumber cxRho = Z2Rho(cxZ, cxZ0);
-		if (cxRho.mod() > 0.980197824)
-			return 99.999f;
-		return (1.0f + (float)cxRho.mod()) / (1.0f - (float)cxRho.mod());
+		return MeasureMath.q(mZs.getRe(), mZs.getIm());
 	}
+	public float getCs() { return (float) MeasureMath.capacitance(mZs.getIm(), mFreq); }
+	public float getLs() { return (float) MeasureMath.inductance(mZs.getIm(), mFreq); }
 
-	private double calcL(ComplexNumber cxZ, int freq)
+	/* Reflection coefficient cache */
+	private double rhoMag()
 	{
-		return cxZ.getIm() / (2.0 * Math.PI * ((double)freq / 1000000.0));
+		updateRho();
+		return mRhoMag;
 	}
 
-	private double calcC(ComplexNumber cxZ, int freq)
+	private void updateRho()
 	{
-		if (cxZ.getIm() == 0)
-			return -99999.99;
-		return -1000000.0 / (cxZ.getIm() * 2.0 * Math.PI * ((double)freq / 1000000.0));
+		if (mRhoValid)
+			return;
+		double r = mZs.getRe();
+		double x = mZs.getIm();
+		mRhoRe = MeasureMath.rhoRe(r, x, mZ0);
+		mRhoIm = MeasureMath.rhoIm(r, x, mZ0);
+		mRhoMag = MeasureMath.mod(mRhoRe, mRhoIm);
+		mRhoValid = true;
 	}
 }
@@ -0,0 +1,116 @@
+package com.sark110.sark110_android_template;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+final class MeasureMath {
+	static final double VSWR_RHO_LIMIT = 0.980197824;	/* |rho| above which the VSWR is clamped */
+	static final float VSWR_MAX = 99.999f;
+
+	private MeasureMath() {}
+
+	/*
+	 * Reflection coefficient rho = (Z - Z0) / (Z + Z0) for a real Z0.
+	 * Operations are written as ComplexNumber performs them so the results are bit-exact
+	 * with the ComplexNumber based formulas.
+	 */
+	static double rhoRe(double r, double x, double z0)
+	{
+		double ar = r - z0, ai = x - 0.0;
+		double br = r + z0, bi = x + 0.0;
+		return (ar * br - ai * (-bi)) / div(br, bi);
+	}
+
+	static double rhoIm(double r, double x, double z0)
+	{
+		double ar = r - z0, ai = x - 0.0;
+		double br = r + z0, bi = x + 0.0;
+		return (ar * (-bi) + ai * br) / div(br, bi);
+	}
+
+	private static double div(double br, double bi)
+	{
+		return Math.pow(mod(br, bi), 2);
+	}
+
+	static double mod(double re, double im)
+	{
+		return Math.sqrt(Math.pow(re, 2) + Math.pow(im, 2));
+	}
+
+	static float angle(double re, double im)
+	{
+		return (float)((Math.atan2(im, re) / Math.PI) * 180.0);
+	}
+
+	/* Metrics derived from |rho| */
+	static float vswr(double rhoMag)
+	{
+		if (rhoMag > VSWR_RHO_LIMIT)
+			return VSWR_MAX;
+		return (1.0f + (float)rhoMag) / (1.0f - (float)rhoMag);
+	}
+
+	static float returnLoss(double rhoMag)
+	{
+		if (rhoMag == 0)
+			return -99.999f;
+		else
+			return (float)(20f * Math.log10(rhoMag));
+	}
+
+	static float cableLoss(double rhoMag)
+	{
+		if (rhoMag == 0)
+			return 99.999f;
+		else
+			return (float)(Math.abs(20f / (2f * Math.log10(rhoMag))));
+	}
+
+	static float refPwr(double rhoMag)
+	{
+		return (float)(rhoMag * rhoMag * 100.0);
+	}
+
+	/* Metrics derived from the series impedance */
+	static float q(double r, double x)
+	{
+		if (r == 0)
+			return 999.99f;
+		return (float)(Math.abs(x / r));
+	}
+
+	static double inductance(double x, int freq)
+	{
+		return x / (2.0 * Math.PI * ((double)freq / 1000000.0));
+	}
+
+	static double capacitance(double x, int freq)
+	{
+		if (x == 0)
+			return -99999.99;
+		return -1000000.0 / (x * 2.0 * Math.PI * ((double)freq / 1000000.0));
+	}
+}
@@ -0,0 +1,439 @@
+package com.sark110.sark110_android_template;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+public class MeasurementStream {
+    /* Subscription policies for frames the consumer has not taken yet */
+    public static final int DROP_OLDEST = 0;    /* Keep the newest frames; a full buffer loses its oldest */
+    public static final int LATEST_ONLY = 1;    /* Keep only the newest frame */
+    public static final int BUFFER = 2;         /* Keep every frame; a full buffer loses the new ones */
+
+    static final int BATCH = 16;                /* Frames per I/O thread task; other commands run in between */
+    static final long RATE_WINDOW = 1000000000L;    /* ns over which the frame rate is averaged */
+
+    private final DeviceExecutor mExecutor;
+    private final CopyOnWriteArrayList<Subscription> mSubscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean mRunning;
+    private boolean mActive;                /* A batch is queued or running; guarded by this */
+    private volatile int mFreq = GblDefs.DEF_FREQ_START;
+    private volatile byte mSamples;
+
+    /* Producer state; I/O thread only */
+    private final Frame mFrame = new Frame();
+    private final float mDecoded[] = new float[2];
+    private final long mSentAt[] = new long[BATCH];
+    private int mBatchFreq;
+    private byte mBatchSamples;
+    private long mSeq;
+    private long mRateStart;
+    private long mRateFrames;
+
+    private volatile long mFrames;
+    private volatile long mErrors;
+    private volatile float mFrameRate;
+
+    /**
+     * One measurement. Listeners get a reused instance; copy the values to keep them.
+     */
+    public static class Frame {
+        long mSeq;
+        long mTime;
+        long mRtt;
+        int mFreq;
+        byte mSamples;
+        float mRs;
+        float mXs;
+
+        /** Sequence number from the start of the stream; gaps are frames dropped for this consumer */
+        public long getSeq() {
+            return mSeq;
+        }
+        /** System.nanoTime() at reception */
+        public long getTime() {
+            return mTime;
+        }
+        /** Command round trip in ns, pipelining included */
+        public long getRtt() {
+            return mRtt;
+        }
+        public int getFreq() {
+            return mFreq;
+        }
+        /** Samples per measurement as sent in the command */
+        public int getSamples() {
+            return mSamples & 0xff;
+        }
+        public float getRs() {
+            return mRs;
+        }
+        public float getXs() {
+            return mXs;
+        }
+
+        void copyFrom(Frame f) {
+            mSeq = f.mSeq;
+            mTime = f.mTime;
+            mRtt = f.mRtt;
+            mFreq = f.mFreq;
+            mSamples = f.mSamples;
+            mRs = f.mRs;
+            mXs = f.mXs;
+        }
+    }
+
+    /**
+     * Receives the frames of a subscription on its executor, in order
+     */
+    public interface FrameListener {
+        void onFrame(Frame frame);
+    }
+
+    /**
+     * One consumer: a preallocated frame buffer filled by the producer and drained on the
+     * consumer executor, at most at the consumer rate. The producer never waits for it.
+     */
+    public static class Subscription {
+        private final FrameListener mListener;
+        private final Executor mExecutor;       /* null: the producer thread */
+        private final long mInterval;           /* Minimum ns between deliveries */
+        private final int mPolicy;
+        private final Frame mBuf[];
+        private final Frame mOut = new Frame(); /* Consumer side */
+
+        /* Guarded by this */
+        private long mHead;
+        private long mTail;
+        private long mLastDrain;
+        private boolean mScheduled;
+        private boolean mFlush;                 /* Stream stopped during a drain: drain everything */
+        private long mDropped;
+        private volatile long mDelivered;
+
+        private final Runnable mDrain = new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+
+        Subscription(FrameListener listener, Executor executor, float maxRate, int policy, int capacity) {
+            mListener = listener;
+            mExecutor = executor;
+            mInterval = maxRate > 0 ? (long) (1e9 / maxRate) : 0;
+            mPolicy = policy;
+            mLastDrain = Long.MIN_VALUE / 2;    /* The first frame is due at once */
+            mBuf = new Frame[policy == LATEST_ONLY ? 1 : Math.max(1, capacity)];
+            for (int i = 0; i < mBuf.length; i++)
+                mBuf[i] = new Frame();
+        }
+
+        /* Producer side: stores the frame by the policy and schedules a drain if one is due */
+        void offer(Frame f, long now, boolean flush) {
+            boolean schedule = false;
+            synchronized (this) {
+                if (f != null) {
+                    if (mTail - mHead == mBuf.length) {
+                        mDropped++;
+                        if (mPolicy == BUFFER)
+                            f = null;
+                        else
+                            mHead++;
+                    }
+                    if (f != null)
+                        mBuf[(int) (mTail++ % mBuf.length)].copyFrom(f);
+                }
+                if (flush && mScheduled)
+                    mFlush = true;
+                if (!mScheduled && mTail > mHead && (flush || now - mLastDrain >= mInterval)) {
+                    mScheduled = true;
+                    mLastDrain = now;
+                    schedule = true;
+                }
+            }
+            if (!schedule)
+                return;
+            if (mExecutor == null) {
+                drain();
+                return;
+            }
+            try {
+                mExecutor.execute(mDrain);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    mScheduled = false;
+                }
+            }
+        }
+
+        /* Consumer side: delivers the frames buffered now; later ones wait for the next drain */
+        private void drain() {
+            long end;
+            synchronized (this) {
+                end = mTail;
+            }
+            while (true) {
+                synchronized (this) {
+                    if (mHead >= end && mFlush) {
+                        mFlush = false;
+                        end = mTail;
+                    }
+                    if (mHead >= end) {
+                        mScheduled = false;
+                        return;
+                    }
+                    mOut.copyFrom(mBuf[(int) (mHead++ % mBuf.length)]);
+                }
+                mListener.onFrame(mOut);
+                mDelivered++;
+            }
+        }
+
+        /**
+         * Gets the number of frames lost because this consumer was behind
+         *
+         * @return number of frames
+         */
+        public synchronized long getDropped() {
+            return mDropped;
+        }
+
+        public long getDelivered() {
+            return mDelivered;
+        }
+    }
+
+    /**
+     * Continuous measurement at one frequency, as fast as the transport allows. The commands
+     * are pipelined on the device I/O thread in batches, so commands submitted to the same
+     * executor still run between batches.
+     *
+     * @param executor executor of the device to measure
+     */
+    public MeasurementStream(DeviceExecutor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Sets the frequency measured; applies from the next batch
+     *
+     * @param freq frequency in Hz
+     */
+    public void setFrequency(int freq) {
+        mFreq = freq;
+    }
+
+    public int getFrequency() {
+        return mFreq;
+    }
+
+    public void setSamples(byte samples) {
+        mSamples = samples;
+    }
+
+    public byte getSamples() {
+        return mSamples;
+    }
+
+    /**
+     * Adds a consumer
+     *
+     * @param listener  receives the frames
+     * @param executor  runs the listener; null to run it on the device I/O thread, which must
+     *                  then never block
+     * @param maxRate   most deliveries per second; each delivers all the frames buffered.
+     *                  0 for a delivery per frame
+     * @param policy    DROP_OLDEST, LATEST_ONLY or BUFFER
+     * @param capacity  frames buffered; ignored for LATEST_ONLY
+     * @return subscription
+     */
+    public Subscription subscribe(FrameListener listener, Executor executor, float maxRate, int policy,
+                                  int capacity) {
+        Subscription s = new Subscription(listener, executor, maxRate, policy, capacity);
+        mSubscriptions.add(s);
+        return s;
+    }
+
+    public void unsubscribe(Subscription s) {
+        mSubscriptions.remove(s);
+    }
+
+    /**
+     * Starts measuring; the stream stops by itself if the device disconnects
+     */
+    public void start() {
+        synchronized (this) {
+            if (mRunning)
+                return;
+            mRunning = true;
+            if (mActive)
+                return;             // Stopped but its last batch not run yet: that one carries on
+            mActive = true;
+        }
+        schedule();
+    }
+
+    /**
+     * Stops after the batch in progress and delivers the frames still buffered
+     */
+    public void stop() {
+        mRunning = false;
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * Gets the number of frames measured since the stream was created
+     *
+     * @return number of frames
+     */
+    public long getFrameCount() {
+        return mFrames;
+    }
+
+    /**
+     * Gets the number of failed batches
+     *
+     * @return number of batches
+     */
+    public long getErrorCount() {
+        return mErrors;
+    }
+
+    /**
+     * Gets the sustained frame rate over the last full window of about a second
+     *
+     * @return frames per second
+     */
+    public float getFrameRate() {
+        return mFrameRate;
+    }
+
+    private void schedule() {
+        try {
+            mExecutor.submit(mBatch, null);
+        } catch (RejectedExecutionException e) {
+            end();                  // Executor shut down
+            flush();
+        }
+    }
+
+    /* No batch follows */
+    private synchronized void end() {
+        mRunning = false;
+        mActive = false;
+    }
+
+    /* Whether to run another batch; a stopped stream ends here */
+    private synchronized boolean proceed(DeviceIntf devIntf) {
+        if (mRunning && devIntf.isConnected())
+            return true;
+        end();
+        return false;
+    }
+
+    private final Callable<Integer> mBatch = new Callable<Integer>() {
+        @Override
+        public Integer call() {
+            DeviceIntf devIntf = mExecutor.getDeviceIntf();
+            if (!proceed(devIntf)) {
+                flush();
+                return 0;
+            }
+            mBatchFreq = mFreq;
+            mBatchSamples = mSamples;
+            int status;
+            try {
+                status = devIntf.SendRcvPipelined(BATCH, mClient);
+            } catch (RuntimeException e) {
+                mErrors++;
+                end();              // Not rescheduled; start() can run it again
+                flush();
+                throw e;
+            }
+            if (status < 0)
+                mErrors++;
+            schedule();
+            return status;
+        }
+    };
+
+    private final DeviceIntf.PipelineClient mClient = new DeviceIntf.PipelineClient() {
+        @Override
+        public void onSend(int index, byte[] snd) {
+            ProtocolCodec.encodeMeasure(snd, mBatchFreq, mBatchSamples);
+            mSentAt[index] = System.nanoTime();
+        }
+
+        @Override
+        public boolean onReceive(int index, byte[] rcv, int status) {
+            if (!ProtocolCodec.isOk(rcv))
+                return mRunning;
+            long now = System.nanoTime();
+            ProtocolCodec.decodeMeasure(rcv, mDecoded, 0);
+            publish(now, now - mSentAt[index], mBatchFreq, mBatchSamples, mDecoded[0], mDecoded[1]);
+            return mRunning;
+        }
+    };
+
+    /* Hands one frame to every consumer; I/O thread only */
+    void publish(long now, long rtt, int freq, byte samples, float Rs, float Xs) {
+        Frame f = mFrame;
+        f.mSeq = mSeq++;
+        f.mTime = now;
+        f.mRtt = rtt;
+        f.mFreq = freq;
+        f.mSamples = samples;
+        f.mRs = Rs;
+        f.mXs = Xs;
+        for (Subscription s : mSubscriptions)
+            s.offer(f, now, false);
+        mFrames++;
+        if (mRateFrames == 0)
+            mRateStart = now;
+        mRateFrames++;
+        if (now - mRateStart >= RATE_WINDOW) {
+            mFrameRate = (mRateFrames - 1) * 1e9f / (now - mRateStart);
+            mRateStart = now;
+            mRateFrames = 1;
+        }
+    }
+
+    /* Delivers what rate limits held back */
+    private void flush() {
+        long now = System.nanoTime();
+        for (Subscription s : mSubscriptions)
+            s.offer(null, now, true);
+        mRateFrames = 0;
+        mFrameRate = 0;
+    }
+}
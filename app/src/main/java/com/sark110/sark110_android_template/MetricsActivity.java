@@ -0,0 +1,143 @@
+package com.sark110.sark110_android_template;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+public class MetricsActivity extends AppCompatActivity {
+    private static final int REFRESH_INTERVAL = 1000;   // ms
+
+    /*
+     * I/O thread of the device owned by MainActivity; set by show(). There is no service
+     * holding the device, so after the process is recreated this is null and the screen
+     * closes, back to MainActivity, which connects again.
+     */
+    private static DeviceExecutor sExecutor;
+    private CommandMetrics mMetrics;
+
+    private Handler mHandler;
+    private TextView mText;
+
+    /**
+     * Opens the command metrics screen
+     *
+     * @param context  calling activity
+     * @param executor I/O thread of the device whose metrics are shown
+     */
+    static void show(Context context, DeviceExecutor executor) {
+        sExecutor = executor;
+        context.startActivity(new Intent(context, MetricsActivity.class));
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (sExecutor == null) {
+            finish();
+            return;
+        }
+        mMetrics = sExecutor.getDeviceIntf().getMetrics();
+        setContentView(R.layout.activity_metrics);
+        mText = findViewById(R.id.metrics_text);
+        Button reset = findViewById(R.id.metrics_reset);
+        reset.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                reset();
+            }
+        });
+        mHandler = new Handler();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mRefresh.run();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mHandler.removeCallbacks(mRefresh);
+    }
+
+    private final Runnable mRefresh = new Runnable() {
+        @Override
+        public void run() {
+            refresh();
+            mHandler.postDelayed(this, REFRESH_INTERVAL);
+        }
+    };
+
+    /* The metrics have a single writer, the I/O thread, so they are cleared there too */
+    private void reset() {
+        final CommandMetrics metrics = mMetrics;
+        try {
+            sExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    metrics.reset();
+                    return null;
+                }
+            }, new DeviceExecutor.Callback<Void>() {
+                @Override
+                public void onResult(Void result) {
+                    refresh();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Device closed: nothing is recording
+            metrics.reset();
+            refresh();
+        }
+    }
+
+    private void refresh() {
+        List<CommandMetrics.Snapshot> snapshots = mMetrics.snapshot();
+        if (snapshots.isEmpty()) {
+            mText.setText("No commands sent");
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("Rate: ").append(Math.round(mMetrics.getCommandRate())).append(" commands/s\n");
+        long first = mMetrics.getTimeToFirstMeasurement();
+        sb.append("Time to first measurement: ").append(first < 0 ? "-" : (first / 1000000) + " ms").append("\n\n");
+        for (CommandMetrics.Snapshot s : snapshots)
+            sb.append(s).append("\n\n");
+        mText.setText(sb);
+    }
+}
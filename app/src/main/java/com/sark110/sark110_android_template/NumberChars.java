@@ -0,0 +1,194 @@
+package com.sark110.sark110_android_template;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+final class NumberChars {
+    static final int MAX_CHARS = 32;            /* Longest number any of the methods writes */
+
+    private static final long POW10[] = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L,
+            1000000000L, 10000000000L, 100000000000L, 1000000000000L, 10000000000000L,
+            100000000000000L, 1000000000000000L, 10000000000000000L, 100000000000000000L,
+            1000000000000000000L
+    };
+    static final int MAX_DIGITS = 17;           /* Largest number of decimals or significant digits */
+    private static final double FIXED_LIMITS[] = {1e-2, 1e-1, 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6};
+
+    private static final char NAN[] = "NaN".toCharArray();
+    private static final char INF[] = "Infinity".toCharArray();
+
+    private NumberChars() {}
+
+    /**
+     * Writes an integer
+     *
+     * @param buf   destination; needs MAX_CHARS free
+     * @param pos   position in buf
+     * @param v     value
+     * @return position after the last character
+     */
+    static int appendLong(char buf[], int pos, long v) {
+        if (v < 0) {
+            if (v == Long.MIN_VALUE) {
+                /* Cannot be negated; write the leading digit separately */
+                buf[pos++] = '-';
+                buf[pos++] = '9';
+                return appendDigits(buf, pos, 223372036854775808L, 18);
+            }
+            buf[pos++] = '-';
+            v = -v;
+        }
+        return appendDigits(buf, pos, v, digitCount(v));
+    }
+
+    /**
+     * Writes a number with a fixed number of decimals, as "%.nf" does. Values too large for the
+     * requested decimals are written in scientific notation.
+     *
+     * @param buf       destination; needs MAX_CHARS free
+     * @param pos       position in buf
+     * @param v         value
+     * @param decimals  number of decimals; 0..MAX_DIGITS
+     * @return position after the last character
+     */
+    static int appendFixed(char buf[], int pos, double v, int decimals) {
+        if (v != v || Double.isInfinite(v))
+            return appendSpecial(buf, pos, v);
+        double a = Math.abs(v);
+        double scaled = a * POW10[decimals];
+        if (scaled >= 1e17)
+            return appendSci(buf, pos, v, Math.min(MAX_DIGITS, decimals + 1));
+        long n = Math.round(scaled);
+        if (v < 0 && n != 0)
+            buf[pos++] = '-';
+        long ip = n / POW10[decimals];
+        pos = appendDigits(buf, pos, ip, digitCount(ip));
+        if (decimals > 0) {
+            buf[pos++] = '.';
+            pos = appendDigits(buf, pos, n - ip * POW10[decimals], decimals);
+        }
+        return pos;
+    }
+
+    /**
+     * Writes a number in scientific notation, as "%.(n-1)e" does: d.ddde+XX
+     *
+     * @param buf       destination; needs MAX_CHARS free
+     * @param pos       position in buf
+     * @param v         value
+     * @param digits    number of significant digits; 1..MAX_DIGITS
+     * @return position after the last character
+     */
+    static int appendSci(char buf[], int pos, double v, int digits) {
+        if (v != v || Double.isInfinite(v))
+            return appendSpecial(buf, pos, v);
+        if (v < 0 || (v == 0 && 1 / v < 0))
+            buf[pos++] = '-';
+        double a = Math.abs(v);
+        int exp = 0;
+        long n = 0;
+        if (a != 0) {
+            exp = (int) Math.floor(Math.log10(a));
+            n = Math.round(scale(a, digits - 1 - exp));
+            /* log10 may be off by one near powers of ten, and rounding may carry */
+            if (n >= POW10[digits]) {
+                exp++;
+                n = Math.round(scale(a, digits - 1 - exp));
+            } else if (n < POW10[digits - 1]) {
+                exp--;
+                n = Math.round(scale(a, digits - 1 - exp));
+            }
+            if (n >= POW10[digits]) {
+                n /= 10;
+                exp++;
+            }
+        }
+        long lead = n / POW10[digits - 1];
+        buf[pos++] = (char) ('0' + lead);
+        if (digits > 1) {
+            buf[pos++] = '.';
+            pos = appendDigits(buf, pos, n - lead * POW10[digits - 1], digits - 1);
+        }
+        buf[pos++] = 'e';
+        buf[pos++] = exp < 0 ? '-' : '+';
+        exp = Math.abs(exp);
+        return appendDigits(buf, pos, exp, Math.max(2, digitCount(exp)));
+    }
+
+    /**
+     * Writes a number with a number of significant digits, in fixed notation for magnitudes
+     * from 1e-3 to 1e7 and in scientific notation otherwise
+     *
+     * @param buf       destination; needs MAX_CHARS free
+     * @param pos       position in buf
+     * @param v         value
+     * @param digits    number of significant digits; 1..MAX_DIGITS
+     * @return position after the last character
+     */
+    static int appendGeneral(char buf[], int pos, double v, int digits) {
+        double a = Math.abs(v);
+        if (a == 0)
+            return appendFixed(buf, pos, v, digits - 1);
+        if (a < 1e-3 || a >= 1e7 || v != v || Double.isInfinite(v))
+            return appendSci(buf, pos, v, digits);
+        /* Decimal exponent by comparison; log10 would dominate the cost */
+        int exp = -3;
+        while (exp < 6 && a >= FIXED_LIMITS[exp + 3])
+            exp++;
+        return appendFixed(buf, pos, v, Math.max(0, Math.min(MAX_DIGITS, digits - 1 - exp)));
+    }
+
+    /* a * 10^e without going through a denormal or infinite 10^e */
+    private static double scale(double a, int e) {
+        if (e >= 0)
+            return e < POW10.length ? a * POW10[e] : a * Math.pow(10, e);
+        return -e < POW10.length ? a / POW10[-e] : a / Math.pow(10, -e);
+    }
+
+    private static int appendSpecial(char buf[], int pos, double v) {
+        char s[] = v != v ? NAN : INF;
+        if (v < 0)
+            buf[pos++] = '-';
+        System.arraycopy(s, 0, buf, pos, s.length);
+        return pos + s.length;
+    }
+
+    /* Writes v, which is non-negative, as exactly count digits with leading zeros */
+    private static int appendDigits(char buf[], int pos, long v, int count) {
+        for (int i = pos + count - 1; i >= pos; i--) {
+            buf[i] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+        return pos + count;
+    }
+
+    private static int digitCount(long v) {
+        int n = 1;
+        while (n < POW10.length && v >= POW10[n])
+            n++;
+        return n;
+    }
+}
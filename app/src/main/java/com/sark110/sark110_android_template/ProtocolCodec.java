@@ -0,0 +1,294 @@
+package com.sark110.sark110_android_template;
+
+import java.util.Arrays;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+final class ProtocolCodec {
+    static final int CMD_SARK_VERSION =		1;	/* Returns version of the protocol */
+    static final int CMD_SARK_MEAS_RX =		2;	/* Measures R and X */
+    static final int CMD_SARK_MEAS_VECTOR =	3;	/* Measures raw vector data */
+    static final int CMD_SARK_SIGNAL_GEN =	4;	/* Signal generator */
+    static final int CMD_SARK_MEAS_RF =		5;	/* Measures RF */
+    static final int CMD_SARK_MEAS_VEC_THRU =	6;	/* Measures raw vector thru data */
+    static final int CMD_BATT_STAT =		7;	/* Battery charger status */
+    static final int CMD_DISK_INFO =		8;	/* Get disk information */
+    static final int CMD_DISK_VOLUME =		9;	/* Get disk volume name */
+    static final int CMD_SARK_MEAS_RX_EXT =	12;	/* Measures R and X; efficient (x4 samples) */
+    static final int CMD_BUZZER	=			20;	/* Sounds buzzer */
+    static final int CMD_GET_KEY =			21;	/* Get key */
+    static final int CMD_DEV_RST =			50;	/* Reset */
+
+    /* Position 0 in responses */
+    static final int ANS_SARK_OK =			'O';
+    static final int ANS_SARK_ERR =			'E';
+
+    /* Position 5 in CMD_SARK_MEAS_RX */
+    static final int PAR_SARK_CAL =			1;	/* OSL calibrated val */
+    static final int PAR_SARK_UNCAL =		2;	/* Raw val */
+
+    static final int EXT_POINTS = 4;        /* Points in a CMD_SARK_MEAS_RX_EXT response */
+
+    /*
+     * Frame buffers owned by the device; reused by every command.
+     * Callers must serialize access (the DeviceIntf command methods are synchronized).
+     */
+    final byte[] mSnd = new byte[DeviceIntf.COMMAND_LEN];
+    final byte[] mRcv = new byte[DeviceIntf.COMMAND_LEN];
+
+    /**
+     * Prepares the frame buffers for a new command
+     *
+     * @param cmd   command code
+     * @return the zeroed command buffer with the code in position 0
+     */
+    byte[] begin(int cmd) {
+        Arrays.fill(mSnd, (byte) 0);
+        mSnd[0] = (byte) cmd;
+        mRcv[0] = 0;            /* A missing reply must not look like the previous ANS_SARK_OK */
+        return mSnd;
+    }
+
+    /*
+     * Command encoders; snd must be zeroed
+     */
+    static void encodeBeep(byte snd[], int freq, int duration) {
+        snd[0] = CMD_BUZZER;
+        putShort(snd, 1, freq);
+        putShort(snd, 3, duration);
+    }
+
+    static void encodeMeasure(byte snd[], int freq, byte samples) {
+        snd[0] = CMD_SARK_MEAS_RX;
+        putInt(snd, 1, freq);
+        snd[5] = PAR_SARK_CAL;
+        snd[6] = samples;
+    }
+
+    static void encodeMeasureExt(byte snd[], int freq, int step, byte samples) {
+        snd[0] = CMD_SARK_MEAS_RX_EXT;
+        putInt(snd, 1, freq);
+        snd[5] = PAR_SARK_CAL;
+        snd[6] = samples;
+        putInt(snd, 7, step);
+    }
+
+    static void encodeSignalGen(byte snd[], int freq, int level, byte gain) {
+        snd[0] = CMD_SARK_SIGNAL_GEN;
+        putInt(snd, 1, freq);
+        putShort(snd, 5, level);
+        snd[7] = gain;
+    }
+
+    static void encodeFreq(byte snd[], int cmd, int freq) {
+        snd[0] = (byte) cmd;
+        putInt(snd, 1, freq);
+    }
+
+    /*
+     * Response decoders
+     */
+    static boolean isOk(byte rcv[]) {
+        return rcv[0] == ANS_SARK_OK;
+    }
+
+    /**
+     * Decodes a CMD_SARK_MEAS_RX response
+     *
+     * @param rcv   response buffer
+     * @param out   receives Rs, Xs
+     * @param off   position in out
+     */
+    static void decodeMeasure(byte rcv[], float out[], int off) {
+        out[off] = getFloat(rcv, 1);
+        out[off + 1] = getFloat(rcv, 5);
+    }
+
+    /**
+     * Decodes a CMD_SARK_MEAS_RX_EXT response
+     *
+     * @param rcv   response buffer
+     * @param out   receives four Rs, Xs pairs
+     * @param off   position in out
+     */
+    static void decodeMeasureExt(byte rcv[], float out[], int off) {
+        for (int i = 1; i < 1 + 4 * EXT_POINTS; i += 2)
+            out[off++] = halfToFloat(getShort(rcv, i));
+    }
+
+    /**
+     * Decodes a CMD_SARK_MEAS_RX_EXT response
+     *
+     * @param rcv   response buffer
+     * @param out   receives four Rs, Xs pairs
+     * @param off   position in out
+     * @param table true to use the lookup table decoder; same values
+     */
+    static void decodeMeasureExt(byte rcv[], float out[], int off, boolean table) {
+        if (table)
+            decodeHalves(rcv, 1, out, off, 2 * EXT_POINTS);
+        else
+            decodeMeasureExt(rcv, out, off);
+    }
+
+    /**
+     * Decodes consecutive little-endian half-floats with the lookup table
+     *
+     * @param buf   source buffer
+     * @param n     position in buf
+     * @param out   receives the floats
+     * @param off   position in out
+     * @param count number of half-floats
+     */
+    static void decodeHalves(byte buf[], int n, float out[], int off, int count) {
+        float table[] = HalfTable.VALUES;
+        for (int end = n + 2 * count; n < end; n += 2)
+            out[off++] = table[(buf[n] & 0xff) | ((buf[n + 1] & 0xff) << 8)];
+    }
+
+    /**
+     * Decodes the four floats of a CMD_SARK_MEAS_VECTOR or CMD_SARK_MEAS_RF response
+     *
+     * @param rcv   response buffer
+     * @param out   receives magV, phV, magI, phI
+     */
+    static void decodeDetector(byte rcv[], float out[]) {
+        out[0] = getFloat(rcv, 1);
+        out[1] = getFloat(rcv, 5);
+        out[2] = getFloat(rcv, 9);
+        out[3] = getFloat(rcv, 13);
+    }
+
+    /*
+     * Little-endian field access
+     */
+    static void putInt(byte buf[], int n, int val) {
+        buf[n] = (byte) val;
+        buf[n + 1] = (byte) (val >> 8);
+        buf[n + 2] = (byte) (val >> 16);
+        buf[n + 3] = (byte) (val >> 24);
+    }
+
+    static void putShort(byte buf[], int n, int val) {
+        buf[n] = (byte) val;
+        buf[n + 1] = (byte) (val >> 8);
+    }
+
+    static int getShort(byte buf[], int n) {
+        return (buf[n] & 0xff) | ((buf[n + 1] & 0xff) << 8);
+    }
+
+    static int getInt(byte buf[], int n) {
+        return (buf[n] & 0xff) | ((buf[n + 1] & 0xff) << 8) | ((buf[n + 2] & 0xff) << 16) | (buf[n + 3] << 24);
+    }
+
+    static float getFloat(byte buf[], int n) {
+        return Float.intBitsToFloat(getInt(buf, n));
+    }
+
+    /*
+     * "Half-float" conversion function
+     */
+    private static final int FP16_SIGN_MASK         = 0x8000;
+    private static final int FP16_EXPONENT_MASK     = 0x1f;
+    private static final int FP16_EXPONENT_SHIFT    = 10;
+    private static final int FP16_SIGNIFICAND_MASK  = 0x3ff;
+    private static final int FP32_DENORMAL_MAGIC = 126 << 23;
+    private static final float FP32_DENORMAL_FLOAT = Float.intBitsToFloat(FP32_DENORMAL_MAGIC);
+    private static final int FP16_EXPONENT_BIAS     = 15;
+    private static final int FP32_EXPONENT_BIAS     = 127;
+    private static final int FP32_EXPONENT_SHIFT    = 23;
+
+    static float halfToFloat(int h) {
+        int bits = h & 0xffff;
+        int s = bits & FP16_SIGN_MASK;
+        int e = (bits >>> FP16_EXPONENT_SHIFT) & FP16_EXPONENT_MASK;
+        int m = (bits) & FP16_SIGNIFICAND_MASK;
+        int outE = 0;
+        int outM = 0;
+        if (e == 0) { // Denormal or 0
+            if (m != 0) {
+                // Convert denorm fp16 into normalized fp32
+                float o = Float.intBitsToFloat(FP32_DENORMAL_MAGIC + m);
+                o -= FP32_DENORMAL_FLOAT;
+                return s == 0 ? o : -o;
+            }
+        } else {
+            outM = m << 13;
+            if (e == 0x1f) { // Infinite or NaN
+                outE = 0xff;
+            } else {
+                outE = e - FP16_EXPONENT_BIAS + FP32_EXPONENT_BIAS;
+            }
+        }
+        int out = (s << 16) | (outE << FP32_EXPONENT_SHIFT) | outM;
+        return Float.intBitsToFloat(out);
+    }
+
+    /* Every half-float decoded by halfToFloat(); 256 KB, built on first use */
+    private static class HalfTable {
+        static final float VALUES[] = new float[0x10000];
+
+        static {
+            for (int h = 0; h < VALUES.length; h++)
+                VALUES[h] = halfToFloat(h);
+        }
+    }
+
+    /**
+     * Table driven halfToFloat(); bit-exact, NaN payloads included
+     *
+     * @param h half-float in the 16 lower bits
+     * @return float value
+     */
+    static float halfToFloatTable(int h) {
+        return HalfTable.VALUES[h & 0xffff];
+    }
+
+    /**
+     * Converts a float into "half-float", rounding to nearest; used to build
+     * CMD_SARK_MEAS_RX_EXT responses. Values beyond the half-float range become infinite.
+     *
+     * @param f float value
+     * @return half-float in the 16 lower bits
+     */
+    static int floatToHalf(float f) {
+        int bits = Float.floatToRawIntBits(f);
+        int sign = (bits >>> 16) & FP16_SIGN_MASK;
+        int abs = bits & 0x7fffffff;
+        int val = abs + 0x1000;                         // Rounding bit of the 13 dropped ones
+        if (abs > 0x7f800000)                           // NaN
+            return sign | 0x7e00;
+        if (val >= 0x47800000)                          // Overflow or infinite
+            return sign | 0x7c00;
+        if (val >= 0x38800000)                          // Normal
+            return sign | ((val - 0x38000000) >>> 13);
+        if (val < 0x33000000)                           // Too small: signed zero
+            return sign;
+        int e = abs >>> FP32_EXPONENT_SHIFT;            // Denormal
+        return sign | ((((abs & 0x7fffff) | 0x800000) + (0x800000 >>> (e - 102))) >>> (126 - e));
+    }
+}
@@ -0,0 +1,160 @@
+package com.sark110.sark110_android_template;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+final class ReadoutFormatter {
+    /* Engineering prefixes from pico to giga */
+    private static final char PREFIXES[] = {'p', 'n', '\u00b5', 'm', 0, 'k', 'M', 'G'};
+    private static final int NO_PREFIX = 4;
+    private static final double POW10[] = {1, 10, 100, 1000, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9};
+
+    private char mBuf[];
+    private int mLen;
+
+    /**
+     * @param capacity initial size of the buffer in chars; it grows if a readout needs more
+     */
+    ReadoutFormatter(int capacity) {
+        mBuf = new char[Math.max(capacity, NumberChars.MAX_CHARS)];
+    }
+
+    ReadoutFormatter clear() {
+        mLen = 0;
+        return this;
+    }
+
+    ReadoutFormatter append(char c) {
+        ensure(1);
+        mBuf[mLen++] = c;
+        return this;
+    }
+
+    ReadoutFormatter append(String s) {
+        int len = s.length();
+        ensure(len);
+        s.getChars(0, len, mBuf, mLen);
+        mLen += len;
+        return this;
+    }
+
+    /**
+     * Appends a number with a fixed number of decimals, as "%.nf" does
+     *
+     * @param v         value
+     * @param decimals  number of decimals; 0..NumberChars.MAX_DIGITS
+     * @return this formatter
+     */
+    ReadoutFormatter appendFixed(double v, int decimals) {
+        ensure(NumberChars.MAX_CHARS);
+        mLen = NumberChars.appendFixed(mBuf, mLen, v, decimals);
+        return this;
+    }
+
+    /**
+     * Appends an impedance as "R +jX" or "R -jX"
+     *
+     * @param rs        series resistance
+     * @param xs        series reactance
+     * @param decimals  number of decimals of both parts
+     * @return this formatter
+     */
+    ReadoutFormatter appendImpedance(double rs, double xs, int decimals) {
+        appendFixed(rs, decimals);
+        append(xs < 0 ? " -j" : " +j");
+        return appendFixed(Math.abs(xs), decimals);
+    }
+
+    /**
+     * Appends a value with an engineering prefix and a unit, e.g. "14.0500 MHz" or "-120.5 pF".
+     * The mantissa is 1..999 except at the ends of the prefix range.
+     *
+     * @param v         value in base units
+     * @param digits    significant digits; 1..9
+     * @param unit      unit symbol, written after the prefix
+     * @return this formatter
+     */
+    ReadoutFormatter appendEng(double v, int digits, String unit) {
+        double m = Math.abs(v);
+        int p = NO_PREFIX;
+        if (m != 0 && !Double.isInfinite(m) && m == m) {
+            while (m >= 1000 && p < PREFIXES.length - 1) {
+                m /= 1000;
+                p++;
+            }
+            while (m < 1 && p > 0) {
+                m *= 1000;
+                p--;
+            }
+        }
+        int decimals = decimals(m, digits);
+        /* Rounding may carry into the next decade or prefix: 999.96 -> 1.000 k */
+        double r = Math.round(m * POW10[decimals]) / POW10[decimals];
+        if (r >= 1000 && p < PREFIXES.length - 1) {
+            m = r / 1000;
+            p++;
+            decimals = decimals(m, digits);
+        } else if (decimals(r, digits) < decimals) {
+            decimals--;
+        }
+        appendFixed(v < 0 ? -m : m, decimals);
+        append(' ');
+        if (PREFIXES[p] != 0)
+            append(PREFIXES[p]);
+        return append(unit);
+    }
+
+    /* Characters written since clear(); valid up to length(). The array may change on growth */
+    char[] getChars() {
+        return mBuf;
+    }
+
+    int length() {
+        return mLen;
+    }
+
+    @Override
+    public String toString() {
+        return new String(mBuf, 0, mLen);
+    }
+
+    /* Decimals giving m the significant digits; m is 0..999 except beyond the prefixes */
+    private static int decimals(double m, int digits) {
+        int exp = m >= 100 ? 2 : (m >= 10 ? 1 : 0);
+        while (m > 0 && m < 1 && exp > 1 - POW10.length) {
+            m *= 10;
+            exp--;
+        }
+        return Math.max(0, Math.min(POW10.length - 1, digits - 1 - exp));
+    }
+
+    private void ensure(int n) {
+        if (mLen + n > mBuf.length) {
+            char buf[] = new char[Math.max(mBuf.length * 2, mLen + n)];
+            System.arraycopy(mBuf, 0, buf, 0, mLen);
+            mBuf = buf;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.sark110.sark110_android_template;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+class ReplyRing {
+    private final int mFrameLen;
+    private final byte mBuf[];
+    private long mWritten;          /* Bytes written since clear(); guarded by this */
+    private long mRead;             /* Bytes read since clear(); guarded by this */
+    private long mOverflows;
+
+    /**
+     * Fixed-size reply buffer between a transport callback thread and the command thread.
+     * write() treats incoming bytes as a stream, so replies split over several transfers or
+     * packed into one are handled alike; writeMessage() keeps one reply per notification.
+     * Either way they are handed out as frames. Nothing is allocated after construction.
+     *
+     * @param frameLen  reply length in bytes
+     * @param frames    number of replies buffered
+     */
+    ReplyRing(int frameLen, int frames) {
+        mFrameLen = frameLen;
+        mBuf = new byte[frameLen * frames];
+    }
+
+    /**
+     * Appends received bytes; never blocks. If they do not fit, they are dropped together with
+     * any incomplete frame, and counted as an overflow.
+     *
+     * @param src   source buffer
+     * @param off   position in src
+     * @param len   number of bytes
+     * @return false if dropped
+     */
+    synchronized boolean write(byte src[], int off, int len) {
+        if (mWritten - mRead + len > mBuf.length) {
+            mWritten -= (mWritten - mRead) % mFrameLen;
+            mOverflows++;
+            return false;
+        }
+        int pos = (int) (mWritten % mBuf.length);
+        int first = Math.min(len, mBuf.length - pos);
+        System.arraycopy(src, off, mBuf, pos, first);
+        System.arraycopy(src, off + first, mBuf, 0, len - first);
+        long frames = (mWritten - mRead) / mFrameLen;
+        mWritten += len;
+        if ((mWritten - mRead) / mFrameLen > frames)
+            notifyAll();
+        return true;
+    }
+
+    /**
+     * Appends one notification of a message-based transport. A notification of at least a frame
+     * is one reply, truncated to the frame length, and drops any incomplete frame before it, so
+     * a notification of an unexpected length does not shift the framing of the later replies.
+     * Shorter ones are fragments, assembled into a frame as by write().
+     *
+     * @param src   source buffer
+     * @param off   position in src
+     * @param len   number of bytes
+     * @return false if dropped
+     */
+    synchronized boolean writeMessage(byte src[], int off, int len) {
+        if (len < mFrameLen)
+            return write(src, off, len);
+        mWritten -= (mWritten - mRead) % mFrameLen;
+        return write(src, off, mFrameLen);
+    }
+
+    /**
+     * Takes the oldest complete frame, waiting for it if needed
+     *
+     * @param dst       receives the frame; at least frameLen bytes
+     * @param timeout   maximum wait in ms
+     * @return frame length; -1 on timeout or interrupt
+     */
+    synchronized int read(byte dst[], long timeout) {
+        long deadline = System.nanoTime() + timeout * 1000000L;
+        while (mWritten - mRead < mFrameLen) {
+            long wait = deadline - System.nanoTime();
+            if (wait <= 0)
+                return -1;
+            try {
+                wait(wait / 1000000L, (int) (wait % 1000000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+        int pos = (int) (mRead % mBuf.length);
+        int first = Math.min(mFrameLen, mBuf.length - pos);
+        System.arraycopy(mBuf, pos, dst, 0, first);
+        System.arraycopy(mBuf, 0, dst, first, mFrameLen - first);
+        mRead += mFrameLen;
+        return mFrameLen;
+    }
+
+    /**
+     * Discards the buffered frames and any incomplete one
+     */
+    synchronized void clear() {
+        mRead = mWritten = 0;
+    }
+
+    /**
+     * Gets the number of complete frames buffered
+     *
+     * @return number of frames
+     */
+    synchronized int available() {
+        return (int) ((mWritten - mRead) / mFrameLen);
+    }
+
+    /**
+     * Gets the number of writes dropped because the ring was full
+     *
+     * @return number of writes
+     */
+    synchronized long getOverflows() {
+        return mOverflows;
+    }
+}
@@ -0,0 +1,343 @@
+package com.sark110.sark110_android_template;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+class ResonanceFinder {
+    static final int DEF_SCAN_POINTS = 1001;
+    static final int DEF_RESOLUTION = 100;         /* Hz */
+    static final float DEF_MAX_VSWR = 10.0f;       /* VSWR minima above this are not reported */
+    static final float MIN_DEPTH = 0.01f;          /* |rho| rise on both sides that makes a minimum */
+
+    /* Resonance kinds; a resonance may be both */
+    public static final int ZERO_REACTANCE = 1;
+    public static final int MIN_VSWR = 2;
+
+    private static final Resonance NONE = new Resonance(0, null);
+
+    private final DeviceIntf mDevIntf;
+    private final SweepEngine mEngine;
+    private volatile boolean mCancelled;
+    private int mScanPoints = DEF_SCAN_POINTS;
+    private int mResolution = DEF_RESOLUTION;
+    private float mMaxVswr = DEF_MAX_VSWR;
+    private float mRefImp = 50.0f;
+    private int mCommands;
+    private byte mSamples;
+    private final float mOut[] = new float[2];
+
+    /**
+     * A refined resonance
+     */
+    public static class Resonance {
+        private final int mKind;
+        private final MeasureDataBin mBin;
+
+        Resonance(int kind, MeasureDataBin bin) {
+            this.mKind = kind;
+            this.mBin = bin;
+        }
+        /**
+         * @return ZERO_REACTANCE, MIN_VSWR or both
+         */
+        public int getKind() {
+            return mKind;
+        }
+        /**
+         * @return measurement at the resonance; for the other metrics
+         */
+        public MeasureDataBin getBin() {
+            return mBin;
+        }
+        public int getFreq() {
+            return mBin.getFreq();
+        }
+        public float getRs() {
+            return mBin.getRs();
+        }
+        public float getXs() {
+            return mBin.getXs();
+        }
+        public float getVswr() {
+            return mBin.getVswr();
+        }
+    }
+
+    ResonanceFinder(DeviceIntf devIntf) {
+        this.mDevIntf = devIntf;
+        this.mEngine = new SweepEngine(devIntf);
+    }
+
+    /**
+     * Sets the number of points of the coarse scan; resonances closer than two
+     * scan steps may be reported as one
+     *
+     * @param points number of points
+     */
+    public void setScanPoints(int points) {
+        mScanPoints = points;
+    }
+
+    /**
+     * Sets the width at which the refinement of a bracket stops
+     *
+     * @param resolution width in Hz
+     */
+    public void setResolution(int resolution) {
+        mResolution = Math.max(1, resolution);
+    }
+
+    /**
+     * Sets the highest VSWR of a reported minimum
+     *
+     * @param vswr VSWR limit
+     */
+    public void setMaxVswr(float vswr) {
+        mMaxVswr = vswr;
+    }
+
+    public void set_RefImp(float r0) {
+        mRefImp = r0;
+    }
+
+    /**
+     * Aborts the running search, or the next one if none is running; Find() returns null
+     * after the command in progress.
+     */
+    public void cancel() {
+        mCancelled = true;
+        mEngine.cancel();
+    }
+
+    /**
+     * Gets the number of device commands used by the last search
+     *
+     * @return number of commands
+     */
+    public int getCommandCount() {
+        return mCommands;
+    }
+
+    /**
+     * Finds the resonances over the whole analyzer range
+     *
+     * @param samples   number of samples for averaging
+     * @return resonances sorted by frequency; or null if error
+     */
+    public List<Resonance> Find(byte samples) {
+        return Find(GblDefs.MIN_FREQ, GblDefs.MAX_FREQ, samples);
+    }
+
+    /**
+     * Finds the resonances in the start..stop range: scans it with the four points command,
+     * brackets every reactance zero crossing and every local VSWR minimum, then refines the
+     * crossings by bisection and the minima by golden-section search with single measurements.
+     * A minimum whose bracket contains a crossing is reported with the crossing.
+     *
+     * @param start     start frequency in Hz
+     * @param stop      stop frequency in Hz
+     * @param samples   number of samples for averaging
+     * @return resonances sorted by frequency; or null if error or cancelled
+     */
+    public List<Resonance> Find(int start, int stop, byte samples) {
+        try {
+            return find(start, stop, samples);
+        } finally {
+            mCancelled = false;
+            mEngine.clearCancel();      // A cancel() after the scan is not left for the next one
+        }
+    }
+
+    private List<Resonance> find(int start, int stop, byte samples) {
+        mCommands = 0;
+        mSamples = samples;
+        SweepResult scan = mEngine.Sweep(start, stop, mScanPoints, samples, null);
+        mCommands = mEngine.getCommandCount();
+        if (scan == null)
+            return null;
+        scan.set_RefImp(mRefImp);
+
+        List<int[]> minima = new ArrayList<>();
+        for (int[] bracket = nextMinimum(scan, 0); bracket != null; bracket = nextMinimum(scan, bracket[1]))
+            minima.add(bracket);
+
+        List<Resonance> found = new ArrayList<>();
+        int m = 0;
+        boolean reported = false;       /* Current minimum reported with a crossing */
+        for (int i = 1; i < scan.size(); i++) {
+            if (mCancelled)
+                return null;
+            int[] bracket = (m < minima.size()) ? minima.get(m) : null;
+            boolean inMin = bracket != null && i - 1 >= bracket[0] && i <= bracket[1];
+            if ((scan.getXs(i - 1) < 0) != (scan.getXs(i) < 0)) {
+                Resonance res = refineCrossing(scan.getFreq(i - 1), scan.getXs(i - 1),
+                        scan.getFreq(i), scan.getXs(i), inMin && !reported);
+                if (res == null)
+                    return null;
+                if (res != NONE) {
+                    found.add(res);
+                    reported |= inMin;
+                }
+            }
+            if (bracket != null && i == bracket[1]) {
+                if (!reported) {
+                    Resonance res = refineMinimum(scan.getFreq(bracket[0]), scan.getFreq(bracket[1]));
+                    if (res == null)
+                        return null;
+                    found.add(res);
+                }
+                m++;
+                reported = false;
+            }
+        }
+        return found;
+    }
+
+    /*
+     * Finds the next |rho| minimum at or after from. A minimum must be MIN_DEPTH below the
+     * points on both sides so that the half-float noise of the scan does not split a flat
+     * valley into several.
+     *
+     * Returns the bracket {left, right} of scan indices, or null if there is none.
+     */
+    private int[] nextMinimum(SweepResult scan, int from) {
+        int n = scan.size();
+        int top = from;
+        int min = -1;
+        for (int i = from + 1; i < n; i++) {
+            float rho = rhoMag(scan, i);
+            if (min < 0) {
+                if (rho > rhoMag(scan, top))
+                    top = i;
+                else if (rho < rhoMag(scan, top) - MIN_DEPTH)
+                    min = i;        /* Descending */
+            } else if (rho < rhoMag(scan, min)) {
+                min = i;
+            } else if (rho > rhoMag(scan, min) + MIN_DEPTH) {
+                if (scan.getVswr(min) > mMaxVswr) {
+                    top = i;        /* Too shallow to report; look for the next one */
+                    min = -1;
+                    continue;
+                }
+                int left = min;
+                while (left > top && rhoMag(scan, left) < rhoMag(scan, min) + MIN_DEPTH)
+                    left--;
+                return new int[] {left, i};
+            }
+        }
+        return null;
+    }
+
+    /* Infinite impedance (half-float overflow in the scan) gives NaN; it is an open circuit */
+    private static float rhoMag(SweepResult scan, int index) {
+        float rho = scan.getRhMag(index);
+        return Float.isNaN(rho) ? 1.0f : rho;
+    }
+
+    /* Measures one point into mOut */
+    private boolean measure(int freq) {
+        mCommands++;
+        return mDevIntf.MeasureCmd(freq, mSamples, mOut, 0) >= 0;
+    }
+
+    private double rhoMag() {
+        return MeasureMath.mod(MeasureMath.rhoRe(mOut[0], mOut[1], mRefImp),
+                MeasureMath.rhoIm(mOut[0], mOut[1], mRefImp));
+    }
+
+    private Resonance result(int kind, int freq) {
+        if (!measure(freq))
+            return null;
+        MeasureDataBin bin = new MeasureDataBin(0, freq, mOut[0], mOut[1]);
+        bin.set_RefImp(mRefImp);
+        return new Resonance(kind, bin);
+    }
+
+    /* Bisection on the reactance sign; the last step interpolates the zero */
+    private Resonance refineCrossing(int lo, float xsLo, int hi, float xsHi, boolean nearMin) {
+        float limit = Math.max(Math.abs(xsLo), Math.abs(xsHi));
+        boolean negLo = xsLo < 0;
+        while (hi - lo > mResolution) {
+            if (mCancelled)
+                return null;
+            int mid = (int) (((long) lo + hi) / 2);
+            if (!measure(mid))
+                return null;
+            if ((mOut[1] < 0) == negLo) {
+                lo = mid;
+                xsLo = mOut[1];
+            } else {
+                hi = mid;
+                xsHi = mOut[1];
+            }
+        }
+        int freq = lo;
+        if (xsHi != xsLo)
+            freq = lo + (int) Math.round((double) (hi - lo) * xsLo / (xsLo - xsHi));
+        Resonance res = result(nearMin ? ZERO_REACTANCE | MIN_VSWR : ZERO_REACTANCE, freq);
+        /* The reactance jumps across a pole instead of going through zero: not a resonance */
+        if (res != null && Math.abs(res.getXs()) >= limit)
+            return NONE;
+        return res;
+    }
+
+    /* Golden-section search of the |rho| minimum bracketed by lo..hi */
+    private Resonance refineMinimum(int lo, int hi) {
+        final double g = 0.6180339887498949;
+        double a = lo, b = hi;
+        double c = b - g * (b - a), d = a + g * (b - a);
+        if (!measure((int) Math.round(c)))
+            return null;
+        double fc = rhoMag();
+        if (!measure((int) Math.round(d)))
+            return null;
+        double fd = rhoMag();
+        while (b - a > mResolution) {
+            if (mCancelled)
+                return null;
+            if (fc < fd) {
+                b = d;
+                d = c;
+                fd = fc;
+                c = b - g * (b - a);
+                if (!measure((int) Math.round(c)))
+                    return null;
+                fc = rhoMag();
+            } else {
+                a = c;
+                c = d;
+                fc = fd;
+                d = a + g * (b - a);
+                if (!measure((int) Math.round(d)))
+                    return null;
+                fd = rhoMag();
+            }
+        }
+        return result(MIN_VSWR, (int) Math.round(fc < fd ? c : d));
+    }
+}
@@ -0,0 +1,302 @@
+package com.sark110.sark110_android_template;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+class SessionLog {
+    /*
+     * File layout, little-endian:
+     *  header  long magic, int version, int record size, 16 reserved bytes
+     *  records long time (ns since the epoch; 0 = not written), int freq, float Rs, float Xs,
+     *          int samples, int RTT (us), 4 reserved bytes
+     * Records are appended in time order; the time is written last so that a record with a
+     * time is complete.
+     */
+    static final long MAGIC = 0x31474f4c30313153L;     /* "S110LOG1" */
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 32;
+    static final int CHUNK_SIZE = 1 << 20;              /* Mapping granularity; a multiple of RECORD_SIZE */
+    static final int DEF_QUEUE_SIZE = 4096;             /* Records buffered for the writer thread */
+    static final long FLUSH_INTERVAL = 1000000000L;     /* ns between forced flushes */
+
+    /* Record field offsets */
+    static final int REC_TIME = 0;
+    static final int REC_FREQ = 8;
+    static final int REC_RS = 12;
+    static final int REC_XS = 16;
+    static final int REC_SAMPLES = 20;
+    static final int REC_RTT = 24;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private MappedByteBuffer mChunk;
+    private long mChunkIndex = -1;
+    private long mCount;                /* Records in the file; writer thread only after open */
+    private long mLastTime;
+
+    /* Time base: wall clock at open plus the monotonic clock */
+    private final long mEpochBase;
+    private final long mNanoBase;
+
+    /* Queue to the writer thread; producers lock mQueueLock, the writer only reads */
+    private final Object mQueueLock = new Object();
+    private final int mMask;
+    private final long mQTime[];
+    private final int mQFreq[];
+    private final float mQRs[];
+    private final float mQXs[];
+    private final int mQSamples[];
+    private final int mQRtt[];
+    private volatile long mHead;        /* Next slot to fill */
+    private volatile long mTail;        /* Next slot to write */
+    private volatile long mDropped;
+    private volatile boolean mClosing;
+    private final Thread mWriter;
+    private IOException mError;
+
+    SessionLog(File file) throws IOException {
+        this(file, DEF_QUEUE_SIZE);
+    }
+
+    /**
+     * Opens or creates a session log; new records are appended to the existing ones
+     *
+     * @param file      log file
+     * @param queueSize records buffered when the writer falls behind; rounded up to a power of 2
+     */
+    SessionLog(File file, int queueSize) throws IOException {
+        int size = Integer.highestOneBit(Math.max(2, queueSize - 1)) << 1;
+        mMask = size - 1;
+        mQTime = new long[size];
+        mQFreq = new int[size];
+        mQRs = new float[size];
+        mQXs = new float[size];
+        mQSamples = new int[size];
+        mQRtt = new int[size];
+
+        mFile = new RandomAccessFile(file, "rw");
+        mChannel = mFile.getChannel();
+        try {
+            if (mChannel.size() < HEADER_SIZE)
+                writeHeader();
+            else
+                checkHeader(mChannel);
+            mCount = countRecords(mChannel);
+            if (mCount > 0)
+                mLastTime = readTime(mChannel, mCount - 1);
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+
+        mEpochBase = System.currentTimeMillis() * 1000000L;
+        mNanoBase = System.nanoTime();
+        mWriter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writerLoop();
+            }
+        }, "sark110-log");
+        mWriter.setDaemon(true);
+        mWriter.start();
+    }
+
+    /**
+     * Queues one measurement; never blocks. The record is dropped if the writer is too far behind.
+     *
+     * @param freq      frequency in Hz
+     * @param Rs        series resistance
+     * @param Xs        series reactance
+     * @param samples   number of samples averaged
+     * @param rtt       transport round trip in us
+     * @return false if dropped
+     */
+    public boolean append(int freq, float Rs, float Xs, int samples, int rtt) {
+        long time = mEpochBase + (System.nanoTime() - mNanoBase);
+        synchronized (mQueueLock) {
+            long head = mHead;
+            if (mClosing || head - mTail > mMask) {
+                mDropped++;
+                return false;
+            }
+            int i = (int) head & mMask;
+            mQTime[i] = time;
+            mQFreq[i] = freq;
+            mQRs[i] = Rs;
+            mQXs[i] = Xs;
+            mQSamples[i] = samples;
+            mQRtt[i] = rtt;
+            mHead = head + 1;
+        }
+        LockSupport.unpark(mWriter);
+        return true;
+    }
+
+    /**
+     * Gets the number of records dropped because the queue was full
+     *
+     * @return number of records
+     */
+    public long getDropped() {
+        return mDropped;
+    }
+
+    /**
+     * Gets the number of records queued so far, including the ones already in the file
+     *
+     * @return number of records
+     */
+    public long getQueued() {
+        return mHead;
+    }
+
+    /**
+     * Writes the queued records, flushes the file and stops the writer thread
+     */
+    public void close() throws IOException {
+        synchronized (mQueueLock) {
+            mClosing = true;
+        }
+        LockSupport.unpark(mWriter);
+        try {
+            mWriter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mFile.close();
+        if (mError != null)
+            throw mError;
+    }
+
+    private void writerLoop() {
+        long lastFlush = System.nanoTime();
+        boolean dirty = false;
+        try {
+            while (true) {
+                long tail = mTail;
+                long head = mHead;
+                for (; tail < head; tail++)
+                    write((int) tail & mMask);
+                if (tail != mTail) {
+                    mTail = tail;
+                    dirty = true;
+                }
+                long now = System.nanoTime();
+                if (dirty && now - lastFlush >= FLUSH_INTERVAL) {
+                    mChunk.force();
+                    lastFlush = now;
+                    dirty = false;
+                }
+                if (mClosing && mTail == mHead)
+                    break;
+                /* Idle: sleep until append() or close() unparks, or the next flush is due */
+                if (tail == head) {
+                    if (dirty)
+                        LockSupport.parkNanos(lastFlush + FLUSH_INTERVAL - now);
+                    else
+                        LockSupport.park();
+                }
+            }
+            if (mChunk != null)
+                mChunk.force();
+        } catch (IOException e) {
+            mError = e;
+            synchronized (mQueueLock) {
+                mClosing = true;        /* Refuse further records */
+                mDropped += mHead - mTail;
+                mTail = mHead;
+            }
+        }
+    }
+
+    private void write(int i) throws IOException {
+        long offset = HEADER_SIZE + mCount * RECORD_SIZE;
+        long chunk = offset / CHUNK_SIZE;
+        if (chunk != mChunkIndex) {
+            if (mChunk != null)
+                mChunk.force();
+            mChunk = mChannel.map(FileChannel.MapMode.READ_WRITE, chunk * CHUNK_SIZE, CHUNK_SIZE);
+            mChunk.order(ByteOrder.LITTLE_ENDIAN);
+            mChunkIndex = chunk;
+        }
+        int pos = (int) (offset - chunk * CHUNK_SIZE);
+        mChunk.putInt(pos + REC_FREQ, mQFreq[i]);
+        mChunk.putFloat(pos + REC_RS, mQRs[i]);
+        mChunk.putFloat(pos + REC_XS, mQXs[i]);
+        mChunk.putInt(pos + REC_SAMPLES, mQSamples[i]);
+        mChunk.putInt(pos + REC_RTT, mQRtt[i]);
+        /* Keep the times ordered for the reader's search, also across clock changes */
+        mLastTime = Math.max(mLastTime, mQTime[i]);
+        mChunk.putLong(pos + REC_TIME, mLastTime);
+        mCount++;
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(MAGIC).putInt(VERSION).putInt(RECORD_SIZE);
+        header.rewind();
+        mChannel.write(header, 0);
+    }
+
+    static void checkHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(header, 0);
+        if (header.getLong(0) != MAGIC || header.getInt(8) != VERSION || header.getInt(12) != RECORD_SIZE)
+            throw new IOException("not a session log");
+    }
+
+    static long readTime(FileChannel channel, long index) throws IOException {
+        ByteBuffer time = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        if (channel.read(time, HEADER_SIZE + index * RECORD_SIZE + REC_TIME) < 8)
+            return 0;
+        return time.getLong(0);
+    }
+
+    /*
+     * Number of written records. The mapped file grows by whole chunks, so the end is
+     * the first record without a time; found by binary search.
+     */
+    static long countRecords(FileChannel channel) throws IOException {
+        long lo = 0, hi = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (readTime(channel, mid) != 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,182 @@
+package com.sark110.sark110_android_template;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.sark110.sark110_android_template.SessionLog.*;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+class SessionLogReader {
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private MappedByteBuffer mChunk;
+    private long mChunkIndex = -1;
+    private long mCount;
+
+    /**
+     * One log record; reused by read()
+     */
+    static class Record {
+        long mTime;
+        int mFreq;
+        float mRs;
+        float mXs;
+        int mSamples;
+        int mRtt;
+
+        /**
+         * @return time in ns since the epoch
+         */
+        public long getTime() {
+            return mTime;
+        }
+        public int getFreq() {
+            return mFreq;
+        }
+        public float getRs() {
+            return mRs;
+        }
+        public float getXs() {
+            return mXs;
+        }
+        public int getSamples() {
+            return mSamples;
+        }
+        /**
+         * @return transport round trip in us
+         */
+        public int getRtt() {
+            return mRtt;
+        }
+    }
+
+    /**
+     * Opens a session log for reading; the file is mapped one chunk at a time as records are read
+     *
+     * @param file log file
+     */
+    SessionLogReader(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        mChannel = mFile.getChannel();
+        try {
+            checkHeader(mChannel);
+            mCount = countRecords(mChannel);
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the number of records
+     *
+     * @return number of records when opened or last refreshed
+     */
+    public long size() {
+        return mCount;
+    }
+
+    /**
+     * Picks up the records appended by a writer since the log was opened
+     *
+     * @return number of records
+     */
+    public long refresh() throws IOException {
+        mCount = countRecords(mChannel);
+        return mCount;
+    }
+
+    /**
+     * Reads one record
+     *
+     * @param index record index; 0..size()-1
+     * @param rec   receives the record
+     */
+    public void read(long index, Record rec) throws IOException {
+        if (index < 0 || index >= mCount)
+            throw new IndexOutOfBoundsException("record " + index);
+        int pos = map(index);
+        rec.mTime = mChunk.getLong(pos + REC_TIME);
+        rec.mFreq = mChunk.getInt(pos + REC_FREQ);
+        rec.mRs = mChunk.getFloat(pos + REC_RS);
+        rec.mXs = mChunk.getFloat(pos + REC_XS);
+        rec.mSamples = mChunk.getInt(pos + REC_SAMPLES);
+        rec.mRtt = mChunk.getInt(pos + REC_RTT);
+    }
+
+    /**
+     * Gets the time of one record
+     *
+     * @param index record index; 0..size()-1
+     * @return time in ns since the epoch
+     */
+    public long getTime(long index) throws IOException {
+        if (index < 0 || index >= mCount)
+            throw new IndexOutOfBoundsException("record " + index);
+        int pos = map(index);
+        return mChunk.getLong(pos + REC_TIME);
+    }
+
+    /**
+     * Finds the first record at or after a time; binary search, so only a few pages are touched
+     *
+     * @param time time in ns since the epoch
+     * @return record index; size() if all records are older
+     */
+    public long seek(long time) throws IOException {
+        long lo = 0, hi = mCount;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (getTime(mid) < time)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    /* Maps the chunk holding the record; returns the record position in it */
+    private int map(long index) throws IOException {
+        long offset = HEADER_SIZE + index * RECORD_SIZE;
+        long chunk = offset / CHUNK_SIZE;
+        if (chunk != mChunkIndex) {
+            long start = chunk * CHUNK_SIZE;
+            mChunk = mChannel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, mChannel.size() - start));
+            mChunk.order(ByteOrder.LITTLE_ENDIAN);
+            mChunkIndex = chunk;
+        }
+        return (int) (offset - chunk * CHUNK_SIZE);
+    }
+}
@@ -0,0 +1,374 @@
+package com.sark110.sark110_android_template;
+
+import android.content.Context;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.sark110.sark110_android_template.ProtocolCodec.*;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+class SimulatorIntf extends DeviceIntf {
+    static final int SIM_PROTOCOL_VER = 0x0100;
+    static final String SIM_VERSION = "SIM 1.0";
+
+    private static final int MAX_PIPELINE_DEPTH = 8;
+    private static final long DEF_RCV_TIMEOUT = 500000000L; /* ns; as BluetoothLEIntf */
+    private static final long DEF_MEAS_TIME = 100000L;      /* ns; device time per sample */
+
+    /**
+     * Impedance seen by the simulated analyzer
+     */
+    interface AntennaModel {
+        /**
+         * @param freq  frequency in Hz
+         * @param z     receives R, X
+         */
+        void impedance(int freq, double z[]);
+    }
+
+    /**
+     * Purely resistive load
+     */
+    static class DummyLoad implements AntennaModel {
+        private final double mR;
+
+        DummyLoad(double r) {
+            mR = r;
+        }
+        public void impedance(int freq, double z[]) {
+            z[0] = mR;
+            z[1] = 0;
+        }
+    }
+
+    /**
+     * Series RLC; resonant at 1 / (2 pi sqrt(LC))
+     */
+    static class SeriesRlc implements AntennaModel {
+        private final double mR;
+        private final double mL;
+        private final double mC;
+
+        /**
+         * @param r resistance in ohm
+         * @param l inductance in H
+         * @param c capacitance in F
+         */
+        SeriesRlc(double r, double l, double c) {
+            mR = r;
+            mL = l;
+            mC = c;
+        }
+        public void impedance(int freq, double z[]) {
+            double w = 2.0 * Math.PI * freq;
+            z[0] = mR;
+            z[1] = w * mL - 1.0 / (w * mC);
+        }
+    }
+
+    /**
+     * Center-fed dipole modelled as an open transmission line stub: series resonances at
+     * the odd multiples of the fundamental, anti-resonances at the even ones.
+     */
+    static class Dipole implements AntennaModel {
+        private final double mFreq0;
+        private final double mRad;
+        private final double mZc;
+
+        /**
+         * @param freq0 fundamental resonance in Hz
+         * @param rad   radiation resistance at resonance in ohm (about 73 in free space)
+         * @param zc    characteristic impedance of the wire; higher for thinner wire
+         */
+        Dipole(double freq0, double rad, double zc) {
+            mFreq0 = freq0;
+            mRad = rad;
+            mZc = zc;
+        }
+        public void impedance(int freq, double z[]) {
+            double theta = 0.5 * Math.PI * freq / mFreq0;
+            double s = Math.sin(theta);
+            double sin2 = Math.max(s * s, 1e-4);
+            z[0] = mRad * (freq / mFreq0) / sin2;
+            z[1] = -mZc * Math.cos(theta) / Math.max(Math.abs(s), 1e-2) * Math.signum(s == 0 ? 1 : s);
+        }
+    }
+
+    private AntennaModel mModel = new DummyLoad(50);
+    private final Random mRandom;
+    private final double mZ[] = new double[2];
+
+    /* Link and device timing */
+    private long mLatency;          /* Link round trip; ns */
+    private long mJitter;           /* Added uniformly in [0, jitter); ns */
+    private double mDropRate;
+    private long mRcvTimeout = DEF_RCV_TIMEOUT;
+    private final long mCmdTime[] = new long[256];
+    private long mBusyUntil;
+
+    /* Replies in flight, in send order; an empty reply is a dropped one */
+    private final ArrayDeque<byte[]> mReplies = new ArrayDeque<>();
+    private final ArrayDeque<Long> mReadyAt = new ArrayDeque<>();
+    private int mCommands;
+    private int mDropped;
+
+    SimulatorIntf() {
+        this(null, 110);
+    }
+
+    SimulatorIntf(Context context, long seed) {
+        super(context);
+        mRandom = new Random(seed);
+        mCmdTime[CMD_SARK_MEAS_RX] = DEF_MEAS_TIME;
+        mCmdTime[CMD_SARK_MEAS_RX_EXT] = 4 * DEF_MEAS_TIME;
+        mCmdTime[CMD_SARK_MEAS_VECTOR] = DEF_MEAS_TIME;
+        mCmdTime[CMD_SARK_MEAS_RF] = DEF_MEAS_TIME;
+    }
+
+    /**
+     * Creates a connected simulator whose measurements take no device time, so that tests
+     * depend on the link and the antenna model only
+     *
+     * @param model antenna model
+     * @return connected simulator
+     */
+    static SimulatorIntf instant(AntennaModel model) {
+        SimulatorIntf dev = new SimulatorIntf();
+        dev.setCommandTime(CMD_SARK_MEAS_RX, 0);
+        dev.setCommandTime(CMD_SARK_MEAS_RX_EXT, 0);
+        dev.setAntennaModel(model);
+        dev.connect();
+        return dev;
+    }
+
+    /**
+     * Creates a connected simulator of a 50 ohm load whose measurements take no device time
+     */
+    static SimulatorIntf instant() {
+        return instant(new DummyLoad(50));
+    }
+
+    /* Model configuration */
+    void setAntennaModel(AntennaModel model) {
+        mModel = model;
+    }
+
+    /**
+     * Sets the link timing
+     *
+     * @param latency   round trip in ns; commands in flight overlap their latency
+     * @param jitter    random extra delay in ns
+     * @param dropRate  probability of a reply being lost
+     */
+    void setLink(long latency, long jitter, double dropRate) {
+        mLatency = latency;
+        mJitter = jitter;
+        mDropRate = dropRate;
+    }
+
+    /**
+     * Sets how long Rcv() waits for a dropped reply before failing
+     *
+     * @param timeout time in ns
+     */
+    void setRcvTimeout(long timeout) {
+        mRcvTimeout = timeout;
+    }
+
+    /**
+     * Sets the device processing time of one command; commands are processed one at a time.
+     * Measurement commands take this time per averaging sample.
+     *
+     * @param cmd   command code
+     * @param time  time in ns
+     */
+    void setCommandTime(int cmd, long time) {
+        mCmdTime[cmd & 0xff] = time;
+    }
+
+    int getCommandCount() {
+        return mCommands;
+    }
+
+    int getDroppedCount() {
+        return mDropped;
+    }
+
+    /* life-cycle */
+    void onCreate() {
+        connect();
+    }
+
+    void onResume() {
+    }
+
+    void connect() {
+        connectStarted();
+        mConnected = true;
+        if (mListener != null)
+            mListener.onConnectionStateChanged(this, true);
+    }
+
+    void close() {
+        mConnected = false;
+        Purge();
+        if (mListener != null)
+            mListener.onConnectionStateChanged(this, false);
+    }
+
+    boolean IsAvailable() {
+        return true;
+    }
+
+    int getMaxPipelineDepth() {
+        return MAX_PIPELINE_DEPTH;
+    }
+
+    /* transport */
+    protected int SendRcv(byte snd[], byte rcv[]) {
+        if (Send(snd) < 0)
+            return -1;
+        markSent();
+        return Rcv(rcv);
+    }
+
+    synchronized int Send(byte snd[]) {
+        if (!mConnected)
+            return -1;
+        mCommands++;
+        long now = System.nanoTime();
+        long half = (mLatency + (mJitter > 0 ? (long) (mRandom.nextDouble() * mJitter) : 0)) / 2;
+        int samples = Math.max(1, snd[6] & 0xff);
+        long start = Math.max(now + half, mBusyUntil);
+        mBusyUntil = start + mCmdTime[snd[0] & 0xff] * (isMeasure(snd[0]) ? samples : 1);
+
+        byte rcv[] = null;
+        if (mDropRate <= 0 || mRandom.nextDouble() >= mDropRate) {
+            rcv = new byte[COMMAND_LEN];
+            answer(snd, rcv);
+        } else {
+            mDropped++;
+        }
+        mReplies.add(rcv == null ? new byte[0] : rcv);
+        mReadyAt.add(mBusyUntil + half + (rcv == null ? mRcvTimeout : 0));
+        return COMMAND_LEN;
+    }
+
+    int Rcv(byte rcv[]) {
+        byte reply[];
+        long readyAt;
+        synchronized (this) {
+            if (!mConnected || mReplies.isEmpty())
+                return -1;
+            reply = mReplies.poll();
+            readyAt = mReadyAt.poll();
+        }
+        long wait = readyAt - System.nanoTime();
+        if (wait > 0)
+            LockSupport.parkNanos(wait);
+        if (reply.length == 0)
+            return -1;
+        System.arraycopy(reply, 0, rcv, 0, COMMAND_LEN);
+        return COMMAND_LEN;
+    }
+
+    synchronized void Purge() {
+        mReplies.clear();
+        mReadyAt.clear();
+    }
+
+    /*
+     * Firmware emulation
+     */
+    private static boolean isMeasure(int cmd) {
+        return cmd == CMD_SARK_MEAS_RX || cmd == CMD_SARK_MEAS_RX_EXT
+                || cmd == CMD_SARK_MEAS_VECTOR || cmd == CMD_SARK_MEAS_RF;
+    }
+
+    private void answer(byte snd[], byte rcv[]) {
+        int freq = getInt(snd, 1);
+        rcv[0] = ANS_SARK_OK;
+        switch (snd[0]) {
+            case CMD_SARK_VERSION:
+                putShort(rcv, 1, SIM_PROTOCOL_VER);
+                byte ver[] = SIM_VERSION.getBytes();
+                System.arraycopy(ver, 0, rcv, 3, Math.min(ver.length, COMMAND_LEN - 3));
+                break;
+            case CMD_SARK_MEAS_RX:
+                if (!validFreq(freq)) {
+                    rcv[0] = ANS_SARK_ERR;
+                    break;
+                }
+                mModel.impedance(freq, mZ);
+                putInt(rcv, 1, Float.floatToIntBits((float) mZ[0]));
+                putInt(rcv, 5, Float.floatToIntBits((float) mZ[1]));
+                break;
+            case CMD_SARK_MEAS_RX_EXT:
+                int step = getInt(snd, 7);
+                if (!validFreq(freq) || !validFreq(freq + 3 * step)) {
+                    rcv[0] = ANS_SARK_ERR;
+                    break;
+                }
+                for (int i = 0; i < EXT_POINTS; i++) {
+                    mModel.impedance(freq + i * step, mZ);
+                    putShort(rcv, 1 + 4 * i, floatToHalf((float) mZ[0]));
+                    putShort(rcv, 3 + 4 * i, floatToHalf((float) mZ[1]));
+                }
+                break;
+            case CMD_SARK_MEAS_VECTOR:
+                if (!validFreq(freq)) {
+                    rcv[0] = ANS_SARK_ERR;
+                    break;
+                }
+                /* Unit current through the load: V = Z */
+                mModel.impedance(freq, mZ);
+                putInt(rcv, 1, Float.floatToIntBits((float) Math.hypot(mZ[0], mZ[1])));
+                putInt(rcv, 5, Float.floatToIntBits((float) Math.toDegrees(Math.atan2(mZ[1], mZ[0]))));
+                putInt(rcv, 9, Float.floatToIntBits(1.0f));
+                putInt(rcv, 13, Float.floatToIntBits(0.0f));
+                break;
+            case CMD_SARK_MEAS_RF:
+                /* No external signal: detector noise floor */
+                putInt(rcv, 1, Float.floatToIntBits(1e-6f));
+                putInt(rcv, 9, Float.floatToIntBits(1e-6f));
+                break;
+            case CMD_SARK_SIGNAL_GEN:
+            case CMD_BUZZER:
+            case CMD_DEV_RST:
+                break;
+            default:
+                rcv[0] = ANS_SARK_ERR;
+                break;
+        }
+    }
+
+    private static boolean validFreq(int freq) {
+        return freq == 0 || (freq >= GblDefs.MIN_FREQ && freq <= GblDefs.MAX_FREQ);
+    }
+}
@@ -0,0 +1,305 @@
+package com.sark110.sark110_android_template;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+public class SmithChartView extends View implements SweepEngine.SweepListener {
+    private static final int TRACE_COLOR = 0xFF1565C0;
+    private static final int GRID_COLOR = 0xFFB0B0B0;
+    private static final int MARKER_COLOR = 0xFFC62828;
+    private static final float GRID_R[] = {0, 0.2f, 0.5f, 1, 2, 5};     /* Normalized resistance circles */
+    private static final float GRID_X[] = {0.2f, 0.5f, 1, 2, 5};        /* Normalized reactance arcs, +/- */
+    private static final float PADDING = 8;         /* dp */
+    private static final float LINE_WIDTH = 1.5f;   /* dp */
+    private static final float TEXT_SIZE = 14;      /* sp */
+    private static final float MAX_ZOOM = 20;
+
+    /* Guards the trace, written by the sweep thread and drawn on the main thread */
+    private final Object mLock = new Object();
+    private final SmithTrace mTrace = new SmithTrace();
+    private int mPoints;
+    private boolean mInvalidatePending;
+
+    /* Main thread only */
+    private Bitmap mGrid;                           /* Grid at zoom 1, drawn once per size */
+    private final Paint mGridPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint mTracePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mMarkerPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final ReadoutFormatter mReadout = new ReadoutFormatter(64);
+    private final float mDensity;
+    private float mCenterX, mCenterY, mRadius;      /* Unit circle at zoom 1 */
+    private float mZoom = 1;
+    private float mPanX, mPanY;                     /* Pixels */
+    private int mMarker = -1;                       /* Point index; stays on it in later sweeps */
+    private float mMarkerRe, mMarkerIm;             /* Marker point in the reflection plane */
+    private final ScaleGestureDetector mScaleDetector;
+    private final GestureDetector mGestureDetector;
+
+    public SmithChartView(Context context) {
+        this(context, null);
+    }
+
+    public SmithChartView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public SmithChartView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        mDensity = getResources().getDisplayMetrics().density;
+        mGridPaint.setColor(GRID_COLOR);
+        mGridPaint.setStyle(Paint.Style.STROKE);
+        mTracePaint.setColor(TRACE_COLOR);
+        mTracePaint.setStyle(Paint.Style.STROKE);
+        mMarkerPaint.setColor(MARKER_COLOR);
+        mMarkerPaint.setStyle(Paint.Style.STROKE);
+        mMarkerPaint.setStrokeWidth(LINE_WIDTH * mDensity);
+        mTextPaint.setColor(MARKER_COLOR);
+        mTextPaint.setTextSize(TEXT_SIZE * getResources().getDisplayMetrics().scaledDensity);
+
+        mScaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                zoomAt(detector.getFocusX(), detector.getFocusY(), detector.getScaleFactor());
+                return true;
+            }
+        });
+        mGestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                mPanX -= distanceX;
+                mPanY -= distanceY;
+                invalidate();
+                return true;
+            }
+
+            @Override
+            public boolean onSingleTapConfirmed(MotionEvent e) {
+                setMarkerAt(e.getX(), e.getY());
+                return true;
+            }
+
+            @Override
+            public boolean onDoubleTap(MotionEvent e) {
+                resetView();
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Sets the reference impedance of the chart; applies from the next sweep
+     *
+     * @param z0 impedance in ohms
+     */
+    public void setRefImp(float z0) {
+        synchronized (mLock) {
+            mTrace.setRefImp(z0);
+        }
+    }
+
+    /**
+     * Plots new points of a sweep. Safe to call from any thread; the chart redraws at most once
+     * per display frame however often it is called. A chunk at index 0 starts a new sweep.
+     *
+     * @param result    sweep being filled; its capacity is the number of points in the sweep
+     * @param index     index of the first new point
+     * @param count     number of new points
+     */
+    public void addPoints(SweepResult result, int index, int count) {
+        boolean post;
+        synchronized (mLock) {
+            int points = result.capacity();
+            if (index == 0 || points != mPoints) {
+                mPoints = points;
+                mTrace.begin(points);
+            }
+            for (int i = index; i < index + count; i++)
+                mTrace.add(i, result.getFreq(i), result.getRs(i), result.getXs(i));
+            post = !mInvalidatePending;
+            mInvalidatePending = true;
+        }
+        if (post)
+            postInvalidateOnAnimation();
+    }
+
+    @Override
+    public void onSweepChunk(SweepEngine engine, SweepResult result, int index, int count) {
+        addPoints(result, index, count);
+    }
+
+    @Override
+    public void onSweepDone(SweepEngine engine, int points) {
+    }
+
+    /**
+     * Back to the whole chart, without zoom or pan
+     */
+    public void resetView() {
+        mZoom = 1;
+        mPanX = 0;
+        mPanY = 0;
+        invalidate();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = mScaleDetector.onTouchEvent(event);
+        handled |= mGestureDetector.onTouchEvent(event);
+        return handled || super.onTouchEvent(event);
+    }
+
+    private void zoomAt(float x, float y, float factor) {
+        float zoom = Math.max(1, Math.min(MAX_ZOOM, mZoom * factor));
+        factor = zoom / mZoom;
+        /* Keep the point under the fingers in place */
+        mPanX = (mPanX + mCenterX - x) * factor + x - mCenterX;
+        mPanY = (mPanY + mCenterY - y) * factor + y - mCenterY;
+        mZoom = zoom;
+        invalidate();
+    }
+
+    /* Marker on the point nearest to a touch, looked up in the trace spatial index */
+    private void setMarkerAt(float x, float y) {
+        float scale = mRadius * mZoom;
+        synchronized (mLock) {
+            mMarker = mTrace.nearest((x - mCenterX - mPanX) / scale, -(y - mCenterY - mPanY) / scale);
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mCenterX = w / 2.0f;
+        mCenterY = h / 2.0f;
+        mRadius = Math.max(0, Math.min(w, h) / 2.0f - PADDING * mDensity);
+        if (mGrid != null) {
+            mGrid.recycle();
+            mGrid = null;
+        }
+        if (w > 0 && h > 0)
+            mGrid = drawGrid(w, h);
+    }
+
+    /* The grid only depends on the size: drawn here once, then drawn as a bitmap */
+    private Bitmap drawGrid(int w, int h) {
+        Bitmap bitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        mGridPaint.setStrokeWidth(mDensity);
+        float r = mRadius;
+        canvas.drawLine(mCenterX - r, mCenterY, mCenterX + r, mCenterY, mGridPaint);
+        for (float rn : GRID_R) {
+            /* Constant resistance: center (rn / (rn + 1), 0), radius 1 / (rn + 1) */
+            float cr = 1 / (rn + 1);
+            canvas.drawCircle(mCenterX + r * rn * cr, mCenterY, r * cr, mGridPaint);
+        }
+        /* Constant reactance: center (1, 1 / xn), radius 1 / xn, inside the unit circle only */
+        Path unit = new Path();
+        unit.addCircle(mCenterX, mCenterY, r, Path.Direction.CW);
+        canvas.save();
+        canvas.clipPath(unit);
+        for (float xn : GRID_X) {
+            canvas.drawCircle(mCenterX + r, mCenterY - r / xn, r / xn, mGridPaint);
+            canvas.drawCircle(mCenterX + r, mCenterY + r / xn, r / xn, mGridPaint);
+        }
+        canvas.restore();
+        return bitmap;
+    }
+
+    /*
+     * Zoom and pan are canvas transforms: the cached grid bitmap and the trace, kept in the
+     * reflection plane, are only drawn again with a different matrix. A new chunk only adds its
+     * segments to the trace buffer.
+     */
+    @Override
+    protected void onDraw(Canvas canvas) {
+        float lines[];
+        int count;
+        boolean marker;
+        synchronized (mLock) {
+            mInvalidatePending = false;
+            mTrace.updateLines();
+            lines = mTrace.getLines();
+            count = mTrace.getLineCount();
+            /* Shown once the marker point of the current sweep is in */
+            marker = mTrace.isSet(mMarker);
+            if (marker)
+                formatMarker(mMarker);
+        }
+        if (mGrid == null)
+            return;
+
+        float scale = mRadius * mZoom;
+        canvas.save();
+        canvas.translate(mCenterX + mPanX, mCenterY + mPanY);
+        canvas.scale(mZoom, mZoom);
+        canvas.translate(-mCenterX, -mCenterY);
+        canvas.drawBitmap(mGrid, 0, 0, mBitmapPaint);
+        canvas.restore();
+
+        if (count > 1) {
+            canvas.save();
+            canvas.translate(mCenterX + mPanX, mCenterY + mPanY);
+            canvas.scale(scale, -scale);
+            mTracePaint.setStrokeWidth(LINE_WIDTH * mDensity / scale);
+            canvas.drawLines(lines, 4, (count - 1) * 4, mTracePaint);
+            canvas.restore();
+        }
+        if (marker) {
+            float x = mCenterX + mPanX + mMarkerRe * scale;
+            float y = mCenterY + mPanY - mMarkerIm * scale;
+            canvas.drawCircle(x, y, 4 * mDensity, mMarkerPaint);
+            canvas.drawText(mReadout.getChars(), 0, mReadout.length(), PADDING * mDensity,
+                    PADDING * mDensity - mTextPaint.ascent(), mTextPaint);
+        }
+    }
+
+    /* Marker position and readout */
+    private void formatMarker(int i) {
+        mMarkerRe = mTrace.getRe(i);
+        mMarkerIm = mTrace.getIm(i);
+        float vswr = MeasureMath.vswr(MeasureMath.mod(mMarkerRe, mMarkerIm));
+        mReadout.clear().appendEng(mTrace.getFreq(i), 6, "Hz").append("  ")
+                .appendImpedance(mTrace.getRs(i), mTrace.getXs(i), 2).append("  VSWR ").appendFixed(vswr, 2);
+    }
+}
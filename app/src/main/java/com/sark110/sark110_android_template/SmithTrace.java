@@ -0,0 +1,244 @@
+package com.sark110.sark110_android_template;
+
+import java.util.Arrays;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+final class SmithTrace {
+    static final int CELLS = 32;                /* Spatial index cells per side, over |re|, |im| <= 1 */
+    private static final float CELL_SIZE = 2.0f / CELLS;
+
+    /* Points of the current sweep; reallocated only when a sweep needs more */
+    private int mPoints;
+    private int mFreq[] = new int[0];
+    private float mRs[] = new float[0];
+    private float mXs[] = new float[0];
+    private float mRe[] = new float[0];         /* Reflection coefficient */
+    private float mIm[] = new float[0];
+    private boolean mSet[] = new boolean[0];
+    private float mRefImp = 50.0f;
+
+    /* Spatial index: per cell, a list of points linked through mNext */
+    private final int mCellHead[] = new int[CELLS * CELLS];
+    private int mNext[] = new int[0];
+
+    /* Trace as line segments in the reflection plane; segment i joins points i-1 and i */
+    private float mLines[] = new float[0];
+    private int mCount;                         /* Points 0..mCount-1 are all set */
+    private int mBuilt;                         /* Segments built up to this point */
+
+    SmithTrace() {
+        Arrays.fill(mCellHead, -1);
+    }
+
+    void setRefImp(float z0) {
+        mRefImp = z0;
+    }
+
+    /**
+     * Starts a new sweep, clearing the trace
+     *
+     * @param points number of points in the sweep
+     */
+    void begin(int points) {
+        if (points > mFreq.length) {
+            mFreq = new int[points];
+            mRs = new float[points];
+            mXs = new float[points];
+            mRe = new float[points];
+            mIm = new float[points];
+            mSet = new boolean[points];
+            mNext = new int[points];
+            mLines = new float[points * 4];
+        }
+        mPoints = points;
+        Arrays.fill(mSet, false);
+        Arrays.fill(mCellHead, -1);
+        mCount = 0;
+        mBuilt = 0;
+    }
+
+    /**
+     * Adds one point. The reflection coefficient is computed from R and X directly; the
+     * point goes into the spatial index at once and into the trace once the points before it
+     * are in. A point already added is ignored.
+     *
+     * @param index point index; 0..points-1
+     * @param freq  frequency in Hz
+     * @param rs    series resistance
+     * @param xs    series reactance
+     */
+    void add(int index, int freq, float rs, float xs) {
+        if (index < 0 || index >= mPoints || mSet[index])
+            return;
+        float re = (float) MeasureMath.rhoRe(rs, xs, mRefImp);
+        float im = (float) MeasureMath.rhoIm(rs, xs, mRefImp);
+        if (re != re || im != im)
+            return;
+        mFreq[index] = freq;
+        mRs[index] = rs;
+        mXs[index] = xs;
+        mRe[index] = re;
+        mIm[index] = im;
+        mSet[index] = true;
+        int cell = cell(re, im);
+        mNext[index] = mCellHead[cell];
+        mCellHead[cell] = index;
+        while (mCount < mPoints && mSet[mCount])
+            mCount++;
+    }
+
+    /**
+     * Writes the segments of the points added since the last call; older ones are left as they are
+     */
+    void updateLines() {
+        for (int i = Math.max(1, mBuilt); i < mCount; i++) {
+            int p = i * 4;
+            mLines[p] = mRe[i - 1];
+            mLines[p + 1] = mIm[i - 1];
+            mLines[p + 2] = mRe[i];
+            mLines[p + 3] = mIm[i];
+        }
+        mBuilt = Math.max(mBuilt, mCount);
+    }
+
+    /* Segments as of the last updateLines(), for Canvas.drawLines(pts, 4, (count - 1) * 4, paint) */
+    float[] getLines() {
+        return mLines;
+    }
+
+    /* Points in the trace as of the last updateLines() */
+    int getLineCount() {
+        return mBuilt;
+    }
+
+    /**
+     * Finds the point nearest to a position of the reflection plane. Only the cells that can
+     * hold a nearer point than the best so far are searched.
+     *
+     * @param re    real part
+     * @param im    imaginary part
+     * @return point index; -1 if the trace is empty
+     */
+    int nearest(float re, float im) {
+        int cx = cellCoord(re);
+        int cy = cellCoord(im);
+        int best = -1;
+        float bestDist = Float.MAX_VALUE;
+        for (int ring = 0; ring < CELLS; ring++) {
+            /* Every point in this ring is at least this far: done if the best is nearer */
+            if (best >= 0) {
+                float reach = distanceToRing(re, im, cx, cy, ring);
+                if (reach * reach > bestDist)
+                    break;
+            }
+            for (int y = cy - ring; y <= cy + ring; y++) {
+                if (y < 0 || y >= CELLS)
+                    continue;
+                boolean edge = y == cy - ring || y == cy + ring;
+                for (int x = cx - ring; x <= cx + ring; x += edge ? 1 : 2 * ring) {
+                    if (x >= 0 && x < CELLS) {
+                        for (int i = mCellHead[y * CELLS + x]; i >= 0; i = mNext[i]) {
+                            float dx = mRe[i] - re, dy = mIm[i] - im;
+                            float d = dx * dx + dy * dy;
+                            if (d < bestDist || (d == bestDist && i < best)) {
+                                bestDist = d;
+                                best = i;
+                            }
+                        }
+                    }
+                    if (ring == 0)
+                        break;
+                }
+            }
+        }
+        return best;
+    }
+
+    int size() {
+        return mPoints;
+    }
+
+    boolean isSet(int index) {
+        return index >= 0 && index < mPoints && mSet[index];
+    }
+
+    int getFreq(int index) {
+        return mFreq[index];
+    }
+
+    float getRs(int index) {
+        return mRs[index];
+    }
+
+    float getXs(int index) {
+        return mXs[index];
+    }
+
+    float getRe(int index) {
+        return mRe[index];
+    }
+
+    float getIm(int index) {
+        return mIm[index];
+    }
+
+    float getRefImp() {
+        return mRefImp;
+    }
+
+    /* Points off the chart (active loads) go into the edge cells */
+    private static int cellCoord(float v) {
+        int c = (int) Math.floor((v + 1.0f) / CELL_SIZE);
+        return c < 0 ? 0 : (c >= CELLS ? CELLS - 1 : c);
+    }
+
+    private static int cell(float re, float im) {
+        return cellCoord(im) * CELLS + cellCoord(re);
+    }
+
+    /*
+     * Lower bound of the distance from (re, im) to any point in the cells of a ring around
+     * (cx, cy): the distance to the inner border of the ring. Edge cells also hold the points
+     * beyond the chart, so a ring that reaches an edge is not bounded on that side.
+     */
+    private static float distanceToRing(float re, float im, int cx, int cy, int ring) {
+        float left = (cx - ring + 1) * CELL_SIZE - 1.0f;
+        float right = (cx + ring) * CELL_SIZE - 1.0f;
+        float bottom = (cy - ring + 1) * CELL_SIZE - 1.0f;
+        float top = (cy + ring) * CELL_SIZE - 1.0f;
+        float d = Float.MAX_VALUE;
+        if (cx - ring >= 0)
+            d = Math.min(d, re - left);
+        if (cx + ring < CELLS)
+            d = Math.min(d, right - re);
+        if (cy - ring >= 0)
+            d = Math.min(d, im - bottom);
+        if (cy + ring < CELLS)
+            d = Math.min(d, top - im);
+        return Math.max(0, d);
+    }
+}
@@ -0,0 +1,250 @@
+package com.sark110.sark110_android_template;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+class SweepCache {
+    static final int POINT_BYTES = 12;          /* freq, Rs, Xs */
+    static final int ENTRY_OVERHEAD = 128;      /* Key, entry, arrays and map node; approximate */
+
+    /**
+     * Identifies a sweep by what the device measured; the reference impedance is not part of
+     * it because it is applied on the cached R/X.
+     */
+    static final class Key {
+        final int mStart;
+        final int mStep;
+        final int mPoints;
+        final byte mSamples;
+        final int mCal;
+
+        /**
+         * @param start     start frequency in Hz
+         * @param step      step in Hz
+         * @param points    number of points
+         * @param samples   number of samples for averaging
+         * @param cal       calibration state; ProtocolCodec.PAR_SARK_CAL or PAR_SARK_UNCAL
+         */
+        Key(int start, int step, int points, byte samples, int cal) {
+            mStart = start;
+            mStep = step;
+            mPoints = points;
+            mSamples = samples;
+            mCal = cal;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return mStart == k.mStart && mStep == k.mStep && mPoints == k.mPoints
+                    && mSamples == k.mSamples && mCal == k.mCal;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = mStart;
+            h = 31 * h + mStep;
+            h = 31 * h + mPoints;
+            h = 31 * h + mSamples;
+            return 31 * h + mCal;
+        }
+    }
+
+    private static class Entry {
+        final SweepResult mResult;
+        final long mTime;       /* System.nanoTime() when measured */
+
+        Entry(SweepResult result, long time) {
+            mResult = result;
+            mTime = time;
+        }
+    }
+
+    private final DeviceExecutor mExecutor;
+    private final SweepEngine mEngine;
+    private final long mMaxBytes;
+    private long mTtl;          /* ns; 0 for no expiry */
+    private long mBytes;
+    private int mHits;
+    private int mMisses;
+
+    /* Access order: the eldest entry is the least recently used */
+    private final LinkedHashMap<Key, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Key> mRefreshing = new HashSet<>();
+
+    /**
+     * @param executor  device I/O executor; refresh sweeps run there
+     * @param maxBytes  memory limit of the cached sweeps
+     */
+    SweepCache(DeviceExecutor executor, long maxBytes) {
+        this.mExecutor = executor;
+        this.mEngine = new SweepEngine(executor.getDeviceIntf());
+        this.mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Sets how long a sweep may be served from the cache
+     *
+     * @param ttl time in ms; 0 to never expire
+     */
+    public synchronized void setTtl(long ttl) {
+        mTtl = ttl * 1000000L;
+    }
+
+    static Key key(int start, int stop, int points, byte samples) {
+        int step = (points > 1) ? (stop - start) / (points - 1) : 0;
+        return new Key(start, step, points, samples, ProtocolCodec.PAR_SARK_CAL);
+    }
+
+    /**
+     * Gets a sweep for painting and re-measures it in the background. The cached copy, if any,
+     * is returned at once; the fresh sweep replaces it and is passed to the callback.
+     *
+     * @param start     start frequency in Hz
+     * @param stop      stop frequency in Hz
+     * @param points    number of points
+     * @param samples   number of samples for averaging
+     * @param z0        reference impedance of the returned results
+     * @param callback  receives the fresh sweep, or null if the sweep failed; may be null
+     * @return cached sweep; or null if not cached
+     */
+    public SweepResult fetch(final int start, final int stop, final int points, final byte samples,
+                             final float z0, final DeviceExecutor.Callback<SweepResult> callback) {
+        final Key key = key(start, stop, points, samples);
+        SweepResult cached = get(key, z0);
+        synchronized (this) {
+            if (!mRefreshing.add(key))
+                return cached;          /* Already being measured */
+        }
+        mExecutor.submit(new Callable<SweepResult>() {
+            @Override
+            public SweepResult call() {
+                SweepResult result = null;
+                try {
+                    result = mEngine.Sweep(start, stop, points, samples, null);
+                    if (result != null)
+                        put(key, result);
+                } finally {
+                    synchronized (SweepCache.this) {
+                        mRefreshing.remove(key);
+                    }
+                }
+                return (result == null) ? null : copy(result, z0);
+            }
+        }, callback);
+        return cached;
+    }
+
+    /**
+     * Gets a cached sweep referred to any impedance; never touches the device
+     *
+     * @param key   sweep identity
+     * @param z0    reference impedance of the returned result
+     * @return a copy of the cached sweep; or null if not cached or expired
+     */
+    public synchronized SweepResult get(Key key, float z0) {
+        Entry entry = mEntries.get(key);
+        if (entry != null && mTtl > 0 && System.nanoTime() - entry.mTime > mTtl) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        return copy(entry.mResult, z0);
+    }
+
+    /**
+     * Stores a sweep, evicting the least recently used ones beyond the memory limit
+     *
+     * @param key       sweep identity
+     * @param result    sweep data; owned by the cache afterwards
+     */
+    public synchronized void put(Key key, SweepResult result) {
+        remove(key);
+        long bytes = bytes(result);
+        if (bytes > mMaxBytes)
+            return;
+        mEntries.put(key, new Entry(result, System.nanoTime()));
+        mBytes += bytes;
+        Iterator<Map.Entry<Key, Entry>> it = mEntries.entrySet().iterator();
+        while (mBytes > mMaxBytes && it.hasNext()) {
+            mBytes -= bytes(it.next().getValue().mResult);
+            it.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+        mBytes = 0;
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    public synchronized int getHits() {
+        return mHits;
+    }
+
+    public synchronized int getMisses() {
+        return mMisses;
+    }
+
+    private void remove(Key key) {
+        Entry old = mEntries.remove(key);
+        if (old != null)
+            mBytes -= bytes(old.mResult);
+    }
+
+    private static long bytes(SweepResult result) {
+        return (long) result.capacity() * POINT_BYTES + ENTRY_OVERHEAD;
+    }
+
+    private static SweepResult copy(SweepResult src, float z0) {
+        SweepResult dst = new SweepResult(src.size());
+        System.arraycopy(src.freqArray(), 0, dst.freqArray(), 0, src.size());
+        System.arraycopy(src.rsArray(), 0, dst.rsArray(), 0, src.size());
+        System.arraycopy(src.xsArray(), 0, dst.xsArray(), 0, src.size());
+        dst.setSize(src.size());
+        dst.set_RefImp(z0);
+        return dst;
+    }
+}
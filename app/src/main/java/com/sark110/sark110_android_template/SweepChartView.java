@@ -0,0 +1,224 @@
+package com.sark110.sark110_android_template;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+public class SweepChartView extends View implements SweepEngine.SweepListener {
+    /* Traces */
+    public static final int TRACE_VSWR = 0;
+    public static final int TRACE_RS = 1;
+    public static final int TRACE_XS = 2;
+    public static final int TRACE_ZS = 3;         /* |Z| */
+    private static final int TRACES = 4;
+
+    private static final int TRACE_COLORS[] = {0xFF1565C0, 0xFF2E7D32, 0xFFC62828, 0xFFEF6C00};
+    private static final int GRID_COLOR = 0xFFD0D0D0;
+    private static final int GRID_X = 10;           /* Divisions */
+    private static final int GRID_Y = 8;
+    private static final float PADDING = 8;         /* dp */
+    private static final float LINE_WIDTH = 1.5f;   /* dp */
+
+    /* Guards the traces, written by the sweep thread and drawn on the main thread */
+    private final Object mLock = new Object();
+    private final TraceDecimator mTraces[] = new TraceDecimator[TRACES];
+    private final boolean mVisible[] = new boolean[TRACES];
+    private int mPoints;
+    private boolean mInvalidatePending;
+
+    /* Main thread only */
+    private final Paint mTracePaint[] = new Paint[TRACES];
+    private final Paint mGridPaint = new Paint();
+    private final float mGrid[] = new float[(GRID_X + 1 + GRID_Y + 1) * 4];
+
+    public SweepChartView(Context context) {
+        super(context);
+        init();
+    }
+
+    public SweepChartView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public SweepChartView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    private void init() {
+        float density = getResources().getDisplayMetrics().density;
+        for (int i = 0; i < TRACES; i++) {
+            mTraces[i] = new TraceDecimator();
+            mVisible[i] = true;
+            mTracePaint[i] = new Paint(Paint.ANTI_ALIAS_FLAG);
+            mTracePaint[i].setColor(TRACE_COLORS[i]);
+            mTracePaint[i].setStyle(Paint.Style.STROKE);
+            mTracePaint[i].setStrokeWidth(LINE_WIDTH * density);
+        }
+        mGridPaint.setColor(GRID_COLOR);
+        mGridPaint.setStyle(Paint.Style.STROKE);
+        mTraces[TRACE_VSWR].setRange(1, 10);
+        setImpedanceRange(-250, 250);
+    }
+
+    /**
+     * Sets the values shown at the bottom and top of the chart for one trace
+     *
+     * @param trace TRACE_VSWR, TRACE_RS, TRACE_XS or TRACE_ZS
+     * @param lo    value at the bottom
+     * @param hi    value at the top; greater than lo
+     */
+    public void setRange(int trace, float lo, float hi) {
+        synchronized (mLock) {
+            mTraces[trace].setRange(lo, hi);
+        }
+        invalidate();
+    }
+
+    /**
+     * Sets the same range for the R, X and |Z| traces, in ohms
+     */
+    public void setImpedanceRange(float lo, float hi) {
+        synchronized (mLock) {
+            mTraces[TRACE_RS].setRange(lo, hi);
+            mTraces[TRACE_XS].setRange(lo, hi);
+            mTraces[TRACE_ZS].setRange(lo, hi);
+        }
+        invalidate();
+    }
+
+    public void setTraceVisible(int trace, boolean visible) {
+        mVisible[trace] = visible;
+        invalidate();
+    }
+
+    /**
+     * Removes every trace
+     */
+    public void clear() {
+        synchronized (mLock) {
+            for (TraceDecimator t : mTraces)
+                t.clear();
+        }
+        invalidate();
+    }
+
+    /**
+     * Plots new points of a sweep. Safe to call from any thread; the chart redraws at most once
+     * per display frame however often it is called. A chunk at index 0 starts a new sweep,
+     * which overwrites the previous one from the left as it comes in.
+     *
+     * @param result    sweep being filled; its capacity is the number of points in the sweep
+     * @param index     index of the first new point
+     * @param count     number of new points
+     */
+    public void addPoints(SweepResult result, int index, int count) {
+        boolean post;
+        synchronized (mLock) {
+            int points = result.capacity();
+            if (index == 0 || points != mPoints) {
+                mPoints = points;
+                for (TraceDecimator t : mTraces)
+                    t.begin(points);
+            }
+            for (int i = index; i < index + count; i++) {
+                mTraces[TRACE_VSWR].add(i, result.getVswr(i));
+                mTraces[TRACE_RS].add(i, result.getRs(i));
+                mTraces[TRACE_XS].add(i, result.getXs(i));
+                mTraces[TRACE_ZS].add(i, result.getZsMag(i));
+            }
+            post = !mInvalidatePending;
+            mInvalidatePending = true;
+        }
+        if (post)
+            postInvalidateOnAnimation();
+    }
+
+    @Override
+    public void onSweepChunk(SweepEngine engine, SweepResult result, int index, int count) {
+        addPoints(result, index, count);
+    }
+
+    @Override
+    public void onSweepDone(SweepEngine engine, int points) {
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        float pad = PADDING * getResources().getDisplayMetrics().density;
+        float left = getPaddingLeft() + pad;
+        float top = getPaddingTop() + pad;
+        float right = w - getPaddingRight() - pad;
+        float bottom = h - getPaddingBottom() - pad;
+        /* One column per pixel: the traces never hold more than the screen can show */
+        int columns = Math.max(0, (int) (right - left) + 1);
+        synchronized (mLock) {
+            for (TraceDecimator t : mTraces)
+                t.setViewport(left, top, right, bottom, columns);
+        }
+        int p = 0;
+        for (int i = 0; i <= GRID_X; i++) {
+            float x = left + (right - left) * i / GRID_X;
+            mGrid[p++] = x;
+            mGrid[p++] = top;
+            mGrid[p++] = x;
+            mGrid[p++] = bottom;
+        }
+        for (int i = 0; i <= GRID_Y; i++) {
+            float y = top + (bottom - top) * i / GRID_Y;
+            mGrid[p++] = left;
+            mGrid[p++] = y;
+            mGrid[p++] = right;
+            mGrid[p++] = y;
+        }
+    }
+
+    /*
+     * Only the columns changed since the last frame are rebuilt, and each trace is a single
+     * drawLines() call over a preallocated buffer of at most two segments per pixel column.
+     * Lines are drawn directly by the GPU, while a Path would be rasterized on the CPU first.
+     */
+    @Override
+    protected void onDraw(Canvas canvas) {
+        synchronized (mLock) {
+            mInvalidatePending = false;
+            for (TraceDecimator t : mTraces)
+                t.updateLines();
+        }
+        canvas.drawLines(mGrid, mGridPaint);
+        for (int i = 0; i < TRACES; i++) {
+            TraceDecimator t = mTraces[i];
+            if (mVisible[i] && t.getLinesCount() > 0)
+                canvas.drawLines(t.getLines(), t.getLinesOffset(), t.getLinesCount(), mTracePaint[i]);
+        }
+    }
+}
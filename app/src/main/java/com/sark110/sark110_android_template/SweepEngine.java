@@ -0,0 +1,191 @@
+package com.sark110.sark110_android_template;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+class SweepEngine {
+    static final int CHUNK_POINTS = 4;      /* Points returned by one CMD_SARK_MEAS_RX_EXT */
+
+    private final DeviceIntf mDevIntf;
+    private volatile boolean mCancelled;
+    private int mCommands;
+
+    /**
+     * Receives the sweep data as it arrives from the device.
+     * Methods are called on the thread that runs Sweep().
+     */
+    public interface SweepListener {
+        /**
+         * Event fired for every chunk received from the device.
+         *
+         * @param engine    the sweep engine
+         * @param result    sweep being filled
+         * @param index     index of the first new point
+         * @param count     number of new points
+         */
+        void onSweepChunk(SweepEngine engine, SweepResult result, int index, int count);
+
+        /**
+         * Event fired when the sweep ends.
+         *
+         * @param engine    the sweep engine
+         * @param points    number of points delivered; <0 if the sweep failed or was cancelled
+         */
+        void onSweepDone(SweepEngine engine, int points);
+    }
+
+    SweepEngine(DeviceIntf devIntf) {
+        this.mDevIntf = devIntf;
+    }
+
+    /**
+     * Sweeps the start..stop range using the efficient four points measurement command.
+     * The step is (stop - start) / (points - 1) truncated to an integer number of hertz,
+     * so the last point may fall slightly below stop. A range narrower than points - 1 Hz
+     * fails rather than measuring the same frequency twice.
+     *
+     * @param start     start frequency in Hz
+     * @param stop      stop frequency in Hz
+     * @param points    number of points
+     * @param samples   number of samples for averaging
+     * @param listener  receives the chunks as they arrive; may be null
+     * @return sweep data; or null if error
+     */
+    public SweepResult Sweep(int start, int stop, int points, byte samples, SweepListener listener) {
+        if (points < 1)
+            return null;
+        SweepResult result = new SweepResult(points);
+        int status = Sweep(start, stop, samples, result, listener);
+        return (status < 0) ? null : result;
+    }
+
+    /**
+     * Sweeps the start..stop range into an existing result, as many points as its capacity.
+     *
+     * @param start     start frequency in Hz
+     * @param stop      stop frequency in Hz
+     * @param samples   number of samples for averaging
+     * @param result    receives the data; cleared first
+     * @param listener  receives the chunks as they arrive; may be null
+     * @return number of points measured; <0 error or cancelled
+     */
+    public int Sweep(int start, int stop, byte samples, SweepResult result, SweepListener listener) {
+        result.clear();
+        int status;
+        try {
+            status = sweepRange(start, stop, result.capacity(), samples, result, listener);
+        } finally {
+            clearCancel();
+        }
+        if (listener != null)
+            listener.onSweepDone(this, status);
+        return status;
+    }
+
+    /**
+     * Aborts the running sweep, or the next one if none is running, e.g. one still queued on
+     * the I/O thread; Sweep() returns after the command in progress.
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /* Drops a cancel() not consumed by a sweep; called when a sweep ends */
+    void clearCancel() {
+        mCancelled = false;
+    }
+
+    /**
+     * Gets the number of device commands used by the last sweep
+     *
+     * @return number of commands
+     */
+    public int getCommandCount() {
+        return mCommands;
+    }
+
+    private int sweepRange(final int start, int stop, final int points, final byte samples,
+                           final SweepResult result, final SweepListener listener) {
+        mCommands = 0;
+        if (points < 1 || start < GblDefs.MIN_FREQ || stop > GblDefs.MAX_FREQ || stop < start
+                || stop - start < points - 1 || mCancelled)
+            return -1;
+
+        final int step = (points > 1) ? (stop - start) / (points - 1) : 0;
+        if (points < CHUNK_POINTS || step == 0)
+            return sweepSingle(start, step, points, samples, result, listener);
+
+        final int chunks = (points + CHUNK_POINTS - 1) / CHUNK_POINTS;
+        final boolean[] failed = {false};
+        final float[] decoded = new float[2 * CHUNK_POINTS];
+        final boolean table = mDevIntf.isHalfFloatTable();
+
+        /* Chunks are pipelined; the last one is moved back so that it never measures beyond stop */
+        int status = mDevIntf.SendRcvPipelined(chunks, new DeviceIntf.PipelineClient() {
+            @Override
+            public void onSend(int index, byte[] snd) {
+                int base = Math.min(index * CHUNK_POINTS, points - CHUNK_POINTS);
+                ProtocolCodec.encodeMeasureExt(snd, start + base * step, step, samples);
+                mCommands++;
+            }
+
+            @Override
+            public boolean onReceive(int index, byte[] rcv, int status) {
+                int first = index * CHUNK_POINTS;
+                int base = Math.min(first, points - CHUNK_POINTS);
+                if (!ProtocolCodec.isOk(rcv)) {
+                    failed[0] = true;
+                    return false;
+                }
+                ProtocolCodec.decodeMeasureExt(rcv, decoded, 0, table);
+                for (int i = first - base; i < CHUNK_POINTS; i++)
+                    result.set(base + i, start + (base + i) * step, decoded[2 * i], decoded[2 * i + 1]);
+                if (listener != null)
+                    listener.onSweepChunk(SweepEngine.this, result, first, CHUNK_POINTS - (first - base));
+                return !mCancelled;
+            }
+        });
+        if (status < 0 || failed[0] || mCancelled)
+            return -1;
+        return points;
+    }
+
+    private int sweepSingle(int start, int step, int points, byte samples,
+                            SweepResult result, SweepListener listener) {
+        float[] decoded = new float[2];
+        for (int i = 0; i < points; i++) {
+            if (mCancelled)
+                return -1;
+            int freq = start + i * step;
+            mCommands++;
+            if (mDevIntf.MeasureCmd(freq, samples, decoded, 0) < 0)
+                return -1;
+            result.set(i, freq, decoded[0], decoded[1]);
+            if (listener != null)
+                listener.onSweepChunk(this, result, i, 1);
+        }
+        return points;
+    }
+}
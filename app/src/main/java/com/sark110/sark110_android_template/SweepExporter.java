@@ -0,0 +1,88 @@
+package com.sark110.sark110_android_template;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+abstract class SweepExporter implements Closeable {
+
+    /**
+     * Starts a sweep; writes the file header
+     *
+     * @param z0 reference impedance the metrics are referred to
+     */
+    abstract void begin(float z0) throws IOException;
+
+    /**
+     * Writes one point; points are written in the order given
+     *
+     * @param freq  frequency in Hz
+     * @param Rs    series resistance
+     * @param Xs    series reactance
+     */
+    abstract void point(int freq, float Rs, float Xs) throws IOException;
+
+    /**
+     * Ends the sweep; writes out everything buffered so far
+     */
+    abstract void end() throws IOException;
+
+    /**
+     * Exports a whole sweep
+     *
+     * @param result sweep data, referred to its reference impedance
+     */
+    void export(SweepResult result) throws IOException {
+        int freq[] = result.freqArray();
+        float rs[] = result.rsArray();
+        float xs[] = result.xsArray();
+        begin(result.get_RefImp());
+        for (int i = 0; i < result.size(); i++)
+            point(freq[i], rs[i], xs[i]);
+        end();
+    }
+
+    /**
+     * Exports measurements taken one by one, referred to the reference impedance of the first
+     *
+     * @param bins measurements; null entries (failed measurements) are skipped
+     */
+    void export(MeasureDataBin bins[]) throws IOException {
+        float z0 = 50.0f;
+        for (MeasureDataBin bin : bins) {
+            if (bin != null) {
+                z0 = bin.get_RefImp();
+                break;
+            }
+        }
+        begin(z0);
+        for (MeasureDataBin bin : bins)
+            if (bin != null)
+                point(bin.getFreq(), bin.getRs(), bin.getXs());
+        end();
+    }
+}
@@ -0,0 +1,168 @@
+package com.sark110.sark110_android_template;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+public class SweepMetrics {
+	static final int PARALLEL_THRESHOLD = 16384;	/* Points below which a single thread is faster */
+
+	/* Outputs; valid up to size() */
+	private final float[] mVswr;
+	private final float[] mRL;
+	private final float[] mRhMag;
+	private final float[] mRhAngle;
+	private final float[] mQ;
+	private final float[] mCs;
+	private final float[] mLs;
+	private int mSize;
+
+	/* Shared by all calculators; created on the first large sweep */
+	private static class PoolHolder {
+		static final ForkJoinPool POOL = new ForkJoinPool();
+	}
+
+	public SweepMetrics(int capacity) {
+		mVswr = new float[capacity];
+		mRL = new float[capacity];
+		mRhMag = new float[capacity];
+		mRhAngle = new float[capacity];
+		mQ = new float[capacity];
+		mCs = new float[capacity];
+		mLs = new float[capacity];
+	}
+
+	/**
+	 * Computes the metrics of a whole sweep
+	 *
+	 * @param result	sweep data; size must not exceed the capacity
+	 */
+	public void compute(SweepResult result) {
+		compute(result.freqArray(), result.rsArray(), result.xsArray(), result.get_RefImp(), result.size());
+	}
+
+	/**
+	 * Computes the metrics of count points. Same values as the MeasureDataBin getters;
+	 * large inputs are split across cores.
+	 *
+	 * @param freq	frequencies in Hz
+	 * @param rs	series resistances
+	 * @param xs	series reactances
+	 * @param z0	reference impedance
+	 * @param count	number of points
+	 */
+	public void compute(int[] freq, float[] rs, float[] xs, float z0, int count) {
+		if (count > mVswr.length)
+			throw new IllegalArgumentException("count exceeds capacity");
+		mSize = count;
+		if (count < PARALLEL_THRESHOLD)
+			computeRange(freq, rs, xs, z0, 0, count);
+		else
+			PoolHolder.POOL.invoke(new RangeTask(freq, rs, xs, z0, 0, count));
+	}
+
+	public int size() {
+		return mSize;
+	}
+	public float[] getVswr() {
+		return mVswr;
+	}
+	public float[] getRL() {
+		return mRL;
+	}
+	public float[] getRhMag() {
+		return mRhMag;
+	}
+	public float[] getRhAngle() {
+		return mRhAngle;
+	}
+	public float[] getQ() {
+		return mQ;
+	}
+	public float[] getCs() {
+		return mCs;
+	}
+	public float[] getLs() {
+		return mLs;
+	}
+
+	/*
+	 * Single pass over [from, to). The rho expressions follow MeasureMath so the clamping
+	 * and rounding are identical; the denominator is shared between Re and Im.
+	 */
+	private void computeRange(int[] freq, float[] rs, float[] xs, double z0, int from, int to) {
+		for (int i = from; i < to; i++) {
+			double r = rs[i];
+			double x = xs[i];
+			double ar = r - z0, ai = x - 0.0;
+			double br = r + z0, bi = x + 0.0;
+			double div = Math.pow(MeasureMath.mod(br, bi), 2);
+			double rhoRe = (ar * br - ai * (-bi)) / div;
+			double rhoIm = (ar * (-bi) + ai * br) / div;
+			double rhoMag = MeasureMath.mod(rhoRe, rhoIm);
+
+			mVswr[i] = MeasureMath.vswr(rhoMag);
+			mRL[i] = MeasureMath.returnLoss(rhoMag);
+			mRhMag[i] = (float) rhoMag;
+			mRhAngle[i] = MeasureMath.angle(rhoRe, rhoIm);
+			mQ[i] = MeasureMath.q(r, x);
+			mCs[i] = (float) MeasureMath.capacitance(x, freq[i]);
+			mLs[i] = (float) MeasureMath.inductance(x, freq[i]);
+		}
+	}
+
+	private class RangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int[] mFreqIn;
+		private final float[] mRsIn;
+		private final float[] mXsIn;
+		private final double mZ0;
+		private final int mFrom;
+		private final int mTo;
+
+		RangeTask(int[] freq, float[] rs, float[] xs, double z0, int from, int to) {
+			mFreqIn = freq;
+			mRsIn = rs;
+			mXsIn = xs;
+			mZ0 = z0;
+			mFrom = from;
+			mTo = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (mTo - mFrom <= PARALLEL_THRESHOLD / 2) {
+				computeRange(mFreqIn, mRsIn, mXsIn, mZ0, mFrom, mTo);
+				return;
+			}
+			int mid = (mFrom + mTo) >>> 1;
+			invokeAll(new RangeTask(mFreqIn, mRsIn, mXsIn, mZ0, mFrom, mid),
+					new RangeTask(mFreqIn, mRsIn, mXsIn, mZ0, mid, mTo));
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package com.sark110.sark110_android_template;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+public class SweepResult {
+	/* Parallel arrays; point i is (mFreq[i], mRs[i], mXs[i]) */
+	private final int[] mFreq;
+	private final float[] mRs;
+	private final float[] mXs;
+	private int mSize;
+	private float mRefImp = 50.0f;
+
+	public SweepResult(int capacity) {
+		mFreq = new int[capacity];
+		mRs = new float[capacity];
+		mXs = new float[capacity];
+	}
+
+	/**
+	 * Stores one point; the size grows to cover the highest index written
+	 *
+	 * @param index	point index
+	 * @param freq	frequency in Hz
+	 * @param Rs	series resistance
+	 * @param Xs	series reactance
+	 */
+	public void set(int index, int freq, float Rs, float Xs) {
+		mFreq[index] = freq;
+		mRs[index] = Rs;
+		mXs[index] = Xs;
+		if (index >= mSize)
+			mSize = index + 1;
+	}
+
+	public void clear() {
+		mSize = 0;
+	}
+
+	public int size() {
+		return mSize;
+	}
+
+	public int capacity() {
+		return mFreq.length;
+	}
+
+	public void set_RefImp(float r0) {
+		this.mRefImp = r0;
+	}
+
+	public float get_RefImp() {
+		return mRefImp;
+	}
+
+	/* Direct access to the backing arrays for bulk processing; valid up to size() */
+	int[] freqArray() {
+		return mFreq;
+	}
+	float[] rsArray() {
+		return mRs;
+	}
+	float[] xsArray() {
+		return mXs;
+	}
+	/* Sets the number of valid points after filling the backing arrays directly */
+	void setSize(int size) {
+		mSize = size;
+	}
+
+	/**
+	 * Copies one point into a MeasureDataBin, for code using the per-point API
+	 *
+	 * @param index	point index
+	 * @return new data bin referred to the same impedance
+	 */
+	public MeasureDataBin getBin(int index) {
+		MeasureDataBin bin = new MeasureDataBin(index, mFreq[index], mRs[index], mXs[index]);
+		bin.set_RefImp(mRefImp);
+		return bin;
+	}
+
+	/* Per-point metrics; same definitions as in MeasureDataBin */
+	public int getFreq(int index) {
+		return mFreq[index];
+	}
+	public float getRs(int index) {
+		return mRs[index];
+	}
+	public float getXs(int index) {
+		return mXs[index];
+	}
+	public float getZsMag(int index) {
+		return (float) MeasureMath.mod(mRs[index], mXs[index]);
+	}
+	public float getZsAngle(int index) {
+		return MeasureMath.angle(mRs[index], mXs[index]);
+	}
+	public float getVswr(int index) {
+		return MeasureMath.vswr(getRhoMag(index));
+	}
+	public float getRL(int index) {
+		return MeasureMath.returnLoss(getRhoMag(index));
+	}
+	public float getCL(int index) {
+		return MeasureMath.cableLoss(getRhoMag(index));
+	}
+	public float getRhMag(int index) {
+		return (float) getRhoMag(index);
+	}
+	public float getRhAngle(int index) {
+		return MeasureMath.angle(MeasureMath.rhoRe(mRs[index], mXs[index], mRefImp),
+				MeasureMath.rhoIm(mRs[index], mXs[index], mRefImp));
+	}
+	public float getRefPwr(int index) {
+		return MeasureMath.refPwr(getRhoMag(index));
+	}
+	public float getQ(int index) {
+		return MeasureMath.q(mRs[index], mXs[index]);
+	}
+	public float getCs(int index) {
+		return (float) MeasureMath.capacitance(mXs[index], mFreq[index]);
+	}
+	public float getLs(int index) {
+		return (float) MeasureMath.inductance(mXs[index], mFreq[index]);
+	}
+
+	private double getRhoMag(int index) {
+		return MeasureMath.mod(MeasureMath.rhoRe(mRs[index], mXs[index], mRefImp),
+				MeasureMath.rhoIm(mRs[index], mXs[index], mRefImp));
+	}
+}
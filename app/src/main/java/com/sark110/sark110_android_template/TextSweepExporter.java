@@ -0,0 +1,101 @@
+package com.sark110.sark110_android_template;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+abstract class TextSweepExporter extends SweepExporter {
+    static final int BUFFER_SIZE = 8192;        /* chars */
+
+    private final Writer mOut;
+    private final char mBuf[] = new char[BUFFER_SIZE];
+    private int mPos;
+
+    /**
+     * @param out destination; characters are buffered here, so it need not be buffered
+     */
+    TextSweepExporter(Writer out) {
+        mOut = out;
+    }
+
+    /*
+     * Output helpers; numbers are formatted straight into the buffer
+     */
+    void put(char c) throws IOException {
+        ensure(1);
+        mBuf[mPos++] = c;
+    }
+
+    void put(String s) throws IOException {
+        int len = s.length();
+        if (len > BUFFER_SIZE) {
+            flushBuffer();
+            mOut.write(s);
+            return;
+        }
+        ensure(len);
+        s.getChars(0, len, mBuf, mPos);
+        mPos += len;
+    }
+
+    void putLong(long v) throws IOException {
+        ensure(NumberChars.MAX_CHARS);
+        mPos = NumberChars.appendLong(mBuf, mPos, v);
+    }
+
+    void putFixed(double v, int decimals) throws IOException {
+        ensure(NumberChars.MAX_CHARS);
+        mPos = NumberChars.appendFixed(mBuf, mPos, v, decimals);
+    }
+
+    void putGeneral(double v, int digits) throws IOException {
+        ensure(NumberChars.MAX_CHARS);
+        mPos = NumberChars.appendGeneral(mBuf, mPos, v, digits);
+    }
+
+    void end() throws IOException {
+        flushBuffer();
+        mOut.flush();
+    }
+
+    public void close() throws IOException {
+        flushBuffer();
+        mOut.close();
+    }
+
+    private void ensure(int n) throws IOException {
+        if (mPos + n > BUFFER_SIZE)
+            flushBuffer();
+    }
+
+    private void flushBuffer() throws IOException {
+        if (mPos > 0) {
+            mOut.write(mBuf, 0, mPos);
+            mPos = 0;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.sark110.sark110_android_template;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+public class TimeSeriesStore {
+    /* Series */
+    public static final int SERIES_RS = 0;
+    public static final int SERIES_XS = 1;
+
+    /* Rollup levels */
+    public static final int LEVEL_SECOND = 0;
+    public static final int LEVEL_MINUTE = 1;
+    public static final int LEVEL_HOUR = 2;
+    static final long PERIODS[] = {1000L, 60000L, 3600000L};   /* ms */
+
+    /* Raw measurements; a ring that keeps the newest */
+    private final long mTime[];
+    private final float mRs[];
+    private final float mXs[];
+    private int mHead;                          /* Oldest */
+    private int mSize;
+
+    private final Rollup mRollups[] = new Rollup[PERIODS.length];
+
+    /* Downsampling input and selection; sized for the largest source */
+    private final long mScratchTime[];
+    private final float mScratchValue[];
+    private final int mScratchIndex[];
+
+    /**
+     * Min, max and mean of both series per time bucket, in a ring that keeps the newest
+     * buckets. The newest bucket is still filling while the time is within its period.
+     */
+    public static class Rollup {
+        private final long mPeriod;
+        private final long mStart[];
+        private final int mCount[];
+        private final float mMin[][];           /* [series][bucket] */
+        private final float mMax[][];
+        private final double mSum[][];
+        private int mHead;
+        private int mSize;
+
+        Rollup(long period, int capacity) {
+            mPeriod = period;
+            mStart = new long[capacity];
+            mCount = new int[capacity];
+            mMin = new float[2][capacity];
+            mMax = new float[2][capacity];
+            mSum = new double[2][capacity];
+        }
+
+        void add(long time, float rs, float xs) {
+            long start = time - ((time % mPeriod) + mPeriod) % mPeriod;
+            int b;
+            if (mSize == 0 || start > mStart[slot(mSize - 1)]) {
+                /* New bucket; a full ring drops the oldest */
+                if (mSize == mStart.length) {
+                    mHead = (mHead + 1) % mStart.length;
+                    mSize--;
+                }
+                b = slot(mSize++);
+                mStart[b] = start;
+                mCount[b] = 0;
+                mMin[0][b] = mMin[1][b] = Float.MAX_VALUE;
+                mMax[0][b] = mMax[1][b] = -Float.MAX_VALUE;
+                mSum[0][b] = mSum[1][b] = 0;
+            } else {
+                /* Same bucket; a clock stepped back also lands in the newest */
+                b = slot(mSize - 1);
+            }
+            mCount[b]++;
+            accumulate(0, b, rs);
+            accumulate(1, b, xs);
+        }
+
+        private void accumulate(int series, int b, float v) {
+            if (v < mMin[series][b])
+                mMin[series][b] = v;
+            if (v > mMax[series][b])
+                mMax[series][b] = v;
+            mSum[series][b] += v;
+        }
+
+        private int slot(int i) {
+            return (mHead + i) % mStart.length;
+        }
+
+        void clear() {
+            mHead = 0;
+            mSize = 0;
+        }
+
+        public long getPeriod() {
+            return mPeriod;
+        }
+
+        /**
+         * Gets the number of buckets
+         *
+         * @return number of buckets; index 0 is the oldest
+         */
+        public int size() {
+            return mSize;
+        }
+
+        /* Bucket values; index 0 is the oldest */
+        public long getStart(int i) {
+            return mStart[slot(i)];
+        }
+        public int getCount(int i) {
+            return mCount[slot(i)];
+        }
+        public float getMin(int series, int i) {
+            return mMin[series][slot(i)];
+        }
+        public float getMax(int series, int i) {
+            return mMax[series][slot(i)];
+        }
+        public float getMean(int series, int i) {
+            int b = slot(i);
+            return (float) (mSum[series][b] / mCount[b]);
+        }
+    }
+
+    /**
+     * Fixed memory store; nothing is allocated after construction
+     *
+     * @param rawCapacity       newest measurements kept at full resolution
+     * @param secondBuckets     1 s buckets kept
+     * @param minuteBuckets     1 min buckets kept
+     * @param hourBuckets       1 h buckets kept
+     */
+    public TimeSeriesStore(int rawCapacity, int secondBuckets, int minuteBuckets, int hourBuckets) {
+        mTime = new long[rawCapacity];
+        mRs = new float[rawCapacity];
+        mXs = new float[rawCapacity];
+        mRollups[LEVEL_SECOND] = new Rollup(PERIODS[LEVEL_SECOND], secondBuckets);
+        mRollups[LEVEL_MINUTE] = new Rollup(PERIODS[LEVEL_MINUTE], minuteBuckets);
+        mRollups[LEVEL_HOUR] = new Rollup(PERIODS[LEVEL_HOUR], hourBuckets);
+        int scratch = Math.max(Math.max(rawCapacity, secondBuckets), Math.max(minuteBuckets, hourBuckets));
+        mScratchTime = new long[scratch];
+        mScratchValue = new float[scratch];
+        mScratchIndex = new int[scratch];
+    }
+
+    /**
+     * Stores one measurement and adds it to the rollups
+     *
+     * @param time  time in ms, e.g. System.currentTimeMillis(); normally not decreasing
+     * @param rs    series resistance
+     * @param xs    series reactance
+     */
+    public synchronized void record(long time, float rs, float xs) {
+        int i;
+        if (mSize == mTime.length) {
+            i = mHead;
+            mHead = (mHead + 1) % mTime.length;
+        } else {
+            i = (mHead + mSize++) % mTime.length;
+        }
+        mTime[i] = time;
+        mRs[i] = rs;
+        mXs[i] = xs;
+        for (Rollup r : mRollups)
+            r.add(time, rs, xs);
+    }
+
+    public synchronized void clear() {
+        mHead = 0;
+        mSize = 0;
+        for (Rollup r : mRollups)
+            r.clear();
+    }
+
+    /**
+     * Gets the number of raw measurements kept
+     *
+     * @return number of measurements; index 0 is the oldest
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /* Raw measurements; index 0 is the oldest */
+    public synchronized long getTime(int i) {
+        return mTime[(mHead + i) % mTime.length];
+    }
+    public synchronized float getRs(int i) {
+        return mRs[(mHead + i) % mTime.length];
+    }
+    public synchronized float getXs(int i) {
+        return mXs[(mHead + i) % mTime.length];
+    }
+
+    /**
+     * Gets the time of the oldest data held at any resolution
+     *
+     * @return time in ms; the bucket start for rollups. -1 if empty
+     */
+    public synchronized long getFirstTime() {
+        long first = mSize > 0 ? mTime[mHead] : Long.MAX_VALUE;
+        for (Rollup r : mRollups)
+            if (r.size() > 0)
+                first = Math.min(first, r.getStart(0));
+        return first == Long.MAX_VALUE ? -1 : first;
+    }
+
+    /**
+     * Gets a rollup level. Its contents change as measurements are recorded; read it while
+     * holding the store lock, synchronized (store) { ... }, for a consistent view.
+     *
+     * @param level LEVEL_SECOND, LEVEL_MINUTE or LEVEL_HOUR
+     * @return rollup
+     */
+    public Rollup getRollup(int level) {
+        return mRollups[level];
+    }
+
+    /**
+     * Downsamples a series over a time range to at most a number of points for plotting. The
+     * source is the finest resolution that still covers the range: raw measurements, then
+     * the bucket means of each rollup. The cost is bounded by the store capacity whatever the
+     * range, and the points are chosen by Largest-Triangle-Three-Buckets, which keeps peaks.
+     *
+     * @param series    SERIES_RS or SERIES_XS
+     * @param from      start of the range in ms
+     * @param to        end of the range in ms, inclusive
+     * @param threshold most points returned; room needed in the output arrays
+     * @param outTime   receives the times; bucket start for rollups
+     * @param outValue  receives the values
+     * @return number of points written
+     */
+    public synchronized int downsample(int series, long from, long to, int threshold, long outTime[],
+                                       float outValue[]) {
+        int n = 0;
+        int level = sourceLevel(from);
+        if (level < 0) {
+            for (int i = 0; i < mSize; i++) {
+                int s = (mHead + i) % mTime.length;
+                if (mTime[s] >= from && mTime[s] <= to) {
+                    mScratchTime[n] = mTime[s];
+                    mScratchValue[n++] = series == SERIES_RS ? mRs[s] : mXs[s];
+                }
+            }
+        } else {
+            Rollup r = mRollups[level];
+            for (int i = 0; i < r.size(); i++) {
+                long t = r.getStart(i);
+                if (t + r.mPeriod > from && t <= to) {
+                    mScratchTime[n] = t;
+                    mScratchValue[n++] = r.getMean(series, i);
+                }
+            }
+        }
+        int count = lttb(mScratchTime, mScratchValue, n, threshold, mScratchIndex);
+        for (int i = 0; i < count; i++) {
+            outTime[i] = mScratchTime[mScratchIndex[i]];
+            outValue[i] = mScratchValue[mScratchIndex[i]];
+        }
+        return count;
+    }
+
+    /* -1 for the raw measurements, else the finest rollup holding data from before the range */
+    private int sourceLevel(long from) {
+        if (mSize > 0 && (mTime[mHead] <= from || mSize < mTime.length))
+            return -1;
+        for (int level = 0; level < mRollups.length; level++) {
+            Rollup r = mRollups[level];
+            if (r.size() > 0 && (r.getStart(0) <= from || r.size() < r.mStart.length))
+                return level;
+        }
+        return mRollups.length - 1;
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets: keeps the first and last points and, from each of
+     * threshold - 2 buckets in between, the point making the largest triangle with the point
+     * kept before it and the mean of the next bucket.
+     *
+     * @param time      x values, ascending
+     * @param value     y values
+     * @param n         number of points
+     * @param threshold most points to keep
+     * @param out       receives the indexes of the points kept, ascending
+     * @return number of points kept
+     */
+    static int lttb(long time[], float value[], int n, int threshold, int out[]) {
+        if (threshold >= n) {
+            for (int i = 0; i < n; i++)
+                out[i] = i;
+            return n;
+        }
+        if (threshold < 3) {
+            /* No buckets: the ends only */
+            if (threshold <= 0)
+                return 0;
+            out[0] = 0;
+            if (threshold == 1)
+                return 1;
+            out[1] = n - 1;
+            return 2;
+        }
+        /* Times relative to the first point, so doubles keep the precision */
+        long t0 = time[0];
+        double every = (double) (n - 2) / (threshold - 2);
+        int a = 0;
+        int k = 0;
+        out[k++] = 0;
+        for (int i = 0; i < threshold - 2; i++) {
+            int start = (int) (i * every) + 1;
+            int end = (int) ((i + 1) * every) + 1;
+            int nextEnd = Math.min(n, (int) ((i + 2) * every) + 1);
+            /* Mean of the next bucket; the last point for the last bucket */
+            double avgX = 0, avgY = 0;
+            int nextCount = nextEnd - end;
+            if (nextCount <= 0) {
+                avgX = time[n - 1] - t0;
+                avgY = value[n - 1];
+            } else {
+                for (int j = end; j < nextEnd; j++) {
+                    avgX += time[j] - t0;
+                    avgY += value[j];
+                }
+                avgX /= nextCount;
+                avgY /= nextCount;
+            }
+            double ax = time[a] - t0, ay = value[a];
+            double maxArea = -1;
+            int chosen = start;
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((ax - avgX) * (value[j] - ay) - (ax - (time[j] - t0)) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = j;
+                }
+            }
+            out[k++] = chosen;
+            a = chosen;
+        }
+        out[k++] = n - 1;
+        return k;
+    }
+}
@@ -0,0 +1,108 @@
+package com.sark110.sark110_android_template;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+class TouchstoneExporter extends TextSweepExporter {
+    /* S11 formats */
+    static final int FORMAT_RI = 0;             /* Real, imaginary */
+    static final int FORMAT_MA = 1;             /* Magnitude, angle in degrees */
+    static final int FORMAT_DB = 2;             /* Magnitude in dB, angle in degrees */
+    private static final String FORMAT_NAMES[] = {"RI", "MA", "DB"};
+
+    static final int DEF_DIGITS = 7;            /* Significant digits; what a float holds */
+
+    private final int mFormat;
+    private int mDigits = DEF_DIGITS;
+    private String mComment;
+    private double mZ0;
+
+    /**
+     * Writes a one-port Touchstone (.s1p) file
+     *
+     * @param out       destination
+     * @param format    FORMAT_RI, FORMAT_MA or FORMAT_DB
+     */
+    TouchstoneExporter(Writer out, int format) {
+        super(out);
+        if (format < FORMAT_RI || format > FORMAT_DB)
+            throw new IllegalArgumentException("format " + format);
+        mFormat = format;
+    }
+
+    void setDigits(int digits) {
+        mDigits = Math.max(1, Math.min(NumberChars.MAX_DIGITS, digits));
+    }
+
+    /* Comment line written before the option line; null for none */
+    void setComment(String comment) {
+        mComment = comment;
+    }
+
+    void begin(float z0) throws IOException {
+        mZ0 = z0;
+        if (mComment != null) {
+            put("! ");
+            put(mComment);
+            put('\n');
+        }
+        put("# HZ S ");
+        put(FORMAT_NAMES[mFormat]);
+        put(" R ");
+        if (z0 == Math.rint(z0))
+            putLong((long) z0);
+        else
+            putGeneral(z0, mDigits);
+        put('\n');
+    }
+
+    void point(int freq, float Rs, float Xs) throws IOException {
+        double re = MeasureMath.rhoRe(Rs, Xs, mZ0);
+        double im = MeasureMath.rhoIm(Rs, Xs, mZ0);
+        putLong(freq);
+        put(' ');
+        switch (mFormat) {
+            case FORMAT_RI:
+                putGeneral(re, mDigits);
+                put(' ');
+                putGeneral(im, mDigits);
+                break;
+            case FORMAT_MA:
+                putGeneral(MeasureMath.mod(re, im), mDigits);
+                put(' ');
+                putGeneral(MeasureMath.angle(re, im), mDigits);
+                break;
+            default:
+                putGeneral(MeasureMath.returnLoss(MeasureMath.mod(re, im)), mDigits);
+                put(' ');
+                putGeneral(MeasureMath.angle(re, im), mDigits);
+                break;
+        }
+        put('\n');
+    }
+}
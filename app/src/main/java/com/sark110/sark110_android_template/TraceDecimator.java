@@ -0,0 +1,290 @@
+package com.sark110.sark110_android_template;
+
+import java.util.Arrays;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+final class TraceDecimator {
+    static final int FLOATS_PER_COLUMN = 8;     /* Two line segments for Canvas.drawLines() */
+
+    /* Columns; at most one per pixel, each holding the points that fall on it */
+    private int mPoints;                        /* Points in the sweep */
+    private int mColumns;
+    private int mMaxColumns;
+    private float mMin[] = new float[0];
+    private float mMax[] = new float[0];
+    private float mFirst[] = new float[0];      /* Value of the lowest index in the column */
+    private float mLast[] = new float[0];       /* Value of the highest index in the column */
+    private int mFirstIdx[] = new int[0];
+    private int mLastIdx[] = new int[0];
+    private int mColGen[] = new int[0];         /* Sweep that wrote the column; 0 never written */
+    private int mGen = 1;
+
+    private int mFilledFrom;                    /* Columns ever written */
+    private int mFilledTo;
+    private int mDirtyFrom;                     /* Columns changed since the last updateLines() */
+    private int mDirtyTo;
+
+    /* Plot area and value range */
+    private float mLeft, mTop, mRight, mBottom;
+    private float mLo = 0, mHi = 1;
+
+    /* Line segments, FLOATS_PER_COLUMN per column; only the dirty ones are rebuilt */
+    private float mLines[] = new float[0];
+    private int mLinesOffset;
+    private int mLinesCount;
+
+    TraceDecimator() {
+        reset();
+    }
+
+    /**
+     * Sets the plot area. The buffers grow here if needed, never while plotting.
+     *
+     * @param left          left edge in pixels
+     * @param top           top edge in pixels
+     * @param right         right edge in pixels
+     * @param bottom        bottom edge in pixels
+     * @param maxColumns    columns available, normally the plot width in pixels
+     */
+    void setViewport(float left, float top, float right, float bottom, int maxColumns) {
+        mLeft = left;
+        mTop = top;
+        mRight = right;
+        mBottom = bottom;
+        if (maxColumns > mMin.length) {
+            mMin = new float[maxColumns];
+            mMax = new float[maxColumns];
+            mFirst = new float[maxColumns];
+            mLast = new float[maxColumns];
+            mFirstIdx = new int[maxColumns];
+            mLastIdx = new int[maxColumns];
+            mColGen = new int[maxColumns];
+            mLines = new float[maxColumns * FLOATS_PER_COLUMN];
+        }
+        if (maxColumns != mMaxColumns) {
+            mMaxColumns = maxColumns;
+            setPoints(mPoints, true);
+        }
+        markAllDirty();
+    }
+
+    /**
+     * Sets the values at the bottom and top of the plot area; values outside are drawn at the edge
+     */
+    void setRange(float lo, float hi) {
+        mLo = lo;
+        mHi = hi;
+        markAllDirty();
+    }
+
+    /**
+     * Starts a new sweep. Its points overwrite the previous sweep column by column; a different
+     * number of points clears the trace.
+     *
+     * @param points number of points in the sweep
+     */
+    void begin(int points) {
+        setPoints(points, points != mPoints);
+        if (++mGen == 0)
+            mGen = 1;
+    }
+
+    /**
+     * Adds one point of the current sweep
+     *
+     * @param index point index; 0..points-1, in any order
+     * @param v     value; NaN is skipped
+     */
+    void add(int index, float v) {
+        if (mColumns == 0 || index < 0 || index >= mPoints || v != v)
+            return;
+        int c = column(index);
+        if (mColGen[c] != mGen) {
+            mColGen[c] = mGen;
+            mMin[c] = mMax[c] = mFirst[c] = mLast[c] = v;
+            mFirstIdx[c] = mLastIdx[c] = index;
+        } else {
+            if (v < mMin[c])
+                mMin[c] = v;
+            if (v > mMax[c])
+                mMax[c] = v;
+            if (index < mFirstIdx[c]) {
+                mFirstIdx[c] = index;
+                mFirst[c] = v;
+            }
+            if (index >= mLastIdx[c]) {
+                mLastIdx[c] = index;
+                mLast[c] = v;
+            }
+        }
+        if (c < mFilledFrom)
+            mFilledFrom = c;
+        if (c > mFilledTo)
+            mFilledTo = c;
+        if (c < mDirtyFrom)
+            mDirtyFrom = c;
+        if (c > mDirtyTo)
+            mDirtyTo = c;
+    }
+
+    /**
+     * Clears the trace
+     */
+    void clear() {
+        setPoints(mPoints, true);
+    }
+
+    boolean isDirty() {
+        return mDirtyTo >= mDirtyFrom;
+    }
+
+    int getColumns() {
+        return mColumns;
+    }
+
+    /**
+     * Rebuilds the line segments of the columns changed since the last call. Each column is a
+     * connector from the previous column followed by a vertical min..max segment, so the cost
+     * does not depend on the number of points.
+     */
+    void updateLines() {
+        if (isDirty()) {
+            /* A column's connector starts at the previous written column */
+            int to = mDirtyTo + 1;
+            while (to < mColumns - 1 && mColGen[to] == 0)
+                to++;
+            to = Math.min(to, mColumns - 1);
+            int prev = mDirtyFrom - 1;
+            while (prev >= 0 && mColGen[prev] == 0)
+                prev--;
+            for (int c = mDirtyFrom; c <= to; c++) {
+                buildColumn(c, prev);
+                if (mColGen[c] != 0)
+                    prev = c;
+            }
+            mDirtyFrom = Integer.MAX_VALUE;
+            mDirtyTo = -1;
+        }
+        if (mFilledTo < mFilledFrom) {
+            mLinesOffset = 0;
+            mLinesCount = 0;
+        } else {
+            mLinesOffset = mFilledFrom * FLOATS_PER_COLUMN;
+            mLinesCount = (mFilledTo - mFilledFrom + 1) * FLOATS_PER_COLUMN;
+        }
+    }
+
+    /* Line segments as of the last updateLines(), for Canvas.drawLines(pts, offset, count, paint) */
+    float[] getLines() {
+        return mLines;
+    }
+
+    int getLinesOffset() {
+        return mLinesOffset;
+    }
+
+    int getLinesCount() {
+        return mLinesCount;
+    }
+
+    float columnX(int c) {
+        if (mColumns <= 1)
+            return mLeft;
+        return mLeft + (mRight - mLeft) * c / (mColumns - 1);
+    }
+
+    float valueY(float v) {
+        float y = mBottom - (v - mLo) * (mBottom - mTop) / (mHi - mLo);
+        if (y < mTop)
+            return mTop;
+        if (y > mBottom)
+            return mBottom;
+        return y;
+    }
+
+    private int column(int index) {
+        if (mPoints <= 1)
+            return 0;
+        return (int) ((long) index * (mColumns - 1) / (mPoints - 1));
+    }
+
+    /* prev: nearest written column on the left; -1 if none */
+    private void buildColumn(int c, int prev) {
+        int p = c * FLOATS_PER_COLUMN;
+        float x, y;
+        if (mColGen[c] == 0) {
+            /* Not measured yet: zero length, so nothing is drawn */
+            x = prev >= 0 ? columnX(prev) : columnX(c);
+            y = prev >= 0 ? valueY(mLast[prev]) : mBottom;
+            for (int i = 0; i < FLOATS_PER_COLUMN; i += 2) {
+                mLines[p + i] = x;
+                mLines[p + i + 1] = y;
+            }
+            return;
+        }
+        x = columnX(c);
+        y = valueY(mFirst[c]);
+        mLines[p] = prev >= 0 ? columnX(prev) : x;
+        mLines[p + 1] = prev >= 0 ? valueY(mLast[prev]) : y;
+        mLines[p + 2] = x;
+        mLines[p + 3] = y;
+        mLines[p + 4] = x;
+        mLines[p + 5] = valueY(mMin[c]);
+        mLines[p + 6] = x;
+        mLines[p + 7] = valueY(mMax[c]);
+    }
+
+    /* Points per sweep and column count; clear drops every column */
+    private void setPoints(int points, boolean clear) {
+        mPoints = points;
+        int columns = Math.max(0, Math.min(mMaxColumns, points));
+        if (columns != mColumns || clear) {
+            /* Never more columns than points, so every column gets at least one point */
+            mColumns = columns;
+            reset();
+        }
+    }
+
+    private void reset() {
+        Arrays.fill(mColGen, 0);
+        mFilledFrom = Integer.MAX_VALUE;
+        mFilledTo = -1;
+        mLinesOffset = 0;
+        mLinesCount = 0;
+        markAllDirty();
+    }
+
+    private void markAllDirty() {
+        if (mColumns > 0) {
+            mDirtyFrom = 0;
+            mDirtyTo = mColumns - 1;
+        } else {
+            mDirtyFrom = Integer.MAX_VALUE;
+            mDirtyTo = -1;
+        }
+    }
+}
@@ -12,7 +12,14 @@ import android.hardware.usb.UsbDeviceConnection;
 import android.hardware.usb.UsbEndpoint;
 import android.hardware.usb.UsbInterface;
 import android.hardware.usb.UsbManager;
+import android.hardware.usb.UsbRequest;
+import android.os.Build;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -42,40 +49,121 @@ import java.util.Objects;
  */
 class USBIntf extends DeviceIntf {
     private static final String ACTION_USB_PERMISSION = "com.google.android.HID.action.USB_PERMISSION";
+    private static final int XFER_TIMEOUT = 255;           /* ms */
+    private static final int PURGE_TIMEOUT = 20;           /* ms */
+    private static final int MAX_PIPELINE_DEPTH = 8;       /* Commands in flight */
+    private static final int IN_SLOTS = 4;                 /* Replies requested ahead of the commands */
+    static final int SARK_VID = 1155;                      /* As res/xml/device_filter.xml */
+    static final int SARK_PID = 22352;                     /* As res/xml/device_filter.xml */
 
+    private final UsbDevice mBoundDevice;                  /* null: the first analyzer attached */
     private UsbDevice mUsbDevice;
     private UsbDeviceConnection mConnection;
     private UsbManager mUsbManager;
     private UsbEndpoint mEndPointRead;
     private UsbEndpoint mEndPointWrite;
     private PendingIntent mPermissionIntent;
+    private boolean mReceiverRegistered;                   /* Main thread only, as the two below */
+    private boolean mPermissionPending;                    /* Asked; the answer comes as a broadcast */
+    private UsbRequest mRequests[];
+    private volatile UsbAsyncPipe mPipe;                   /* null: blocking bulk transfers */
+    private final byte mPurgeBuf[] = new byte[COMMAND_LEN];
 
     public USBIntf(Context context)
+    {
+        this(context, null);
+    }
+
+    /**
+     * Creates the interface of one given analyzer, for using several at once
+     *
+     * @param context   context
+     * @param device    analyzer, from findDevices(); null for the first one attached
+     */
+    public USBIntf(Context context, UsbDevice device)
     {
         super(context);
+        mBoundDevice = device;
+    }
+
+    /**
+     * Lists the analyzers attached, in a stable order
+     *
+     * @param context context
+     * @return devices; empty if none
+     */
+    static List<UsbDevice> findDevices(Context context) {
+        List<UsbDevice> devices = new ArrayList<>();
+        UsbManager usbManager = (UsbManager) context.getSystemService(Context.USB_SERVICE);
+        if (usbManager == null)
+            return devices;
+        for (UsbDevice device : usbManager.getDeviceList().values())
+            if (isAnalyzer(device))
+                devices.add(device);
+        Collections.sort(devices, new Comparator<UsbDevice>() {
+            @Override
+            public int compare(UsbDevice a, UsbDevice b) {
+                return a.getDeviceName().compareTo(b.getDeviceName());
+            }
+        });
+        return devices;
     }
 
+    private static boolean isAnalyzer(UsbDevice device) {
+        return device.getVendorId() == SARK_VID && device.getProductId() == SARK_PID;
+    }
+
+    /* Whether a broadcast about a device concerns this interface */
+    private boolean isOwnDevice(UsbDevice device) {
+        if (mBoundDevice != null)
+            return mBoundDevice.getDeviceName().equals(device.getDeviceName());
+        return isAnalyzer(device);
+    }
+
+    /*
+     * May be called again while connecting: the receiver is registered once and the
+     * permission is not asked again until the pending request is answered.
+     */
     public void connect () {
-        IntentFilter filter = new IntentFilter(ACTION_USB_PERMISSION);
-        filter.addAction(UsbManager.ACTION_USB_DEVICE_ATTACHED);
-        filter.addAction(UsbManager.ACTION_USB_DEVICE_DETACHED);
-        mContext.registerReceiver(mUsbReceiver, filter);				//Register broadcast receiver
+        connectStarted();
+        if (!mReceiverRegistered) {
+            IntentFilter filter = new IntentFilter(ACTION_USB_PERMISSION);
+            filter.addAction(UsbManager.ACTION_USB_DEVICE_ATTACHED);
+            filter.addAction(UsbManager.ACTION_USB_DEVICE_DETACHED);
+            mContext.registerReceiver(mUsbReceiver, filter);			//Register broadcast receiver
+            mReceiverRegistered = true;
+        }
 
         mUsbManager = (UsbManager) mContext.getSystemService(Context.USB_SERVICE);
-        if (mUsbManager != null && mUsbManager.getDeviceList().isEmpty())
-            return;
-        if (mUsbManager != null) {
-            mUsbDevice = (UsbDevice) mUsbManager.getDeviceList().values().toArray()[0];
+        if (mBoundDevice != null) {
+            mUsbDevice = mBoundDevice;
+        } else {
+            List<UsbDevice> devices = findDevices(mContext);
+            if (devices.isEmpty())
+                return;
+            mUsbDevice = devices.get(0);
         }
+        if (mPermissionPending)
+            return;
         mConnection = Objects.requireNonNull(mUsbManager).openDevice(mUsbDevice);
+        requestPermission();
+    }
+
+    private void requestPermission() {
         mPermissionIntent = PendingIntent.getBroadcast(mContext, 0, new Intent(ACTION_USB_PERMISSION), 0);	//Get USB permission intent for broadcast
         mUsbManager.requestPermission(mUsbDevice, mPermissionIntent);
+        mPermissionPending = true;
     }
 
     public void close()
     {
         mConnected = false;
-        mContext.unregisterReceiver(mUsbReceiver);				        //Unregister broadcast receiver
+        stopAsync();
+        if (mReceiverRegistered) {
+            mContext.unregisterReceiver(mUsbReceiver);				    //Unregister broadcast receiver
+            mReceiverRegistered = false;
+        }
+        mPermissionPending = false;
     }
 
     public void onCreate () {
@@ -92,11 +180,11 @@ class USBIntf extends DeviceIntf {
     private boolean setDevice(Intent intent) {
         boolean rc = true;
 
+        stopAsync();
         mUsbDevice = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
-        if (!intent.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false))
+        if (!intent.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false) && !mPermissionPending)
         {
-            mPermissionIntent = PendingIntent.getBroadcast(mContext, 0, new Intent(ACTION_USB_PERMISSION), 0);	//Get USB permission intent for broadcast
-            mUsbManager.requestPermission(mUsbDevice, mPermissionIntent);
+            requestPermission();
         }
         if (mUsbDevice != null && intent.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false)) {
             mConnection = mUsbManager.openDevice(mUsbDevice);		//Connect to device
@@ -122,14 +210,88 @@ class USBIntf extends DeviceIntf {
             } catch (Exception e) {
                 rc = false;
             }
+            if (rc)
+                startAsync();
         }
         return rc;
     }
 
+    /*
+     * Queued transfers: up to MAX_PIPELINE_DEPTH commands in flight and IN_SLOTS replies
+     * always requested, completed by the pipe reader thread. Falls back to blocking
+     * bulkTransfer() if the requests cannot be set up.
+     */
+    private void startAsync() {
+        final UsbDeviceConnection connection = mConnection;
+        final UsbRequest requests[] = new UsbRequest[MAX_PIPELINE_DEPTH + IN_SLOTS];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = new UsbRequest();
+            if (!requests[i].initialize(connection, i < MAX_PIPELINE_DEPTH ? mEndPointWrite : mEndPointRead)) {
+                for (int j = 0; j <= i; j++)
+                    requests[j].close();
+                return;
+            }
+            requests[i].setClientData(i);
+        }
+        UsbAsyncPipe pipe = new UsbAsyncPipe(COMMAND_LEN, MAX_PIPELINE_DEPTH, IN_SLOTS) {
+            @SuppressWarnings("deprecation")
+            @Override
+            protected boolean queue(int slot, ByteBuffer buf) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
+                    return requests[slot].queue(buf);
+                return requests[slot].queue(buf, COMMAND_LEN);
+            }
+            @Override
+            protected int waitCompleted() {
+                UsbRequest request;
+                try {
+                    request = connection.requestWait();
+                } catch (RuntimeException e) {
+                    return -1;
+                }
+                return request == null ? -1 : (Integer) request.getClientData();
+            }
+            @Override
+            protected void cancel() {
+                for (UsbRequest request : requests)
+                    request.cancel();
+            }
+            @Override
+            protected int received(int slot, ByteBuffer buf) {
+                /* Only queue(ByteBuffer) advances the position */
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
+                    return buf.position();
+                return -1;
+            }
+        };
+        if (!pipe.start()) {
+            for (UsbRequest request : requests)
+                request.close();
+            return;
+        }
+        mRequests = requests;
+        mPipe = pipe;
+    }
+
+    private void stopAsync() {
+        UsbAsyncPipe pipe = mPipe;
+        if (pipe == null)
+            return;
+        mPipe = null;
+        pipe.stop();
+        for (UsbRequest request : mRequests)
+            request.close();
+        mRequests = null;
+    }
+
     private final BroadcastReceiver mUsbReceiver = new BroadcastReceiver() {
         public void onReceive(Context context, Intent intent) {
             String action = intent.getAction();
+            UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+            if (device != null && !isOwnDevice(device))
+                return;                                     // Another analyzer or USB device
             if (ACTION_USB_PERMISSION.equals(action)) {
+                mPermissionPending = false;
                 synchronized (this) {
                     if (setDevice(intent))
                         setConnected(true);
@@ -148,7 +310,9 @@ class USBIntf extends DeviceIntf {
             }
             //device detached
             if (UsbManager.ACTION_USB_DEVICE_DETACHED.equals(action)) {
+                mPermissionPending = false;                 // Asked again when attached
                 if (mUsbDevice != null) {
+                    stopAsync();
                     mUsbDevice = null;
                     setConnected(false);
                 }
@@ -157,17 +321,53 @@ class USBIntf extends DeviceIntf {
     };
 
     protected int SendRcv(byte snd[], byte rcv[]) {
-        int status = -1;
-        if (!mConnected)
-            return status;
-        if (mUsbDevice != null && mEndPointWrite != null && mUsbManager.hasPermission(mUsbDevice)) {
-            status = mConnection.bulkTransfer(mEndPointWrite, snd, COMMAND_LEN, 255); 	//Send data to device
-            if (status > 0)
-                status = mConnection.bulkTransfer(mEndPointRead, rcv, COMMAND_LEN, 255);	//Read data from device
+        int status = Send(snd);
+        if (status > 0) {
+            markSent();
+            status = Rcv(rcv);
         }
         return status;
     }
 
+    int Send(byte snd[]) {
+        if (!mConnected)
+            return -1;
+        UsbAsyncPipe pipe = mPipe;
+        if (pipe != null)
+            return pipe.send(snd, XFER_TIMEOUT);
+        if (mUsbDevice != null && mEndPointWrite != null && mUsbManager.hasPermission(mUsbDevice))
+            return mConnection.bulkTransfer(mEndPointWrite, snd, COMMAND_LEN, XFER_TIMEOUT); 	//Send data to device
+        return -1;
+    }
+
+    int Rcv(byte rcv[]) {
+        if (!mConnected || mEndPointRead == null)
+            return -1;
+        UsbAsyncPipe pipe = mPipe;
+        if (pipe != null)
+            return pipe.receive(rcv, XFER_TIMEOUT);
+        return mConnection.bulkTransfer(mEndPointRead, rcv, COMMAND_LEN, XFER_TIMEOUT);	//Read data from device
+    }
+
+    void Purge() {
+        if (!mConnected || mEndPointRead == null)
+            return;
+        UsbAsyncPipe pipe = mPipe;
+        if (pipe != null) {
+            while (pipe.receive(mPurgeBuf, PURGE_TIMEOUT) > 0) {
+                // Discard late replies
+            }
+            return;
+        }
+        while (mConnection.bulkTransfer(mEndPointRead, mPurgeBuf, COMMAND_LEN, PURGE_TIMEOUT) > 0) {
+            // Discard late replies
+        }
+    }
+
+    int getMaxPipelineDepth() {
+        return MAX_PIPELINE_DEPTH;
+    }
+
     private void setConnected(boolean connected) {
         mConnected = connected;
         InCaseFireConnectionStateChanged();
@@ -0,0 +1,255 @@
+package com.sark110.sark110_android_template;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+abstract class UsbAsyncPipe {
+    private final int mFrameLen;
+    private final int mOutSlots;
+    private final ByteBuffer mBuffers[];    /* OUT slots first, then IN slots */
+    private final int mFreeOut[];           /* Stack of idle OUT slots; guarded by this */
+    private int mFreeCount;
+    private final ReplyRing mRing;
+    private final byte mFrame[];            /* Reader thread scratch */
+
+    private Thread mReader;
+    private volatile boolean mRunning;
+    private volatile long mErrors;
+
+    /**
+     * Transfers in flight on a pair of bulk endpoints. Commands are queued on the OUT endpoint
+     * without waiting, while every IN slot is kept queued so the device never waits for the
+     * host. A reader thread completes both directions, re-queues IN slots and passes the
+     * replies to a ReplyRing. Buffers are direct and allocated once.
+     *
+     * @param frameLen  transfer length in bytes
+     * @param outSlots  commands in flight
+     * @param inSlots   replies queued ahead
+     */
+    UsbAsyncPipe(int frameLen, int outSlots, int inSlots) {
+        mFrameLen = frameLen;
+        mOutSlots = outSlots;
+        mBuffers = new ByteBuffer[outSlots + inSlots];
+        for (int i = 0; i < mBuffers.length; i++)
+            mBuffers[i] = ByteBuffer.allocateDirect(frameLen);
+        mFreeOut = new int[outSlots];
+        mRing = new ReplyRing(frameLen, outSlots + inSlots);
+        mFrame = new byte[frameLen];
+    }
+
+    /*
+     * Transfer primitives. Slots below the OUT count go to the OUT endpoint, the rest to the
+     * IN endpoint; waitCompleted() is only called from the reader thread.
+     */
+
+    /**
+     * Queues a transfer without waiting for it
+     *
+     * @param slot  slot number
+     * @param buf   data to send or buffer to fill; frameLen bytes from position 0
+     * @return false on failure
+     */
+    protected abstract boolean queue(int slot, ByteBuffer buf);
+
+    /**
+     * Waits for any queued transfer to complete
+     *
+     * @return slot number; <0 if the connection is gone
+     */
+    protected abstract int waitCompleted();
+
+    /**
+     * Cancels all queued transfers; each is then reported by waitCompleted()
+     */
+    protected abstract void cancel();
+
+    /**
+     * Gets the number of bytes a completed IN transfer received; by default the buffer
+     * position, which the transfer advances
+     *
+     * @param slot  slot number
+     * @param buf   its buffer
+     * @return bytes received; -1 if the platform does not report it
+     */
+    protected int received(int slot, ByteBuffer buf) {
+        return buf.position();
+    }
+
+    /**
+     * Queues all the IN slots and starts the reader thread
+     *
+     * @return false if a slot could not be queued; the pipe is then stopped
+     */
+    synchronized boolean start() {
+        mRing.clear();
+        mFreeCount = 0;
+        for (int i = mOutSlots - 1; i >= 0; i--)
+            mFreeOut[mFreeCount++] = i;
+        mRunning = true;
+        for (int i = mOutSlots; i < mBuffers.length; i++) {
+            mBuffers[i].clear();
+            if (!queue(i, mBuffers[i])) {
+                mRunning = false;
+                cancel();
+                return false;
+            }
+        }
+        mReader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readLoop();
+            }
+        }, "USB reader");
+        mReader.setDaemon(true);
+        mReader.start();
+        return true;
+    }
+
+    /**
+     * Cancels the transfers and waits for the reader thread to end
+     */
+    void stop() {
+        Thread reader;
+        synchronized (this) {
+            if (!mRunning && mReader == null)
+                return;
+            mRunning = false;
+            reader = mReader;
+            mReader = null;
+            notifyAll();
+        }
+        cancel();
+        if (reader != null && reader != Thread.currentThread()) {
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * Queues one command on the OUT endpoint; waits only if all the OUT slots are in flight
+     *
+     * @param snd       command; frameLen bytes
+     * @param timeout   maximum wait for a free slot in ms
+     * @return frameLen; -1 on timeout or failure
+     */
+    int send(byte snd[], long timeout) {
+        int slot;
+        synchronized (this) {
+            long deadline = System.nanoTime() + timeout * 1000000L;
+            while (mRunning && mFreeCount == 0) {
+                long wait = deadline - System.nanoTime();
+                if (wait <= 0)
+                    return -1;
+                try {
+                    wait(wait / 1000000L, (int) (wait % 1000000L));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+            }
+            if (!mRunning)
+                return -1;
+            slot = mFreeOut[--mFreeCount];
+        }
+        ByteBuffer buf = mBuffers[slot];
+        buf.clear();
+        buf.put(snd, 0, mFrameLen);
+        buf.rewind();
+        if (!queue(slot, buf)) {
+            release(slot);
+            return -1;
+        }
+        return mFrameLen;
+    }
+
+    /**
+     * Takes the oldest reply
+     *
+     * @param rcv       receives the reply; frameLen bytes
+     * @param timeout   maximum wait in ms
+     * @return frameLen; -1 on timeout
+     */
+    int receive(byte rcv[], long timeout) {
+        return mRing.read(rcv, timeout);
+    }
+
+    /**
+     * Gets the number of failed or short transfers plus replies lost to a full ring
+     *
+     * @return number of failures
+     */
+    long getErrors() {
+        return mErrors + mRing.getOverflows();
+    }
+
+    private synchronized void release(int slot) {
+        mFreeOut[mFreeCount++] = slot;
+        notify();
+    }
+
+    private void readLoop() {
+        while (mRunning) {
+            int slot = waitCompleted();
+            if (slot < 0)
+                break;
+            if (slot < mOutSlots) {
+                release(slot);
+                continue;
+            }
+            ByteBuffer buf = mBuffers[slot];
+            int len = received(slot, buf);
+            buf.clear();
+            if (len >= 0 && len < mFrameLen) {
+                mErrors++;              // Short or zero-length packet: not a reply
+            } else {
+                buf.get(mFrame, 0, mFrameLen);
+                if (mRunning)
+                    mRing.write(mFrame, 0, mFrameLen);
+            }
+            /* Zeroed, so a short transfer that is not reported reads as a failed reply */
+            for (int i = 0; i < mFrameLen; i++)
+                buf.put(i, (byte) 0);
+            buf.clear();
+            if (mRunning && !queue(slot, buf)) {
+                mErrors++;
+                break;
+            }
+        }
+        /* Connection gone or stopped: fail the senders waiting for a slot */
+        synchronized (this) {
+            mRunning = false;
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Adaptive sweep against a dense uniform sweep of the same antenna.
+ */
+public class AdaptiveSweepTest {
+    private static final int START = 1000000;
+    private static final int STOP = 31000000;
+    private static final int DENSE_POINTS = 4001;
+
+    private static int minVswrIndex(SweepResult result) {
+        int best = 0;
+        for (int i = 1; i < result.size(); i++)
+            if (result.getVswr(i) < result.getVswr(best))
+                best = i;
+        return best;
+    }
+
+    /* Frequency where VSWR crosses level walking away from the minimum; linear interpolation */
+    private static double edge(SweepResult result, int min, int dir, float level) {
+        for (int i = min; i + dir >= 0 && i + dir < result.size(); i += dir) {
+            float v0 = result.getVswr(i), v1 = result.getVswr(i + dir);
+            if (v0 <= level && v1 > level) {
+                double t = (level - v0) / (v1 - v0);
+                return result.getFreq(i) + t * (result.getFreq(i + dir) - result.getFreq(i));
+            }
+        }
+        return Double.NaN;
+    }
+
+    /* Exact VSWR of the model */
+    private static double vswr(SimulatorIntf.AntennaModel model, double freq) {
+        double[] z = new double[2];
+        model.impedance((int) Math.round(freq), z);
+        double rho = MeasureMath.mod(MeasureMath.rhoRe(z[0], z[1], 50), MeasureMath.rhoIm(z[0], z[1], 50));
+        return (1 + rho) / (1 - rho);
+    }
+
+    /* Exact 2:1 edge by bisection on the model */
+    private static double exactEdge(SimulatorIntf.AntennaModel model, double inside, double outside) {
+        for (int i = 0; i < 60; i++) {
+            double mid = 0.5 * (inside + outside);
+            if (vswr(model, mid) <= 2.0)
+                inside = mid;
+            else
+                outside = mid;
+        }
+        return inside;
+    }
+
+    /* Exact VSWR minimum by golden-section search on the model */
+    private static double exactMin(SimulatorIntf.AntennaModel model, double a, double b) {
+        double g = (Math.sqrt(5) - 1) / 2;
+        for (int i = 0; i < 80; i++) {
+            double c = b - g * (b - a), d = a + g * (b - a);
+            if (vswr(model, c) < vswr(model, d))
+                b = d;
+            else
+                a = c;
+        }
+        return 0.5 * (a + b);
+    }
+
+    private static void compare(SimulatorIntf.AntennaModel model, double near, String name) {
+        double f0 = exactMin(model, 0.8 * near, 1.2 * near);
+        SimulatorIntf dev = SimulatorIntf.instant(model);
+        SweepEngine engine = new SweepEngine(dev);
+        SweepResult dense = engine.Sweep(START, STOP, DENSE_POINTS, (byte) 0, null);
+        int denseCommands = engine.getCommandCount();
+        double denseStep = (STOP - START) / (DENSE_POINTS - 1.0);
+
+        AdaptiveSweep adaptive = new AdaptiveSweep(dev);
+        SweepResult result = adaptive.Sweep(START, STOP, (byte) 0);
+        assertNotNull(result);
+        for (int i = 1; i < result.size(); i++)
+            assertTrue(result.getFreq(i) > result.getFreq(i - 1));
+        assertEquals(START, result.getFreq(0));
+
+        double lo = exactEdge(model, f0, START), hi = exactEdge(model, f0, STOP);
+        int dMin = minVswrIndex(dense), aMin = minVswrIndex(result);
+        double dLo = edge(dense, dMin, -1, 2.0f), dHi = edge(dense, dMin, 1, 2.0f);
+        double aLo = edge(result, aMin, -1, 2.0f), aHi = edge(result, aMin, 1, 2.0f);
+
+        assertTrue(name + ": commands", adaptive.getCommandCount() * 5 <= denseCommands);
+        assertEquals(name + ": minimum", f0, result.getFreq(aMin), denseStep);
+        assertEquals(name + ": bandwidth", hi - lo, aHi - aLo, denseStep);
+        assertTrue(name + ": bandwidth against dense",
+                Math.abs((aHi - aLo) - (hi - lo)) <= Math.abs((dHi - dLo) - (hi - lo)) + denseStep / 2);
+    }
+
+    @Test
+    public void seriesRlc_matchesDenseSweep() {
+        /* 1 uH: resonant at 14.2 MHz, 2:1 bandwidth about 440 kHz */
+        double l = 1e-6, f0 = 14200000;
+        double c = 1 / (Math.pow(2 * Math.PI * f0, 2) * l);
+        compare(new SimulatorIntf.SeriesRlc(40.0, l, c), f0, "RLC");
+    }
+
+    @Test
+    public void dipole_matchesDenseSweep() {
+        compare(new SimulatorIntf.Dipole(7100000, 60.0, 600.0), 7100000, "dipole");
+    }
+
+    @Test
+    public void budget_isRespected() {
+        SimulatorIntf dev = SimulatorIntf.instant(new SimulatorIntf.Dipole(7100000, 60.0, 600.0));
+        AdaptiveSweep adaptive = new AdaptiveSweep(dev);
+        adaptive.setCoarsePoints(16);
+        adaptive.setMaxPoints(40);
+        adaptive.setTolerance(0);
+        SweepResult result = adaptive.Sweep(START, STOP, (byte) 0);
+        assertEquals(40, result.size());
+        assertEquals(4 + 24, adaptive.getCommandCount());
+        assertNull(adaptive.Sweep(START, START + 10, (byte) 0));
+    }
+}
@@ -0,0 +1,159 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Per-command metrics recorded by DeviceIntf.
+ */
+public class CommandMetricsTest {
+
+    /* Answers every command at once with the same reply */
+    private static class CannedDeviceIntf extends DeviceIntf {
+        private final byte mReply[] = new byte[COMMAND_LEN];
+
+        CannedDeviceIntf() {
+            mReply[0] = ProtocolCodec.ANS_SARK_OK;
+            mConnected = true;
+        }
+        void onCreate() {
+        }
+        void onResume() {
+        }
+        void connect() {
+        }
+        void close() {
+        }
+        boolean IsAvailable() {
+            return true;
+        }
+        int SendRcv(byte snd[], byte rcv[]) {
+            markSent();
+            System.arraycopy(mReply, 0, rcv, 0, COMMAND_LEN);
+            return COMMAND_LEN;
+        }
+    }
+
+    @Test
+    public void phases_splitSendAndWait() {
+        SimulatorIntf dev = SimulatorIntf.instant();
+        dev.setLink(1000000, 0, 0);
+        for (int i = 0; i < 20; i++)
+            assertNotNull(dev.MeasureCmd(14000000));
+        assertNull(dev.MeasureCmd(GblDefs.MAX_FREQ + 1));
+
+        CommandMetrics.Snapshot s = dev.getMetrics().snapshot(ProtocolCodec.CMD_SARK_MEAS_RX);
+        assertEquals("MEAS_RX", s.getName());
+        assertEquals(21, s.getCommands());
+        assertEquals(1, s.getErrors());
+        assertEquals(0, s.getTimeouts());
+        assertEquals(21, s.getCount(CommandMetrics.PHASE_WAIT));
+        assertEquals(20, s.getCount(CommandMetrics.PHASE_DECODE));
+        assertTrue(s.getMean(CommandMetrics.PHASE_WAIT) >= 1000000);
+        assertTrue(s.getMean(CommandMetrics.PHASE_SEND) < s.getMean(CommandMetrics.PHASE_WAIT));
+        assertTrue(s.getPercentile(CommandMetrics.PHASE_TOTAL, 50) >= 1000000);
+        assertTrue(s.getPercentile(CommandMetrics.PHASE_TOTAL, 100) <= s.getMax(CommandMetrics.PHASE_TOTAL));
+        assertEquals(1, dev.getMetrics().snapshot().size());
+
+        dev.getMetrics().reset();
+        assertEquals(0, dev.getMetrics().snapshot().size());
+    }
+
+    @Test
+    public void commandRate_overOneSecond() throws InterruptedException {
+        SimulatorIntf dev = SimulatorIntf.instant();
+        dev.setLink(2000000, 0, 0);
+        assertEquals(0.0f, dev.getMetrics().getCommandRate(), 0.0f);
+        long t0 = System.nanoTime();
+        while (System.nanoTime() - t0 < 1200000000L)
+            dev.MeasureCmd(14000000);
+        float rate = dev.getMetrics().getCommandRate();
+        assertTrue(rate > 250 && rate <= 500);
+
+        /* A reset starts a new window at the next command: no rate until it is full */
+        dev.getMetrics().reset();
+        assertEquals(0.0f, dev.getMetrics().getCommandRate(), 0.0f);
+        Thread.sleep(900);
+        dev.MeasureCmd(14000000);
+        assertEquals(0.0f, dev.getMetrics().getCommandRate(), 0.0f);
+    }
+
+    @Test
+    public void timeToFirstMeasurement_fromConnect() {
+        SimulatorIntf dev = new SimulatorIntf();
+        dev.setCommandTime(ProtocolCodec.CMD_SARK_MEAS_RX, 0);
+        dev.setLink(1000000, 0, 0);
+        assertEquals(-1, dev.getMetrics().getTimeToFirstMeasurement());
+        dev.connect();
+        dev.VersionCmd();
+        assertEquals(-1, dev.getMetrics().getTimeToFirstMeasurement());
+        assertNotNull(dev.MeasureCmd(14000000));
+        long first = dev.getMetrics().getTimeToFirstMeasurement();
+        assertTrue(first >= 2000000);
+
+        /* Later measurements do not count; a new connection does */
+        assertNotNull(dev.MeasureCmd(14000000));
+        assertEquals(first, dev.getMetrics().getTimeToFirstMeasurement());
+        dev.close();
+        dev.connect();
+        assertEquals(-1, dev.getMetrics().getTimeToFirstMeasurement());
+        assertNotNull(dev.MeasureCmd(14000000));
+        assertTrue(dev.getMetrics().getTimeToFirstMeasurement() >= 1000000);
+        dev.getMetrics().reset();
+        assertEquals(-1, dev.getMetrics().getTimeToFirstMeasurement());
+    }
+
+    @Test
+    public void timeouts_areRetried() {
+        SimulatorIntf dev = SimulatorIntf.instant();
+        dev.setLink(0, 0, 1.0);
+        dev.setRcvTimeout(100000);
+        dev.setRetries(2);
+        assertNull(dev.MeasureCmd(14000000));
+
+        CommandMetrics.Snapshot s = dev.getMetrics().snapshot(ProtocolCodec.CMD_SARK_MEAS_RX);
+        assertEquals(1, s.getCommands());
+        assertEquals(3, s.getTimeouts());
+        assertEquals(2, s.getRetries());
+        assertEquals(3, dev.getCommandCount());
+
+        dev.setLink(0, 0, 0);
+        assertNotNull(dev.MeasureCmd(14000000));
+    }
+
+    @Test
+    public void pipelined_sweepIsCounted() {
+        SimulatorIntf dev = new SimulatorIntf();
+        dev.setCommandTime(ProtocolCodec.CMD_SARK_MEAS_RX_EXT, 0);
+        dev.connect();
+        dev.setPipelineDepth(4);
+        SweepResult result = new SweepResult(400);
+        assertEquals(400, new SweepEngine(dev).Sweep(GblDefs.MIN_FREQ, GblDefs.MIN_FREQ + 399000,
+                (byte) 1, result, null));
+
+        CommandMetrics.Snapshot s = dev.getMetrics().snapshot(ProtocolCodec.CMD_SARK_MEAS_RX_EXT);
+        assertEquals(dev.getCommandCount(), s.getCommands());
+        assertEquals(s.getCommands(), s.getCount(CommandMetrics.PHASE_SEND));
+        assertEquals(s.getCommands(), s.getCount(CommandMetrics.PHASE_WAIT));
+        assertEquals(s.getCommands(), s.getCount(CommandMetrics.PHASE_DECODE));
+    }
+
+    @Test
+    public void hotPath_doesNotAllocate() {
+        CannedDeviceIntf dev = new CannedDeviceIntf();
+        float out[] = new float[2 * ProtocolCodec.EXT_POINTS];
+        for (int i = 0; i < 200000; i++)
+            dev.MeasureCmdExt(14000000, 1000, (byte) 1, out, 0);
+
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long before = mx.getThreadAllocatedBytes(id);
+        for (int i = 0; i < 100000; i++)
+            dev.MeasureCmdExt(14000000, 1000, (byte) 1, out, 0);
+        long allocated = mx.getThreadAllocatedBytes(id) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
@@ -0,0 +1,134 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Commands run on the I/O thread, in order; results come back through the callback executor.
+ */
+public class DeviceExecutorTest {
+
+    /* Stands in for the main thread: callbacks are queued and run by the test */
+    private static class QueueExecutor implements Executor {
+        final LinkedBlockingQueue<Runnable> mQueue = new LinkedBlockingQueue<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mQueue.add(command);
+        }
+
+        void runNext() throws InterruptedException {
+            Runnable r = mQueue.poll(5, TimeUnit.SECONDS);
+            assertNotNull("callback not posted", r);
+            r.run();
+        }
+    }
+
+    @Test
+    public void commands_runOnIoThreadAndPostResults() throws Exception {
+        QueueExecutor ui = new QueueExecutor();
+        DeviceExecutor executor = new DeviceExecutor(SimulatorIntf.instant(), ui);
+        final List<Object> results = new ArrayList<>();
+
+        Future<MeasureDataBin> bin = executor.MeasureCmd(14000000, new DeviceExecutor.Callback<MeasureDataBin>() {
+            @Override
+            public void onResult(MeasureDataBin result) {
+                results.add(result);
+            }
+        });
+        Future<String> thread = executor.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return Thread.currentThread().getName();
+            }
+        }, null);
+
+        assertEquals(50.0f, bin.get().getRs(), 0.0f);
+        assertEquals(DeviceExecutor.THREAD_NAME, thread.get());
+        assertTrue(results.isEmpty());
+        ui.runNext();
+        assertSame(bin.get(), results.get(0));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5000));
+    }
+
+    @Test
+    public void failedTask_reportsErrorAndKeepsRunning() throws Exception {
+        QueueExecutor ui = new QueueExecutor();
+        DeviceExecutor executor = new DeviceExecutor(SimulatorIntf.instant(), ui);
+        final List<Object> results = new ArrayList<>();
+
+        Future<Integer> failed = executor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                throw new IllegalStateException("sweep failed");
+            }
+        }, new DeviceExecutor.Callback<Integer>() {
+            @Override
+            public void onResult(Integer result) {
+                results.add(result);
+            }
+        }, new DeviceExecutor.ErrorCallback() {
+            @Override
+            public void onError(Exception e) {
+                results.add(e);
+            }
+        });
+        try {
+            failed.get();
+            fail("exception not propagated");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        ui.runNext();
+        assertEquals(1, results.size());
+        assertTrue(results.get(0) instanceof IllegalStateException);
+
+        /* The I/O thread survives the failure */
+        assertTrue(executor.VersionCmd(null).get() > 0);
+        assertTrue(ui.mQueue.isEmpty());
+        executor.shutdown();
+    }
+
+    @Test
+    public void everyCommand_hasAsyncVariant() throws Exception {
+        DeviceExecutor executor = new DeviceExecutor(SimulatorIntf.instant(), new QueueExecutor());
+
+        assertTrue(executor.VersionCmd(null).get() > 0);
+        assertTrue(executor.BeepCmd(null).get() >= 0);
+        assertTrue(executor.BeepCmd(1000, 100, null).get() >= 0);
+        assertNotNull(executor.MeasureCmd(14000000, (byte) 1, null).get());
+        assertEquals(4, executor.MeasureCmdExt(14000000, 1000, null).get().length);
+        assertEquals(4, executor.MeasureCmdExt(14000000, 1000, (byte) 1, null).get().length);
+        assertTrue(executor.SignalGenCmd(14000000, 0, (byte) 1, null).get() >= 0);
+        assertTrue(executor.ResetCmd(null).get() >= 0);
+        assertNotNull(executor.MeasDetectorCmd(14000000, null).get());
+        assertNotNull(executor.MeasRfCmd(14000000, null).get());
+        assertNull(executor.MeasureCmd(GblDefs.MAX_FREQ + 1, null).get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void slowLink_doesNotBlockCaller() throws Exception {
+        SimulatorIntf dev = SimulatorIntf.instant();
+        dev.setLink(200000000, 0, 0);       /* 200 ms round trip */
+        DeviceExecutor executor = new DeviceExecutor(dev, new QueueExecutor());
+
+        long t0 = System.nanoTime();
+        Future<MeasureDataBin> bin = executor.MeasureCmd(14000000, null);
+        assertTrue(System.nanoTime() - t0 < 100000000);
+        assertNotNull(bin.get());
+        assertTrue(System.nanoTime() - t0 >= 200000000);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,109 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Split and concurrent sweeps over several simulated analyzers.
+ */
+public class DeviceManagerTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static SimulatorIntf device(long latency) {
+        SimulatorIntf dev = SimulatorIntf.instant(new SimulatorIntf.SeriesRlc(25.0, 10e-6, 100e-12));
+        dev.setLink(latency, 0, 0);
+        return dev;
+    }
+
+    private static DeviceManager manager(int devices, long latency) {
+        DeviceManager manager = new DeviceManager(DIRECT);
+        for (int i = 0; i < devices; i++)
+            manager.add(device(latency));
+        return manager;
+    }
+
+    @Test
+    public void splitSweep_matchesSingleDevice() {
+        SweepResult single = new SweepEngine(device(0)).Sweep(3000000, 7000000, 203, (byte) 1, null);
+        DeviceManager manager = manager(3, 0);
+        final int[] next = {0};
+
+        SweepResult split = manager.Sweep(3000000, 7000000, 203, (byte) 1, new DeviceManager.SweepListener() {
+            @Override
+            public void onSweepChunk(SweepResult result, int index, int count) {
+                /* Contiguous, in order, each point once */
+                assertEquals(next[0], index);
+                next[0] += count;
+            }
+        });
+
+        assertNotNull(split);
+        assertEquals(203, next[0]);
+        assertEquals(single.size(), split.size());
+        for (int i = 0; i < single.size(); i++) {
+            assertEquals(single.getFreq(i), split.getFreq(i));
+            assertEquals(single.getRs(i), split.getRs(i), 0.0f);
+            assertEquals(single.getXs(i), split.getXs(i), 0.0f);
+        }
+        manager.closeAll();
+    }
+
+    @Test
+    public void splitSweep_scalesWithDevices() {
+        DeviceManager one = manager(1, 500000);
+        DeviceManager four = manager(4, 500000);
+
+        long t0 = System.nanoTime();
+        assertNotNull(one.Sweep(1000000, 30000000, 256, (byte) 1, null));
+        long t1 = System.nanoTime();
+        assertNotNull(four.Sweep(1000000, 30000000, 256, (byte) 1, null));
+        long t4 = System.nanoTime() - t1;
+
+        /* 64 commands of 0.5 ms: 32 ms on one device, about 8 on four */
+        assertTrue("1 device " + (t1 - t0) / 1000 + " us, 4 devices " + t4 / 1000 + " us", t4 < (t1 - t0) / 2);
+        one.closeAll();
+        four.closeAll();
+    }
+
+    @Test
+    public void failedDevice_blocksRemeasuredByOthers() {
+        DeviceManager manager = manager(2, 0);
+        SimulatorIntf bad = device(0);
+        bad.setLink(0, 0, 1.0);
+        bad.setRcvTimeout(1000000);
+        manager.add(bad);
+
+        SweepResult result = manager.Sweep(1000000, 2000000, 400, (byte) 1, null);
+        assertNotNull(result);
+        assertEquals(400, result.size());
+        for (int i = 0; i < result.size(); i++)
+            assertEquals(1000000 + i * (1000000 / 399), result.getFreq(i));
+
+        /* No device left */
+        DeviceManager none = new DeviceManager(DIRECT);
+        none.add(bad);
+        assertNull(none.Sweep(1000000, 2000000, 400, (byte) 1, null));
+        manager.closeAll();
+    }
+
+    @Test
+    public void independentSweeps_runConcurrently() throws Exception {
+        DeviceManager manager = manager(2, 0);
+        Future<SweepResult> a = manager.Sweep(0, 1000000, 2000000, 100, (byte) 1, null);
+        Future<SweepResult> b = manager.Sweep(1, 5000000, 6000000, 50, (byte) 1, null);
+        assertEquals(100, a.get().size());
+        assertEquals(50, b.get().size());
+        assertEquals(5000000, b.get().getFreq(0));
+        manager.closeAll();
+        assertEquals(0, manager.size());
+    }
+}
@@ -0,0 +1,89 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * MeasureDataBin metrics against the ComplexNumber reference formulas.
+ */
+public class MeasureDataBinTest {
+
+    /* Reference: rho = (Z - Z0) / (Z + Z0) computed with ComplexNumber */
+    private static ComplexNumber rho(float rs, float xs, float z0) {
+        ComplexNumber cxZ = new ComplexNumber(rs, xs);
+        ComplexNumber cxZ0 = new ComplexNumber(z0, 0);
+        return ComplexNumber.divide(ComplexNumber.subtract(cxZ, cxZ0), ComplexNumber.add(cxZ, cxZ0));
+    }
+
+    private static void assertMatchesReference(MeasureDataBin bin, float z0) {
+        ComplexNumber cxRho = rho(bin.getRs(), bin.getXs(), z0);
+        double mod = cxRho.mod();
+        float vswr = (mod > 0.980197824) ? 99.999f : (1.0f + (float) mod) / (1.0f - (float) mod);
+
+        assertEquals(Float.floatToRawIntBits(vswr), Float.floatToRawIntBits(bin.getVswr()));
+        assertEquals(Float.floatToRawIntBits((float) mod), Float.floatToRawIntBits(bin.getRhMag()));
+        assertEquals(Float.floatToRawIntBits((float) ((cxRho.getArg() / Math.PI) * 180.0)),
+                Float.floatToRawIntBits(bin.getRhAngle()));
+        assertEquals(Float.floatToRawIntBits((float) (mod * mod * 100.0)), Float.floatToRawIntBits(bin.getRefPwr()));
+        if (mod != 0) {
+            assertEquals(Float.floatToRawIntBits((float) (20f * Math.log10(mod))), Float.floatToRawIntBits(bin.getRL()));
+            assertEquals(Float.floatToRawIntBits((float) (Math.abs(20f / (2f * Math.log10(mod))))),
+                    Float.floatToRawIntBits(bin.getCL()));
+        } else {
+            assertEquals(-99.999f, bin.getRL(), 0.0f);
+            assertEquals(99.999f, bin.getCL(), 0.0f);
+        }
+    }
+
+    @Test
+    public void metrics_matchComplexNumberFormulas() {
+        Random random = new Random(110);
+        for (int i = 0; i < 2000; i++) {
+            MeasureDataBin bin = new MeasureDataBin(i, 14000000, random.nextFloat() * 500.0f,
+                    (random.nextFloat() - 0.5f) * 1000.0f);
+            assertMatchesReference(bin, 50.0f);
+        }
+        assertMatchesReference(new MeasureDataBin(0, 14000000, 50.0f, 0.0f), 50.0f);
+        assertMatchesReference(new MeasureDataBin(0, 14000000, 0.0f, 0.0f), 50.0f);
+    }
+
+    @Test
+    public void cache_invalidatedBySetters() {
+        MeasureDataBin bin = new MeasureDataBin(0, 14000000, 50.0f, 0.0f);
+        assertEquals(1.0f, bin.getVswr(), 0.0f);
+
+        bin.setZs(100.0f, 0.0f);
+        assertEquals(2.0f, bin.getVswr(), 1e-6f);
+        assertMatchesReference(bin, 50.0f);
+
+        bin.set_RefImp(100.0f);
+        assertEquals(1.0f, bin.getVswr(), 0.0f);
+        assertMatchesReference(bin, 100.0f);
+
+        bin.setZs(25.0f, 30.0f);
+        assertMatchesReference(bin, 100.0f);
+    }
+
+    @Test
+    public void getters_doNotAllocate() {
+        MeasureDataBin bin = new MeasureDataBin(0, 14000000, 37.0f, -12.0f);
+        float sum = 0;
+        for (int i = 0; i < 100000; i++)
+            sum += bin.getVswr() + bin.getRL() + bin.getCL() + bin.getRhMag() + bin.getRhAngle() + bin.getRefPwr();
+
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        mx.getThreadAllocatedBytes(id);
+        long before = mx.getThreadAllocatedBytes(id);
+        for (int i = 0; i < 100000; i++)
+            sum += bin.getVswr() + bin.getRL() + bin.getCL() + bin.getRhMag() + bin.getRhAngle() + bin.getRefPwr();
+        long allocated = mx.getThreadAllocatedBytes(id) - before;
+
+        assertTrue(sum != 0);
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
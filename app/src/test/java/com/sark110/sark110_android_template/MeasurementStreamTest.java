@@ -0,0 +1,229 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measurement stream on the simulated analyzer: policies, rates and producer independence.
+ */
+public class MeasurementStreamTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static DeviceExecutor device(long latency) {
+        SimulatorIntf dev = SimulatorIntf.instant();
+        dev.setLink(latency, 0, 0);
+        dev.setPipelineDepth(4);
+        return new DeviceExecutor(dev, DIRECT);
+    }
+
+    /* Records the sequence numbers it gets, optionally slowly */
+    private static class Recorder implements MeasurementStream.FrameListener {
+        final List<Long> mSeqs = new ArrayList<>();
+        final long mDelay;
+
+        Recorder(long delay) {
+            mDelay = delay;
+        }
+
+        @Override
+        public void onFrame(MeasurementStream.Frame frame) {
+            synchronized (this) {
+                mSeqs.add(frame.getSeq());
+            }
+            if (mDelay > 0) {
+                try {
+                    Thread.sleep(mDelay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        synchronized List<Long> seqs() {
+            return new ArrayList<>(mSeqs);
+        }
+    }
+
+    private static MeasurementStream.Frame frame(long seq) {
+        MeasurementStream.Frame f = new MeasurementStream.Frame();
+        f.mSeq = seq;
+        return f;
+    }
+
+    @Test
+    public void policies_keepTheRightFrames() {
+        /* A consumer that has not run yet: its executor holds the drains */
+        final List<Runnable> pending = new ArrayList<>();
+        Executor held = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                pending.add(command);
+            }
+        };
+        Recorder oldest = new Recorder(0);
+        Recorder latest = new Recorder(0);
+        Recorder buffer = new Recorder(0);
+        MeasurementStream.Subscription sOldest =
+                new MeasurementStream.Subscription(oldest, held, 0, MeasurementStream.DROP_OLDEST, 4);
+        MeasurementStream.Subscription sLatest =
+                new MeasurementStream.Subscription(latest, held, 0, MeasurementStream.LATEST_ONLY, 4);
+        MeasurementStream.Subscription sBuffer =
+                new MeasurementStream.Subscription(buffer, held, 0, MeasurementStream.BUFFER, 4);
+
+        for (long seq = 0; seq < 10; seq++) {
+            sOldest.offer(frame(seq), seq, false);
+            sLatest.offer(frame(seq), seq, false);
+            sBuffer.offer(frame(seq), seq, false);
+        }
+        assertEquals(3, pending.size());        /* One drain each until it runs */
+        for (Runnable r : pending)
+            r.run();
+
+        assertEquals("[6, 7, 8, 9]", oldest.seqs().toString());
+        assertEquals("[9]", latest.seqs().toString());
+        assertEquals("[0, 1, 2, 3]", buffer.seqs().toString());
+        assertEquals(6, sOldest.getDropped());
+        assertEquals(9, sLatest.getDropped());
+        assertEquals(6, sBuffer.getDropped());
+        assertEquals(4, sBuffer.getDelivered());
+    }
+
+    @Test
+    public void rateLimit_holdsFramesUntilDue() {
+        Recorder r = new Recorder(0);
+        MeasurementStream.Subscription s =
+                new MeasurementStream.Subscription(r, DIRECT, 10, MeasurementStream.BUFFER, 100);
+        s.offer(frame(0), 0, false);                    /* First one is due at once */
+        s.offer(frame(1), 50000000L, false);            /* 100 ms interval not over */
+        s.offer(frame(2), 90000000L, false);
+        assertEquals("[0]", r.seqs().toString());
+        s.offer(frame(3), 100000000L, false);           /* Due: everything buffered */
+        assertEquals("[0, 1, 2, 3]", r.seqs().toString());
+        s.offer(frame(4), 120000000L, false);
+        s.offer(null, 130000000L, true);                /* Stream stopped: flushed */
+        assertEquals("[0, 1, 2, 3, 4]", r.seqs().toString());
+        assertEquals(0, s.getDropped());
+    }
+
+    @Test
+    public void slowConsumer_doesNotThrottleProducer() throws Exception {
+        /* 1 ms round trip, 4 commands in flight: up to 4000 frames/s */
+        DeviceExecutor dev = device(1000000);
+        MeasurementStream stream = new MeasurementStream(dev);
+        stream.setFrequency(14000000);
+        ExecutorService slowThread = Executors.newSingleThreadExecutor();
+
+        Recorder fast = new Recorder(0);
+        Recorder slow = new Recorder(20);
+        MeasurementStream.Subscription sFast = stream.subscribe(fast, null, 0, MeasurementStream.BUFFER, 1024);
+        MeasurementStream.Subscription sSlow = stream.subscribe(slow, slowThread, 0, MeasurementStream.DROP_OLDEST, 8);
+
+        stream.start();
+        Thread.sleep(2200);
+        float rate = stream.getFrameRate();
+        stream.stop();
+        dev.shutdown();
+        assertTrue(dev.awaitTermination(1000));
+        slowThread.shutdown();
+        assertTrue(slowThread.awaitTermination(1, TimeUnit.SECONDS));
+
+        long frames = stream.getFrameCount();
+
+        /* The producer ran at transport speed; the 50 frames/s consumer got a fraction */
+        assertTrue(rate > 2000);
+        assertEquals(frames, sFast.getDelivered());
+        List<Long> seqs = fast.seqs();
+        for (int i = 0; i < seqs.size(); i++)
+            assertEquals(i, (long) seqs.get(i));
+        assertTrue(sSlow.getDelivered() < 200);
+        assertEquals(frames, sSlow.getDelivered() + sSlow.getDropped());
+        List<Long> slowSeqs = slow.seqs();
+        for (int i = 1; i < slowSeqs.size(); i++)
+            assertTrue(slowSeqs.get(i) > slowSeqs.get(i - 1));
+    }
+
+    @Test
+    public void disconnect_stopsStream() throws Exception {
+        DeviceExecutor dev = device(0);
+        MeasurementStream stream = new MeasurementStream(dev);
+        Recorder r = new Recorder(0);
+        stream.subscribe(r, null, 0, MeasurementStream.LATEST_ONLY, 1);
+        stream.start();
+        Thread.sleep(50);
+        dev.getDeviceIntf().close();
+        Thread.sleep(50);
+        assertFalse(stream.isRunning());
+        assertTrue(r.seqs().size() > 0);
+        dev.shutdown();
+    }
+
+    @Test
+    public void restart_beforeLastBatch_keepsOneBatchQueued() throws Exception {
+        DeviceExecutor dev = device(0);
+        final MeasurementStream stream = new MeasurementStream(dev);
+        final CountDownLatch hold = new CountDownLatch(1);
+        dev.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                hold.await();
+                return 0;
+            }
+        }, null);
+
+        /* Paused and resumed while the I/O thread is busy: the queued batch carries on */
+        stream.start();
+        stream.stop();
+        stream.start();
+        final long frames[] = new long[1];
+        dev.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                frames[0] = stream.getFrameCount();
+                return 0;
+            }
+        }, null);
+        hold.countDown();
+        Thread.sleep(50);
+        assertTrue(stream.isRunning());
+        stream.stop();
+        dev.shutdown();
+        assertTrue(dev.awaitTermination(1000));
+        assertEquals(MeasurementStream.BATCH, frames[0]);
+    }
+
+    @Test
+    public void failedBatch_stopsStreamForRestart() throws Exception {
+        DeviceExecutor dev = device(0);
+        final MeasurementStream stream = new MeasurementStream(dev);
+        stream.setSamples((byte) 3);
+        final int samples[] = new int[1];
+        stream.subscribe(new MeasurementStream.FrameListener() {
+            @Override
+            public void onFrame(MeasurementStream.Frame frame) {
+                samples[0] = frame.getSamples();
+                throw new IllegalStateException();
+            }
+        }, null, 0, MeasurementStream.LATEST_ONLY, 1);
+        stream.start();
+        Thread.sleep(50);
+        assertFalse(stream.isRunning());
+        assertEquals(1, stream.getErrorCount());
+        assertEquals(3, samples[0]);
+        dev.shutdown();
+    }
+}
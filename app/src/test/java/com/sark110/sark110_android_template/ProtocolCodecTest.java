@@ -0,0 +1,163 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Frame codec tests, including the zero-allocation check of the measurement hot path.
+ */
+public class ProtocolCodecTest {
+    private static final int ITERATIONS = 100000;
+
+    /**
+     * Transport answering every command with a canned reply, without allocating
+     */
+    private static class CannedDeviceIntf extends DeviceIntf {
+        private final byte[] mReply;
+
+        CannedDeviceIntf(byte[] reply) {
+            this.mReply = reply;
+            this.mConnected = true;
+        }
+        void onCreate() {}
+        void onResume() {}
+        void connect() {}
+        void close() {}
+        boolean IsAvailable() { return true; }
+
+        int SendRcv(byte snd[], byte rcv[]) {
+            System.arraycopy(mReply, 0, rcv, 0, COMMAND_LEN);
+            return COMMAND_LEN;
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void fields_matchLittleEndianByteBuffer() {
+        byte[] buf = new byte[DeviceIntf.COMMAND_LEN];
+        ByteBuffer bb = ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN);
+
+        ProtocolCodec.putInt(buf, 1, 0x89abcdef);
+        assertEquals(0x89abcdef, bb.getInt(1));
+        assertEquals(0x89abcdef, ProtocolCodec.getInt(buf, 1));
+
+        ProtocolCodec.putShort(buf, 7, 0xfedc);
+        assertEquals(0xfedc, ProtocolCodec.getShort(buf, 7));
+
+        bb.putFloat(9, -123.456f);
+        assertEquals(-123.456f, ProtocolCodec.getFloat(buf, 9), 0.0f);
+    }
+
+    @Test
+    public void measureExt_encodesAndDecodes() {
+        byte[] snd = new byte[DeviceIntf.COMMAND_LEN];
+        ProtocolCodec.encodeMeasureExt(snd, 14000000, 25000, (byte) 3);
+        ByteBuffer bb = ByteBuffer.wrap(snd).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(ProtocolCodec.CMD_SARK_MEAS_RX_EXT, snd[0]);
+        assertEquals(14000000, bb.getInt(1));
+        assertEquals(ProtocolCodec.PAR_SARK_CAL, snd[5]);
+        assertEquals(3, snd[6]);
+        assertEquals(25000, bb.getInt(7));
+
+        byte[] rcv = new byte[DeviceIntf.COMMAND_LEN];
+        rcv[0] = 'O';
+        int[] halves = {0x5240, 0xc500, 0x3c00, 0x0001, 0x7bff, 0x8000, 0x4248, 0xbc00};
+        for (int i = 0; i < halves.length; i++)
+            ProtocolCodec.putShort(rcv, 1 + 2 * i, halves[i]);
+        float[] out = new float[8];
+        ProtocolCodec.decodeMeasureExt(rcv, out, 0);
+        assertEquals(50.0f, out[0], 0.0f);
+        assertEquals(-5.0f, out[1], 0.0f);
+        assertEquals(1.0f, out[2], 0.0f);
+        assertEquals(65504.0f, out[4], 0.0f);
+        assertEquals(3.140625f, out[6], 0.0f);
+        for (int i = 0; i < halves.length; i++)
+            assertEquals(Float.floatToRawIntBits(ProtocolCodec.halfToFloat(halves[i])),
+                    Float.floatToRawIntBits(out[i]));
+    }
+
+    @Test
+    public void halfTable_bitExactForAllInputs() {
+        for (int h = 0; h < 0x10000; h++)
+            assertEquals(Float.floatToRawIntBits(ProtocolCodec.halfToFloat(h)),
+                    Float.floatToRawIntBits(ProtocolCodec.halfToFloatTable(h)));
+        /* Only the 16 lower bits count, as in halfToFloat() */
+        assertEquals(1.0f, ProtocolCodec.halfToFloatTable(0x13c00), 0.0f);
+    }
+
+    @Test
+    public void bulkDecode_matchesSingleValues() {
+        byte[] rcv = new byte[DeviceIntf.COMMAND_LEN];
+        DeviceIntf dev = new CannedDeviceIntf(rcv);
+        float[] branchy = new float[9];
+        float[] table = new float[9];
+        float[] ext = new float[8];
+        for (int h = 0; h < 0x10000; h += 8) {
+            for (int i = 0; i < 8; i++)
+                ProtocolCodec.putShort(rcv, 1 + 2 * i, h + i);
+            dev.setHalfFloatTable(false);
+            dev.toFloat(rcv, 1, branchy, 1, 8);
+            dev.setHalfFloatTable(true);
+            dev.toFloat(rcv, 1, table, 1, 8);
+            ProtocolCodec.decodeMeasureExt(rcv, ext, 0, true);
+            for (int i = 0; i < 8; i++) {
+                int expected = Float.floatToRawIntBits(ProtocolCodec.halfToFloat(h + i));
+                assertEquals(expected, Float.floatToRawIntBits(branchy[1 + i]));
+                assertEquals(expected, Float.floatToRawIntBits(table[1 + i]));
+                assertEquals(expected, Float.floatToRawIntBits(ext[i]));
+                assertEquals(expected, Float.floatToRawIntBits(dev.toFloat(h + i)));
+            }
+        }
+    }
+
+    @Test
+    public void measureCmd_hotPathDoesNotAllocate() {
+        byte[] reply = new byte[DeviceIntf.COMMAND_LEN];
+        reply[0] = 'O';
+        for (int i = 0; i < 8; i++)
+            ProtocolCodec.putShort(reply, 1 + 2 * i, 0x5240);
+        DeviceIntf dev = new CannedDeviceIntf(reply);
+        float[] out = new float[8];
+
+        for (int i = 0; i < ITERATIONS; i++) {              /* warm-up */
+            dev.MeasureCmdExt(14000000, 1000, (byte) 0, out, 0);
+            dev.MeasureCmd(14000000, (byte) 0, out, 0);
+        }
+        allocatedBytes();
+        long before = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertTrue(dev.MeasureCmdExt(14000000 + i, 1000, (byte) 0, out, 0) >= 0);
+            assertTrue(dev.MeasureCmd(14000000 + i, (byte) 0, out, 0) >= 0);
+        }
+        long allocated = allocatedBytes() - before;
+
+        /* Anything allocated per command would show up as several MB here */
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    @Test
+    public void measureCmd_staleReplyIsNotOk() {
+        byte[] reply = new byte[DeviceIntf.COMMAND_LEN];
+        reply[0] = 'O';
+        DeviceIntf dev = new CannedDeviceIntf(reply) {
+            int mCalls;
+            @Override
+            int SendRcv(byte snd[], byte rcv[]) {
+                if (mCalls++ == 0)
+                    return super.SendRcv(snd, rcv);
+                return COMMAND_LEN;         /* Reports success without writing a reply */
+            }
+        };
+        assertNotNull(dev.MeasureCmd(14000000));
+        assertNull(dev.MeasureCmd(14000000));
+    }
+}
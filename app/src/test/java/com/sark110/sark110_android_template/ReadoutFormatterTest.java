@@ -0,0 +1,58 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Readout formatting: fixed point as String.format, impedance and engineering prefixes.
+ */
+public class ReadoutFormatterTest {
+    @Test
+    public void fixed_matchesStringFormat() {
+        ReadoutFormatter f = new ReadoutFormatter(8);
+        double values[] = {0, 1.5, -1.0049, 2.3456, 99.999, 123456.789, 0.0051, 1e-9};
+        for (double v : values)
+            assertEquals(String.format(Locale.US, "%.2f", v), f.clear().appendFixed(v, 2).toString());
+        /* Unlike String.format, no "-0.00" */
+        assertEquals("0.00", f.clear().appendFixed(-0.004, 2).toString());
+    }
+
+    @Test
+    public void impedance_signOfReactance() {
+        ReadoutFormatter f = new ReadoutFormatter(8);
+        assertEquals("Z: 50.00 +j25.50", f.clear().append("Z: ").appendImpedance(50, 25.5, 2).toString());
+        assertEquals("Z: 12.30 -j4.00", f.clear().append("Z: ").appendImpedance(12.3, -4, 2).toString());
+        assertEquals("0.00 +j0.00", f.clear().appendImpedance(0, 0, 2).toString());
+    }
+
+    @Test
+    public void eng_prefixesAndRounding() {
+        ReadoutFormatter f = new ReadoutFormatter(8);
+        assertEquals("14.0500 MHz", f.clear().appendEng(14050000, 6, "Hz").toString());
+        assertEquals("100.000 kHz", f.clear().appendEng(100000, 6, "Hz").toString());
+        assertEquals("1.000 GHz", f.clear().appendEng(1e9, 4, "Hz").toString());
+        assertEquals("120.5 pF", f.clear().appendEng(120.5e-12, 4, "F").toString());
+        assertEquals("1.234 \u00b5H", f.clear().appendEng(1.2341e-6, 4, "H").toString());
+        assertEquals("-47.00 nH", f.clear().appendEng(-47e-9, 4, "H").toString());
+        assertEquals("0.000 H", f.clear().appendEng(0, 4, "H").toString());
+        /* Carries into the next prefix and the next decade */
+        assertEquals("1.000 kHz", f.clear().appendEng(999.96, 4, "Hz").toString());
+        assertEquals("10.00 mH", f.clear().appendEng(9.9996e-3, 4, "H").toString());
+        /* Beyond the prefixes */
+        assertEquals("0.0010 pF", f.clear().appendEng(1e-15, 2, "F").toString());
+    }
+
+    @Test
+    public void buffer_growsAndKeepsContents() {
+        ReadoutFormatter f = new ReadoutFormatter(1);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            f.appendFixed(i, 3).append(';');
+            expected.append(String.format(Locale.US, "%.3f", (double) i)).append(';');
+        }
+        assertEquals(expected.toString(), new String(f.getChars(), 0, f.length()));
+    }
+}
@@ -0,0 +1,125 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reply framing and hand-off between the transport callback and the command thread.
+ */
+public class ReplyRingTest {
+    private static final int LEN = DeviceIntf.COMMAND_LEN;
+
+    private static byte[] frame(int id) {
+        byte f[] = new byte[LEN];
+        for (int i = 0; i < LEN; i++)
+            f[i] = (byte) (id + i);
+        return f;
+    }
+
+    @Test
+    public void frames_splitAndPacked() {
+        ReplyRing ring = new ReplyRing(LEN, 4);
+        byte dst[] = new byte[LEN];
+
+        /* One reply in two notifications */
+        byte f[] = frame(1);
+        assertTrue(ring.write(f, 0, 5));
+        assertEquals(0, ring.available());
+        assertEquals(-1, ring.read(dst, 1));
+        assertTrue(ring.write(f, 5, LEN - 5));
+        assertEquals(LEN, ring.read(dst, 0));
+        assertArrayEquals(f, dst);
+
+        /* Two replies in one notification, wrapping around the end of the ring */
+        for (int round = 0; round < 10; round++) {
+            byte packed[] = new byte[2 * LEN];
+            System.arraycopy(frame(2 * round), 0, packed, 0, LEN);
+            System.arraycopy(frame(2 * round + 1), 0, packed, LEN, LEN);
+            assertTrue(ring.write(packed, 0, packed.length));
+            assertEquals(2, ring.available());
+            assertEquals(LEN, ring.read(dst, 0));
+            assertArrayEquals(frame(2 * round), dst);
+            assertEquals(LEN, ring.read(dst, 0));
+            assertArrayEquals(frame(2 * round + 1), dst);
+        }
+    }
+
+    @Test
+    public void messages_keepOneReplyEach() {
+        ReplyRing ring = new ReplyRing(LEN, 4);
+        byte dst[] = new byte[LEN];
+
+        /* A longer notification is one reply, truncated */
+        byte longer[] = new byte[LEN + 5];
+        System.arraycopy(frame(1), 0, longer, 0, LEN);
+        assertTrue(ring.writeMessage(longer, 0, longer.length));
+        assertEquals(1, ring.available());
+
+        /* A stray fragment is dropped by the next full reply instead of shifting it */
+        assertTrue(ring.writeMessage(frame(2), 0, 7));
+        assertTrue(ring.writeMessage(frame(3), 0, LEN));
+        assertEquals(2, ring.available());
+        assertEquals(LEN, ring.read(dst, 0));
+        assertArrayEquals(frame(1), dst);
+        assertEquals(LEN, ring.read(dst, 0));
+        assertArrayEquals(frame(3), dst);
+
+        /* Short fragments are still assembled */
+        byte f[] = frame(4);
+        assertTrue(ring.writeMessage(f, 0, 10));
+        assertTrue(ring.writeMessage(f, 10, LEN - 10));
+        assertEquals(LEN, ring.read(dst, 0));
+        assertArrayEquals(f, dst);
+    }
+
+    @Test
+    public void overflow_dropsWithoutMisaligning() {
+        ReplyRing ring = new ReplyRing(LEN, 2);
+        byte dst[] = new byte[LEN];
+        assertTrue(ring.write(frame(1), 0, LEN));
+        assertTrue(ring.write(frame(2), 0, 4));
+        assertFalse(ring.write(frame(3), 0, LEN));
+        assertEquals(1, ring.getOverflows());
+
+        /* The partial frame went with the overflow; the next reply starts a frame */
+        assertTrue(ring.write(frame(4), 0, LEN));
+        assertEquals(LEN, ring.read(dst, 0));
+        assertArrayEquals(frame(1), dst);
+        assertEquals(LEN, ring.read(dst, 0));
+        assertArrayEquals(frame(4), dst);
+
+        ring.write(frame(5), 0, 7);
+        ring.clear();
+        ring.write(frame(6), 0, LEN);
+        assertEquals(LEN, ring.read(dst, 0));
+        assertArrayEquals(frame(6), dst);
+    }
+
+    @Test
+    public void read_waitsForWriterThread() throws InterruptedException {
+        final ReplyRing ring = new ReplyRing(LEN, 4);
+        final int count = 20000;
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    byte f[] = frame(i);
+                    while (!ring.write(f, 0, LEN))
+                        Thread.yield();
+                }
+            }
+        });
+        writer.start();
+        byte dst[] = new byte[LEN];
+        for (int i = 0; i < count; i++) {
+            assertEquals(LEN, ring.read(dst, 1000));
+            assertArrayEquals(frame(i), dst);
+        }
+        writer.join();
+
+        long t0 = System.nanoTime();
+        assertEquals(-1, ring.read(dst, 20));
+        assertTrue(System.nanoTime() - t0 >= 20000000L);
+    }
+}
@@ -0,0 +1,71 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Resonance finder against antenna models with known resonances.
+ */
+public class ResonanceFinderTest {
+
+    @Test
+    public void dipole_findsOddHarmonicsOnly() {
+        SimulatorIntf dev = SimulatorIntf.instant(new SimulatorIntf.Dipole(7100000, 60.0, 600.0));
+        ResonanceFinder finder = new ResonanceFinder(dev);
+        List<ResonanceFinder.Resonance> found = finder.Find(1000000, 31000000, (byte) 0);
+
+        /* The anti-resonances at 14.2 and 28.4 MHz are poles of this model, not zeros */
+        assertEquals(2, found.size());
+        assertEquals(7100000, found.get(0).getFreq(), 200);
+        assertEquals(ResonanceFinder.ZERO_REACTANCE | ResonanceFinder.MIN_VSWR, found.get(0).getKind());
+        assertEquals(60.0f, found.get(0).getRs(), 0.1f);
+        assertEquals(0.0f, found.get(0).getXs(), 1.0f);
+        assertEquals(1.2f, found.get(0).getVswr(), 0.01f);
+        assertEquals(21300000, found.get(1).getFreq(), 200);
+        assertEquals(dev.getCommandCount(), finder.getCommandCount());
+        /* 251 for the 1001 point scan, the rest refining */
+        assertTrue(finder.getCommandCount() <= 300);
+    }
+
+    @Test
+    public void minimumWithoutCrossing_isRefined() {
+        final double f0 = 10123456;
+        SimulatorIntf dev = SimulatorIntf.instant(new SimulatorIntf.AntennaModel() {
+            @Override
+            public void impedance(int freq, double[] z) {
+                double d = (freq - f0) / 1e6;
+                z[0] = 60.0 + 1000.0 * d * d;     /* Above |Z0 + jX|: a single minimum */
+                z[1] = 30.0;
+            }
+        });
+        ResonanceFinder finder = new ResonanceFinder(dev);
+        List<ResonanceFinder.Resonance> found = finder.Find(1000000, 31000000, (byte) 0);
+
+        assertEquals(1, found.size());
+        assertEquals(ResonanceFinder.MIN_VSWR, found.get(0).getKind());
+        assertEquals(f0, found.get(0).getFreq(), 2000);
+        assertEquals(30.0f, found.get(0).getXs(), 0.0f);
+        assertEquals(dev.getCommandCount(), finder.getCommandCount());
+    }
+
+    @Test
+    public void vswrLimit_andErrors() {
+        SimulatorIntf dev = SimulatorIntf.instant(new SimulatorIntf.SeriesRlc(400.0, 1e-6, 1 / (Math.pow(2 * Math.PI * 14e6, 2) * 1e-6)));
+        ResonanceFinder finder = new ResonanceFinder(dev);
+        List<ResonanceFinder.Resonance> found = finder.Find(1000000, 31000000, (byte) 0);
+        /* VSWR 8 at resonance: still reported, as a crossing and a minimum */
+        assertEquals(1, found.size());
+        assertEquals(14000000, found.get(0).getFreq(), 200);
+
+        finder.setMaxVswr(5.0f);
+        found = finder.Find(1000000, 31000000, (byte) 0);
+        assertEquals(ResonanceFinder.ZERO_REACTANCE, found.get(0).getKind());
+
+        assertNull(finder.Find(31000000, 1000000, (byte) 0));
+        dev.close();
+        assertNull(finder.Find((byte) 0));
+    }
+}
@@ -0,0 +1,133 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Session log: round trip, append across sessions, seek by time and non-blocking writes.
+ */
+public class SessionLogTest {
+
+    private static File tempLog() throws IOException {
+        File file = File.createTempFile("session", ".log");
+        assertTrue(file.delete());
+        file.deleteOnExit();
+        return file;
+    }
+
+    /* Appends, retrying while the queue is full so that no record is lost; retries count as drops */
+    private static void appendAll(SessionLog log, int from, int count) {
+        for (int i = from; i < from + count; i++)
+            while (!log.append(1000000 + i, i * 0.5f, -i, i & 0xff, i % 1000))
+                Thread.yield();
+    }
+
+    @Test
+    public void records_roundTripAcrossChunksAndSessions() throws IOException {
+        File file = tempLog();
+        int first = 2 * SessionLog.CHUNK_SIZE / SessionLog.RECORD_SIZE + 17;
+        SessionLog log = new SessionLog(file);
+        appendAll(log, 0, first);
+        log.close();
+
+        log = new SessionLog(file);
+        appendAll(log, first, 1000);
+        log.close();
+
+        SessionLogReader reader = new SessionLogReader(file);
+        assertEquals(first + 1000, reader.size());
+        SessionLogReader.Record rec = new SessionLogReader.Record();
+        long last = 0;
+        for (int i = 0; i < reader.size(); i++) {
+            reader.read(i, rec);
+            assertEquals(1000000 + i, rec.getFreq());
+            assertEquals(i * 0.5f, rec.getRs(), 0.0f);
+            assertEquals(-i, rec.getXs(), 0.0f);
+            assertEquals(i & 0xff, rec.getSamples());
+            assertEquals(i % 1000, rec.getRtt());
+            assertTrue(rec.getTime() >= last);
+            last = rec.getTime();
+        }
+        reader.close();
+    }
+
+    @Test
+    public void seek_findsFirstRecordAtTime() throws Exception {
+        File file = tempLog();
+        SessionLog log = new SessionLog(file);
+        appendAll(log, 0, 100);
+        Thread.sleep(20);
+        long mark = System.currentTimeMillis() * 1000000L;
+        Thread.sleep(20);
+        appendAll(log, 100, 100);
+        log.close();
+
+        SessionLogReader reader = new SessionLogReader(file);
+        assertEquals(100, reader.seek(mark));
+        assertEquals(0, reader.seek(0));
+        assertEquals(200, reader.seek(Long.MAX_VALUE));
+        assertEquals(150, reader.seek(reader.getTime(150)));
+        reader.close();
+    }
+
+    @Test
+    public void idleWriter_wakesOnAppend() throws Exception {
+        File file = tempLog();
+        SessionLog log = new SessionLog(file);
+        Thread.sleep(50);           /* Writer parked with nothing to do */
+        assertTrue(log.append(1000000, 50, 0, 1, 100));
+        long deadline = System.currentTimeMillis() + 500;
+        long size = 0;
+        while (size == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            SessionLogReader reader = new SessionLogReader(file);
+            size = reader.size();
+            reader.close();
+        }
+        assertEquals(1, size);
+        log.close();
+    }
+
+    @Test
+    public void append_neverBlocks() throws IOException {
+        File file = tempLog();
+        SessionLog log = new SessionLog(file, 64);
+        int accepted = 0;
+        for (int i = 0; i < 200000; i++) {
+            if (log.append(1000000 + i, 50.0f, 0.0f, 1, 100))
+                accepted++;
+        }
+        log.close();
+        /* A full queue drops and counts instead of waiting for the writer */
+        assertEquals(200000, accepted + log.getDropped());
+
+        SessionLogReader reader = new SessionLogReader(file);
+        assertEquals(accepted, reader.size());
+        reader.close();
+    }
+
+    @Test
+    public void foreignFile_isRejected() throws IOException {
+        File file = tempLog();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.write(new byte[64]);
+        raf.close();
+        try {
+            new SessionLogReader(file);
+            fail("header accepted");
+        } catch (IOException e) {
+            /* expected */
+        }
+        try {
+            new SessionLog(file);
+            fail("header accepted");
+        } catch (IOException e) {
+            /* expected */
+        }
+    }
+}
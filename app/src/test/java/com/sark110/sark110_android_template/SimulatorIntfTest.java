@@ -0,0 +1,93 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Simulated analyzer: command set, antenna models and link model.
+ */
+public class SimulatorIntfTest {
+
+    @Test
+    public void commands_answerLikeTheFirmware() {
+        SimulatorIntf dev = SimulatorIntf.instant();
+
+        assertTrue(dev.VersionCmd() > 0);
+        assertEquals(SimulatorIntf.SIM_PROTOCOL_VER, dev.getProtocolVer());
+        assertEquals(SimulatorIntf.SIM_VERSION, new String(dev.getSarkVer(), 0, SimulatorIntf.SIM_VERSION.length()));
+        assertTrue(dev.BeepCmd() >= 0);
+        assertTrue(dev.SignalGenCmd(14000000, 0, (byte) 1) >= 0);
+        assertTrue(dev.ResetCmd() >= 0);
+
+        MeasureDataBin bin = dev.MeasureCmd(14000000);
+        assertEquals(50.0f, bin.getRs(), 0.0f);
+        assertEquals(0.0f, bin.getXs(), 0.0f);
+        assertNull(dev.MeasureCmd(GblDefs.MAX_FREQ + 1));
+
+        DeviceIntf.MeasureDetector det = dev.MeasDetectorCmd(14000000);
+        assertEquals(50.0f, det.getMagV(), 1e-4f);
+        assertEquals(1.0f, det.getMagI(), 0.0f);
+        assertNotNull(dev.MeasRfCmd(14000000));
+    }
+
+    @Test
+    public void measureExt_packsHalfFloats() {
+        SimulatorIntf dev = SimulatorIntf.instant();
+        /* 10 uH, 100 pF: resonant at 5.03 MHz */
+        dev.setAntennaModel(new SimulatorIntf.SeriesRlc(25.0, 10e-6, 100e-12));
+
+        MeasureDataBin[] ext = dev.MeasureCmdExt(4000000, 500000);
+        for (int i = 0; i < 4; i++) {
+            MeasureDataBin exact = dev.MeasureCmd(ext[i].getFreq());
+            /* Half-float has an 11 bit significand */
+            assertEquals(exact.getRs(), ext[i].getRs(), Math.abs(exact.getRs()) / 1024);
+            assertEquals(exact.getXs(), ext[i].getXs(), Math.abs(exact.getXs()) / 1024);
+        }
+        assertTrue(ext[2].getXs() < 0);
+        assertTrue(ext[3].getXs() > 0);
+    }
+
+    @Test
+    public void halfFloat_roundTrips() {
+        for (int h = 0; h < 0x10000; h++) {
+            float f = ProtocolCodec.halfToFloat(h);
+            if (Float.isNaN(f))
+                continue;
+            assertEquals(h, ProtocolCodec.floatToHalf(f));
+        }
+        assertEquals(0x7c00, ProtocolCodec.floatToHalf(1e6f));
+        assertEquals(0x3c00, ProtocolCodec.floatToHalf(1.0004f));
+    }
+
+    @Test
+    public void dipole_resonatesAtOddHarmonics() {
+        SimulatorIntf.Dipole dipole = new SimulatorIntf.Dipole(7100000, 73.0, 600.0);
+        double[] z = new double[2];
+        dipole.impedance(7100000, z);
+        assertEquals(73.0, z[0], 1e-6);
+        assertEquals(0.0, z[1], 1e-6);
+        dipole.impedance(7000000, z);
+        assertTrue(z[1] < 0);
+        dipole.impedance(21300000, z);
+        assertEquals(0.0, z[1], 1e-6);
+    }
+
+    @Test
+    public void link_latencyAndDrops() {
+        SimulatorIntf dev = SimulatorIntf.instant();
+        dev.setLink(2000000, 0, 0);
+        long t0 = System.nanoTime();
+        assertNotNull(dev.MeasureCmd(14000000));
+        assertTrue(System.nanoTime() - t0 >= 2000000);
+
+        dev.setLink(0, 0, 1.0);
+        dev.setRcvTimeout(1000000);
+        assertNull(dev.MeasureCmd(14000000));
+        assertEquals(1, dev.getDroppedCount());
+
+        dev.close();
+        assertFalse(dev.isConnected());
+        assertNull(dev.MeasureCmd(14000000));
+    }
+}
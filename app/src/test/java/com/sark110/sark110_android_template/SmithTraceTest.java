@@ -0,0 +1,94 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Smith chart trace: reflection coefficient, incremental segments and nearest-point lookup.
+ */
+public class SmithTraceTest {
+    @Test
+    public void reflection_matchesMeasureDataBin() {
+        SmithTrace t = new SmithTrace();
+        t.begin(3);
+        float z[][] = {{50, 0}, {25, -40}, {300, 120}};
+        for (int i = 0; i < 3; i++)
+            t.add(i, 1000000 * (i + 1), z[i][0], z[i][1]);
+        for (int i = 0; i < 3; i++) {
+            MeasureDataBin bin = new MeasureDataBin(i, 1000000 * (i + 1), z[i][0], z[i][1]);
+            double mag = Math.hypot(t.getRe(i), t.getIm(i));
+            assertEquals(bin.getRhMag(), mag, 1e-6);
+            if (mag > 0)
+                assertEquals(bin.getRhAngle(), Math.toDegrees(Math.atan2(t.getIm(i), t.getRe(i))), 1e-3);
+            assertEquals(1000000 * (i + 1), t.getFreq(i));
+        }
+    }
+
+    @Test
+    public void lines_growAsPointsArrive() {
+        SmithTrace t = new SmithTrace();
+        t.begin(10);
+        t.add(0, 1, 50, 0);
+        t.add(1, 2, 50, 50);
+        t.add(3, 4, 10, 0);           /* Waits for point 2 */
+        t.updateLines();
+        assertEquals(2, t.getLineCount());
+        float lines[] = t.getLines();
+        assertEquals(t.getRe(0), lines[4], 0);
+        assertEquals(t.getIm(1), lines[7], 0);
+
+        t.add(2, 3, 100, 0);
+        t.updateLines();
+        assertEquals(4, t.getLineCount());
+        assertEquals(t.getRe(2), lines[10], 0);
+        assertEquals(t.getRe(3), lines[14], 0);
+
+        t.begin(10);
+        t.updateLines();
+        assertEquals(0, t.getLineCount());
+        assertFalse(t.isSet(0));
+    }
+
+    @Test
+    public void nearest_matchesBruteForce() {
+        Random random = new Random(42);
+        SmithTrace t = new SmithTrace();
+        int points = 2000;
+        t.begin(points);
+        assertEquals(-1, t.nearest(0, 0));
+        for (int i = 0; i < points; i++) {
+            /* Mostly passive loads, a few off the chart */
+            float rs = random.nextInt(20) == 0 ? -random.nextFloat() * 30 : random.nextFloat() * 500;
+            t.add(i, i, rs, (random.nextFloat() - 0.5f) * 1000);
+        }
+        for (int q = 0; q < 2000; q++) {
+            float re = (random.nextFloat() - 0.5f) * 3;
+            float im = (random.nextFloat() - 0.5f) * 3;
+            int best = -1;
+            float bestDist = Float.MAX_VALUE;
+            for (int i = 0; i < points; i++) {
+                if (!t.isSet(i))
+                    continue;
+                float dx = t.getRe(i) - re, dy = t.getIm(i) - im;
+                float d = dx * dx + dy * dy;
+                if (d < bestDist) {
+                    bestDist = d;
+                    best = i;
+                }
+            }
+            assertEquals(best, t.nearest(re, im));
+        }
+    }
+
+    @Test
+    public void nearest_singleFarPoint() {
+        SmithTrace t = new SmithTrace();
+        t.begin(1);
+        t.add(0, 1, 0, 0);            /* Short circuit: -1 + j0 */
+        assertEquals(0, t.nearest(0.99f, 0.99f));
+        assertEquals(0, t.nearest(5, -5));
+    }
+}
@@ -0,0 +1,124 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sweep cache: hits, background refresh, reference impedance changes and eviction.
+ */
+public class SweepCacheTest {
+    private static final int START = 1000000;
+    private static final int STOP = 31000000;
+
+    /* Callbacks are run on the I/O thread; results are handed over through a queue */
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static class Results implements DeviceExecutor.Callback<SweepResult> {
+        final LinkedBlockingQueue<Object> mQueue = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onResult(SweepResult result) {
+            mQueue.add(result == null ? "failed" : result);
+        }
+
+        SweepResult next() throws InterruptedException {
+            Object o = mQueue.poll(5, TimeUnit.SECONDS);
+            assertTrue("no refresh", o instanceof SweepResult);
+            return (SweepResult) o;
+        }
+    }
+
+    private static SimulatorIntf device() {
+        return SimulatorIntf.instant(new SimulatorIntf.Dipole(7100000, 60.0, 600.0));
+    }
+
+    @Test
+    public void revisit_paintsFromCacheAndRefreshes() throws Exception {
+        SimulatorIntf dev = device();
+        SweepCache cache = new SweepCache(new DeviceExecutor(dev, DIRECT), 1 << 20);
+        Results results = new Results();
+
+        assertNull(cache.fetch(START, STOP, 401, (byte) 0, 50.0f, results));
+        SweepResult fresh = results.next();
+        assertEquals(401, fresh.size());
+        assertEquals(101, dev.getCommandCount());
+
+        SweepResult cached = cache.fetch(START, STOP, 401, (byte) 0, 50.0f, results);
+        assertNotNull(cached);
+        for (int i = 0; i < 401; i++) {
+            assertEquals(fresh.getFreq(i), cached.getFreq(i));
+            assertEquals(Float.floatToRawIntBits(fresh.getRs(i)), Float.floatToRawIntBits(cached.getRs(i)));
+            assertEquals(Float.floatToRawIntBits(fresh.getXs(i)), Float.floatToRawIntBits(cached.getXs(i)));
+        }
+        assertEquals(401, results.next().size());
+        assertEquals(202, dev.getCommandCount());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void refImpChange_servedWithoutDevice() throws Exception {
+        SimulatorIntf dev = device();
+        SweepCache cache = new SweepCache(new DeviceExecutor(dev, DIRECT), 1 << 20);
+        Results results = new Results();
+        cache.fetch(START, STOP, 401, (byte) 0, 50.0f, results);
+        results.next();
+        int commands = dev.getCommandCount();
+
+        SweepResult at75 = cache.get(SweepCache.key(START, STOP, 401, (byte) 0), 75.0f);
+        assertEquals(commands, dev.getCommandCount());
+        assertEquals(75.0f, at75.get_RefImp(), 0.0f);
+        MeasureDataBin bin = dev.MeasureCmd(at75.getFreq(100));
+        bin.set_RefImp(75.0f);
+        assertEquals(bin.getVswr(), at75.getVswr(100), 1e-3f * bin.getVswr());
+
+        /* Different averaging is a different sweep */
+        assertNull(cache.get(SweepCache.key(START, STOP, 401, (byte) 2), 50.0f));
+    }
+
+    @Test
+    public void eviction_isLeastRecentlyUsedBySize() {
+        SweepCache cache = new SweepCache(new DeviceExecutor(device(), DIRECT),
+                3 * (100 * SweepCache.POINT_BYTES + SweepCache.ENTRY_OVERHEAD));
+        SweepCache.Key a = SweepCache.key(START, STOP, 100, (byte) 0);
+        SweepCache.Key b = SweepCache.key(START, STOP / 2, 100, (byte) 0);
+        SweepCache.Key c = SweepCache.key(START, STOP / 3, 100, (byte) 0);
+        cache.put(a, new SweepResult(100));
+        cache.put(b, new SweepResult(100));
+        cache.put(c, new SweepResult(100));
+        assertEquals(3, cache.size());
+
+        assertNotNull(cache.get(a, 50.0f));         /* a is now the most recent */
+        cache.put(SweepCache.key(START, STOP / 4, 100, (byte) 0), new SweepResult(100));
+        assertEquals(3, cache.size());
+        assertNull(cache.get(b, 50.0f));
+        assertNotNull(cache.get(a, 50.0f));
+        assertNotNull(cache.get(c, 50.0f));
+
+        /* A sweep larger than the whole cache is not kept */
+        cache.put(b, new SweepResult(1000));
+        assertNull(cache.get(b, 50.0f));
+        assertEquals(3 * (100 * SweepCache.POINT_BYTES + SweepCache.ENTRY_OVERHEAD), cache.getBytes());
+    }
+
+    @Test
+    public void ttl_expiresEntries() throws Exception {
+        SweepCache cache = new SweepCache(new DeviceExecutor(device(), DIRECT), 1 << 20);
+        SweepCache.Key key = SweepCache.key(START, STOP, 100, (byte) 0);
+        cache.setTtl(50);
+        cache.put(key, new SweepResult(100));
+        assertNotNull(cache.get(key, 50.0f));
+        Thread.sleep(100);
+        assertNull(cache.get(key, 50.0f));
+        assertEquals(0, cache.getBytes());
+    }
+}
@@ -0,0 +1,116 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sweep engine tests against the simulated analyzer.
+ */
+public class SweepEngineTest {
+    /* 50 ohm load; the link latency is the only cost so the sweep is bound by round trips */
+    private static SimulatorIntf loadDevice(long latency) {
+        SimulatorIntf dev = SimulatorIntf.instant();
+        dev.setLink(latency, 0, 0);
+        return dev;
+    }
+
+    private static class Collector implements SweepEngine.SweepListener {
+        int[] mFreqs;
+        int mDone = Integer.MIN_VALUE;
+        int mChunks;
+
+        Collector(int points) {
+            mFreqs = new int[points];
+        }
+        public void onSweepChunk(SweepEngine engine, SweepResult result, int index, int count) {
+            for (int i = index; i < index + count; i++) {
+                assertEquals(0, mFreqs[i]);
+                mFreqs[i] = result.getFreq(i);
+                assertEquals(50.0f, result.getRs(i), 0.0f);
+            }
+            mChunks++;
+        }
+        public void onSweepDone(SweepEngine engine, int points) {
+            mDone = points;
+        }
+    }
+
+    @Test
+    public void sweep_deliversEveryPointOnce() {
+        SimulatorIntf dev = loadDevice(0);
+        SweepEngine engine = new SweepEngine(dev);
+        Collector collector = new Collector(1001);
+
+        SweepResult result = engine.Sweep(1000000, 31000000, 1001, (byte) 0, collector);
+        assertEquals(1001, result.size());
+        assertEquals(1001, collector.mDone);
+        assertEquals(251, engine.getCommandCount());
+        assertEquals(251, collector.mChunks);
+        for (int i = 0; i < 1001; i++)
+            assertEquals(1000000 + i * 30000, collector.mFreqs[i]);
+    }
+
+    @Test
+    public void sweep_pipelinedKeepsOrder() {
+        SimulatorIntf dev = loadDevice(0);
+        dev.setPipelineDepth(4);
+        SweepEngine engine = new SweepEngine(dev);
+        Collector collector = new Collector(1001);
+
+        assertEquals(4, dev.getPipelineDepth());
+        assertEquals(1001, engine.Sweep(1000000, 31000000, 1001, (byte) 0, collector).size());
+        assertEquals(251, collector.mChunks);
+        for (int i = 0; i < 1001; i++)
+            assertEquals(1000000 + i * 30000, collector.mFreqs[i]);
+    }
+
+    @Test
+    public void sweep_cancelDrainsPipeline() {
+        SimulatorIntf dev = loadDevice(0);
+        dev.setPipelineDepth(4);
+        SweepEngine engine = new SweepEngine(dev);
+
+        assertNull(engine.Sweep(1000000, 31000000, 1001, (byte) 0, new Collector(1001) {
+            @Override
+            public void onSweepChunk(SweepEngine engine, SweepResult result, int index, int count) {
+                if (index == 40)
+                    engine.cancel();
+            }
+        }));
+        assertEquals(-1, dev.Rcv(new byte[DeviceIntf.COMMAND_LEN]));
+    }
+
+    @Test
+    public void sweep_fewPointsUsesSingleCommand() {
+        SimulatorIntf dev = loadDevice(0);
+        SweepEngine engine = new SweepEngine(dev);
+        Collector collector = new Collector(3);
+
+        assertEquals(3, engine.Sweep(1000000, 2000000, 3, (byte) 0, collector).size());
+        assertEquals(3, dev.getCommandCount());
+        assertEquals(2000000, collector.mFreqs[2]);
+    }
+
+    @Test
+    public void sweep_rejectsInvalidRange() {
+        SweepEngine engine = new SweepEngine(loadDevice(0));
+        assertNull(engine.Sweep(2000000, 1000000, 10, (byte) 0, null));
+        assertNull(engine.Sweep(1000000, 2000000, 0, (byte) 0, null));
+        /* 10 points in 5 Hz would repeat frequencies */
+        assertNull(engine.Sweep(1000000, 1000005, 10, (byte) 0, null));
+        assertEquals(6, engine.Sweep(1000000, 1000005, 6, (byte) 0, null).size());
+    }
+
+    @Test
+    public void cancel_beforeStartAbortsNextSweepOnly() {
+        SimulatorIntf dev = loadDevice(0);
+        SweepEngine engine = new SweepEngine(dev);
+
+        /* Cancelled while still queued: the sweep sends nothing */
+        engine.cancel();
+        assertNull(engine.Sweep(1000000, 2000000, 101, (byte) 0, null));
+        assertEquals(0, dev.getCommandCount());
+        assertEquals(101, engine.Sweep(1000000, 2000000, 101, (byte) 0, null).size());
+    }
+}
@@ -0,0 +1,190 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Exporters: number formatting, file formats and streaming cost.
+ */
+public class SweepExporterTest {
+
+    private static SweepResult randomSweep(int n) {
+        Random random = new Random(110);
+        SweepResult result = new SweepResult(n);
+        for (int i = 0; i < n; i++)
+            result.set(i, GblDefs.MIN_FREQ + i * 100, random.nextFloat() * 500.0f,
+                    (random.nextFloat() - 0.5f) * 1000.0f);
+        result.set(0, GblDefs.MIN_FREQ, 50.0f, 0.0f);
+        result.set(1, GblDefs.MIN_FREQ + 100, 0.0f, 0.0f);
+        return result;
+    }
+
+    private static String fixed(double v, int decimals) {
+        char buf[] = new char[NumberChars.MAX_CHARS];
+        return new String(buf, 0, NumberChars.appendFixed(buf, 0, v, decimals));
+    }
+
+    private static String sci(double v, int digits) {
+        char buf[] = new char[NumberChars.MAX_CHARS];
+        return new String(buf, 0, NumberChars.appendSci(buf, 0, v, digits));
+    }
+
+    private static String general(double v, int digits) {
+        char buf[] = new char[NumberChars.MAX_CHARS];
+        return new String(buf, 0, NumberChars.appendGeneral(buf, 0, v, digits));
+    }
+
+    @Test
+    public void numberChars_matchesFormat() {
+        char buf[] = new char[NumberChars.MAX_CHARS];
+        assertEquals("-9223372036854775808", new String(buf, 0, NumberChars.appendLong(buf, 0, Long.MIN_VALUE)));
+        assertEquals("0", new String(buf, 0, NumberChars.appendLong(buf, 0, 0)));
+        assertEquals("14000000", new String(buf, 0, NumberChars.appendLong(buf, 0, 14000000)));
+        assertEquals("3.1416", fixed(Math.PI, 4));
+        assertEquals("-0.50", fixed(-0.5, 2));
+        assertEquals("0.00", fixed(-0.001, 2));
+        assertEquals("100", fixed(99.6, 0));
+        assertEquals("1.000e+03", sci(999.96, 4));
+        assertEquals("1.234568e-07", sci(1.2345678e-7, 7));
+        assertEquals("0.000e+00", sci(0, 4));
+        assertEquals("50.00000", general(50, 7));
+        assertEquals("1.000000e-04", general(1e-4, 7));
+        assertEquals("NaN", general(Double.NaN, 7));
+        assertEquals("-Infinity", fixed(Double.NEGATIVE_INFINITY, 3));
+
+        /* Same digits as String.format, up to the rounding of the last one */
+        Random random = new Random(110);
+        for (int i = 0; i < 100000; i++) {
+            double v = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 10);
+            String ours = fixed(v, 6);
+            String ref = String.format(Locale.US, "%.6f", v);
+            if (!ours.equals(ref))
+                assertEquals(Double.parseDouble(ref), Double.parseDouble(ours), 1e-6 + 4 * Math.ulp(v));
+            ours = sci(v, 7);
+            ref = String.format(Locale.US, "%.6e", v);
+            if (!ours.equals(ref))
+                assertEquals(Double.parseDouble(ref), Double.parseDouble(ours), Math.abs(v) * 1e-6 + 4 * Math.ulp(v));
+        }
+    }
+
+    @Test
+    public void touchstone_matchesMetrics() throws IOException {
+        SweepResult result = randomSweep(1000);
+        result.set_RefImp(75.0f);
+        for (int format = TouchstoneExporter.FORMAT_RI; format <= TouchstoneExporter.FORMAT_DB; format++) {
+            StringWriter out = new StringWriter();
+            TouchstoneExporter exporter = new TouchstoneExporter(out, format);
+            exporter.setComment("SARK-110 test");
+            exporter.export(result);
+
+            BufferedReader in = new BufferedReader(new StringReader(out.toString()));
+            assertEquals("! SARK-110 test", in.readLine());
+            assertEquals("# HZ S " + new String[] {"RI", "MA", "DB"}[format] + " R 75", in.readLine());
+            for (int i = 0; i < result.size(); i++) {
+                String f[] = in.readLine().split(" ");
+                assertEquals(result.getFreq(i), Integer.parseInt(f[0]));
+                double a = Double.parseDouble(f[1]);
+                double b = Double.parseDouble(f[2]);
+                double re = MeasureMath.rhoRe(result.getRs(i), result.getXs(i), 75.0);
+                double im = MeasureMath.rhoIm(result.getRs(i), result.getXs(i), 75.0);
+                if (format == TouchstoneExporter.FORMAT_RI) {
+                    assertEquals(re, a, 1e-6);
+                    assertEquals(im, b, 1e-6);
+                } else {
+                    double mag = format == TouchstoneExporter.FORMAT_MA ? a : Math.pow(10, a / 20);
+                    assertEquals(MeasureMath.mod(re, im), mag, 1e-5);
+                    if (mag > 1e-6)
+                        assertEquals(result.getRhAngle(i), b, 1e-3);
+                }
+            }
+            assertNull(in.readLine());
+        }
+    }
+
+    @Test
+    public void csv_matchesSweepResult() throws IOException {
+        SweepResult result = randomSweep(1000);
+        StringWriter out = new StringWriter();
+        CsvExporter exporter = new CsvExporter(out, CsvExporter.COL_VSWR, CsvExporter.COL_RS,
+                CsvExporter.COL_XS, CsvExporter.COL_CS);
+        exporter.setSeparator(';');
+        exporter.export(result);
+
+        BufferedReader in = new BufferedReader(new StringReader(out.toString()));
+        assertEquals("Freq;VSWR;Rs;Xs;Cs", in.readLine());
+        for (int i = 0; i < result.size(); i++) {
+            String f[] = in.readLine().split(";");
+            assertEquals(5, f.length);
+            assertEquals(result.getFreq(i), Integer.parseInt(f[0]));
+            assertEquals(result.getVswr(i), Float.parseFloat(f[1]), Math.abs(result.getVswr(i)) * 1e-6f);
+            assertEquals(result.getRs(i), Float.parseFloat(f[2]), Math.abs(result.getRs(i)) * 1e-6f);
+            assertEquals(result.getXs(i), Float.parseFloat(f[3]), Math.abs(result.getXs(i)) * 1e-6f);
+            assertEquals(result.getCs(i), Float.parseFloat(f[4]), Math.abs(result.getCs(i)) * 1e-6f);
+        }
+        assertNull(in.readLine());
+    }
+
+    @Test
+    public void binary_roundTripsExactly() throws IOException {
+        SweepResult result = randomSweep(10000);
+        result.set_RefImp(75.0f);
+        File file = File.createTempFile("sweep", ".bin");
+        file.deleteOnExit();
+        BinarySweepExporter exporter = new BinarySweepExporter(new FileOutputStream(file));
+        exporter.export(result);
+        exporter.close();
+        assertEquals(BinarySweepExporter.HEADER_SIZE + 10000 * BinarySweepExporter.POINT_SIZE, file.length());
+
+        SweepResult read = BinarySweepExporter.read(file);
+        assertEquals(result.size(), read.size());
+        assertEquals(75.0f, read.get_RefImp(), 0.0f);
+        for (int i = 0; i < result.size(); i++) {
+            assertEquals(result.getFreq(i), read.getFreq(i));
+            assertEquals(Float.floatToRawIntBits(result.getRs(i)), Float.floatToRawIntBits(read.getRs(i)));
+            assertEquals(Float.floatToRawIntBits(result.getXs(i)), Float.floatToRawIntBits(read.getXs(i)));
+        }
+    }
+
+    @Test
+    public void export_boundedMemory() throws IOException {
+        final long count[] = new long[1];
+        Writer sink = new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+                count[0] += len;
+            }
+            @Override
+            public void flush() {
+            }
+            @Override
+            public void close() {
+            }
+        };
+        SweepResult result = randomSweep(100000);
+        CsvExporter exporter = new CsvExporter(sink, CsvExporter.COL_RS, CsvExporter.COL_XS,
+                CsvExporter.COL_VSWR, CsvExporter.COL_RL);
+        exporter.export(result);
+        long chars = count[0];
+
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long before = mx.getThreadAllocatedBytes(id);
+        exporter.export(result);
+        long allocated = mx.getThreadAllocatedBytes(id) - before;
+
+        assertEquals(2 * chars, count[0]);
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+}
@@ -0,0 +1,65 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Batch metrics must match MeasureDataBin on both the sequential and the fork/join path.
+ */
+public class SweepMetricsTest {
+
+    private static SweepResult randomSweep(int n) {
+        Random random = new Random(110);
+        SweepResult result = new SweepResult(n);
+        for (int i = 0; i < n; i++)
+            result.set(i, GblDefs.MIN_FREQ + i * 100, random.nextFloat() * 500.0f,
+                    (random.nextFloat() - 0.5f) * 1000.0f);
+        /* Clamping corners: perfect match, short, open-ish and pure reactance */
+        result.set(0, GblDefs.MIN_FREQ, 50.0f, 0.0f);
+        result.set(1, GblDefs.MIN_FREQ + 100, 0.0f, 0.0f);
+        result.set(2, GblDefs.MIN_FREQ + 200, 1e6f, 0.0f);
+        result.set(3, GblDefs.MIN_FREQ + 300, 0.0f, 25.0f);
+        return result;
+    }
+
+    private static void assertSame(float expected, float actual) {
+        assertEquals(Float.floatToRawIntBits(expected), Float.floatToRawIntBits(actual));
+    }
+
+    private static void assertMatchesBins(SweepResult result, SweepMetrics metrics) {
+        assertEquals(result.size(), metrics.size());
+        for (int i = 0; i < result.size(); i++) {
+            MeasureDataBin bin = result.getBin(i);
+            assertSame(bin.getVswr(), metrics.getVswr()[i]);
+            assertSame(bin.getRL(), metrics.getRL()[i]);
+            assertSame(bin.getRhMag(), metrics.getRhMag()[i]);
+            assertSame(bin.getRhAngle(), metrics.getRhAngle()[i]);
+            assertSame(bin.getQ(), metrics.getQ()[i]);
+            assertSame(bin.getCs(), metrics.getCs()[i]);
+            assertSame(bin.getLs(), metrics.getLs()[i]);
+        }
+    }
+
+    @Test
+    public void sequential_matchesMeasureDataBin() {
+        SweepResult result = randomSweep(1000);
+        result.set_RefImp(75.0f);
+        SweepMetrics metrics = new SweepMetrics(1000);
+        metrics.compute(result);
+        assertMatchesBins(result, metrics);
+        assertEquals(99.999f, metrics.getVswr()[2], 0.0f);
+        assertEquals(-99999.99f, metrics.getCs()[1], 0.0f);
+    }
+
+    @Test
+    public void parallel_matchesMeasureDataBin() {
+        int n = 4 * SweepMetrics.PARALLEL_THRESHOLD + 17;
+        SweepResult result = randomSweep(n);
+        SweepMetrics metrics = new SweepMetrics(n);
+        metrics.compute(result);
+        assertMatchesBins(result, metrics);
+    }
+}
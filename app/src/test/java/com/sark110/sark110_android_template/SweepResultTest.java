@@ -0,0 +1,66 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * SweepResult metrics must match the MeasureDataBin ones bit for bit.
+ */
+public class SweepResultTest {
+
+    private static void assertSameFloat(String name, float expected, float actual) {
+        assertEquals(name, Float.floatToRawIntBits(expected), Float.floatToRawIntBits(actual));
+    }
+
+    static void assertSameMetrics(MeasureDataBin bin, SweepResult result, int i) {
+        assertEquals(bin.getFreq(), result.getFreq(i));
+        assertSameFloat("Rs", bin.getRs(), result.getRs(i));
+        assertSameFloat("Xs", bin.getXs(), result.getXs(i));
+        assertSameFloat("ZsMag", bin.getZsMag(), result.getZsMag(i));
+        assertSameFloat("ZsAngle", bin.getZsAngle(), result.getZsAngle(i));
+        assertSameFloat("Vswr", bin.getVswr(), result.getVswr(i));
+        assertSameFloat("RL", bin.getRL(), result.getRL(i));
+        assertSameFloat("CL", bin.getCL(), result.getCL(i));
+        assertSameFloat("RhMag", bin.getRhMag(), result.getRhMag(i));
+        assertSameFloat("RhAngle", bin.getRhAngle(), result.getRhAngle(i));
+        assertSameFloat("RefPwr", bin.getRefPwr(), result.getRefPwr(i));
+        assertSameFloat("Q", bin.getQ(), result.getQ(i));
+        assertSameFloat("Cs", bin.getCs(), result.getCs(i));
+        assertSameFloat("Ls", bin.getLs(), result.getLs(i));
+    }
+
+    @Test
+    public void metrics_matchMeasureDataBin() {
+        Random random = new Random(110);
+        float[] refImps = {50.0f, 75.0f, 12.5f};
+        float[][] special = {{50, 0}, {0, 0}, {0, 10}, {50, -0.0f}, {1e6f, 0}, {-3, 2}};
+        int n = 2000 + special.length;
+        SweepResult result = new SweepResult(n);
+
+        for (int i = 0; i < n; i++) {
+            float rs, xs;
+            if (i < special.length) {
+                rs = special[i][0];
+                xs = special[i][1];
+            } else {
+                rs = random.nextFloat() * 500.0f;
+                xs = (random.nextFloat() - 0.5f) * 1000.0f;
+            }
+            result.set(i, GblDefs.MIN_FREQ + i * 1000, rs, xs);
+        }
+        assertEquals(n, result.size());
+
+        for (float refImp : refImps) {
+            result.set_RefImp(refImp);
+            for (int i = 0; i < n; i++) {
+                MeasureDataBin bin = new MeasureDataBin(i, result.getFreq(i), result.getRs(i), result.getXs(i));
+                bin.set_RefImp(refImp);
+                assertSameMetrics(bin, result, i);
+                assertSameMetrics(result.getBin(i), result, i);
+            }
+        }
+    }
+}
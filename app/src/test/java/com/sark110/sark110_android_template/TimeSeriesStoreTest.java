@@ -0,0 +1,114 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fixed-frequency monitoring store: raw ring, rollups and LTTB downsampling.
+ */
+public class TimeSeriesStoreTest {
+    @Test
+    public void raw_keepsNewest() {
+        TimeSeriesStore store = new TimeSeriesStore(4, 10, 10, 10);
+        for (int i = 0; i < 6; i++)
+            store.record(1000 + i, i, -i);
+        assertEquals(4, store.size());
+        assertEquals(1002, store.getTime(0));
+        assertEquals(2, store.getRs(0), 0);
+        assertEquals(-5, store.getXs(3), 0);
+    }
+
+    @Test
+    public void rollups_minMaxMeanPerBucket() {
+        TimeSeriesStore store = new TimeSeriesStore(16, 100, 10, 10);
+        assertEquals(-1, store.getFirstTime());
+        /* 10 per second for 3 minutes, R ramping 0..9 within each second */
+        long t0 = 1500000000000L;
+        for (int i = 0; i < 1800; i++)
+            store.record(t0 + i * 100L, i % 10, 50 - i % 10);
+        /* The hour bucket reaches furthest back */
+        assertEquals(t0 - t0 % 3600000L, store.getFirstTime());
+
+        TimeSeriesStore.Rollup seconds = store.getRollup(TimeSeriesStore.LEVEL_SECOND);
+        assertEquals(100, seconds.size());          /* Newest 100 of 180 */
+        assertEquals(t0 + 80000, seconds.getStart(0));
+        for (int i = 0; i < seconds.size(); i++) {
+            assertEquals(10, seconds.getCount(i));
+            assertEquals(0, seconds.getMin(TimeSeriesStore.SERIES_RS, i), 0);
+            assertEquals(9, seconds.getMax(TimeSeriesStore.SERIES_RS, i), 0);
+            assertEquals(4.5f, seconds.getMean(TimeSeriesStore.SERIES_RS, i), 1e-6f);
+            assertEquals(41, seconds.getMin(TimeSeriesStore.SERIES_XS, i), 0);
+        }
+
+        TimeSeriesStore.Rollup minutes = store.getRollup(TimeSeriesStore.LEVEL_MINUTE);
+        assertEquals(3, minutes.size());
+        assertEquals(600, minutes.getCount(0));
+        assertEquals(0, minutes.getStart(0) % 60000);
+        assertEquals(1, store.getRollup(TimeSeriesStore.LEVEL_HOUR).size());
+        assertEquals(1800, store.getRollup(TimeSeriesStore.LEVEL_HOUR).getCount(0));
+    }
+
+    @Test
+    public void lttb_keepsEndsAndPeaks() {
+        int n = 1000;
+        long t[] = new long[n];
+        float v[] = new float[n];
+        for (int i = 0; i < n; i++) {
+            t[i] = i * 10L;
+            v[i] = 1.0f;
+        }
+        v[437] = 50.0f;
+        v[801] = -20.0f;
+        int out[] = new int[n];
+
+        int count = TimeSeriesStore.lttb(t, v, n, 50, out);
+        assertEquals(50, count);
+        assertEquals(0, out[0]);
+        assertEquals(n - 1, out[count - 1]);
+        boolean peak = false, dip = false;
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                assertTrue(out[i] > out[i - 1]);
+            peak |= out[i] == 437;
+            dip |= out[i] == 801;
+        }
+        assertTrue(peak && dip);
+
+        /* Fewer points than the threshold: all of them */
+        assertEquals(10, TimeSeriesStore.lttb(t, v, 10, 50, out));
+        assertEquals(9, out[9]);
+        assertEquals(2, TimeSeriesStore.lttb(t, v, n, 2, out));
+        assertEquals(n - 1, out[1]);
+    }
+
+    @Test
+    public void downsample_usesFinestLevelCoveringRange() {
+        /* 1 per second for 3 hours; raw holds 10 min, seconds 1 h */
+        TimeSeriesStore store = new TimeSeriesStore(600, 3600, 1440, 48);
+        long t0 = 1500000000000L - 1500000000000L % 3600000L;
+        long end = t0 + 3 * 3600000L;
+        for (long t = t0; t < end; t += 1000)
+            store.record(t, (t - t0) / 1000.0f, 0);
+        long outT[] = new long[200];
+        float outV[] = new float[200];
+
+        /* Last 5 minutes: raw */
+        int n = store.downsample(TimeSeriesStore.SERIES_RS, end - 300000, end, 200, outT, outV);
+        assertEquals(200, n);
+        assertEquals(end - 300000, outT[0]);
+        assertEquals(end - 1000, outT[n - 1]);
+
+        /* Last 30 minutes: 1 s buckets */
+        n = store.downsample(TimeSeriesStore.SERIES_RS, end - 1800000, end, 200, outT, outV);
+        assertEquals(200, n);
+        assertEquals(end - 1800000, outT[0]);
+
+        /* Whole run: 1 min buckets, means of each minute */
+        n = store.downsample(TimeSeriesStore.SERIES_RS, t0, end, 200, outT, outV);
+        assertEquals(180, n);
+        assertEquals(t0, outT[0]);
+        assertEquals(29.5f, outV[0], 1e-3f);
+        assertEquals(t0 + 60000, outT[1]);
+    }
+}
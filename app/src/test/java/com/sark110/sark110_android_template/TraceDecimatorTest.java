@@ -0,0 +1,128 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Min/max decimation of sweep traces to pixel columns.
+ */
+public class TraceDecimatorTest {
+    /* 100 columns over x 0..99; values 0..100 map to y 100..0 */
+    private static TraceDecimator decimator(int columns, int points) {
+        TraceDecimator t = new TraceDecimator();
+        t.setViewport(0, 0, columns - 1, 100, columns);
+        t.setRange(0, 100);
+        t.begin(points);
+        return t;
+    }
+
+    private static float value(int i) {
+        return 50 + 40 * (float) Math.sin(i * 0.37);
+    }
+
+    @Test
+    public void manyPoints_keepMinMaxPerColumn() {
+        int points = 10000;
+        TraceDecimator t = decimator(100, points);
+        for (int i = 0; i < points; i++)
+            t.add(i, value(i));
+        t.updateLines();
+
+        assertEquals(100, t.getColumns());
+        assertEquals(0, t.getLinesOffset());
+        assertEquals(100 * TraceDecimator.FLOATS_PER_COLUMN, t.getLinesCount());
+        float lines[] = t.getLines();
+        for (int c = 0; c < 100; c++) {
+            float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+            for (int i = 0; i < points; i++) {
+                if ((long) i * 99 / (points - 1) == c) {
+                    min = Math.min(min, value(i));
+                    max = Math.max(max, value(i));
+                }
+            }
+            int p = c * TraceDecimator.FLOATS_PER_COLUMN;
+            assertEquals(c, lines[p + 4], 1e-4f);
+            assertEquals(100 - min, lines[p + 5], 1e-3f);
+            assertEquals(100 - max, lines[p + 7], 1e-3f);
+            if (c > 0) {
+                /* Connector from the last point of the previous column */
+                assertEquals(c - 1, lines[p], 1e-4f);
+                assertEquals(lines[p - 8 + 2], lines[p - 8 + 4], 0);
+            }
+        }
+    }
+
+    @Test
+    public void fewPoints_oneColumnEach() {
+        TraceDecimator t = decimator(100, 11);
+        for (int i = 0; i < 11; i++)
+            t.add(i, i * 10);
+        t.updateLines();
+        assertEquals(11, t.getColumns());
+        float lines[] = t.getLines();
+        for (int c = 1; c < 11; c++) {
+            int p = c * TraceDecimator.FLOATS_PER_COLUMN;
+            /* Segment from the previous point to this one, spread over the plot width */
+            assertEquals((c - 1) * 9.9f, lines[p], 1e-3f);
+            assertEquals(100 - (c - 1) * 10, lines[p + 1], 1e-3f);
+            assertEquals(c * 9.9f, lines[p + 2], 1e-3f);
+            assertEquals(100 - c * 10, lines[p + 3], 1e-3f);
+        }
+    }
+
+    @Test
+    public void newSweep_overwritesFromTheLeft() {
+        TraceDecimator t = decimator(100, 200);
+        for (int i = 0; i < 200; i++)
+            t.add(i, 10);
+        t.updateLines();
+        assertFalse(t.isDirty());
+
+        /* Second sweep, first half in: the rest still shows the first sweep */
+        t.begin(200);
+        for (int i = 0; i < 100; i++)
+            t.add(i, 90);
+        assertTrue(t.isDirty());
+        t.updateLines();
+        float lines[] = t.getLines();
+        assertEquals(100 * TraceDecimator.FLOATS_PER_COLUMN, t.getLinesCount());
+        assertEquals(10, lines[10 * TraceDecimator.FLOATS_PER_COLUMN + 5], 1e-3f);
+        assertEquals(90, lines[80 * TraceDecimator.FLOATS_PER_COLUMN + 5], 1e-3f);
+        /* Column 50 holds points 100 and 101: old and new values are not mixed */
+        assertEquals(90, lines[50 * TraceDecimator.FLOATS_PER_COLUMN + 5], 1e-3f);
+        assertEquals(90, lines[50 * TraceDecimator.FLOATS_PER_COLUMN + 7], 1e-3f);
+
+        /* A sweep of another size starts from an empty trace */
+        t.begin(300);
+        t.add(0, 50);
+        t.updateLines();
+        assertEquals(TraceDecimator.FLOATS_PER_COLUMN, t.getLinesCount());
+    }
+
+    @Test
+    public void outOfOrderChunks_connectAcrossGaps() {
+        TraceDecimator t = decimator(100, 100);
+        t.add(10, 20);
+        t.add(30, 40);
+        t.updateLines();
+        float lines[] = t.getLines();
+        assertEquals(10 * TraceDecimator.FLOATS_PER_COLUMN, t.getLinesOffset());
+        assertEquals(21 * TraceDecimator.FLOATS_PER_COLUMN, t.getLinesCount());
+        int p = 30 * TraceDecimator.FLOATS_PER_COLUMN;
+        assertEquals(10, lines[p], 1e-4f);
+        assertEquals(80, lines[p + 1], 1e-4f);
+
+        /* The gap fills in: column 30 now connects to column 20 */
+        t.add(20, 60);
+        t.updateLines();
+        assertEquals(20, lines[p], 1e-4f);
+        assertEquals(40, lines[p + 1], 1e-4f);
+        /* Values outside the range sit on the edge */
+        t.add(40, 1000);
+        t.add(50, -1000);
+        t.updateLines();
+        assertEquals(0, lines[40 * TraceDecimator.FLOATS_PER_COLUMN + 3], 0);
+        assertEquals(100, lines[50 * TraceDecimator.FLOATS_PER_COLUMN + 3], 0);
+    }
+}
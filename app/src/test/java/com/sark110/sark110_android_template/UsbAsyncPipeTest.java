@@ -0,0 +1,152 @@
+package com.sark110.sark110_android_template;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.Assert.*;
+
+/**
+ * Queued USB transfers against an in-memory device that answers each command in order.
+ */
+public class UsbAsyncPipeTest {
+    private static final int LEN = DeviceIntf.COMMAND_LEN;
+    private static final int OUT = 4;
+    private static final int IN = 2;
+
+    /* Echoes each command with the first byte inverted, as an IN endpoint would: in order */
+    private static class EchoPipe extends UsbAsyncPipe {
+        final LinkedBlockingQueue<Integer> mDone = new LinkedBlockingQueue<>();
+        final ArrayDeque<Integer> mInQueued = new ArrayDeque<>();
+        final ArrayDeque<byte[]> mReplies = new ArrayDeque<>();
+        final ByteBuffer mIn[] = new ByteBuffer[OUT + IN];
+        boolean mHoldOut;           /* Leave OUT transfers pending, as a stalled device */
+        boolean mFailIn;
+        int mShortIn;               /* Length of the next reply; 0: full */
+
+        EchoPipe() {
+            super(LEN, OUT, IN);
+        }
+
+        @Override
+        protected synchronized boolean queue(int slot, ByteBuffer buf) {
+            if (slot < OUT) {
+                byte reply[] = new byte[LEN];
+                buf.get(reply);
+                reply[0] = (byte) ~reply[0];
+                if (mHoldOut)
+                    return true;
+                mReplies.add(reply);
+                mDone.add(slot);
+            } else {
+                if (mFailIn)
+                    return false;
+                mIn[slot] = buf;
+                mInQueued.add(slot);
+            }
+            while (!mReplies.isEmpty() && !mInQueued.isEmpty()) {
+                int in = mInQueued.poll();
+                byte reply[] = mReplies.poll();
+                mIn[in].put(reply, 0, mShortIn > 0 ? mShortIn : LEN);
+                mShortIn = 0;
+                mDone.add(in);
+            }
+            return true;
+        }
+
+        @Override
+        protected int waitCompleted() {
+            try {
+                return mDone.take();
+            } catch (InterruptedException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        protected void cancel() {
+            mDone.add(-1);
+        }
+    }
+
+    private static byte[] command(int id) {
+        byte c[] = new byte[LEN];
+        c[0] = (byte) id;
+        c[1] = (byte) (id >> 8);
+        return c;
+    }
+
+    @Test
+    public void commandsInFlight_repliesInOrder() {
+        EchoPipe pipe = new EchoPipe();
+        assertTrue(pipe.start());
+        byte rcv[] = new byte[LEN];
+
+        /* Keep OUT commands in flight while more replies than IN slots come back */
+        int sent = 0;
+        for (int received = 0; received < 1000; received++) {
+            while (sent < 1000 && sent - received < OUT)
+                assertEquals(LEN, pipe.send(command(sent++), 100));
+            assertEquals(LEN, pipe.receive(rcv, 1000));
+            assertEquals((byte) ~received, rcv[0]);
+            assertEquals((byte) (received >> 8), rcv[1]);
+        }
+        assertEquals(-1, pipe.receive(rcv, 1));
+        assertEquals(0, pipe.getErrors());
+
+        pipe.stop();
+        assertFalse(pipe.isRunning());
+        assertEquals(-1, pipe.send(command(0), 100));
+    }
+
+    @Test
+    public void send_waitsForFreeSlot() {
+        EchoPipe pipe = new EchoPipe();
+        pipe.mHoldOut = true;
+        assertTrue(pipe.start());
+
+        for (int i = 0; i < OUT; i++)
+            assertEquals(LEN, pipe.send(command(i), 0));
+        long t0 = System.nanoTime();
+        assertEquals(-1, pipe.send(command(OUT), 20));
+        assertTrue(System.nanoTime() - t0 >= 20000000L);
+
+        /* One OUT transfer completes: its slot is reused */
+        pipe.mDone.add(0);
+        assertEquals(LEN, pipe.send(command(OUT), 1000));
+        pipe.stop();
+    }
+
+    @Test
+    public void start_failsIfInCannotBeQueued() {
+        EchoPipe pipe = new EchoPipe();
+        pipe.mFailIn = true;
+        assertFalse(pipe.start());
+        assertFalse(pipe.isRunning());
+        assertEquals(-1, pipe.send(command(0), 10));
+    }
+
+    @Test
+    public void shortTransfer_isNotAReply() {
+        EchoPipe pipe = new EchoPipe();
+        assertTrue(pipe.start());
+        byte rcv[] = new byte[LEN];
+
+        assertEquals(LEN, pipe.send(command(1), 100));
+        assertEquals(LEN, pipe.receive(rcv, 1000));
+        synchronized (pipe) {
+            pipe.mShortIn = 3;
+        }
+        assertEquals(LEN, pipe.send(command(2), 100));
+        assertEquals(-1, pipe.receive(rcv, 50));
+        assertEquals(1, pipe.getErrors());
+
+        /* The slot is queued again and the next full reply gets through */
+        assertEquals(LEN, pipe.send(command(3), 100));
+        assertEquals(LEN, pipe.receive(rcv, 1000));
+        assertEquals((byte) ~3, rcv[0]);
+        pipe.stop();
+    }
+}
@@ -0,0 +1,62 @@
+package com.sark110.sark110_android_template;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+class CannedDeviceIntf extends DeviceIntf {
+    private final byte mReply[];
+
+    /**
+     * Device that answers every command with the same reply and no I/O
+     *
+     * @param reply reply frame; COMMAND_LEN bytes
+     */
+    CannedDeviceIntf(byte reply[]) {
+        mReply = reply;
+        mConnected = true;
+    }
+
+    void onCreate() {
+    }
+
+    void onResume() {
+    }
+
+    void connect() {
+    }
+
+    void close() {
+    }
+
+    boolean IsAvailable() {
+        return true;
+    }
+
+    int SendRcv(byte snd[], byte rcv[]) {
+        markSent();
+        System.arraycopy(mReply, 0, rcv, 0, COMMAND_LEN);
+        return COMMAND_LEN;
+    }
+}
@@ -0,0 +1,83 @@
+package com.sark110.sark110_android_template;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+@State(Scope.Thread)
+public class ChartBenchmark {
+    private static final int WIDTH = 1080;          /* Plot width in pixels */
+    private static final int CHUNK = ProtocolCodec.EXT_POINTS;
+
+    @Param({"1000", "10000", "100000"})
+    public int points;
+
+    private float mValues[];
+    private TraceDecimator mTrace;
+    private int mNext;
+
+    @Setup
+    public void setup() {
+        mValues = new float[points];
+        for (int i = 0; i < points; i++)
+            mValues[i] = 1.0f + 4.0f * (float) Math.abs(Math.sin(i * 20.0 / points));
+        mTrace = new TraceDecimator();
+        mTrace.setViewport(0, 0, WIDTH - 1, 800, WIDTH);
+        mTrace.setRange(1, 10);
+        mTrace.begin(points);
+        for (int i = 0; i < points; i++)
+            mTrace.add(i, mValues[i]);
+        mTrace.updateLines();
+    }
+
+    /* Whole sweep into the trace and its lines rebuilt: the cost of a full redraw */
+    @Benchmark
+    public float[] fullSweep() {
+        mTrace.begin(points);
+        for (int i = 0; i < points; i++)
+            mTrace.add(i, mValues[i]);
+        mTrace.updateLines();
+        return mTrace.getLines();
+    }
+
+    /* One device chunk arriving and the frame after it: only its columns are rebuilt */
+    @Benchmark
+    public float[] chunk() {
+        if (mNext + CHUNK > points) {
+            mNext = 0;
+            mTrace.begin(points);
+        }
+        for (int i = mNext; i < mNext + CHUNK; i++)
+            mTrace.add(i, mValues[i]);
+        mNext += CHUNK;
+        mTrace.updateLines();
+        return mTrace.getLines();
+    }
+}
@@ -0,0 +1,123 @@
+package com.sark110.sark110_android_template;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+@State(Scope.Thread)
+public class CodecBenchmark {
+    private final byte mBuf[] = new byte[DeviceIntf.COMMAND_LEN];
+    private final float mOut[] = new float[2];
+    private int mVal;
+
+    @Setup
+    public void setup() {
+        ProtocolCodec.putInt(mBuf, 1, Float.floatToIntBits(50.0f));
+        ProtocolCodec.putInt(mBuf, 5, Float.floatToIntBits(-12.5f));
+        mVal = 14000000;
+    }
+
+    /*
+     * Original DeviceIntf helpers; kept as the baseline for the codec
+     */
+    private static byte[] legacyInt2Buf(int val) {
+        byte[] buf = new byte[4];
+
+        buf[3] = (byte)((val&0xff000000)>>24);
+        buf[2] = (byte)((val&0x00ff0000)>>16);
+        buf[1] = (byte)((val&0x0000ff00)>>8);
+        buf[0] = (byte)((val&0x000000ff)>>0);
+
+        return buf;
+    }
+
+    private static int legacyBuf2Short(byte buf[], int n) {
+        long val;
+        byte[] bufShort = new byte[2];
+
+        System.arraycopy(buf, n, bufShort, 0, 2);
+        val = (bufShort[1] << 8) & 0xff00L;
+        val += ((bufShort[0] << 0) & 0xffL);
+
+        return (int)val;
+    }
+
+    private static float legacyBuf2Float(byte buf[], int n) {
+        byte[] bufFloat = new byte[4];
+        System.arraycopy(buf, n, bufFloat, 0, 4);
+        return ByteBuffer.wrap(bufFloat).order(ByteOrder.LITTLE_ENDIAN).getFloat();
+    }
+
+    @Benchmark
+    public byte[] legacyInt2Buf() {
+        System.arraycopy(legacyInt2Buf(mVal), 0, mBuf, 9, 4);
+        return mBuf;
+    }
+
+    @Benchmark
+    public byte[] putInt() {
+        ProtocolCodec.putInt(mBuf, 9, mVal);
+        return mBuf;
+    }
+
+    @Benchmark
+    public int legacyBuf2Short() {
+        return legacyBuf2Short(mBuf, 1);
+    }
+
+    @Benchmark
+    public int getShort() {
+        return ProtocolCodec.getShort(mBuf, 1);
+    }
+
+    @Benchmark
+    public float legacyBuf2Float() {
+        return legacyBuf2Float(mBuf, 1);
+    }
+
+    @Benchmark
+    public float getFloat() {
+        return ProtocolCodec.getFloat(mBuf, 1);
+    }
+
+    @Benchmark
+    public byte[] encodeMeasure() {
+        ProtocolCodec.encodeMeasure(mBuf, mVal, (byte) 1);
+        return mBuf;
+    }
+
+    @Benchmark
+    public float[] decodeMeasure() {
+        ProtocolCodec.decodeMeasure(mBuf, mOut, 0);
+        return mOut;
+    }
+}
@@ -0,0 +1,57 @@
+package com.sark110.sark110_android_template;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+@State(Scope.Thread)
+public class ComplexNumberBenchmark {
+    private ComplexNumber mZ = new ComplexNumber(37.0, -12.0);
+    private ComplexNumber mZ0 = new ComplexNumber(50.0, 0.0);
+
+    @Benchmark
+    public ComplexNumber add() {
+        return ComplexNumber.add(mZ, mZ0);
+    }
+
+    @Benchmark
+    public ComplexNumber subtract() {
+        return ComplexNumber.subtract(mZ, mZ0);
+    }
+
+    @Benchmark
+    public ComplexNumber divide() {
+        return ComplexNumber.divide(mZ, mZ0);
+    }
+
+    /* Reflection coefficient as MeasureDataBin computed it before MeasureMath */
+    @Benchmark
+    public ComplexNumber rho() {
+        return ComplexNumber.divide(ComplexNumber.subtract(mZ, mZ0), ComplexNumber.add(mZ, mZ0));
+    }
+}
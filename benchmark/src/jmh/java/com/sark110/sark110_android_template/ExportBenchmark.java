@@ -0,0 +1,128 @@
+package com.sark110.sark110_android_template;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+@State(Scope.Thread)
+public class ExportBenchmark {
+    private static final int POINTS = 100000;
+
+    private SweepResult mResult;
+    private File mFile;
+
+    /* Discards the output; measures formatting only */
+    private final Writer mNullWriter = new Writer() {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+        @Override
+        public void flush() {
+        }
+        @Override
+        public void close() {
+        }
+    };
+    private final OutputStream mNullStream = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(110);
+        mResult = new SweepResult(POINTS);
+        for (int i = 0; i < POINTS; i++)
+            mResult.set(i, GblDefs.MIN_FREQ + i * 100, random.nextFloat() * 500.0f,
+                    (random.nextFloat() - 0.5f) * 1000.0f);
+        mFile = File.createTempFile("export", ".csv");
+    }
+
+    @TearDown
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    /* Baseline: one String.format per row, as an exporter would naively be written */
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void csvStringFormat() throws IOException {
+        Writer out = new BufferedWriter(mNullWriter);
+        out.write("Freq,Rs,Xs,VSWR,RL\n");
+        for (int i = 0; i < POINTS; i++)
+            out.write(String.format(Locale.US, "%d,%.6g,%.6g,%.6g,%.6g\n", mResult.getFreq(i),
+                    mResult.getRs(i), mResult.getXs(i), mResult.getVswr(i), mResult.getRL(i)));
+        out.flush();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void csv() throws IOException {
+        new CsvExporter(mNullWriter, CsvExporter.COL_RS, CsvExporter.COL_XS, CsvExporter.COL_VSWR,
+                CsvExporter.COL_RL).export(mResult);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void touchstoneRi() throws IOException {
+        new TouchstoneExporter(mNullWriter, TouchstoneExporter.FORMAT_RI).export(mResult);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void binary() throws IOException {
+        new BinarySweepExporter(mNullStream).export(mResult);
+    }
+
+    /* End to end through the file system */
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void csvToFile() throws IOException {
+        CsvExporter exporter = new CsvExporter(new OutputStreamWriter(new FileOutputStream(mFile), "UTF-8"),
+                CsvExporter.COL_RS, CsvExporter.COL_XS, CsvExporter.COL_VSWR, CsvExporter.COL_RL);
+        exporter.export(mResult);
+        exporter.close();
+    }
+}
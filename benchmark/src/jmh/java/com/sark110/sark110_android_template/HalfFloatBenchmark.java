@@ -0,0 +1,98 @@
+package com.sark110.sark110_android_template;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+@State(Scope.Thread)
+public class HalfFloatBenchmark {
+    static final int VALUES = 1024;
+
+    private DeviceIntf mDevIntf;
+    private DeviceIntf mDevIntfTable;
+    private int mHalves[];
+    private final byte mBuf[] = new byte[2 * VALUES];
+    private final float mOut[] = new float[VALUES];
+
+    @Setup
+    public void setup() {
+        mDevIntf = new CannedDeviceIntf(new byte[DeviceIntf.COMMAND_LEN]);
+        mDevIntfTable = new CannedDeviceIntf(new byte[DeviceIntf.COMMAND_LEN]);
+        mDevIntfTable.setHalfFloatTable(true);
+        mHalves = new int[VALUES];
+        /* Impedances as the device reports them: mostly normals, a few denormals and zeros */
+        Random random = new Random(110);
+        for (int i = 0; i < VALUES; i++) {
+            float z = (random.nextFloat() - 0.25f) * 2000.0f;
+            mHalves[i] = ProtocolCodec.floatToHalf(z);
+        }
+        for (int i = 0; i < VALUES; i += 64) {
+            mHalves[i] = random.nextInt(0x400);
+            mHalves[i + 1] = 0;
+        }
+        for (int i = 0; i < VALUES; i++)
+            ProtocolCodec.putShort(mBuf, 2 * i, mHalves[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public float toFloat() {
+        float sum = 0;
+        for (int i = 0; i < VALUES; i++)
+            sum += mDevIntf.toFloat(mHalves[i]);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public float toFloatTable() {
+        float sum = 0;
+        for (int i = 0; i < VALUES; i++)
+            sum += mDevIntfTable.toFloat(mHalves[i]);
+        return sum;
+    }
+
+    /* Bulk decode from the little-endian frame bytes */
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public float[] toFloatBulk() {
+        mDevIntf.toFloat(mBuf, 0, mOut, 0, VALUES);
+        return mOut;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public float[] toFloatBulkTable() {
+        mDevIntfTable.toFloat(mBuf, 0, mOut, 0, VALUES);
+        return mOut;
+    }
+}
@@ -0,0 +1,117 @@
+package com.sark110.sark110_android_template;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+@State(Scope.Thread)
+public class MeasureDataBinBenchmark {
+    /* true: reference impedance reset before each call, so the reflection coefficient is recomputed */
+    @Param({"true", "false"})
+    public boolean cold;
+
+    private MeasureDataBin mBin;
+
+    @Setup
+    public void setup() {
+        mBin = new MeasureDataBin(0, 14000000, 37.0f, -12.0f);
+    }
+
+    private MeasureDataBin bin() {
+        if (cold)
+            mBin.set_RefImp(50.0f);
+        return mBin;
+    }
+
+    @Benchmark
+    public float getRs() {
+        return bin().getRs();
+    }
+
+    @Benchmark
+    public float getXs() {
+        return bin().getXs();
+    }
+
+    @Benchmark
+    public float getZsMag() {
+        return bin().getZsMag();
+    }
+
+    @Benchmark
+    public float getZsAngle() {
+        return bin().getZsAngle();
+    }
+
+    @Benchmark
+    public float getVswr() {
+        return bin().getVswr();
+    }
+
+    @Benchmark
+    public float getRL() {
+        return bin().getRL();
+    }
+
+    @Benchmark
+    public float getCL() {
+        return bin().getCL();
+    }
+
+    @Benchmark
+    public float getRhMag() {
+        return bin().getRhMag();
+    }
+
+    @Benchmark
+    public float getRhAngle() {
+        return bin().getRhAngle();
+    }
+
+    @Benchmark
+    public float getRefPwr() {
+        return bin().getRefPwr();
+    }
+
+    @Benchmark
+    public float getQ() {
+        return bin().getQ();
+    }
+
+    @Benchmark
+    public float getCs() {
+        return bin().getCs();
+    }
+
+    @Benchmark
+    public float getLs() {
+        return bin().getLs();
+    }
+}
@@ -0,0 +1,74 @@
+package com.sark110.sark110_android_template;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+@State(Scope.Thread)
+public class MeasureExtBenchmark {
+    private final byte mReply[] = new byte[DeviceIntf.COMMAND_LEN];
+    private final float mOut[] = new float[2 * ProtocolCodec.EXT_POINTS];
+    private DeviceIntf mDevIntf;
+
+    @Setup
+    public void setup() {
+        mReply[0] = ProtocolCodec.ANS_SARK_OK;
+        for (int i = 0; i < ProtocolCodec.EXT_POINTS; i++) {
+            ProtocolCodec.putShort(mReply, 1 + 4 * i, ProtocolCodec.floatToHalf(25.0f + 10.0f * i));
+            ProtocolCodec.putShort(mReply, 3 + 4 * i, ProtocolCodec.floatToHalf(-40.0f + 30.0f * i));
+        }
+        mDevIntf = new CannedDeviceIntf(mReply);
+    }
+
+    /* Reply frame to R, X pairs */
+    @Benchmark
+    public float[] decode() {
+        ProtocolCodec.decodeMeasureExt(mReply, mOut, 0);
+        return mOut;
+    }
+
+    @Benchmark
+    public float[] decodeTable() {
+        ProtocolCodec.decodeMeasureExt(mReply, mOut, 0, true);
+        return mOut;
+    }
+
+    /* Encode, transport round trip and decode into a caller buffer */
+    @Benchmark
+    public float[] measureCmdExt() {
+        mDevIntf.MeasureCmdExt(14000000, 10000, (byte) 1, mOut, 0);
+        return mOut;
+    }
+
+    /* Same, returning one MeasureDataBin per point */
+    @Benchmark
+    public MeasureDataBin[] measureCmdExtBins() {
+        return mDevIntf.MeasureCmdExt(14000000, 10000, (byte) 1);
+    }
+}
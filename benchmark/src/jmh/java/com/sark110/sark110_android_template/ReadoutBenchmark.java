@@ -0,0 +1,69 @@
+package com.sark110.sark110_android_template;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+@State(Scope.Thread)
+public class ReadoutBenchmark {
+    private final ReadoutFormatter mSwr = new ReadoutFormatter(32);
+    private final ReadoutFormatter mZ = new ReadoutFormatter(32);
+    private final ReadoutFormatter mSeries = new ReadoutFormatter(32);
+    private final int mFreq = 14050000;
+    private float mRs = 37.25f;
+    private float mXs = -12.5f;
+
+    /* The readout as MainActivity built it before: VSWR and impedance lines */
+    @Benchmark
+    public void stringFormat(Blackhole bh) {
+        MeasureDataBin bin = new MeasureDataBin(0, mFreq, mRs, mXs);
+        bh.consume("VSWR: " + String.format("%.2f", bin.getVswr()));
+        float xs = bin.getXs();
+        if (xs < 0)
+            bh.consume("Z: " + String.format("%.2f", bin.getRs()) + " -j" + String.format("%.2f", Math.abs(xs)));
+        else
+            bh.consume("Z: " + String.format("%.2f", bin.getRs()) + " +j" + String.format("%.2f", Math.abs(xs)));
+    }
+
+    /* The same two lines into reused char arrays */
+    @Benchmark
+    public void formatter(Blackhole bh) {
+        float vswr = MeasureMath.vswr(MeasureMath.mod(MeasureMath.rhoRe(mRs, mXs, 50.0),
+                MeasureMath.rhoIm(mRs, mXs, 50.0)));
+        bh.consume(mSwr.clear().append("VSWR: ").appendFixed(vswr, 2).getChars());
+        bh.consume(mZ.clear().append("Z: ").appendImpedance(mRs, mXs, 2).getChars());
+    }
+
+    /* Series element and frequency with engineering prefixes, as the third readout line */
+    @Benchmark
+    public char[] formatterSeries() {
+        mSeries.clear().append("Cs: ").appendEng(MeasureMath.capacitance(mXs, mFreq) * 1e-12, 4, "F");
+        return mSeries.append(" @ ").appendEng(mFreq, 6, "Hz").getChars();
+    }
+}
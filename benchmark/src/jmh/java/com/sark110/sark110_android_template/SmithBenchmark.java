@@ -0,0 +1,108 @@
+package com.sark110.sark110_android_template;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+@State(Scope.Thread)
+public class SmithBenchmark {
+    private static final int CHUNK = ProtocolCodec.EXT_POINTS;
+
+    @Param({"1000", "10000", "100000"})
+    public int points;
+
+    private float mRs[];
+    private float mXs[];
+    private SmithTrace mTrace;
+    private final float mQuery[] = new float[256];
+    private int mNextQuery;
+    private int mNext;
+
+    @Setup
+    public void setup() {
+        /* Series RLC around resonance: a spiral over the chart */
+        mRs = new float[points];
+        mXs = new float[points];
+        for (int i = 0; i < points; i++) {
+            double w = 2 * Math.PI * (1e6 + 29e6 * i / points);
+            mRs[i] = 25.0f + 10.0f * i / points;
+            mXs[i] = (float) (w * 10e-6 - 1 / (w * 100e-12));
+        }
+        mTrace = new SmithTrace();
+        mTrace.begin(points);
+        for (int i = 0; i < points; i++)
+            mTrace.add(i, i, mRs[i], mXs[i]);
+        mTrace.updateLines();
+        Random random = new Random(1);
+        for (int i = 0; i < mQuery.length; i++)
+            mQuery[i] = (random.nextFloat() - 0.5f) * 2;
+    }
+
+    /* Marker lookup through the spatial index */
+    @Benchmark
+    public int nearest() {
+        int q = mNextQuery = (mNextQuery + 2) & (mQuery.length - 1);
+        return mTrace.nearest(mQuery[q], mQuery[q + 1]);
+    }
+
+    /* Same lookup over every point */
+    @Benchmark
+    public int nearestLinear() {
+        int q = mNextQuery = (mNextQuery + 2) & (mQuery.length - 1);
+        float re = mQuery[q], im = mQuery[q + 1];
+        int best = -1;
+        float bestDist = Float.MAX_VALUE;
+        for (int i = 0; i < points; i++) {
+            float dx = mTrace.getRe(i) - re, dy = mTrace.getIm(i) - im;
+            float d = dx * dx + dy * dy;
+            if (d < bestDist) {
+                bestDist = d;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /* One device chunk into the trace and its segments, as between two frames */
+    @Benchmark
+    public float[] chunk() {
+        if (mNext + CHUNK > points) {
+            mNext = 0;
+            mTrace.begin(points);
+        }
+        for (int i = mNext; i < mNext + CHUNK; i++)
+            mTrace.add(i, i, mRs[i], mXs[i]);
+        mNext += CHUNK;
+        mTrace.updateLines();
+        return mTrace.getLines();
+    }
+}
@@ -0,0 +1,62 @@
+package com.sark110.sark110_android_template;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+@State(Scope.Thread)
+public class SweepBenchmark {
+    private static final int POINTS = 1000;
+
+    @Param({"1", "4"})
+    public int depth;
+
+    /* Link latency per transfer in ns; the analyzer itself takes no time */
+    @Param({"0", "250000", "1000000"})
+    public long latency;
+
+    private SweepEngine mEngine;
+    private SweepResult mResult;
+
+    @Setup
+    public void setup() {
+        SimulatorIntf dev = SimulatorIntf.instant();
+        dev.setLink(latency, 0, 0);
+        dev.setPipelineDepth(depth);
+        mEngine = new SweepEngine(dev);
+        mResult = new SweepResult(POINTS);
+    }
+
+    /* One sweep of POINTS points; bound by round trips, so pipelining shows with latency */
+    @Benchmark
+    public int sweep() {
+        return mEngine.Sweep(1000000, 30000000, (byte) 0, mResult, null);
+    }
+}
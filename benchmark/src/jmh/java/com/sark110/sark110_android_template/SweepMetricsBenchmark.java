@@ -0,0 +1,78 @@
+package com.sark110.sark110_android_template;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+@State(Scope.Thread)
+public class SweepMetricsBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int points;
+
+    private SweepResult mResult;
+    private SweepMetrics mMetrics;
+    private float mOut[];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(110);
+        mResult = new SweepResult(points);
+        for (int i = 0; i < points; i++)
+            mResult.set(i, GblDefs.MIN_FREQ + i * 100, random.nextFloat() * 500.0f,
+                    (random.nextFloat() - 0.5f) * 1000.0f);
+        mMetrics = new SweepMetrics(points);
+        mOut = new float[7 * points];
+    }
+
+    /* One MeasureDataBin per point, fresh so the rho cache does not hide the work */
+    @Benchmark
+    public float[] perObject() {
+        for (int i = 0, k = 0; i < points; i++) {
+            MeasureDataBin bin = new MeasureDataBin(i, mResult.getFreq(i), mResult.getRs(i), mResult.getXs(i));
+            mOut[k++] = bin.getVswr();
+            mOut[k++] = bin.getRL();
+            mOut[k++] = bin.getRhMag();
+            mOut[k++] = bin.getRhAngle();
+            mOut[k++] = bin.getQ();
+            mOut[k++] = bin.getCs();
+            mOut[k++] = bin.getLs();
+        }
+        return mOut;
+    }
+
+    /* Same metrics over the primitive arrays; fork/join above PARALLEL_THRESHOLD points */
+    @Benchmark
+    public SweepMetrics batch() {
+        mMetrics.compute(mResult);
+        return mMetrics;
+    }
+}
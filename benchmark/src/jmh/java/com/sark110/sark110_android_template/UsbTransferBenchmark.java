@@ -0,0 +1,193 @@
+package com.sark110.sark110_android_template;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This file is a part of the "SARK110 Antenna Vector Impedance Analyzer" software
+ *
+ * MIT License
+ *
+ * @author Copyright (c) 2018 Melchor Varela - EA4FRB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+@State(Scope.Thread)
+public class UsbTransferBenchmark {
+    private static final int LEN = DeviceIntf.COMMAND_LEN;
+    private static final int BATCH = 64;
+    private static final int IN_SLOTS = 4;          /* As USBIntf */
+
+    /* Command round trip on the bus, in us: none, a high-speed microframe, a full-speed frame */
+    @Param({"0", "125", "1000"})
+    public int latencyUs;
+
+    @Param({"1", "4", "8"})
+    public int depth;
+
+    private final byte mSnd[] = new byte[LEN];
+    private final byte mRcv[] = new byte[LEN];
+    private final byte mReply[] = new byte[LEN];
+    private LoopbackPipe mPipe;
+
+    /*
+     * Device at the end of a bus with a fixed round trip: OUT transfers complete at once, and
+     * each reply lands in the oldest queued IN slot one round trip after its command.
+     */
+    private static class LoopbackPipe extends UsbAsyncPipe {
+        private final long mLatency;
+        private final int mOutSlots;
+        private final byte mReply[];
+        private final DelayQueue<Done> mDone = new DelayQueue<>();
+        private final Done mSlots[];
+        private final ByteBuffer mBuffers[];
+        private final long mReplyAt[] = new long[64];   /* Replies waiting for an IN slot */
+        private final int mInQueued[] = new int[64];
+        private int mReplyHead, mReplyTail, mInHead, mInTail;
+        private long mSeq;
+
+        LoopbackPipe(long latency, int outSlots, int inSlots, byte reply[]) {
+            super(LEN, outSlots, inSlots);
+            mLatency = latency;
+            mOutSlots = outSlots;
+            mReply = reply;
+            mSlots = new Done[outSlots + inSlots];
+            mBuffers = new ByteBuffer[outSlots + inSlots];
+            for (int i = 0; i < mSlots.length; i++)
+                mSlots[i] = new Done(i);
+        }
+
+        @Override
+        protected synchronized boolean queue(int slot, ByteBuffer buf) {
+            long now = System.nanoTime();
+            if (slot < mOutSlots) {
+                mReplyAt[mReplyTail++ & 63] = now + mLatency;
+                complete(slot, now);
+            } else {
+                mBuffers[slot] = buf;
+                mInQueued[mInTail++ & 63] = slot;
+            }
+            while (mReplyHead != mReplyTail && mInHead != mInTail) {
+                int in = mInQueued[mInHead++ & 63];
+                mBuffers[in].put(mReply);
+                complete(in, mReplyAt[mReplyHead++ & 63]);
+            }
+            return true;
+        }
+
+        private void complete(int slot, long at) {
+            Done done = mSlots[slot];
+            done.mAt = at;
+            done.mSeq = mSeq++;
+            mDone.put(done);
+        }
+
+        @Override
+        protected int waitCompleted() {
+            try {
+                return mDone.take().mSlot;
+            } catch (InterruptedException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        protected void cancel() {
+            Done stop = new Done(-1);
+            stop.mAt = System.nanoTime();
+            mDone.put(stop);
+        }
+    }
+
+    /* Completion of one slot; at most one per slot is pending */
+    private static class Done implements Delayed {
+        final int mSlot;
+        long mAt;
+        long mSeq;
+
+        Done(int slot) {
+            mSlot = slot;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(mAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            Done d = (Done) o;
+            if (mAt != d.mAt)
+                return mAt < d.mAt ? -1 : 1;
+            return mSeq < d.mSeq ? -1 : (mSeq > d.mSeq ? 1 : 0);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        mReply[0] = ProtocolCodec.ANS_SARK_OK;
+        mSnd[0] = ProtocolCodec.CMD_SARK_MEAS_RX;
+        mPipe = new LoopbackPipe(latencyUs * 1000L, depth, IN_SLOTS, mReply);
+        mPipe.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPipe.stop();
+    }
+
+    /* Current path: blocking OUT then IN bulkTransfer() on the command thread */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[] blocking() {
+        for (int i = 0; i < BATCH; i++) {
+            if (latencyUs > 0)
+                LockSupport.parkNanos(latencyUs * 1000L);
+            System.arraycopy(mReply, 0, mRcv, 0, LEN);
+        }
+        return mRcv;
+    }
+
+    /* Queued transfers keeping depth commands in flight, as SendRcvPipelined() does */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[] queued() {
+        int sent = 0;
+        for (int received = 0; received < BATCH; received++) {
+            while (sent < BATCH && sent - received < depth) {
+                mPipe.send(mSnd, 1000);
+                sent++;
+            }
+            if (mPipe.receive(mRcv, 1000) < 0)
+                throw new IllegalStateException("reply lost");
+        }
+        return mRcv;
+    }
+}